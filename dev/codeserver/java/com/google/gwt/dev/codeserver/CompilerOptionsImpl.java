@@ -130,6 +130,11 @@ class CompilerOptionsImpl extends UnmodifiableCompilerOptions {
     return OptionOptimize.OPTIMIZE_LEVEL_DRAFT;
   }
 
+  @Override
+  public int getOptimizerThreads() {
+    return 0;
+  }
+
   @Override
   public JsOutputOption getOutput() {
     return output;
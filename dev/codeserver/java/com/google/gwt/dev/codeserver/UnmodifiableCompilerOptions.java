@@ -155,6 +155,11 @@ abstract class UnmodifiableCompilerOptions implements CompilerOptions {
     throw new UnsupportedOperationException();
   }
 
+  @Override
+  public final void setOptimizerThreads(int threads) {
+    throw new UnsupportedOperationException();
+  }
+
   @Override
   public void setOptimizeDataflow(boolean enabled) {
     throw new UnsupportedOperationException();
@@ -20,7 +20,6 @@ import com.google.gwt.core.ext.UnableToCompleteException;
 import com.google.gwt.dev.CompileTaskRunner.CompileTask;
 import com.google.gwt.dev.cfg.ModuleDef;
 import com.google.gwt.dev.cfg.ModuleDefLoader;
-import com.google.gwt.dev.jjs.JavaToJavaScriptCompiler;
 import com.google.gwt.dev.jjs.PermutationResult;
 import com.google.gwt.dev.util.PerfCounter;
 import com.google.gwt.dev.util.arg.ArgHandlerPerm;
@@ -149,9 +148,8 @@ public class CompileOnePerm {
         new int[]{permId}, precompilation);
     assert subPerms.length == 1;
 
-    PermutationResult permResult =
-        JavaToJavaScriptCompiler.compilePermutation(precompilation.getUnifiedAst(), logger,
-            compilerContext, subPerms[0]);
+    PermutationResult permResult = CompilePerms.compile(logger, compilerContext, subPerms[0],
+        precompilation.getUnifiedAst());
     Link.linkOnePermutationToJar(logger, module, compilerContext.getPublicResourceOracle(),
         precompilation.getGeneratedArtifacts(), permResult, makePermFilename(
             compilerWorkDir, permId), precompilationOptions);
@@ -189,14 +189,29 @@ public class CompilePerms {
   }
 
   /**
-   * Compile a single permutation.
+   * Compile a single permutation, or reuse the result of a previous build if the
+   * {@value PermutationResultCache#CACHE_DIR_PROPERTY} cache has one.
    *
    * @throws UnableToCompleteException if the permutation compile fails
    */
   public static PermutationResult compile(TreeLogger logger, CompilerContext compilerContext,
       Permutation permutation, UnifiedAst unifiedAst) throws UnableToCompleteException {
-    return JavaToJavaScriptCompiler.compilePermutation(unifiedAst, logger, compilerContext,
-        permutation);
+    PermutationResultCache cache = PermutationResultCache.getInstance();
+    String key = cache == null ? null : cache.computeKey(compilerContext, permutation, unifiedAst);
+    if (key != null) {
+      PermutationResult result = cache.read(logger, key);
+      if (result != null) {
+        logger.log(TreeLogger.INFO,
+            "Reusing cached result for permutation " + permutation.getId());
+        return result;
+      }
+    }
+    PermutationResult result = JavaToJavaScriptCompiler.compilePermutation(unifiedAst, logger,
+        compilerContext, permutation);
+    if (key != null) {
+      cache.write(logger, key, result);
+    }
+    return result;
   }
 
   /**
@@ -0,0 +1,252 @@
+/*
+ * Copyright 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev;
+
+import com.google.gwt.core.ext.TreeLogger;
+import com.google.gwt.dev.cfg.BindingProperties;
+import com.google.gwt.dev.cfg.ConfigurationProperties;
+import com.google.gwt.dev.cfg.PermutationProperties;
+import com.google.gwt.dev.jjs.JJSOptions;
+import com.google.gwt.dev.jjs.PermutationResult;
+import com.google.gwt.dev.jjs.UnifiedAst;
+import com.google.gwt.dev.js.CoverageInstrumentor;
+import com.google.gwt.dev.util.CompilerVersion;
+import com.google.gwt.dev.util.Util;
+import com.google.gwt.thirdparty.guava.common.collect.Lists;
+import com.google.gwt.thirdparty.guava.common.collect.Sets;
+import com.google.gwt.util.tools.Utility;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Properties;
+
+/**
+ * A cache of compiled permutations on local disk that outlives the build, so that a permutation
+ * whose inputs have not changed since a previous build is not compiled again. Enabled by setting
+ * the {@value #CACHE_DIR_PROPERTY} system property to a directory.
+ * <p>
+ * Results are keyed by a strong hash of everything that determines the output of compiling a
+ * permutation: the compiler version, the content hash of the {@link UnifiedAst}, the permutation's
+ * properties and rebind answers, the compiler options and the {@code gwt.jjs.*} and coverage
+ * system properties. The hash is taken over a sorted text form of these inputs rather than their
+ * serialized form, which depends on map iteration order and class layout. Entries are never
+ * evicted; old files can be deleted at any time.
+ */
+class PermutationResultCache {
+
+  /**
+   * The system property naming the directory that holds cached permutations.
+   */
+  static final String CACHE_DIR_PROPERTY = "gwt.permutationcachedir";
+
+  private static final String CACHE_FILE_PREFIX = "perm-";
+
+  /**
+   * The compiler options that determine the output, read reflectively so that options added
+   * later are part of the key without further changes here.
+   */
+  private static final List<Method> JJS_OPTION_GETTERS = getJjsOptionGetters();
+
+  /**
+   * System properties whose name starts with this prefix tune the compiler, so they are part of
+   * the key.
+   */
+  private static final String JJS_SYSTEM_PROPERTY_PREFIX = "gwt.jjs.";
+
+  private static PermutationResultCache instance;
+
+  private static boolean initialized;
+
+  /**
+   * Returns the cache in the directory named by {@value #CACHE_DIR_PROPERTY}, or {@code null} if
+   * the property is not set.
+   */
+  static synchronized PermutationResultCache getInstance() {
+    if (!initialized) {
+      String cacheDir = System.getProperty(CACHE_DIR_PROPERTY);
+      if (cacheDir != null) {
+        instance = new PermutationResultCache(new File(cacheDir), CompilerVersion.getHash());
+      }
+      initialized = true;
+    }
+    return instance;
+  }
+
+  private final File cacheDir;
+
+  private final String compilerVersion;
+
+  PermutationResultCache(File cacheDir, String compilerVersion) {
+    this.cacheDir = cacheDir;
+    this.compilerVersion = compilerVersion;
+  }
+
+  /**
+   * Returns the key under which the result of compiling {@code permutation} is cached, or
+   * {@code null} if it can't be cached.
+   */
+  String computeKey(CompilerContext compilerContext, Permutation permutation,
+      UnifiedAst unifiedAst) {
+    PrecompileTaskOptions options = compilerContext.getOptions();
+    if (unifiedAst.getContentHash() == null || options.isIncrementalCompileEnabled()) {
+      // Incremental compiles keep state in the MinimalRebuildCache that a cached result lacks.
+      return null;
+    }
+    StringBuilder key = new StringBuilder();
+    append(key, "compilerVersion", compilerVersion);
+    append(key, "contentHash", unifiedAst.getContentHash());
+    append(key, "permutation", String.valueOf(permutation.getId()));
+    PermutationProperties properties = permutation.getProperties();
+    for (BindingProperties bindingProperties : properties.getSoftProperties()) {
+      append(key, "softProperties", bindingProperties.prettyPrint());
+    }
+    List<PropertyAndBindingInfo> infos = permutation.getPropertyAndBindingInfos();
+    for (int i = 0; i < infos.size(); i++) {
+      append(key, "softPermutation", String.valueOf(i));
+      for (Entry<String, String> entry : infos.get(i).getPropertyValues().entrySet()) {
+        append(key, "property." + entry.getKey(), entry.getValue());
+      }
+      for (Entry<String, String> entry : infos.get(i).getReboundTypes().entrySet()) {
+        append(key, "rebind." + entry.getKey(), entry.getValue());
+      }
+    }
+    ConfigurationProperties configurationProperties = properties.getConfigurationProperties();
+    for (String name : configurationProperties.getKeys()) {
+      for (String value : configurationProperties.getStrings(name)) {
+        append(key, "configuration." + name, value);
+      }
+    }
+    for (Method getter : JJS_OPTION_GETTERS) {
+      try {
+        append(key, "option." + getter.getName(), String.valueOf(getter.invoke(options)));
+      } catch (IllegalAccessException e) {
+        throw new RuntimeException("Unable to read compiler option " + getter.getName(), e);
+      } catch (InvocationTargetException e) {
+        throw new RuntimeException("Unable to read compiler option " + getter.getName(), e);
+      }
+    }
+    append(key, "sourceMapFilePrefix", options.getSourceMapFilePrefix());
+    for (String moduleName : options.getModuleNames()) {
+      append(key, "module", moduleName);
+    }
+    Properties systemProperties = System.getProperties();
+    for (String name : Sets.newTreeSet(systemProperties.stringPropertyNames())) {
+      if (isCompileSystemProperty(name)) {
+        append(key, name, systemProperties.getProperty(name));
+      }
+    }
+    return Util.computeStrongName(Util.getBytes(key.toString()));
+  }
+
+  /**
+   * Returns the result cached under {@code key}, or {@code null} if there is none.
+   */
+  PermutationResult read(TreeLogger logger, String key) {
+    File cacheFile = getCacheFile(key);
+    if (!cacheFile.isFile()) {
+      return null;
+    }
+    try {
+      PermutationResult result = Util.readFileAsObject(cacheFile, PermutationResult.class);
+      // Lets whoever cleans up the directory tell recently used entries apart.
+      cacheFile.setLastModified(System.currentTimeMillis());
+      return result;
+    } catch (ClassNotFoundException e) {
+      logger.log(TreeLogger.WARN, "Ignoring unreadable cached permutation " + cacheFile, e);
+    } catch (IOException e) {
+      logger.log(TreeLogger.WARN, "Ignoring unreadable cached permutation " + cacheFile, e);
+    }
+    cacheFile.delete();
+    return null;
+  }
+
+  /**
+   * Caches {@code result} under {@code key}. Failures are logged but otherwise ignored, since the
+   * result itself is fine.
+   */
+  void write(TreeLogger logger, String key, PermutationResult result) {
+    File tempFile = null;
+    FileOutputStream stream = null;
+    try {
+      // No need to check mkdirs result because an IOException will occur anyway
+      cacheDir.mkdirs();
+      // Written under a temporary name so that concurrent builds never read a partial entry.
+      tempFile = File.createTempFile(CACHE_FILE_PREFIX, ".tmp", cacheDir);
+      stream = new FileOutputStream(tempFile);
+      Util.writeObjectToStream(stream, result);
+      stream.close();
+      stream = null;
+      if (tempFile.renameTo(getCacheFile(key))) {
+        tempFile = null;
+      }
+    } catch (IOException e) {
+      logger.log(TreeLogger.WARN, "Unable to cache permutation in " + cacheDir, e);
+    } finally {
+      Utility.close(stream);
+      if (tempFile != null) {
+        tempFile.delete();
+      }
+    }
+  }
+
+  /**
+   * Appends one named value to {@code key}. Both parts are length-prefixed so that no two
+   * different sequences of values produce the same key.
+   */
+  private static void append(StringBuilder key, String name, String value) {
+    key.append(name.length()).append(':').append(name);
+    if (value == null) {
+      key.append('-');
+    } else {
+      key.append('=').append(value.length()).append(':').append(value);
+    }
+  }
+
+  private static boolean isCompileSystemProperty(String name) {
+    return name.startsWith(JJS_SYSTEM_PROPERTY_PREFIX)
+        || name.equals(CoverageInstrumentor.GWT_COVERAGE_SYSTEM_PROPERTY);
+  }
+
+  /**
+   * Returns the getters of every {@link JJSOptions} option, sorted by name.
+   */
+  private static List<Method> getJjsOptionGetters() {
+    List<Method> getters = Lists.newArrayList();
+    for (Method method : JJSOptions.class.getMethods()) {
+      if (method.getParameterTypes().length == 0 && method.getReturnType() != void.class) {
+        getters.add(method);
+      }
+    }
+    Collections.sort(getters, new Comparator<Method>() {
+      @Override
+      public int compare(Method a, Method b) {
+        return a.getName().compareTo(b.getName());
+      }
+    });
+    return getters;
+  }
+
+  private File getCacheFile(String key) {
+    return new File(cacheDir, CACHE_FILE_PREFIX + key + ".ser");
+  }
+}
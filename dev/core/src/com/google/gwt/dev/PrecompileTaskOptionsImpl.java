@@ -109,6 +109,11 @@ public class PrecompileTaskOptionsImpl extends CompileTaskOptionsImpl
     return jjsOptions.getOptimizationLevel();
   }
 
+  @Override
+  public int getOptimizerThreads() {
+    return jjsOptions.getOptimizerThreads();
+  }
+
   @Override
   public JsOutputOption getOutput() {
     return jjsOptions.getOutput();
@@ -292,6 +297,11 @@ public class PrecompileTaskOptionsImpl extends CompileTaskOptionsImpl
     jjsOptions.setOptimizationLevel(level);
   }
 
+  @Override
+  public void setOptimizerThreads(int threads) {
+    jjsOptions.setOptimizerThreads(threads);
+  }
+
   @Override
   public void setOptimizeDataflow(boolean enabled) {
     jjsOptions.setOptimizeDataflow(enabled);
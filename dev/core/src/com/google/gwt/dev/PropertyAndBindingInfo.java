@@ -22,6 +22,7 @@ import com.google.gwt.thirdparty.guava.common.collect.SortedSetMultimap;
 import com.google.gwt.thirdparty.guava.common.collect.TreeMultimap;
 
 import java.io.Serializable;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -98,6 +99,20 @@ public class PropertyAndBindingInfo implements Serializable {
     return reboundTypeByGwtCreateType.containsKey(key);
   }
 
+  /**
+   * Returns the property values, sorted by property name.
+   */
+  SortedMap<String, String> getPropertyValues() {
+    return Collections.unmodifiableSortedMap(propertyValueByPropertyName);
+  }
+
+  /**
+   * Returns the rebound types, sorted by GWT.create() argument.
+   */
+  SortedMap<String, String> getReboundTypes() {
+    return Collections.unmodifiableSortedMap(reboundTypeByGwtCreateType);
+  }
+
   /**
    * Asserts that two maps contain the same answers for the given GWT.create() arguments.
    */
@@ -20,6 +20,7 @@ import com.google.gwt.core.ext.DefaultConfigurationProperty;
 import com.google.gwt.thirdparty.guava.common.base.Splitter;
 import com.google.gwt.thirdparty.guava.common.collect.ImmutableMap;
 import com.google.gwt.thirdparty.guava.common.collect.ImmutableMap.Builder;
+import com.google.gwt.thirdparty.guava.common.collect.ImmutableSortedSet;
 import com.google.gwt.thirdparty.guava.common.collect.Lists;
 
 import java.io.Serializable;
@@ -27,6 +28,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.SortedSet;
 
 /**
  * The compiler's representation of a set of configuration properties.
@@ -161,6 +163,13 @@ public class ConfigurationProperties implements Serializable {
     return result;
   }
 
+  /**
+   * Returns the names of all the configuration properties, in sorted order.
+   */
+  public SortedSet<String> getKeys() {
+    return ImmutableSortedSet.copyOf(properties.keySet());
+  }
+
   /**
    * Returns whether the property is multivalued or not. If the property is not defined then it is
    * considered single valued.
@@ -20,17 +20,21 @@ import com.google.gwt.core.ext.UnableToCompleteException;
 import com.google.gwt.dev.CompilerContext;
 import com.google.gwt.dev.javac.CompilationStateBuilder.CompileMoreLater;
 import com.google.gwt.dev.javac.typemodel.TypeOracle;
+import com.google.gwt.dev.util.Util;
 import com.google.gwt.dev.util.log.speedtracer.DevModeEventType;
 import com.google.gwt.dev.util.log.speedtracer.SpeedTracerLogger;
 import com.google.gwt.dev.util.log.speedtracer.SpeedTracerLogger.Event;
 import com.google.gwt.thirdparty.guava.common.annotations.VisibleForTesting;
 import com.google.gwt.thirdparty.guava.common.base.Function;
+import com.google.gwt.thirdparty.guava.common.base.Joiner;
 import com.google.gwt.thirdparty.guava.common.base.Predicates;
 import com.google.gwt.thirdparty.guava.common.collect.FluentIterable;
+import com.google.gwt.thirdparty.guava.common.collect.Lists;
 
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -185,6 +189,20 @@ public class CompilationState {
     return compilerContext;
   }
 
+  /**
+   * Returns a strong hash of the source content of all units, generated units included. Unlike
+   * the serialized form of the compiled types, it is the same in every process that sees the same
+   * sources.
+   */
+  public String getContentHash() {
+    List<String> contentIds = Lists.newArrayListWithCapacity(unitMap.size());
+    for (CompilationUnit unit : unitMap.values()) {
+      contentIds.add(unit.getContentId().get());
+    }
+    Collections.sort(contentIds);
+    return Util.computeStrongName(Util.getBytes(Joiner.on('\n').join(contentIds)));
+  }
+
   public int getGeneratedSourceCount() {
     return generatedSourceCount;
   }
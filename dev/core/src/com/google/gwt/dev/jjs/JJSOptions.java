@@ -32,6 +32,7 @@ import com.google.gwt.dev.util.arg.OptionMethodNameDisplayMode;
 import com.google.gwt.dev.util.arg.OptionNamespace;
 import com.google.gwt.dev.util.arg.OptionOptimize;
 import com.google.gwt.dev.util.arg.OptionOptimizeDataflow;
+import com.google.gwt.dev.util.arg.OptionOptimizerThreads;
 import com.google.gwt.dev.util.arg.OptionOrdinalizeEnums;
 import com.google.gwt.dev.util.arg.OptionRemoveDuplicateFunctions;
 import com.google.gwt.dev.util.arg.OptionRunAsyncEnabled;
@@ -56,5 +57,5 @@ public interface JJSOptions extends OptionOptimize,
     OptionFragmentsMerge, OptionFragmentCount, OptionSourceLevel, OptionNamespace,
     OptionCheckedMode, OptionJsInteropMode, OptionUseDetailedTypeIds,
     OptionAllowJDTConstantInlining, OptionMethodNameDisplayMode,
-    OptionClosureFormattedOutput {
+    OptionClosureFormattedOutput, OptionOptimizerThreads {
 }
@@ -42,6 +42,7 @@ public class JJSOptionsImpl implements JJSOptions, Serializable {
   private JsNamespaceOption namespace = JsNamespaceOption.NONE;
   private int optimizationLevel = OptionOptimize.OPTIMIZE_LEVEL_DEFAULT;
   private boolean optimizeDataflow = true;
+  private int optimizerThreads = 0;
   private boolean ordinalizeEnums = true;
   private JsOutputOption output = JsOutputOption.OBFUSCATED;
   private boolean removeDuplicateFunctions = true;
@@ -73,6 +74,7 @@ public class JJSOptionsImpl implements JJSOptions, Serializable {
     setInlineLiteralParameters(other.shouldInlineLiteralParameters());
     setOptimizationLevel(other.getOptimizationLevel());
     setOptimizeDataflow(other.shouldOptimizeDataflow());
+    setOptimizerThreads(other.getOptimizerThreads());
     setOrdinalizeEnums(other.shouldOrdinalizeEnums());
     setOutput(other.getOutput());
     setRemoveDuplicateFunctions(other.shouldRemoveDuplicateFunctions());
@@ -114,6 +116,11 @@ public class JJSOptionsImpl implements JJSOptions, Serializable {
     return optimizationLevel;
   }
 
+  @Override
+  public int getOptimizerThreads() {
+    return optimizerThreads;
+  }
+
   @Override
   public JsOutputOption getOutput() {
     return output;
@@ -249,6 +256,11 @@ public class JJSOptionsImpl implements JJSOptions, Serializable {
     optimizationLevel = level;
   }
 
+  @Override
+  public void setOptimizerThreads(int threads) {
+    optimizerThreads = threads;
+  }
+
   @Override
   public void setOptimizeDataflow(boolean enabled) {
     optimizeDataflow = enabled;
@@ -99,6 +99,7 @@ import com.google.gwt.dev.jjs.impl.MethodCallTightener;
 import com.google.gwt.dev.jjs.impl.MethodInliner;
 import com.google.gwt.dev.jjs.impl.OptimizerContext;
 import com.google.gwt.dev.jjs.impl.OptimizerStats;
+import com.google.gwt.dev.jjs.impl.ParallelMethodTraversal;
 import com.google.gwt.dev.jjs.impl.PostOptimizationCompoundAssignmentNormalizer;
 import com.google.gwt.dev.jjs.impl.Pruner;
 import com.google.gwt.dev.jjs.impl.RecordRebinds;
@@ -247,6 +248,8 @@ public final class JavaToJavaScriptCompiler {
     this.compilerContext = compilerContext;
     this.module = compilerContext.getModule();
     this.options = compilerContext.getOptions();
+    // The optimizer threads are shared by all permutations compiled in this process.
+    ParallelMethodTraversal.setThreads(options.getOptimizerThreads());
   }
 
   public static UnifiedAst precompile(TreeLogger logger, CompilerContext compilerContext,
@@ -1208,6 +1211,7 @@ public final class JavaToJavaScriptCompiler {
       Event createUnifiedAstEvent = SpeedTracerLogger.start(CompilerEventType.CREATE_UNIFIED_AST);
       UnifiedAst result = new UnifiedAst(
           options, new AST(jprogram, jsProgram), singlePermutation, RecordRebinds.exec(jprogram));
+      result.setContentHash(computeContentHash(precompilationContext, compilationState));
       createUnifiedAstEvent.end();
       return result;
     } catch (Throwable e) {
@@ -1303,6 +1307,25 @@ public final class JavaToJavaScriptCompiler {
     }
   }
 
+  /**
+   * Returns a strong hash of the inputs to precompilation. The serialized AST can't be used for
+   * this since it depends on the identity hash codes of its nodes.
+   */
+  private static String computeContentHash(PrecompilationContext precompilationContext,
+      CompilationState compilationState) {
+    try {
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      Util.writeObjectToStream(baos, compilationState.getContentHash(),
+          precompilationContext.getEntryPoints(), precompilationContext.getAdditionalRootTypes());
+      for (Permutation permutation : precompilationContext.getPermutations()) {
+        Util.writeObjectToStream(baos, permutation.getPropertyAndBindingInfos());
+      }
+      return Util.computeStrongName(baos.toByteArray());
+    } catch (IOException e) {
+      throw new RuntimeException("Should never happen with in-memory stream", e);
+    }
+  }
+
   private Set<String> computeRootTypes(String[] entryPointTypeNames,
       String[] additionalRootTypes, CompilationState compilationState) {
 
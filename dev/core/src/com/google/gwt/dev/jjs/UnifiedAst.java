@@ -62,6 +62,11 @@ public class UnifiedAst implements Serializable {
 
   private static final DiskCache diskCache = DiskCache.INSTANCE;
 
+  /**
+   * A strong hash of the inputs this AST was built from, or {@code null} if unknown.
+   */
+  private String contentHash;
+
   /**
    * The original AST; nulled out once consumed (by the first call to
    * {@link #getFreshAst()}.
@@ -108,6 +113,14 @@ public class UnifiedAst implements Serializable {
     this.serializedAstToken = singlePermutation ? -1 : diskCache.writeObject(initialAst);
   }
 
+  /**
+   * Returns a strong hash of the inputs this AST was built from, or {@code null} if unknown. Two
+   * ASTs with the same hash compile to the same output for the same permutation and options.
+   */
+  public String getContentHash() {
+    return contentHash;
+  }
+
   /**
    * Return the current AST so that clients can explicitly walk the Java or
    * JavaScript parse trees.
@@ -120,14 +133,15 @@ public class UnifiedAst implements Serializable {
         AST result = initialAst;
         initialAst = null;
         return result;
-      } else {
-        if (serializedAstToken < 0) {
-          throw new IllegalStateException(
-              "No serialized AST was cached and AST was already consumed.");
-        }
-        return diskCache.readObject(serializedAstToken, AST.class);
+      }
+      if (serializedAstToken < 0) {
+        throw new IllegalStateException(
+            "No serialized AST was cached and AST was already consumed.");
       }
     }
+    // The disk cache can be read concurrently, so workers don't wait on each
+    // other's copies.
+    return diskCache.readObject(serializedAstToken, AST.class);
   }
 
   /**
@@ -170,6 +184,13 @@ public class UnifiedAst implements Serializable {
     }
   }
 
+  /**
+   * Records a strong hash of the inputs this AST was built from.
+   */
+  public void setContentHash(String contentHash) {
+    this.contentHash = contentHash;
+  }
+
   /**
    * Save some module load metrics in the AST.
    */
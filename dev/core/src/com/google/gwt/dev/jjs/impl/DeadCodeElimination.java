@@ -27,6 +27,7 @@ import com.google.gwt.dev.jjs.ast.JCastOperation;
 import com.google.gwt.dev.jjs.ast.JCharLiteral;
 import com.google.gwt.dev.jjs.ast.JClassType;
 import com.google.gwt.dev.jjs.ast.JConditional;
+import com.google.gwt.dev.jjs.ast.JConstructor;
 import com.google.gwt.dev.jjs.ast.JContinueStatement;
 import com.google.gwt.dev.jjs.ast.JDeclarationStatement;
 import com.google.gwt.dev.jjs.ast.JDeclaredType;
@@ -72,6 +73,7 @@ import com.google.gwt.dev.util.log.speedtracer.CompilerEventType;
 import com.google.gwt.dev.util.log.speedtracer.SpeedTracerLogger;
 import com.google.gwt.dev.util.log.speedtracer.SpeedTracerLogger.Event;
 import com.google.gwt.thirdparty.guava.common.annotations.VisibleForTesting;
+import com.google.gwt.thirdparty.guava.common.base.Predicate;
 import com.google.gwt.thirdparty.guava.common.collect.ImmutableMap;
 import com.google.gwt.thirdparty.guava.common.collect.Lists;
 import com.google.gwt.thirdparty.guava.common.collect.Sets;
@@ -2017,6 +2019,18 @@ public class DeadCodeElimination {
 
   public static final String NAME = DeadCodeElimination.class.getSimpleName();
 
+  /**
+   * Callers read the bodies of constructors to tell whether they are empty, and field references
+   * read the initializers in clinits and instance initializers to inline constants.
+   */
+  private static final Predicate<JMethod> READ_BY_OTHER_METHODS = new Predicate<JMethod>() {
+    @Override
+    public boolean apply(JMethod method) {
+      return method instanceof JConstructor || JProgram.isClinit(method)
+          || JProgram.isInit(method);
+    }
+  };
+
   @VisibleForTesting
   public static OptimizerStats exec(JProgram program) {
     return new DeadCodeElimination(program).execImpl(Collections.singleton(program),
@@ -2039,7 +2053,8 @@ public class DeadCodeElimination {
         optimizerCtx.getModifiedMethodsSince(optimizerCtx.getLastStepFor(NAME));
     affectedMethods.addAll(optimizerCtx.getMethodsByReferencedFields(
         optimizerCtx.getModifiedFieldsSince(optimizerCtx.getLastStepFor(NAME))));
-    OptimizerStats stats = new DeadCodeElimination(program).execImpl(affectedMethods, optimizerCtx);
+    OptimizerStats stats =
+        new DeadCodeElimination(program).execOnMethods(affectedMethods, optimizerCtx);
     optimizerCtx.setLastStepFor(NAME, optimizerCtx.getOptimizationStep());
     optimizerCtx.incOptimizationStep();
     JavaAstVerifier.assertProgramIsConsistent(program);
@@ -2079,5 +2094,27 @@ public class DeadCodeElimination {
     return stats;
   }
 
+  /**
+   * Like {@link #execImpl}, but may run on several threads; each method is simplified on its own.
+   */
+  private OptimizerStats execOnMethods(Set<JMethod> methods, OptimizerContext optimizerCtx) {
+    OptimizerStats stats = new OptimizerStats(NAME);
+    Event optimizeEvent = SpeedTracerLogger.start(CompilerEventType.OPTIMIZE, "optimizer", NAME);
+
+    List<DeadCodeVisitor> deadCodeVisitors = ParallelMethodTraversal.traverse(methods,
+        READ_BY_OTHER_METHODS, optimizerCtx,
+        new ParallelMethodTraversal.VisitorFactory<DeadCodeVisitor>() {
+          @Override
+          public DeadCodeVisitor create(OptimizerContext optimizerCtx) {
+            return new DeadCodeVisitor(optimizerCtx);
+          }
+        });
+    for (DeadCodeVisitor deadCodeVisitor : deadCodeVisitors) {
+      stats.recordModified(deadCodeVisitor.getNumMods());
+    }
+    optimizeEvent.end("didChange", "" + stats.didChange());
+    return stats;
+  }
+
   private enum AnalysisResult { TRUE, FALSE, UNKNOWN }
 }
@@ -82,6 +82,16 @@ public class FullOptimizerContext implements OptimizerContext {
     incOptimizationStep();
   }
 
+  @Override
+  public Set<JMethod> getAffectedMethodsSince(int stepSince) {
+    Set<JMethod> modifiedMethods = getModifiedMethodsSince(stepSince);
+    Set<JMethod> result = Sets.newLinkedHashSet(modifiedMethods);
+    // Calls to modified methods may now have more specific types or targets.
+    result.addAll(getCallers(modifiedMethods));
+    result.addAll(getMethodsByReferencedFields(getModifiedFieldsSince(stepSince)));
+    return result;
+  }
+
   @Override
   public Set<JMethod> getCallees(Collection<JMethod> callerMethods) {
     return callGraph.getCallees(callerMethods);
@@ -88,7 +88,7 @@ public class MethodCallSpecializer {
 
   @VisibleForTesting
   static OptimizerStats exec(JProgram program) {
-    return exec(program, OptimizerContext.NULL_OPTIMIZATION_CONTEXT);
+    return exec(program, new FullOptimizerContext(program));
   }
 
   public static OptimizerStats exec(JProgram program, OptimizerContext optimizerCtx) {
@@ -107,8 +107,11 @@ public class MethodCallSpecializer {
 
   private OptimizerStats execImpl(OptimizerContext optimizerCtx) {
     MethodCallSpecializingVisitor specializer = new MethodCallSpecializingVisitor(optimizerCtx);
-    specializer.accept(program);
+    optimizerCtx.traverse(specializer,
+        optimizerCtx.getAffectedMethodsSince(optimizerCtx.getLastStepFor(NAME)));
+    optimizerCtx.setLastStepFor(NAME, optimizerCtx.getOptimizationStep());
     JavaAstVerifier.assertProgramIsConsistent(program);
     return new OptimizerStats(NAME).recordModified(specializer.getNumMods());
   }
+
 }
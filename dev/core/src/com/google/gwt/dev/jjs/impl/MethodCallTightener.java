@@ -149,7 +149,7 @@ public class MethodCallTightener {
 
   @VisibleForTesting
   static OptimizerStats exec(JProgram program) {
-    return exec(program, OptimizerContext.NULL_OPTIMIZATION_CONTEXT);
+    return exec(program, new FullOptimizerContext(program));
   }
 
   public static OptimizerStats exec(JProgram program, OptimizerContext optimizerCtx) {
@@ -169,7 +169,10 @@ public class MethodCallTightener {
 
   private OptimizerStats execImpl(OptimizerContext optimizerCtx) {
     MethodCallTighteningVisitor tightener = new MethodCallTighteningVisitor(optimizerCtx);
-    tightener.accept(program);
+    optimizerCtx.traverse(tightener,
+        optimizerCtx.getAffectedMethodsSince(optimizerCtx.getLastStepFor(NAME)));
+    optimizerCtx.setLastStepFor(NAME, optimizerCtx.getOptimizationStep());
     return new OptimizerStats(NAME).recordModified(tightener.getNumMods());
   }
+
 }
@@ -39,6 +39,11 @@ public interface OptimizerContext {
     public void markModified(JMethod modifiedMethod) {
     }
 
+    @Override
+    public Set<JMethod> getAffectedMethodsSince(int stepSince) {
+      throw new UnsupportedOperationException();
+    }
+
     @Override
     public Set<JMethod> getCallers(Collection<JMethod> calleeMethods) {
       return null;
@@ -128,6 +133,12 @@ public interface OptimizerContext {
    */
   void markModified(JMethod modifiedMethod);
 
+  /**
+   * Return the methods that may need to be revisited because of the modifications since a given
+   * step: the modified methods, their callers and the methods that reference modified fields.
+   */
+  Set<JMethod> getAffectedMethodsSince(int stepSince);
+
   /**
    * Return caller methods of {@code calleeMethods}.
    */
@@ -0,0 +1,328 @@
+/*
+ * Copyright 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.jjs.impl;
+
+import com.google.gwt.dev.jjs.InternalCompilerException;
+import com.google.gwt.dev.jjs.ast.JField;
+import com.google.gwt.dev.jjs.ast.JMethod;
+import com.google.gwt.dev.jjs.ast.JNode;
+import com.google.gwt.dev.jjs.ast.JVisitor;
+import com.google.gwt.thirdparty.guava.common.base.Predicate;
+import com.google.gwt.thirdparty.guava.common.collect.ImmutableList;
+import com.google.gwt.thirdparty.guava.common.collect.Lists;
+import com.google.gwt.thirdparty.guava.common.collect.Queues;
+import com.google.gwt.thirdparty.guava.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Applies a method-local transformation to a set of methods on several threads.
+ * <p>
+ * Enabled by setting the -XoptimizerThreads compiler option, or the {@value #THREADS_PROPERTY}
+ * system property when the option is not set, to more than 1. The methods are
+ * split into contiguous chunks, each traversed by its own visitor. Visitors must only rewrite the
+ * method being traversed and must treat the rest of the program (types, type oracle, other
+ * methods) as read-only. Their modifications are recorded and replayed into the shared
+ * {@link OptimizerContext} in the original method order once all chunks are done.
+ * <p>
+ * A visitor may still read other methods, such as the body of a constructor it finds a call to.
+ * Methods that are read like this must be named by the caller: they are traversed first, on the
+ * calling thread, so that the chunks only ever read bodies that no longer change. Because of that
+ * the methods are not visited in their original order, and the result of a pass can differ from a
+ * sequential traversal in which a caller was visited before the callee it reads.
+ */
+public class ParallelMethodTraversal {
+
+  /**
+   * Creates the visitor for one chunk of methods.
+   */
+  interface VisitorFactory<V extends JChangeTrackingVisitor> {
+    V create(OptimizerContext optimizerCtx);
+  }
+
+  /**
+   * Records the modifications reported by a visitor so that they can be replayed on the calling
+   * thread. Queries are not supported, since their answers would depend on the other chunks.
+   */
+  private static class DeferredOptimizerContext implements OptimizerContext {
+    private final List<JNode> modified = Lists.newArrayList();
+    private final List<Boolean> isRemoval = Lists.newArrayList();
+
+    @Override
+    public Set<JMethod> getAffectedMethodsSince(int stepSince) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Set<JMethod> getCallees(Collection<JMethod> callerMethods) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Set<JMethod> getCallers(Collection<JMethod> calleeMethods) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int getLastStepFor(String optimizerName) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Set<JMethod> getMethodsByReferencedFields(Collection<JField> fields) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Set<JField> getModifiedFieldsSince(int stepSince) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Set<JMethod> getModifiedMethodsSince(int stepSince) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int getOptimizationStep() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Set<JField> getReferencedFieldsByMethods(Collection<JMethod> methods) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Set<JMethod> getRemovedCalleeMethodsSince(int stepSince) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void incOptimizationStep() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void markModified(JField modifiedField) {
+      record(modifiedField, false);
+    }
+
+    @Override
+    public void markModified(JMethod modifiedMethod) {
+      record(modifiedMethod, false);
+    }
+
+    @Override
+    public void remove(JField field) {
+      record(field, true);
+    }
+
+    @Override
+    public void remove(JMethod method) {
+      record(method, true);
+    }
+
+    @Override
+    public void removeFields(Collection<JField> fields) {
+      for (JField field : fields) {
+        remove(field);
+      }
+    }
+
+    @Override
+    public void removeMethods(Collection<JMethod> methods) {
+      for (JMethod method : methods) {
+        remove(method);
+      }
+    }
+
+    @Override
+    public void setLastStepFor(String optimizerName, int step) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void syncDeletedSubCallGraphsSince(int step, Collection<JMethod> prunedMethods) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void traverse(JVisitor visitor, Set<? extends JNode> nodes) {
+      throw new UnsupportedOperationException();
+    }
+
+    void replayInto(OptimizerContext optimizerCtx) {
+      for (int i = 0; i < modified.size(); i++) {
+        JNode node = modified.get(i);
+        if (node instanceof JMethod) {
+          if (isRemoval.get(i)) {
+            optimizerCtx.remove((JMethod) node);
+          } else {
+            optimizerCtx.markModified((JMethod) node);
+          }
+        } else {
+          if (isRemoval.get(i)) {
+            optimizerCtx.remove((JField) node);
+          } else {
+            optimizerCtx.markModified((JField) node);
+          }
+        }
+      }
+    }
+
+    private void record(JNode node, boolean removal) {
+      modified.add(node);
+      isRemoval.add(removal);
+    }
+  }
+
+  /**
+   * A system property that sets the number of threads used to run method-local optimizations.
+   */
+  public static final String THREADS_PROPERTY = "gwt.jjs.optimizerThreads";
+
+  /**
+   * Fewer methods than this per chunk are not worth the hand-off to another thread.
+   */
+  private static final int MIN_CHUNK_SIZE = 32;
+
+  /**
+   * Shared by all permutations being compiled in this process; {@code null} when running
+   * sequentially.
+   */
+  private static ExecutorService executor;
+
+  private static int threads;
+
+  static {
+    setThreads(0);
+  }
+
+  /**
+   * Sets the number of threads method-local optimizations run on, or, if {@code threadCount} is
+   * not positive, the number set by the {@value #THREADS_PROPERTY} system property.
+   */
+  public static synchronized void setThreads(int threadCount) {
+    if (threadCount <= 0) {
+      threadCount = Integer.getInteger(THREADS_PROPERTY, 1);
+    }
+    threadCount = Math.max(1, threadCount);
+    if (threadCount == threads) {
+      return;
+    }
+    if (executor != null) {
+      executor.shutdown();
+    }
+    threads = threadCount;
+    if (threads == 1) {
+      executor = null;
+      return;
+    }
+    ThreadPoolExecutor threadPool = new ThreadPoolExecutor(threads, threads, 60L,
+        TimeUnit.SECONDS, Queues.<Runnable>newLinkedBlockingQueue(),
+        // Make sure this executor lets the whole process terminate correctly even if there
+        // are still live threads.
+        new ThreadFactoryBuilder().setDaemon(true).setNameFormat("GWT optimizer %d").build());
+    threadPool.allowCoreThreadTimeOut(true);
+    executor = threadPool;
+  }
+
+  /**
+   * Traverses {@code methods} with visitors created by {@code factory} and returns those visitors.
+   * Runs sequentially with a single visitor unless parallel traversal is enabled. Otherwise the
+   * methods matching {@code readByOthers} are traversed first, on this thread, and the rest are
+   * split into chunks.
+   */
+  static <V extends JChangeTrackingVisitor> List<V> traverse(Collection<JMethod> methods,
+      Predicate<JMethod> readByOthers, OptimizerContext optimizerCtx, VisitorFactory<V> factory) {
+    ExecutorService executor;
+    int chunkCount;
+    synchronized (ParallelMethodTraversal.class) {
+      executor = ParallelMethodTraversal.executor;
+      chunkCount = threads * 4;
+    }
+    if (executor == null || methods.size() < 2 * MIN_CHUNK_SIZE) {
+      V visitor = factory.create(optimizerCtx);
+      for (JMethod method : methods) {
+        visitor.accept(method);
+      }
+      return ImmutableList.of(visitor);
+    }
+
+    List<V> visitors = Lists.newArrayList();
+    V settlingVisitor = factory.create(optimizerCtx);
+    List<JMethod> others = Lists.newArrayList();
+    for (JMethod method : methods) {
+      if (readByOthers.apply(method)) {
+        settlingVisitor.accept(method);
+      } else {
+        others.add(method);
+      }
+    }
+    visitors.add(settlingVisitor);
+
+    int chunkSize = Math.max(MIN_CHUNK_SIZE, others.size() / chunkCount + 1);
+    List<Callable<V>> tasks = Lists.newArrayList();
+    final List<DeferredOptimizerContext> contexts = Lists.newArrayList();
+    for (final List<JMethod> chunk : Lists.partition(others, chunkSize)) {
+      DeferredOptimizerContext deferredCtx = new DeferredOptimizerContext();
+      contexts.add(deferredCtx);
+      final V visitor = factory.create(deferredCtx);
+      tasks.add(new Callable<V>() {
+        @Override
+        public V call() {
+          for (JMethod method : chunk) {
+            visitor.accept(method);
+          }
+          return visitor;
+        }
+      });
+    }
+
+    try {
+      for (Future<V> future : executor.invokeAll(tasks)) {
+        visitors.add(future.get());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InternalCompilerException("Interrupted while optimizing", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      if (e.getCause() instanceof Error) {
+        throw (Error) e.getCause();
+      }
+      throw new InternalCompilerException("Unexpected exception while optimizing", e.getCause());
+    }
+    for (DeferredOptimizerContext deferredCtx : contexts) {
+      deferredCtx.replayInto(optimizerCtx);
+    }
+    return visitors;
+  }
+
+  private ParallelMethodTraversal() {
+  }
+}
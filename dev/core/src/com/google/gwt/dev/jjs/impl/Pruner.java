@@ -94,6 +94,7 @@ public class Pruner {
    */
   private class CleanupRefsVisitor extends JModVisitorWithTemporaryVariableCreation {
     private final Stack<JExpression> lValues = new Stack<JExpression>();
+    private final OptimizerContext optimizerCtx;
     private final ListMultimap<JMethod, JParameter> priorParametersByMethod;
     private final Set<? extends JNode> referencedNonTypes;
     {
@@ -105,6 +106,7 @@ public class Pruner {
         ListMultimap<JMethod, JParameter> priorParametersByMethod,
         OptimizerContext optimizerCtx) {
       super(optimizerCtx);
+      this.optimizerCtx = optimizerCtx;
       this.referencedNonTypes = referencedNodes;
       this.priorParametersByMethod = priorParametersByMethod;
     }
@@ -158,10 +160,12 @@ public class Pruner {
 
     @Override
     public void exit(JMethod x, Context ctx) {
+      boolean modified = false;
       JType type = x.getType();
       if (type instanceof JReferenceType &&
           !program.typeOracle.isInstantiatedType((JReferenceType) type)) {
         x.setType(JReferenceType.NULL_TYPE);
+        modified = true;
       }
       Predicate<JMethod> isPruned = new Predicate<JMethod>() {
         @Override
@@ -170,7 +174,11 @@ public class Pruner {
         }
       };
       Iterables.removeIf(x.getOverriddenMethods(), isPruned);
-      Iterables.removeIf(x.getOverridingMethods(), isPruned);
+      modified |= Iterables.removeIf(x.getOverridingMethods(), isPruned);
+      if (modified) {
+        // Calls to this method may now be tightened; let incremental passes revisit its callers.
+        optimizerCtx.markModified(x);
+      }
     }
 
     @Override
@@ -819,6 +819,9 @@ public class TypeTightener {
      */
     optimizerCtx.setLastStepFor(NAME, optimizerCtx.getOptimizationStep());
     while (true) {
+      // Not traversed with ParallelMethodTraversal: tightening a method reads the types of
+      // expressions in other methods (call arguments, returns, overriders), which other chunks
+      // would be tightening at the same time, making the result depend on thread timing.
       TightenTypesVisitor tightener = new TightenTypesVisitor(optimizerCtx);
 
       Set<JMethod> affectedMethods = computeAffectedMethods(optimizerCtx, lastStep);
@@ -17,64 +17,212 @@ package com.google.gwt.dev.util;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A nifty class that lets you squirrel away data on the file system. Write
- * once, read many times. Instance of this are thread-safe by way of internal
- * synchronization.
+ * once, read many times. Instances of this are thread-safe, and readers never
+ * block each other or writers.
  *
- * Note that in the current implementation, the backing temp file will get
- * arbitrarily large as you continue adding things to it. There is no internal
- * GC or compaction.
+ * Data is appended to memory-mapped segment files. Writers reserve their space
+ * in the current segment atomically and then copy into it concurrently; only
+ * starting a new segment takes a lock. Entries too large for a segment are
+ * appended to a single overflow file, which is accessed with positional reads
+ * and writes at offsets that writers also reserve atomically.
+ *
+ * Note that in the current implementation, the backing temp files will get
+ * arbitrarily large as you continue adding things to them. There is no
+ * internal GC or compaction.
  */
 public class DiskCache {
   /**
    * For future thought: if we used Object tokens instead of longs, we could
-   * actually track references and do GC/compaction on the underlying file.
+   * actually track references and do GC/compaction on the underlying files.
    *
-   * I considered using memory mapping, but I didn't see any obvious way to make
-   * the map larger after the fact, which kind of defeats the infinite-append
-   * design. At any rate, I measured the current performance of this design to
-   * be so fast relative to what I'm using it for, I didn't pursue this further.
+   * A token holds the index of its segment in its upper 32 bits and the
+   * offset of its entry in the lower 32 bits, or OVERFLOW plus the offset of
+   * its entry in the overflow file. Each entry is its length as an int
+   * followed by its bytes.
+   */
+
+  /**
+   * A memory-mapped file holding entries. The file is closed once mapped; the
+   * mapping stays valid until the segment is collected.
+   */
+  private static class Segment {
+    final AtomicInteger end = new AtomicInteger();
+    final int index;
+    final MappedByteBuffer map;
+
+    Segment(int index, int size) throws IOException {
+      this.index = index;
+      File temp = createTempFile();
+      RandomAccessFile file = new RandomAccessFile(temp, "rw");
+      try {
+        map = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+      } finally {
+        file.close();
+      }
+    }
+
+    /**
+     * Returns a view of the mapped entry at <code>offset</code>, positioned
+     * after its length.
+     */
+    ByteBuffer entry(int offset) {
+      ByteBuffer view = map.duplicate();
+      view.position(offset + 4);
+      return view;
+    }
+
+    int readLength(int offset) {
+      return map.getInt(offset);
+    }
+
+    /**
+     * Reserves <code>size</code> bytes and returns their offset, or
+     * <code>-1</code> if the segment is full.
+     */
+    int reserve(int size) {
+      while (true) {
+        int offset = end.get();
+        if (size > map.capacity() - offset) {
+          return -1;
+        }
+        if (end.compareAndSet(offset, offset + size)) {
+          return offset;
+        }
+      }
+    }
+  }
+
+  /**
+   * A byte array stream whose buffer can be written out without a copy.
    */
+  private static class Spool extends ByteArrayOutputStream {
+    byte[] getBuffer() {
+      return buf;
+    }
+  }
+
+  /**
+   * The size of the shared segments. Entries larger than a quarter of this go
+   * to the overflow file.
+   */
+  private static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
 
   /**
    * A global shared Disk cache.
    */
-  public static DiskCache INSTANCE = new DiskCache();
+  public static DiskCache INSTANCE = new DiskCache(DEFAULT_SEGMENT_SIZE);
+
+  /**
+   * Added to the offset of an entry in the overflow file to form its token.
+   */
+  private static final long OVERFLOW = 1L << 62;
 
-  private boolean atEnd = true;
-  private RandomAccessFile file;
+  private static File createTempFile() throws IOException {
+    File temp = File.createTempFile("gwt", "byte-cache");
+    temp.deleteOnExit();
+    return temp;
+  }
 
-  private DiskCache() {
+  private static void readFully(FileChannel channel, ByteBuffer buffer, long position)
+      throws IOException {
+    while (buffer.hasRemaining()) {
+      int read = channel.read(buffer, position);
+      if (read < 0) {
+        throw new EOFException();
+      }
+      position += read;
+    }
+  }
+
+  private static long toToken(Segment segment, int offset) {
+    return ((long) segment.index << 32) | offset;
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer buffer, long position)
+      throws IOException {
+    while (buffer.hasRemaining()) {
+      position += channel.write(buffer, position);
+    }
+  }
+
+  private final AtomicLong bytesRead = new AtomicLong();
+  private final AtomicLong bytesWritten = new AtomicLong();
+  private volatile Segment current;
+  private final AtomicLong lockWaitNanos = new AtomicLong();
+  private final int maxSharedEntrySize;
+  private volatile FileChannel overflow;
+  private final AtomicLong overflowEnd = new AtomicLong();
+  private final int segmentSize;
+  private final List<Segment> segments = new CopyOnWriteArrayList<Segment>();
+
+  DiskCache(int segmentSize) {
+    this.segmentSize = segmentSize;
+    this.maxSharedEntrySize = segmentSize / 4;
     try {
-      File temp = File.createTempFile("gwt", "byte-cache");
-      temp.deleteOnExit();
-      file = new RandomAccessFile(temp, "rw");
-      file.setLength(0);
+      current = addSegment(segmentSize);
     } catch (IOException e) {
       throw new RuntimeException("Unable to initialize byte cache", e);
     }
   }
 
+  /**
+   * Returns the number of bytes of entries read so far.
+   */
+  public long getBytesRead() {
+    return bytesRead.get();
+  }
+
+  /**
+   * Returns the number of bytes of entries written so far.
+   */
+  public long getBytesWritten() {
+    return bytesWritten.get();
+  }
+
+  /**
+   * Returns the total time, in nanoseconds, that writers have waited for the
+   * lock that guards the creation of segments.
+   */
+  public long getLockWaitNanos() {
+    return lockWaitNanos.get();
+  }
+
   /**
    * Retrieve the underlying bytes.
    *
    * @param token a previously returned token
    * @return the bytes that were written
    */
-  public synchronized byte[] readByteArray(long token) {
+  public byte[] readByteArray(long token) {
     try {
-      atEnd = false;
-      file.seek(token);
-      int length = file.readInt();
-      byte[] result = new byte[length];
-      file.readFully(result);
+      byte[] result;
+      if (token >= OVERFLOW) {
+        long position = token - OVERFLOW;
+        result = new byte[readOverflowLength(position)];
+        readFully(overflow, ByteBuffer.wrap(result), position + 4);
+      } else {
+        Segment segment = getSegment(token);
+        int offset = (int) token;
+        result = new byte[segment.readLength(offset)];
+        segment.entry(offset).get(result);
+      }
+      bytesRead.addAndGet(result.length);
       return result;
     } catch (IOException e) {
       throw new RuntimeException("Unable to read from byte cache", e);
@@ -119,29 +267,60 @@ public class DiskCache {
    *
    * @return a token to retrieve the data later
    */
-  public synchronized long transferFromStream(InputStream in) throws IOException {
+  public long transferFromStream(InputStream in) throws IOException {
     assert in != null;
     byte[] buf = Util.takeThreadLocalBuf();
     try {
-      long position = moveToEndPosition();
-
-      // Placeholder, we don't know the length yet.
-      file.writeInt(-1);
-
-      // Transfer all the bytes.
-      int length = 0;
+      // Spool small entries so that they can go to a shared segment.
+      Spool spool = new Spool();
       int bytesRead;
       while ((bytesRead = in.read(buf)) != -1) {
-        file.write(buf, 0, bytesRead);
-        length += bytesRead;
+        spool.write(buf, 0, bytesRead);
+        if (spool.size() > maxSharedEntrySize) {
+          break;
+        }
+      }
+      if (bytesRead == -1) {
+        return write(spool.getBuffer(), 0, spool.size());
       }
 
-      // Now go back and fill in the length.
-      file.seek(position);
-      file.writeInt(length);
-      // Don't eagerly seek the end, the next operation might be a read.
-      atEnd = false;
-      return position;
+      /*
+       * Too large. The length must be known to reserve space in the overflow
+       * file, so stream the rest into a temp file and copy it over from there.
+       */
+      File temp = createTempFile();
+      RandomAccessFile file = new RandomAccessFile(temp, "rw");
+      try {
+        FileChannel channel = file.getChannel();
+        long length = 0;
+        writeFully(channel, ByteBuffer.wrap(spool.getBuffer(), 0, spool.size()), length);
+        length += spool.size();
+        while ((bytesRead = in.read(buf)) != -1) {
+          writeFully(channel, ByteBuffer.wrap(buf, 0, bytesRead), length);
+          length += bytesRead;
+        }
+        if (length > Integer.MAX_VALUE) {
+          throw new IOException("Entry too large for byte cache: " + length + " bytes");
+        }
+        long position = reserveOverflow((int) length);
+        FileChannel target = overflow;
+        writeLength(target, position, (int) length);
+        // Writing the length first makes the file long enough to transfer to
+        for (long copied = 0; copied < length;) {
+          long count =
+              target.transferFrom(channel.position(copied), position + 4 + copied, length
+                  - copied);
+          if (count <= 0) {
+            throw new EOFException();
+          }
+          copied += count;
+        }
+        bytesWritten.addAndGet(length);
+        return OVERFLOW + position;
+      } finally {
+        file.close();
+        temp.delete();
+      }
     } finally {
       Util.releaseThreadLocalBuf(buf);
     }
@@ -153,23 +332,36 @@ public class DiskCache {
    * @param token a previously returned token
    * @param out the stream to write into
    */
-  public synchronized void transferToStream(long token, OutputStream out) throws IOException {
+  public void transferToStream(long token, OutputStream out) throws IOException {
     byte[] buf = Util.takeThreadLocalBuf();
     try {
-      atEnd = false;
-      file.seek(token);
-      int length = file.readInt();
-      int bufLen = buf.length;
-      while (length > bufLen) {
-        int read = file.read(buf, 0, bufLen);
-        length -= read;
-        out.write(buf, 0, read);
+      int length;
+      ByteBuffer entry;
+      long position = 0;
+      if (token >= OVERFLOW) {
+        position = token - OVERFLOW;
+        length = readOverflowLength(position);
+        entry = null;
+        position += 4;
+      } else {
+        Segment segment = getSegment(token);
+        int offset = (int) token;
+        length = segment.readLength(offset);
+        entry = segment.entry(offset);
       }
-      while (length > 0) {
-        int read = file.read(buf, 0, length);
-        length -= read;
+      int remaining = length;
+      while (remaining > 0) {
+        int read = Math.min(remaining, buf.length);
+        if (entry != null) {
+          entry.get(buf, 0, read);
+        } else {
+          readFully(overflow, ByteBuffer.wrap(buf, 0, read), position);
+          position += read;
+        }
         out.write(buf, 0, read);
+        remaining -= read;
       }
+      bytesRead.addAndGet(length);
     } finally {
       Util.releaseThreadLocalBuf(buf);
     }
@@ -180,12 +372,9 @@ public class DiskCache {
    *
    * @return a token to retrieve the data later
    */
-  public synchronized long writeByteArray(byte[] bytes) {
+  public long writeByteArray(byte[] bytes) {
     try {
-      long position = moveToEndPosition();
-      file.writeInt(bytes.length);
-      file.write(bytes);
-      return position;
+      return write(bytes, 0, bytes.length);
     } catch (IOException e) {
       throw new RuntimeException("Unable to write to byte cache", e);
     }
@@ -216,21 +405,87 @@ public class DiskCache {
   }
 
   /**
-   * Moves to the end of the file if necessary and returns the offset position.
-   * Caller must synchronize.
+   * Creates a shared segment. Caller must synchronize.
+   */
+  private Segment addSegment(int size) throws IOException {
+    Segment segment = new Segment(segments.size(), size);
+    segments.add(segment);
+    return segment;
+  }
+
+  private Segment getSegment(long token) {
+    return segments.get((int) (token >>> 32));
+  }
+
+  /**
+   * Reserves <code>size</code> bytes in the current shared segment, starting a
+   * new one if it is full.
    *
-   * @return the offset position of the end of the file
-   * @throws IOException
+   * @return the token of the reserved bytes
    */
-  private long moveToEndPosition() throws IOException {
-    // Get an end pointer.
-    if (atEnd) {
-      return file.getFilePointer();
+  private long reserve(int size) throws IOException {
+    while (true) {
+      Segment segment = current;
+      int offset = segment.reserve(size);
+      if (offset >= 0) {
+        return toToken(segment, offset);
+      }
+      long start = System.nanoTime();
+      synchronized (this) {
+        lockWaitNanos.addAndGet(System.nanoTime() - start);
+        if (current == segment) {
+          current = addSegment(segmentSize);
+        }
+      }
+    }
+  }
+
+  private int readOverflowLength(long position) throws IOException {
+    ByteBuffer length = ByteBuffer.allocate(4);
+    readFully(overflow, length, position);
+    return length.getInt(0);
+  }
+
+  /**
+   * Reserves room for an entry of <code>length</code> bytes in the overflow
+   * file, creating the file on first use.
+   *
+   * @return the position of the entry
+   */
+  private long reserveOverflow(int length) throws IOException {
+    if (overflow == null) {
+      long start = System.nanoTime();
+      synchronized (this) {
+        lockWaitNanos.addAndGet(System.nanoTime() - start);
+        if (overflow == null) {
+          overflow = new RandomAccessFile(createTempFile(), "rw").getChannel();
+        }
+      }
+    }
+    return overflowEnd.getAndAdd(4 + (long) length);
+  }
+
+  private long write(byte[] bytes, int offset, int length) throws IOException {
+    long token;
+    if (length > maxSharedEntrySize) {
+      long position = reserveOverflow(length);
+      writeLength(overflow, position, length);
+      writeFully(overflow, ByteBuffer.wrap(bytes, offset, length), position + 4);
+      token = OVERFLOW + position;
     } else {
-      long position = file.length();
-      file.seek(position);
-      atEnd = true;
-      return position;
+      token = reserve(4 + length);
+      ByteBuffer view = getSegment(token).map.duplicate();
+      view.position((int) token);
+      view.putInt(length);
+      view.put(bytes, offset, length);
     }
+    bytesWritten.addAndGet(length);
+    return token;
+  }
+
+  private void writeLength(FileChannel channel, long position, int length) throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(4);
+    header.putInt(0, length);
+    writeFully(channel, header, position);
   }
-}
\ No newline at end of file
+}
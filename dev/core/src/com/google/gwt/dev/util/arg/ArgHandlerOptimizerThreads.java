@@ -0,0 +1,52 @@
+/*
+ * Copyright 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.util.arg;
+
+import com.google.gwt.util.tools.ArgHandlerInt;
+
+/**
+ * An ArgHandler to provide the -XoptimizerThreads flag.
+ */
+public class ArgHandlerOptimizerThreads extends ArgHandlerInt {
+
+  private final OptionOptimizerThreads option;
+
+  public ArgHandlerOptimizerThreads(OptionOptimizerThreads option) {
+    this.option = option;
+  }
+
+  @Override
+  public String getPurpose() {
+    return "EXPERIMENTAL: "
+        + "Sets the number of threads each permutation's method-local optimizations run on. "
+        + "Defaults to the gwt.jjs.optimizerThreads system property, or 1.";
+  }
+
+  @Override
+  public String getTag() {
+    return "-XoptimizerThreads";
+  }
+
+  @Override
+  public String[] getTagArgs() {
+    return new String[] {"threads"};
+  }
+
+  @Override
+  public void setInt(int value) {
+    option.setOptimizerThreads(value);
+  }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev;
+
+import com.google.gwt.core.ext.TreeLogger;
+import com.google.gwt.core.ext.linker.Artifact;
+import com.google.gwt.core.ext.linker.ArtifactSet;
+import com.google.gwt.core.ext.linker.StatementRanges;
+import com.google.gwt.dev.cfg.BindingProperties;
+import com.google.gwt.dev.cfg.BindingProperty;
+import com.google.gwt.dev.cfg.ConditionNone;
+import com.google.gwt.dev.cfg.ConfigurationProperties;
+import com.google.gwt.dev.jjs.PermutationResult;
+import com.google.gwt.dev.jjs.UnifiedAst;
+import com.google.gwt.dev.util.Util;
+import com.google.gwt.thirdparty.guava.common.collect.ImmutableMap;
+import com.google.gwt.thirdparty.guava.common.collect.Maps;
+import com.google.gwt.thirdparty.guava.common.io.Files;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests for {@link PermutationResultCache}.
+ */
+public class PermutationResultCacheTest extends TestCase {
+
+  /**
+   * A minimal result that only carries its strong name.
+   */
+  private static class FakePermutationResult implements PermutationResult {
+    private final String jsStrongName;
+
+    FakePermutationResult(String jsStrongName) {
+      this.jsStrongName = jsStrongName;
+    }
+
+    @Override
+    public void addArtifacts(Collection<? extends Artifact<?>> newArtifacts) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public ArtifactSet getArtifacts() {
+      return new ArtifactSet();
+    }
+
+    @Override
+    public byte[][] getJs() {
+      return new byte[0][];
+    }
+
+    @Override
+    public String getJsStrongName() {
+      return jsStrongName;
+    }
+
+    @Override
+    public Permutation getPermutation() {
+      return null;
+    }
+
+    @Override
+    public byte[] getSerializedSymbolMap() {
+      return new byte[0];
+    }
+
+    @Override
+    public StatementRanges[] getStatementRanges() {
+      return new StatementRanges[0];
+    }
+  }
+
+  private File cacheDir;
+
+  private PermutationResultCache cache;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    cacheDir = Files.createTempDir();
+    cache = new PermutationResultCache(cacheDir, "version");
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    Util.recursiveDelete(cacheDir, false);
+    super.tearDown();
+  }
+
+  public void testKeyDependsOnAllInputs() {
+    String key = computeKey(cache, new PrecompileTaskOptionsImpl(), permutation(0, "gecko1_8"),
+        unifiedAst("hash"));
+
+    assertEquals(key, computeKey(cache, new PrecompileTaskOptionsImpl(),
+        permutation(0, "gecko1_8"), unifiedAst("hash")));
+    assertFalse(key.equals(computeKey(new PermutationResultCache(cacheDir, "other version"),
+        new PrecompileTaskOptionsImpl(), permutation(0, "gecko1_8"), unifiedAst("hash"))));
+    assertFalse(key.equals(computeKey(cache, new PrecompileTaskOptionsImpl(),
+        permutation(0, "gecko1_8"), unifiedAst("other hash"))));
+    assertFalse(key.equals(computeKey(cache, new PrecompileTaskOptionsImpl(),
+        permutation(1, "gecko1_8"), unifiedAst("hash"))));
+    assertFalse(key.equals(computeKey(cache, new PrecompileTaskOptionsImpl(),
+        permutation(0, "safari"), unifiedAst("hash"))));
+
+    PrecompileTaskOptionsImpl draftOptions = new PrecompileTaskOptionsImpl();
+    draftOptions.setOptimizationLevel(0);
+    assertFalse(key.equals(
+        computeKey(cache, draftOptions, permutation(0, "gecko1_8"), unifiedAst("hash"))));
+  }
+
+  public void testKeyDependsOnCompilerSystemProperties() {
+    String key = computeKey(cache, new PrecompileTaskOptionsImpl(), permutation(0, "gecko1_8"),
+        unifiedAst("hash"));
+
+    System.setProperty("gwt.jjs.permutationResultCacheTest", "value");
+    try {
+      assertFalse(key.equals(computeKey(cache, new PrecompileTaskOptionsImpl(),
+          permutation(0, "gecko1_8"), unifiedAst("hash"))));
+    } finally {
+      System.clearProperty("gwt.jjs.permutationResultCacheTest");
+    }
+
+    System.setProperty("gwt.permutationResultCacheTest", "value");
+    try {
+      assertEquals(key, computeKey(cache, new PrecompileTaskOptionsImpl(),
+          permutation(0, "gecko1_8"), unifiedAst("hash")));
+    } finally {
+      System.clearProperty("gwt.permutationResultCacheTest");
+    }
+  }
+
+  public void testKeyIgnoresConfigurationPropertyOrder() {
+    Map<String, List<String>> abOrder = Maps.newLinkedHashMap();
+    abOrder.put("a", Collections.singletonList("1"));
+    abOrder.put("b", Arrays.asList("2", "3"));
+    Map<String, List<String>> baOrder = Maps.newLinkedHashMap();
+    baOrder.put("b", Arrays.asList("2", "3"));
+    baOrder.put("a", Collections.singletonList("1"));
+    Map<String, List<String>> otherValues = Maps.newLinkedHashMap();
+    otherValues.put("a", Arrays.asList("1", "2"));
+    otherValues.put("b", Collections.singletonList("3"));
+
+    String key = computeKey(cache, new PrecompileTaskOptionsImpl(),
+        permutation(0, "gecko1_8", abOrder), unifiedAst("hash"));
+
+    assertEquals(key, computeKey(cache, new PrecompileTaskOptionsImpl(),
+        permutation(0, "gecko1_8", baOrder), unifiedAst("hash")));
+    assertFalse(key.equals(computeKey(cache, new PrecompileTaskOptionsImpl(),
+        permutation(0, "gecko1_8", otherValues), unifiedAst("hash"))));
+  }
+
+  public void testKeyIsNullWhenUncacheable() {
+    assertNull(computeKey(cache, new PrecompileTaskOptionsImpl(), permutation(0, "gecko1_8"),
+        unifiedAst(null)));
+
+    PrecompileTaskOptionsImpl incrementalOptions = new PrecompileTaskOptionsImpl();
+    incrementalOptions.setIncrementalCompileEnabled(true);
+    assertNull(computeKey(cache, incrementalOptions, permutation(0, "gecko1_8"),
+        unifiedAst("hash")));
+  }
+
+  public void testReadWrite() {
+    assertNull(cache.read(TreeLogger.NULL, "key"));
+
+    cache.write(TreeLogger.NULL, "key", new FakePermutationResult("strongName"));
+
+    assertEquals("strongName", cache.read(TreeLogger.NULL, "key").getJsStrongName());
+    assertEquals("strongName", new PermutationResultCache(cacheDir, "version")
+        .read(TreeLogger.NULL, "key").getJsStrongName());
+    assertNull(cache.read(TreeLogger.NULL, "other key"));
+    // Only the entry itself is left behind.
+    assertEquals(1, cacheDir.list().length);
+  }
+
+  public void testUnreadableEntryIsDropped() throws Exception {
+    cache.write(TreeLogger.NULL, "key", new FakePermutationResult("strongName"));
+    File cacheFile = cacheDir.listFiles()[0];
+    Files.write(new byte[] {1, 2, 3}, cacheFile);
+
+    assertNull(cache.read(TreeLogger.NULL, "key"));
+    assertFalse(cacheFile.exists());
+  }
+
+  private static String computeKey(PermutationResultCache cache,
+      PrecompileTaskOptions options, Permutation permutation, UnifiedAst unifiedAst) {
+    CompilerContext compilerContext = new CompilerContext.Builder().options(options).build();
+    return cache.computeKey(compilerContext, permutation, unifiedAst);
+  }
+
+  private static Permutation permutation(int id, String userAgent) {
+    return permutation(id, userAgent,
+        ImmutableMap.<String, List<String>>of("conf", Collections.singletonList("value")));
+  }
+
+  private static Permutation permutation(int id, String userAgent,
+      Map<String, List<String>> configurationProperties) {
+    BindingProperty userAgentProperty = new BindingProperty("user.agent");
+    userAgentProperty.addDefinedValue(new ConditionNone(), "gecko1_8");
+    userAgentProperty.addDefinedValue(new ConditionNone(), "safari");
+    ConfigurationProperties config = new ConfigurationProperties(configurationProperties);
+    return new Permutation(id, new BindingProperties(new BindingProperty[] {userAgentProperty},
+        new String[] {userAgent}, config));
+  }
+
+  private static UnifiedAst unifiedAst(String contentHash) {
+    UnifiedAst unifiedAst = new UnifiedAst(new PrecompileTaskOptionsImpl(), null, true,
+        Collections.<String>emptySet());
+    unifiedAst.setContentHash(contentHash);
+    return unifiedAst;
+  }
+}
@@ -78,4 +78,12 @@ public class PrecompileTaskArgProcessorTest extends TestCase {
     // Show that the flags were recognized and ended up modifying options.
     assertTrue(defaultOptions.getOptimizationLevel() != handledOptions.getOptimizationLevel());
   }
+
+  public void testOptimizerThreads() {
+    precompileTaskArgProcessor.processArgs(
+        "-workDir", "/tmp", "-XoptimizerThreads", "4", "com.google.gwt.dev.DevModule");
+
+    assertEquals(0, defaultOptions.getOptimizerThreads());
+    assertEquals(4, handledOptions.getOptimizerThreads());
+  }
 }
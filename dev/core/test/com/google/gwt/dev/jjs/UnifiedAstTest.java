@@ -0,0 +1,104 @@
+/*
+ * Copyright 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.jjs;
+
+import com.google.gwt.dev.MinimalRebuildCache;
+import com.google.gwt.dev.PrecompileTaskOptionsImpl;
+import com.google.gwt.dev.jjs.UnifiedAst.AST;
+import com.google.gwt.dev.jjs.ast.JProgram;
+import com.google.gwt.dev.js.ast.JsProgram;
+import com.google.gwt.dev.util.Util;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Tests {@link UnifiedAst}.
+ */
+public class UnifiedAstTest extends TestCase {
+
+  public void testConcurrentFreshAsts() throws Exception {
+    final UnifiedAst unifiedAst = createUnifiedAst(false);
+    unifiedAst.getFreshAst();
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<AST>> futures = new ArrayList<Future<AST>>();
+      for (int i = 0; i < 8; ++i) {
+        futures.add(executor.submit(new Callable<AST>() {
+          @Override
+          public AST call() {
+            return unifiedAst.getFreshAst();
+          }
+        }));
+      }
+      List<JProgram> programs = new ArrayList<JProgram>();
+      for (Future<AST> future : futures) {
+        JProgram program = future.get().getJProgram();
+        for (JProgram other : programs) {
+          assertNotSame(other, program);
+        }
+        programs.add(program);
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  public void testFreshAstsAreIndependent() {
+    UnifiedAst unifiedAst = createUnifiedAst(false);
+    AST initial = unifiedAst.getFreshAst();
+    AST first = unifiedAst.getFreshAst();
+    AST second = unifiedAst.getFreshAst();
+    assertNotSame(initial.getJProgram(), first.getJProgram());
+    assertNotSame(first.getJProgram(), second.getJProgram());
+    assertNotSame(first.getJsProgram(), second.getJsProgram());
+  }
+
+  public void testSerializedFreshAsts() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Util.writeObjectToStream(out, createUnifiedAst(false));
+    UnifiedAst unifiedAst =
+        Util.readStreamAsObject(new ByteArrayInputStream(out.toByteArray()), UnifiedAst.class);
+    unifiedAst.prepare();
+    assertNotNull(unifiedAst.getFreshAst());
+    assertNotNull(unifiedAst.getFreshAst());
+  }
+
+  public void testSinglePermutation() {
+    UnifiedAst unifiedAst = createUnifiedAst(true);
+    assertNotNull(unifiedAst.getFreshAst());
+    try {
+      unifiedAst.getFreshAst();
+      fail("Expected IllegalStateException");
+    } catch (IllegalStateException expected) {
+    }
+  }
+
+  private static UnifiedAst createUnifiedAst(boolean singlePermutation) {
+    AST ast = new AST(new JProgram(new MinimalRebuildCache()), new JsProgram());
+    return new UnifiedAst(new PrecompileTaskOptionsImpl(), ast, singlePermutation,
+        Collections.<String>emptySet());
+  }
+}
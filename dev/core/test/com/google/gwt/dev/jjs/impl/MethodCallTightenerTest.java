@@ -0,0 +1,65 @@
+/*
+ * Copyright 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.jjs.impl;
+
+import com.google.gwt.core.ext.TreeLogger;
+import com.google.gwt.dev.jjs.ast.JMethod;
+import com.google.gwt.dev.jjs.ast.JProgram;
+
+/**
+ * Test for {@link MethodCallTightener}.
+ */
+public class MethodCallTightenerTest extends OptimizerTestBase {
+
+  public void testTightenAfterCalleeIsTightened() throws Exception {
+    addSnippetClassDecl("abstract static class A { public void m() {} }");
+    addSnippetClassDecl("static class B extends A { public void m() {} }");
+    addSnippetClassDecl("static class C extends A { public void m() {} }");
+    addSnippetClassDecl("static A make() { return new B(); }");
+    addSnippetClassDecl("static A other = new C();");
+
+    Result result = optimize("void", "make().m();");
+
+    // The caller was not modified itself; it is revisited because the return type of its callee
+    // was tightened.
+    assertCallsAndOnlyCalls(result.findMethod("test.EntryPoint.onModuleLoad()V"),
+        result.findMethod("test.EntryPoint.make()Ltest/EntryPoint$A;"),
+        result.findMethod("test.EntryPoint$B.m()V"));
+  }
+
+  public void testTightenToOverride() throws Exception {
+    addSnippetClassDecl("abstract static class A { public void m() {} }");
+    addSnippetClassDecl("static class B extends A { public void m() {} }");
+    addSnippetClassDecl("static class C extends A { public void m() {} }");
+    addSnippetClassDecl("static A other = new C();");
+
+    Result result = optimize("void", "B b = new B(); ((A) b).m();");
+
+    assertCallsAndOnlyCalls(result.findMethod("test.EntryPoint.onModuleLoad()V"),
+        result.findMethod("test.EntryPoint$B.EntryPoint$B() <init>"),
+        result.findMethod("test.EntryPoint$B.m()V"));
+  }
+
+  @Override
+  protected boolean doOptimizeMethod(TreeLogger logger, JProgram program, JMethod method) {
+    program.addEntryMethod(findMainMethod(program));
+    OptimizerContext optimizerCtx = new FullOptimizerContext(program);
+    boolean didChange = MethodCallTightener.exec(program, optimizerCtx).didChange();
+    didChange |= TypeTightener.exec(program, optimizerCtx).didChange();
+    didChange |= MethodCallTightener.exec(program, optimizerCtx).didChange();
+    return didChange;
+  }
+}
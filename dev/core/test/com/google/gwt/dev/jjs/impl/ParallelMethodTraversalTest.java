@@ -0,0 +1,100 @@
+/*
+ * Copyright 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.jjs.impl;
+
+import com.google.gwt.core.ext.TreeLogger;
+import com.google.gwt.dev.jjs.ast.JMethod;
+import com.google.gwt.dev.jjs.ast.JProgram;
+
+/**
+ * Test for {@link ParallelMethodTraversal}.
+ */
+public class ParallelMethodTraversalTest extends OptimizerTestBase {
+
+  private static final int METHOD_COUNT = 200;
+
+  private int threads;
+
+  private int modifiedMethodCount;
+
+  public void testDeadCodeEliminationMatchesSequential() throws Exception {
+    StringBuilder calls = new StringBuilder();
+    for (int i = 0; i < METHOD_COUNT; i++) {
+      addSnippetClassDecl("static int m" + i + "(int a) {"
+          + "  if (false) { a++; }"
+          + "  return a + " + i + " * 2;"
+          + "}");
+      calls.append("m" + i + "(" + i + ");");
+    }
+
+    threads = 1;
+    Result sequential = optimize("void", calls.toString());
+    int sequentialModifiedMethodCount = modifiedMethodCount;
+    threads = 4;
+    Result parallel = optimize("void", calls.toString());
+
+    assertTrue(sequentialModifiedMethodCount >= METHOD_COUNT);
+    assertEquals(sequentialModifiedMethodCount, modifiedMethodCount);
+    for (int i = 0; i < METHOD_COUNT; i++) {
+      String methodName = "test.EntryPoint.m" + i + "(I)I";
+      assertEquals(sequential.findMethod(methodName).getBody().toSource(),
+          parallel.findMethod(methodName).getBody().toSource());
+    }
+    assertEquals("{\n  return a + 6;\n}",
+        parallel.findMethod("test.EntryPoint.m3(I)I").getBody().toSource().trim());
+  }
+
+  /**
+   * Each method constructs a type of another chunk and reads a final field whose initializer that
+   * type's instance initializer simplifies to a constant. The initializers are simplified before
+   * the chunks run, so every chunk inlines the constant.
+   */
+  public void testChunksConstructEachOthersTypes() throws Exception {
+    StringBuilder calls = new StringBuilder();
+    for (int i = 0; i < METHOD_COUNT; i++) {
+      int other = (i + METHOD_COUNT / 2) % METHOD_COUNT;
+      addSnippetClassDecl("static class C" + i + " {"
+          + "  final boolean f = false && m" + i + "();"
+          + "}");
+      addSnippetClassDecl("static boolean m" + i + "() {"
+          + "  return new C" + other + "().f;"
+          + "}");
+      calls.append("m" + i + "();");
+    }
+
+    threads = 4;
+    Result parallel = optimize("void", calls.toString());
+    for (int i = 0; i < METHOD_COUNT; i++) {
+      int other = (i + METHOD_COUNT / 2) % METHOD_COUNT;
+      assertEquals("{\n  return (new EntryPoint$C" + other + "(), false);\n}",
+          parallel.findMethod("test.EntryPoint.m" + i + "()Z").getBody().toSource().trim());
+    }
+  }
+
+  @Override
+  protected boolean doOptimizeMethod(TreeLogger logger, JProgram program, JMethod method) {
+    ParallelMethodTraversal.setThreads(threads);
+    try {
+      OptimizerContext optimizerCtx = new FullOptimizerContext(program);
+      int step = optimizerCtx.getOptimizationStep();
+      boolean didChange = DeadCodeElimination.exec(program, optimizerCtx).didChange();
+      modifiedMethodCount = optimizerCtx.getModifiedMethodsSince(step).size();
+      return didChange;
+    } finally {
+      ParallelMethodTraversal.setThreads(1);
+    }
+  }
+}
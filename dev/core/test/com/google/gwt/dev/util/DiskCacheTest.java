@@ -17,7 +17,18 @@ package com.google.gwt.dev.util;
 
 import junit.framework.TestCase;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Tests {@link DiskCache}.
@@ -49,6 +60,104 @@ public class DiskCacheTest extends TestCase {
     }
   }
 
+  public void testConcurrentReadsAndWrites() throws Exception {
+    final DiskCache cache = new DiskCache(4096);
+    final byte[] shared = bytes(700, 3);
+    final long sharedToken = cache.writeByteArray(shared);
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<Void>> futures = new ArrayList<Future<Void>>();
+      for (int t = 0; t < 8; ++t) {
+        final int seed = t;
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() {
+            for (int i = 0; i < 200; ++i) {
+              byte[] expected = bytes(i % 300, seed * 1000 + i);
+              long token = cache.writeByteArray(expected);
+              assertTrue(Arrays.equals(expected, cache.readByteArray(token)));
+              assertTrue(Arrays.equals(shared, cache.readByteArray(sharedToken)));
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  public void testCounters() throws IOException {
+    DiskCache cache = new DiskCache(4096);
+    long token = cache.writeByteArray(bytes(100, 1));
+    assertEquals(100, cache.getBytesWritten());
+    assertEquals(0, cache.getBytesRead());
+    cache.readByteArray(token);
+    cache.transferToStream(token, new ByteArrayOutputStream());
+    assertEquals(200, cache.getBytesRead());
+    assertTrue(cache.getLockWaitNanos() >= 0);
+  }
+
+  public void testLargeEntries() throws IOException {
+    DiskCache cache = new DiskCache(4096);
+    byte[] small = bytes(10, 7);
+    byte[] large = bytes(50000, 11);
+    long smallToken = cache.writeByteArray(small);
+    long largeToken = cache.writeByteArray(large);
+    long streamedToken = cache.transferFromStream(new ByteArrayInputStream(large));
+    assertTrue(Arrays.equals(small, cache.readByteArray(smallToken)));
+    assertTrue(Arrays.equals(large, cache.readByteArray(largeToken)));
+    assertTrue(Arrays.equals(large, cache.readByteArray(streamedToken)));
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    cache.transferToStream(streamedToken, out);
+    assertTrue(Arrays.equals(large, out.toByteArray()));
+  }
+
+  public void testLargeEntriesShareOneFile() throws IOException {
+    DiskCache cache = new DiskCache(4096);
+    int before = countCacheFiles();
+    byte[][] values = new byte[20][];
+    long[] tokens = new long[values.length];
+    for (int i = 0; i < values.length; ++i) {
+      values[i] = bytes(2000 + i, i);
+      tokens[i] = i % 2 == 0 ? cache.writeByteArray(values[i])
+          : cache.transferFromStream(new ByteArrayInputStream(values[i]));
+    }
+    assertEquals(before + 1, countCacheFiles());
+    for (int i = 0; i < values.length; ++i) {
+      assertTrue("Values were not equal at index '" + i + "'",
+          Arrays.equals(values[i], cache.readByteArray(tokens[i])));
+    }
+  }
+
+  public void testSegmentRollover() {
+    DiskCache cache = new DiskCache(1024);
+    byte[][] values = new byte[100][];
+    long[] tokens = new long[values.length];
+    for (int i = 0; i < values.length; ++i) {
+      values[i] = bytes(i * 2, i);
+      tokens[i] = cache.writeByteArray(values[i]);
+    }
+    for (int i = 0; i < values.length; ++i) {
+      assertTrue("Values were not equal at index '" + i + "'",
+          Arrays.equals(values[i], cache.readByteArray(tokens[i])));
+    }
+  }
+
+  public void testStreams() throws IOException {
+    DiskCache cache = new DiskCache(4096);
+    byte[] expected = bytes(500, 5);
+    long token = cache.transferFromStream(new ByteArrayInputStream(expected));
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    cache.transferToStream(token, out);
+    assertTrue(Arrays.equals(expected, out.toByteArray()));
+    assertTrue(Arrays.equals(expected, cache.readByteArray(token)));
+  }
+
   public void testStrings() {
     String a = "";
     String b = "abjdsfkl;jasdf";
@@ -76,4 +185,22 @@ public class DiskCacheTest extends TestCase {
           expected, actual);
     }
   }
+
+  private static int countCacheFiles() {
+    File[] files = new File(System.getProperty("java.io.tmpdir")).listFiles(new FilenameFilter() {
+      @Override
+      public boolean accept(File dir, String name) {
+        return name.startsWith("gwt") && name.endsWith("byte-cache");
+      }
+    });
+    return files.length;
+  }
+
+  private static byte[] bytes(int length, int seed) {
+    byte[] result = new byte[length];
+    for (int i = 0; i < length; ++i) {
+      result[i] = (byte) (seed + i * 31);
+    }
+    return result;
+  }
 }
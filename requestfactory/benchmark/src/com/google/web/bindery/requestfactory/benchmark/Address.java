@@ -0,0 +1,49 @@
+/*
+ * Copyright 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.web.bindery.requestfactory.benchmark;
+
+/**
+ * A value type held in lists by {@link Person}.
+ */
+public class Address {
+  private String city;
+  private String street;
+  private String zip;
+
+  public String getCity() {
+    return city;
+  }
+
+  public String getStreet() {
+    return street;
+  }
+
+  public String getZip() {
+    return zip;
+  }
+
+  public void setCity(String city) {
+    this.city = city;
+  }
+
+  public void setStreet(String street) {
+    this.street = street;
+  }
+
+  public void setZip(String zip) {
+    this.zip = zip;
+  }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.web.bindery.requestfactory.benchmark;
+
+import com.google.web.bindery.requestfactory.shared.EntityProxy;
+import com.google.web.bindery.requestfactory.shared.EntityProxyId;
+import com.google.web.bindery.requestfactory.shared.ProxyFor;
+import com.google.web.bindery.requestfactory.shared.Request;
+import com.google.web.bindery.requestfactory.shared.RequestContext;
+import com.google.web.bindery.requestfactory.shared.RequestFactory;
+import com.google.web.bindery.requestfactory.shared.Service;
+import com.google.web.bindery.requestfactory.shared.ValueProxy;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * The RequestFactory used to build the payloads of {@link ProcessBenchmark}.
+ */
+public interface BenchmarkRequestFactory extends RequestFactory {
+
+  /**
+   * Proxy for {@link Address}.
+   */
+  @ProxyFor(Address.class)
+  interface AddressProxy extends ValueProxy {
+    String getCity();
+
+    String getStreet();
+
+    String getZip();
+
+    void setCity(String city);
+
+    void setStreet(String street);
+
+    void setZip(String zip);
+  }
+
+  /**
+   * Proxy for {@link Person}.
+   */
+  @ProxyFor(Person.class)
+  interface PersonProxy extends EntityProxy {
+    List<AddressProxy> getAddresses();
+
+    Date getBirthday();
+
+    String getEmail();
+
+    Long getId();
+
+    PersonProxy getManager();
+
+    String getName();
+
+    List<String> getTags();
+
+    void setAddresses(List<AddressProxy> addresses);
+
+    void setBirthday(Date birthday);
+
+    void setEmail(String email);
+
+    void setManager(PersonProxy manager);
+
+    void setName(String name);
+
+    void setTags(List<String> tags);
+
+    @Override
+    EntityProxyId<PersonProxy> stableId();
+  }
+
+  /**
+   * The service methods of {@link Person}.
+   */
+  @Service(Person.class)
+  interface PersonRequest extends RequestContext {
+    Request<List<PersonProxy>> findPeople(int count);
+
+    Request<PersonProxy> findPerson(Long id);
+
+    Request<Void> save(PersonProxy person);
+  }
+
+  PersonRequest person();
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.web.bindery.requestfactory.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The entity type of the benchmarks, kept in memory. Each person is managed by
+ * the person with the previous id, so that long chains of references can be
+ * requested.
+ */
+public class Person {
+  private static final Map<Long, Person> STORE = new ConcurrentHashMap<Long, Person>();
+
+  public static List<Person> findPeople(int count) {
+    List<Person> toReturn = new ArrayList<Person>(count);
+    for (long id = 1; id <= count; id++) {
+      toReturn.add(STORE.get(id));
+    }
+    return toReturn;
+  }
+
+  public static Person findPerson(Long id) {
+    return STORE.get(id);
+  }
+
+  public static void save(Person person) {
+    synchronized (person) {
+      person.version++;
+    }
+  }
+
+  /**
+   * Replaces the stored people with <code>size</code> new ones.
+   */
+  static void populate(int size) {
+    STORE.clear();
+    Person manager = null;
+    for (long id = 1; id <= size; id++) {
+      Person person = new Person(id, manager);
+      STORE.put(id, person);
+      manager = person;
+    }
+  }
+
+  private List<Address> addresses;
+  private Date birthday;
+  private String email;
+  private final Long id;
+  private Person manager;
+  private String name;
+  private List<String> tags;
+  private Integer version = 0;
+
+  public Person() {
+    id = null;
+  }
+
+  private Person(long id, Person manager) {
+    this.id = id;
+    this.manager = manager;
+    name = "Person " + id;
+    email = "person" + id + "@example.com";
+    birthday = new Date(id * 86400000L);
+    tags = Arrays.asList("benchmark", "tag" + (id % 10));
+    addresses = new ArrayList<Address>();
+    for (int i = 0; i < 2; i++) {
+      Address address = new Address();
+      address.setCity("City " + i);
+      address.setStreet(id + " Main Street");
+      address.setZip(String.valueOf(10000 + id));
+      addresses.add(address);
+    }
+  }
+
+  public List<Address> getAddresses() {
+    return addresses;
+  }
+
+  public Date getBirthday() {
+    return birthday;
+  }
+
+  public String getEmail() {
+    return email;
+  }
+
+  public Long getId() {
+    return id;
+  }
+
+  public Person getManager() {
+    return manager;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public List<String> getTags() {
+    return tags;
+  }
+
+  public Integer getVersion() {
+    return version;
+  }
+
+  public void setAddresses(List<Address> addresses) {
+    this.addresses = addresses;
+  }
+
+  public void setBirthday(Date birthday) {
+    this.birthday = birthday;
+  }
+
+  public void setEmail(String email) {
+    this.email = email;
+  }
+
+  public void setManager(Person manager) {
+    this.manager = manager;
+  }
+
+  public void setName(String name) {
+    this.name = name;
+  }
+
+  public void setTags(List<String> tags) {
+    this.tags = tags;
+  }
+}
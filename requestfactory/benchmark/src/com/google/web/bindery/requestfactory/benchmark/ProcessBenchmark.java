@@ -0,0 +1,223 @@
+/*
+ * Copyright 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.web.bindery.requestfactory.benchmark;
+
+import com.google.web.bindery.event.shared.SimpleEventBus;
+import com.google.web.bindery.requestfactory.benchmark.BenchmarkRequestFactory.PersonProxy;
+import com.google.web.bindery.requestfactory.benchmark.BenchmarkRequestFactory.PersonRequest;
+import com.google.web.bindery.requestfactory.server.ServiceLayer;
+import com.google.web.bindery.requestfactory.server.SimpleRequestProcessor;
+import com.google.web.bindery.requestfactory.shared.Receiver;
+import com.google.web.bindery.requestfactory.shared.Request;
+import com.google.web.bindery.requestfactory.shared.RequestTransport;
+import com.google.web.bindery.requestfactory.shared.ServerFailure;
+import com.google.web.bindery.requestfactory.vm.RequestFactorySource;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of {@link SimpleRequestProcessor#process(String)} and
+ * {@link SimpleRequestProcessor#process(String, Writer)} for representative
+ * payloads, which exercises AutoBeanCodex, Resolver and the
+ * default ServiceLayer end to end. The payloads are recorded once from a
+ * {@link BenchmarkRequestFactory} talking to the processor in-process, then
+ * replayed. Run with <code>-prof gc</code> to report allocation as well.
+ */
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Measurement(iterations = 5, time = 1)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 5, time = 1)
+public class ProcessBenchmark {
+
+  /**
+   * Counts the characters written to it, standing in for the writer of a
+   * servlet response.
+   */
+  private static class CountingWriter extends Writer {
+    private long count;
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) {
+      count += len;
+    }
+
+    @Override
+    public void write(int c) {
+      count++;
+    }
+
+    @Override
+    public void write(String str, int off, int len) {
+      count += len;
+    }
+  }
+
+  /**
+   * Processes requests in-process and records the last request payload sent.
+   */
+  private class RecordingTransport implements RequestTransport {
+    private String payload;
+
+    public void send(String payload, TransportReceiver receiver) {
+      this.payload = payload;
+      receiver.onTransportSuccess(processor.process(payload));
+    }
+  }
+
+  /**
+   * The length of the chain of managers returned by {@link #deepGraph()}.
+   */
+  @Param("50")
+  public int depth;
+
+  /**
+   * The number of people returned by {@link #largeList()}.
+   */
+  @Param("1000")
+  public int listSize;
+
+  /**
+   * Whether responses are encoded to a writer with
+   * {@link SimpleRequestProcessor#process(String, Writer)}, as
+   * RequestFactoryServlet does, instead of being returned as a String.
+   */
+  @Param({"false", "true"})
+  public boolean streaming;
+
+  private String deepGraph;
+  private BenchmarkRequestFactory factory;
+  private String largeList;
+  private String mutation;
+  private SimpleRequestProcessor processor;
+  private String smallRead;
+  private RecordingTransport transport;
+
+  /**
+   * Returns a person and the chain of its managers.
+   */
+  @Benchmark
+  public Object deepGraph() throws IOException {
+    return process(deepGraph);
+  }
+
+  /**
+   * Returns a list of people with their addresses.
+   */
+  @Benchmark
+  public Object largeList() throws IOException {
+    return process(largeList);
+  }
+
+  /**
+   * Applies changes to a person and saves it.
+   */
+  @Benchmark
+  public Object mutation() throws IOException {
+    return process(mutation);
+  }
+
+  @Setup
+  public void setUp() {
+    Person.populate(Math.max(listSize, depth + 1));
+    processor = new SimpleRequestProcessor(ServiceLayer.create());
+    transport = new RecordingTransport();
+    factory = RequestFactorySource.create(BenchmarkRequestFactory.class);
+    factory.initialize(new SimpleEventBus(), transport);
+
+    smallRead = record(factory.person().findPerson(1L));
+    largeList = record(factory.person().findPeople(listSize).with("addresses"));
+    StringBuilder path = new StringBuilder("manager");
+    for (int i = 1; i < depth; i++) {
+      path.append(".manager");
+    }
+    deepGraph = record(factory.person().findPerson(depth + 1L).with(path.toString()));
+
+    PersonProxy person = fire(factory.person().findPerson(2L).with("addresses", "manager"));
+    PersonRequest context = factory.person();
+    PersonProxy editable = context.edit(person);
+    editable.setName("Renamed");
+    editable.setEmail("renamed@example.com");
+    editable.getAddresses().get(0).setCity("Elsewhere");
+    mutation = record(context.save(editable));
+  }
+
+  /**
+   * Returns a single person without its references.
+   */
+  @Benchmark
+  public Object smallRead() throws IOException {
+    return process(smallRead);
+  }
+
+  private <T> T fire(Request<T> request) {
+    final Object[] toReturn = new Object[1];
+    request.fire(new Receiver<T>() {
+      @Override
+      public void onFailure(ServerFailure error) {
+        throw new IllegalStateException(error.getMessage());
+      }
+
+      @Override
+      public void onSuccess(T response) {
+        toReturn[0] = response;
+      }
+    });
+    @SuppressWarnings("unchecked")
+    T value = (T) toReturn[0];
+    return value;
+  }
+
+  /**
+   * Processes a recorded payload the way selected by {@link #streaming}.
+   */
+  private Object process(String payload) throws IOException {
+    if (!streaming) {
+      return processor.process(payload);
+    }
+    CountingWriter writer = new CountingWriter();
+    processor.process(payload, writer);
+    return writer.count;
+  }
+
+  private String record(Request<?> request) {
+    fire(request);
+    return transport.payload;
+  }
+}
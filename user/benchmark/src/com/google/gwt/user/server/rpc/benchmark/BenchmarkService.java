@@ -0,0 +1,84 @@
+/*
+ * Copyright 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.user.server.rpc.benchmark;
+
+import com.google.gwt.user.client.rpc.IsSerializable;
+import com.google.gwt.user.client.rpc.RemoteService;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * The service whose requests and responses {@link RpcBenchmark} encodes and
+ * decodes. Each method echoes one payload shape.
+ */
+public interface BenchmarkService extends RemoteService {
+
+  /**
+   * A line of an {@link Order}.
+   */
+  class LineItem implements IsSerializable {
+    double price;
+    int quantity;
+    String sku;
+
+    public LineItem() {
+    }
+
+    LineItem(String sku, int quantity, double price) {
+      this.sku = sku;
+      this.quantity = quantity;
+      this.price = price;
+    }
+  }
+
+  /**
+   * An object graph made mostly of collections.
+   */
+  class Order implements IsSerializable {
+    HashMap<String, String> attributes;
+    String customer;
+    long id;
+    ArrayList<LineItem> items;
+    Date placed;
+
+    public Order() {
+    }
+
+    Order(long id, int itemCount) {
+      this.id = id;
+      customer = "customer" + (id % 100);
+      placed = new Date(1000000000000L + id * 60000L);
+      items = new ArrayList<LineItem>(itemCount);
+      for (int i = 0; i < itemCount; i++) {
+        items.add(new LineItem("sku-" + i, i + 1, 9.99 * (i + 1)));
+      }
+      attributes = new HashMap<String, String>();
+      attributes.put("channel", id % 2 == 0 ? "web" : "store");
+      attributes.put("note", "Leave at the \"front\" door|");
+    }
+  }
+
+  double[] doubles(double[] values);
+
+  HashMap<String, ArrayList<Integer>> index(HashMap<String, ArrayList<Integer>> index);
+
+  int[] ints(int[] values);
+
+  List<Order> orders(List<Order> orders);
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.user.server.rpc.benchmark;
+
+import com.google.gwt.user.client.rpc.SerializationException;
+import com.google.gwt.user.client.rpc.impl.AbstractSerializationStream;
+import com.google.gwt.user.server.rpc.SerializationPolicy;
+import com.google.gwt.user.server.rpc.impl.ServerSerializationStreamWriter;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encodes RPC requests on the JVM, as the client would. The values are written
+ * by a {@link ServerSerializationStreamWriter}, whose tokens are the ones the
+ * client writes, and the response it produces is then rearranged into the
+ * request format.
+ */
+class RequestEncoder {
+  private static final Map<Class<?>, String> PRIMITIVE_NAMES = new HashMap<Class<?>, String>();
+
+  static {
+    PRIMITIVE_NAMES.put(boolean.class, "Z");
+    PRIMITIVE_NAMES.put(byte.class, "B");
+    PRIMITIVE_NAMES.put(char.class, "C");
+    PRIMITIVE_NAMES.put(double.class, "D");
+    PRIMITIVE_NAMES.put(float.class, "F");
+    PRIMITIVE_NAMES.put(int.class, "I");
+    PRIMITIVE_NAMES.put(long.class, "J");
+    PRIMITIVE_NAMES.put(short.class, "S");
+  }
+
+  /**
+   * Returns the request a client would send to call <code>method</code> with
+   * <code>args</code>.
+   */
+  static String encode(SerializationPolicy policy, Method method, Object... args)
+      throws SerializationException {
+    ServerSerializationStreamWriter writer = new ServerSerializationStreamWriter(policy);
+    writer.prepareToWrite();
+    writer.writeString("http://localhost/benchmark/");
+    writer.writeString("BENCHMARK");
+    writer.writeString(method.getDeclaringClass().getName());
+    writer.writeString(method.getName());
+    Class<?>[] parameterTypes = method.getParameterTypes();
+    writer.writeInt(parameterTypes.length);
+    for (Class<?> parameterType : parameterTypes) {
+      String name = PRIMITIVE_NAMES.get(parameterType);
+      writer.writeString(name == null ? parameterType.getName() : name);
+    }
+    for (int i = 0; i < args.length; i++) {
+      writer.serializeValue(args[i], parameterTypes[i]);
+    }
+    return toRequest(writer.toString());
+  }
+
+  /**
+   * Rearranges a response payload, a JavaScript array of the values in reverse
+   * order followed by the string table, the flags and the version, into a
+   * request.
+   */
+  private static String toRequest(String response) {
+    List<String> tokens = new ArrayList<String>();
+    List<String> strings = new ArrayList<String>();
+    int depth = 0;
+    int i = 0;
+    while (i < response.length()) {
+      char c = response.charAt(i);
+      if (c == '[') {
+        depth++;
+        i++;
+      } else if (c == ']') {
+        depth--;
+        i++;
+      } else if (depth == 0 || c == ',' || c == '+') {
+        // Separators and the ".concat(" of long arrays
+        i++;
+      } else {
+        StringBuilder token = new StringBuilder();
+        i = c == '"' ? readString(response, i, token) : readLiteral(response, i, token);
+        (depth == 1 ? tokens : strings).add(token.toString());
+      }
+    }
+
+    char separator = AbstractSerializationStream.RPC_SEPARATOR_CHAR;
+    StringBuilder request = new StringBuilder();
+    request.append(AbstractSerializationStream.SERIALIZATION_STREAM_VERSION).append(separator);
+    request.append(tokens.get(tokens.size() - 2)).append(separator);
+    request.append(strings.size()).append(separator);
+    for (String string : strings) {
+      request.append(string.replace("\\", "\\\\").replace("\u0000", "\\0").replace(
+          String.valueOf(separator), "\\!")).append(separator);
+    }
+    for (int j = tokens.size() - 3; j >= 0; j--) {
+      request.append(tokens.get(j)).append(separator);
+    }
+    return request.toString();
+  }
+
+  private static int readLiteral(String response, int i, StringBuilder token) {
+    while (i < response.length() && ",]".indexOf(response.charAt(i)) < 0) {
+      token.append(response.charAt(i++));
+    }
+    return i;
+  }
+
+  /**
+   * Reads a quoted JavaScript string, joining the segments of strings that
+   * were split with '+'.
+   */
+  private static int readString(String response, int i, StringBuilder token) {
+    while (true) {
+      // Skip the opening quote
+      i++;
+      char c;
+      while ((c = response.charAt(i++)) != '"') {
+        if (c != '\\') {
+          token.append(c);
+          continue;
+        }
+        c = response.charAt(i++);
+        switch (c) {
+          case '0':
+            token.append('\0');
+            break;
+          case 'b':
+            token.append('\b');
+            break;
+          case 'f':
+            token.append('\f');
+            break;
+          case 'n':
+            token.append('\n');
+            break;
+          case 'r':
+            token.append('\r');
+            break;
+          case 't':
+            token.append('\t');
+            break;
+          case 'u':
+            token.append((char) Integer.parseInt(response.substring(i, i + 4), 16));
+            i += 4;
+            break;
+          default:
+            token.append(c);
+        }
+      }
+      if (i < response.length() - 1 && response.charAt(i) == '+'
+          && response.charAt(i + 1) == '"') {
+        i++;
+      } else {
+        return i;
+      }
+    }
+  }
+
+  private RequestEncoder() {
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.user.server.rpc.benchmark;
+
+import com.google.gwt.user.client.rpc.SerializationException;
+import com.google.gwt.user.client.rpc.SerializationStreamReader;
+import com.google.gwt.user.client.rpc.SerializationStreamWriter;
+import com.google.gwt.user.client.rpc.core.java.lang.Integer_CustomFieldSerializer;
+import com.google.gwt.user.client.rpc.core.java.lang.String_CustomFieldSerializer;
+import com.google.gwt.user.client.rpc.core.java.util.ArrayList_CustomFieldSerializer;
+import com.google.gwt.user.client.rpc.core.java.util.Date_CustomFieldSerializer;
+import com.google.gwt.user.client.rpc.core.java.util.HashMap_CustomFieldSerializer;
+import com.google.gwt.user.client.rpc.impl.Serializer;
+import com.google.gwt.user.server.rpc.benchmark.BenchmarkService.LineItem;
+import com.google.gwt.user.server.rpc.benchmark.BenchmarkService.Order;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+
+/**
+ * Reads the responses of {@link BenchmarkService} on the JVM, as the
+ * serializers generated for the client would. Fields are read in the order
+ * the server writes them, sorted by name.
+ */
+class ResponseSerializer implements Serializer {
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public void deserialize(SerializationStreamReader stream, Object instance,
+      String typeSignature) throws SerializationException {
+    if (instance instanceof int[]) {
+      int[] values = (int[]) instance;
+      for (int i = 0; i < values.length; i++) {
+        values[i] = stream.readInt();
+      }
+    } else if (instance instanceof double[]) {
+      double[] values = (double[]) instance;
+      for (int i = 0; i < values.length; i++) {
+        values[i] = stream.readDouble();
+      }
+    } else if (instance instanceof ArrayList) {
+      ArrayList_CustomFieldSerializer.deserialize(stream, (ArrayList<Object>) instance);
+    } else if (instance instanceof HashMap) {
+      HashMap_CustomFieldSerializer.deserialize(stream, (HashMap<Object, Object>) instance);
+    } else if (instance instanceof Order) {
+      Order order = (Order) instance;
+      order.attributes = (HashMap<String, String>) stream.readObject();
+      order.customer = stream.readString();
+      order.id = stream.readLong();
+      order.items = (ArrayList<LineItem>) stream.readObject();
+      order.placed = (Date) stream.readObject();
+    } else if (instance instanceof LineItem) {
+      LineItem item = (LineItem) instance;
+      item.price = stream.readDouble();
+      item.quantity = stream.readInt();
+      item.sku = stream.readString();
+    }
+  }
+
+  @Override
+  public String getSerializationSignature(Class<?> clazz) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public Object instantiate(SerializationStreamReader stream, String typeSignature)
+      throws SerializationException {
+    int slash = typeSignature.indexOf('/');
+    String typeName = slash < 0 ? typeSignature : typeSignature.substring(0, slash);
+    if (typeName.equals("[I")) {
+      return new int[stream.readInt()];
+    } else if (typeName.equals("[D")) {
+      return new double[stream.readInt()];
+    } else if (typeName.equals(ArrayList.class.getName())) {
+      return new ArrayList<Object>();
+    } else if (typeName.equals(HashMap.class.getName())) {
+      return new HashMap<Object, Object>();
+    } else if (typeName.equals(Integer.class.getName())) {
+      return Integer_CustomFieldSerializer.instantiate(stream);
+    } else if (typeName.equals(String.class.getName())) {
+      return String_CustomFieldSerializer.instantiate(stream);
+    } else if (typeName.equals(Date.class.getName())) {
+      return Date_CustomFieldSerializer.instantiate(stream);
+    } else if (typeName.equals(Order.class.getName())) {
+      return new Order();
+    } else if (typeName.equals(LineItem.class.getName())) {
+      return new LineItem();
+    }
+    throw new SerializationException(typeSignature);
+  }
+
+  @Override
+  public void serialize(SerializationStreamWriter stream, Object instance,
+      String typeSignature) {
+    throw new UnsupportedOperationException();
+  }
+}
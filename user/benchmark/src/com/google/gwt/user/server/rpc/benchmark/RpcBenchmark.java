@@ -0,0 +1,276 @@
+/*
+ * Copyright 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.user.server.rpc.benchmark;
+
+import com.google.gwt.typedarrays.shared.ArrayBuffer;
+import com.google.gwt.typedarrays.shared.TypedArrays;
+import com.google.gwt.typedarrays.shared.Uint8Array;
+import com.google.gwt.user.client.rpc.SerializationException;
+import com.google.gwt.user.client.rpc.impl.AbstractSerializationStream;
+import com.google.gwt.user.client.rpc.impl.BinarySerializationStreamReader;
+import com.google.gwt.user.client.rpc.impl.ClientSerializationStreamReader;
+import com.google.gwt.user.server.rpc.RPC;
+import com.google.gwt.user.server.rpc.RPCRequest;
+import com.google.gwt.user.server.rpc.SerializationPolicy;
+import com.google.gwt.user.server.rpc.SerializationPolicyProvider;
+import com.google.gwt.user.server.rpc.benchmark.BenchmarkService.Order;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the server side of GWT-RPC: decoding requests with
+ * {@link RPC#decodeRequest(String, Class, SerializationPolicyProvider)} and
+ * encoding responses, which goes through ServerSerializationStreamWriter, with
+ * {@link RPC#encodeResponseForSuccess(Method, Object, SerializationPolicy)}.
+ * Each is measured for primitive arrays, a graph of objects holding
+ * collections, and a map of lists that goes through custom field serializers.
+ * Run with <code>-prof gc</code> to report allocation as well.
+ * <p>
+ * The <code>read*</code> benchmarks decode the same responses as the client
+ * does, in the default text format with {@link ClientSerializationStreamReader}
+ * and in the binary format with {@link BinarySerializationStreamReader}. They
+ * run the JVM versions of the readers, as used in development mode and JRE
+ * tests; in the browser the text format is parsed by the JavaScript engine
+ * instead, so these compare the formats' decoding work rather than predict
+ * browser timings.
+ * </p>
+ */
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Measurement(iterations = 5, time = 1)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 5, time = 1)
+public class RpcBenchmark {
+
+  /**
+   * The number of elements of the arrays, orders and map entries.
+   */
+  @Param("1000")
+  public int size;
+
+  private double[] doubles;
+  private Method doublesMethod;
+  private String doublesRequest;
+  private HashMap<String, ArrayList<Integer>> index;
+  private Method indexMethod;
+  private String indexRequest;
+  private int[] ints;
+  private Method intsMethod;
+  private String intsRequest;
+  private List<Order> orders;
+  private Method ordersMethod;
+  private String ordersRequest;
+  private SerializationPolicy policy;
+  private SerializationPolicyProvider policyProvider;
+  private ArrayBuffer binaryDoublesResponse;
+  private ArrayBuffer binaryIndexResponse;
+  private ArrayBuffer binaryIntsResponse;
+  private ArrayBuffer binaryOrdersResponse;
+  private ResponseSerializer responseSerializer;
+  private String textDoublesResponse;
+  private String textIndexResponse;
+  private String textIntsResponse;
+  private String textOrdersResponse;
+
+  @Benchmark
+  public RPCRequest decodeDoubles() {
+    return RPC.decodeRequest(doublesRequest, null, policyProvider);
+  }
+
+  @Benchmark
+  public RPCRequest decodeIndex() {
+    return RPC.decodeRequest(indexRequest, null, policyProvider);
+  }
+
+  @Benchmark
+  public RPCRequest decodeInts() {
+    return RPC.decodeRequest(intsRequest, null, policyProvider);
+  }
+
+  @Benchmark
+  public RPCRequest decodeOrders() {
+    return RPC.decodeRequest(ordersRequest, null, policyProvider);
+  }
+
+  @Benchmark
+  public String encodeDoubles() throws SerializationException {
+    return RPC.encodeResponseForSuccess(doublesMethod, doubles, policy);
+  }
+
+  @Benchmark
+  public String encodeIndex() throws SerializationException {
+    return RPC.encodeResponseForSuccess(indexMethod, index, policy);
+  }
+
+  @Benchmark
+  public String encodeInts() throws SerializationException {
+    return RPC.encodeResponseForSuccess(intsMethod, ints, policy);
+  }
+
+  @Benchmark
+  public String encodeOrders() throws SerializationException {
+    return RPC.encodeResponseForSuccess(ordersMethod, orders, policy);
+  }
+
+  @Benchmark
+  public Object readBinaryDoubles() throws SerializationException {
+    return readBinary(binaryDoublesResponse);
+  }
+
+  @Benchmark
+  public Object readBinaryIndex() throws SerializationException {
+    return readBinary(binaryIndexResponse);
+  }
+
+  @Benchmark
+  public Object readBinaryInts() throws SerializationException {
+    return readBinary(binaryIntsResponse);
+  }
+
+  @Benchmark
+  public Object readBinaryOrders() throws SerializationException {
+    return readBinary(binaryOrdersResponse);
+  }
+
+  @Benchmark
+  public Object readTextDoubles() throws SerializationException {
+    return readText(textDoublesResponse);
+  }
+
+  @Benchmark
+  public Object readTextIndex() throws SerializationException {
+    return readText(textIndexResponse);
+  }
+
+  @Benchmark
+  public Object readTextInts() throws SerializationException {
+    return readText(textIntsResponse);
+  }
+
+  @Benchmark
+  public Object readTextOrders() throws SerializationException {
+    return readText(textOrdersResponse);
+  }
+
+  @Setup
+  public void setUp() throws Exception {
+    policy = RPC.getDefaultSerializationPolicy();
+    policyProvider = new SerializationPolicyProvider() {
+      public SerializationPolicy getSerializationPolicy(String moduleBaseURL, String strongName) {
+        return policy;
+      }
+    };
+
+    doubles = new double[size];
+    ints = new int[size];
+    orders = new ArrayList<Order>(size);
+    index = new HashMap<String, ArrayList<Integer>>();
+    for (int i = 0; i < size; i++) {
+      doubles[i] = i / 7.0;
+      ints[i] = i * 31;
+      orders.add(new Order(i, 5));
+      ArrayList<Integer> postings = new ArrayList<Integer>();
+      for (int j = 0; j < 5; j++) {
+        postings.add(i * j);
+      }
+      index.put("term" + i, postings);
+    }
+
+    doublesMethod = BenchmarkService.class.getMethod("doubles", double[].class);
+    indexMethod = BenchmarkService.class.getMethod("index", HashMap.class);
+    intsMethod = BenchmarkService.class.getMethod("ints", int[].class);
+    ordersMethod = BenchmarkService.class.getMethod("orders", List.class);
+    doublesRequest = RequestEncoder.encode(policy, doublesMethod, doubles);
+    indexRequest = RequestEncoder.encode(policy, indexMethod, index);
+    intsRequest = RequestEncoder.encode(policy, intsMethod, ints);
+    ordersRequest = RequestEncoder.encode(policy, ordersMethod, orders);
+
+    responseSerializer = new ResponseSerializer();
+    binaryDoublesResponse = encodeBinaryResponse(doublesMethod, doubles);
+    binaryIndexResponse = encodeBinaryResponse(indexMethod, index);
+    binaryIntsResponse = encodeBinaryResponse(intsMethod, ints);
+    binaryOrdersResponse = encodeBinaryResponse(ordersMethod, orders);
+    textDoublesResponse = encodeTextResponse(doublesMethod, doubles);
+    textIndexResponse = encodeTextResponse(indexMethod, index);
+    textIntsResponse = encodeTextResponse(intsMethod, ints);
+    textOrdersResponse = encodeTextResponse(ordersMethod, orders);
+  }
+
+  /**
+   * Returns the binary response to a call of <code>method</code> that returned
+   * <code>value</code>, as the client receives it.
+   */
+  private ArrayBuffer encodeBinaryResponse(Method method, final Object value)
+      throws SerializationException {
+    Object echo = Proxy.newProxyInstance(BenchmarkService.class.getClassLoader(),
+        new Class<?>[] {BenchmarkService.class}, new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method calledMethod, Object[] args) {
+            return value;
+          }
+        });
+    byte[] response = RPC.invokeAndEncodeBinaryResponse(echo, method, new Object[] {value},
+        policy, AbstractSerializationStream.DEFAULT_FLAGS);
+    Uint8Array array = TypedArrays.createUint8Array(response.length);
+    for (int i = 0; i < response.length; i++) {
+      array.set(i, response[i]);
+    }
+    return array.buffer();
+  }
+
+  /**
+   * Returns the text response to a call of <code>method</code> that returned
+   * <code>value</code>, without the <code>//OK</code> prefix that the client
+   * strips before decoding.
+   */
+  private String encodeTextResponse(Method method, Object value)
+      throws SerializationException {
+    return RPC.encodeResponseForSuccess(method, value, policy).substring(4);
+  }
+
+  private Object readBinary(ArrayBuffer response) throws SerializationException {
+    BinarySerializationStreamReader reader =
+        new BinarySerializationStreamReader(responseSerializer);
+    reader.prepareToRead(response, 4);
+    return reader.readObject();
+  }
+
+  private Object readText(String response) throws SerializationException {
+    ClientSerializationStreamReader reader =
+        new ClientSerializationStreamReader(responseSerializer);
+    reader.prepareToRead(response);
+    return reader.readObject();
+  }
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.core.server;
+
+import com.google.gwt.thirdparty.debugging.sourcemap.SourceMapping;
+import com.google.gwt.thirdparty.debugging.sourcemap.proto.Mapping.OriginalMapping;
+import com.google.gwt.thirdparty.json.JSONArray;
+import com.google.gwt.thirdparty.json.JSONException;
+import com.google.gwt.thirdparty.json.JSONObject;
+
+import java.util.Arrays;
+
+/**
+ * A {@link SourceMapping} for a version 3 source map that keeps its mappings in a few parallel
+ * int arrays, sorted by generated position, rather than as an object per mapping. Lookups give the
+ * same results as {@link com.google.gwt.thirdparty.debugging.sourcemap.SourceMapConsumerV3}: the
+ * mapping at or before the given generated position, or from the end of the nearest preceding line
+ * if there is none on the line.
+ * <p>
+ * Instances are immutable, so they can be shared by any number of threads without locking.
+ * </p>
+ */
+final class CompactSourceMapping implements SourceMapping {
+
+  private static final String BASE64_CHARS =
+      "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+
+  private static final int UNMAPPED = -1;
+
+  /**
+   * Parses a version 3 source map.
+   *
+   * @throws IllegalArgumentException if the source map is invalid, or is an index map (with
+   *           sections), which is not supported
+   */
+  static CompactSourceMapping parse(String json) {
+    try {
+      JSONObject sourceMap = new JSONObject(json);
+      if (sourceMap.optInt("version") != 3 || sourceMap.has("sections")) {
+        throw new IllegalArgumentException("Unsupported source map");
+      }
+      return new CompactSourceMapping(toStrings(sourceMap.getJSONArray("sources")),
+          toStrings(sourceMap.optJSONArray("names")), sourceMap.getString("mappings"));
+    } catch (JSONException e) {
+      throw new IllegalArgumentException("Invalid source map", e);
+    }
+  }
+
+  private static String[] toStrings(JSONArray array) throws JSONException {
+    if (array == null) {
+      return new String[0];
+    }
+    String[] toReturn = new String[array.length()];
+    for (int i = 0; i < toReturn.length; i++) {
+      toReturn[i] = array.getString(i);
+    }
+    return toReturn;
+  }
+
+  /**
+   * For each generated line, the index of its first entry; line <code>i</code> has the entries
+   * from <code>lineStarts[i]</code> to <code>lineStarts[i + 1]</code>.
+   */
+  private final int[] lineStarts;
+
+  /**
+   * Per entry, sorted within each line.
+   */
+  private final int[] generatedColumns;
+
+  /**
+   * Per entry, the source index, or {@link #UNMAPPED} for entries without a source.
+   */
+  private final int[] sourceIds;
+  private final int[] sourceLines;
+  private final int[] sourceColumns;
+  private final int[] nameIds;
+
+  private final String[] names;
+  private final String[] sources;
+
+  private CompactSourceMapping(String[] sources, String[] names, String mappings) {
+    this.sources = sources;
+    this.names = names;
+
+    int lineCount = 1;
+    int entryCapacity = 1;
+    for (int i = 0; i < mappings.length(); i++) {
+      char c = mappings.charAt(i);
+      if (c == ';') {
+        lineCount++;
+        entryCapacity++;
+      } else if (c == ',') {
+        entryCapacity++;
+      }
+    }
+
+    int[] starts = new int[lineCount + 1];
+    int[] columns = new int[entryCapacity];
+    int[] ids = new int[entryCapacity];
+    int[] lines = new int[entryCapacity];
+    int[] sourceCols = new int[entryCapacity];
+    int[] nameIndexes = new int[entryCapacity];
+
+    // All fields but the generated column are relative to the previous entry's, across lines
+    int sourceId = 0;
+    int sourceLine = 0;
+    int sourceColumn = 0;
+    int nameId = 0;
+    int line = 0;
+    int column = 0;
+    int count = 0;
+    int[] fields = new int[5];
+    int pos = 0;
+    while (pos < mappings.length()) {
+      if (mappings.charAt(pos) == ';') {
+        starts[++line] = count;
+        column = 0;
+        pos++;
+        continue;
+      }
+      if (mappings.charAt(pos) == ',') {
+        pos++;
+        continue;
+      }
+
+      int fieldCount = 0;
+      while (pos < mappings.length() && mappings.charAt(pos) != ','
+          && mappings.charAt(pos) != ';') {
+        if (fieldCount == fields.length) {
+          throw new IllegalArgumentException("Too many fields in source map segment");
+        }
+        int value = 0;
+        int shift = 0;
+        boolean more;
+        do {
+          if (pos == mappings.length()) {
+            throw new IllegalArgumentException("Truncated source map segment");
+          }
+          int digit = BASE64_CHARS.indexOf(mappings.charAt(pos++));
+          if (digit < 0) {
+            throw new IllegalArgumentException("Invalid character in source map mappings");
+          }
+          more = (digit & 0x20) != 0;
+          value += (digit & 0x1f) << shift;
+          shift += 5;
+        } while (more);
+        fields[fieldCount++] = (value & 1) != 0 ? -(value >>> 1) : value >>> 1;
+      }
+
+      column += fields[0];
+      columns[count] = column;
+      if (fieldCount == 1) {
+        ids[count] = UNMAPPED;
+        nameIndexes[count] = UNMAPPED;
+      } else if (fieldCount == 4 || fieldCount == 5) {
+        sourceId += fields[1];
+        sourceLine += fields[2];
+        sourceColumn += fields[3];
+        if (sourceId < 0 || sourceId >= sources.length) {
+          throw new IllegalArgumentException("Invalid source index in source map");
+        }
+        ids[count] = sourceId;
+        lines[count] = sourceLine;
+        sourceCols[count] = sourceColumn;
+        if (fieldCount == 5) {
+          nameId += fields[4];
+          if (nameId < 0 || nameId >= names.length) {
+            throw new IllegalArgumentException("Invalid name index in source map");
+          }
+          nameIndexes[count] = nameId;
+        } else {
+          nameIndexes[count] = UNMAPPED;
+        }
+      } else {
+        throw new IllegalArgumentException("Invalid source map segment");
+      }
+      count++;
+    }
+
+    // A trailing line without entries is not a line, as with SourceMapConsumerV3
+    if (count > starts[line]) {
+      starts[++line] = count;
+    }
+
+    lineStarts = Arrays.copyOf(starts, line + 1);
+    generatedColumns = Arrays.copyOf(columns, count);
+    sourceIds = Arrays.copyOf(ids, count);
+    sourceLines = Arrays.copyOf(lines, count);
+    sourceColumns = Arrays.copyOf(sourceCols, count);
+    nameIds = Arrays.copyOf(nameIndexes, count);
+  }
+
+  /**
+   * Returns the original mapping for the given 1-based generated line and column, or
+   * <code>null</code> if the position is not mapped.
+   */
+  @Override
+  public OriginalMapping getMappingForLine(int lineNumber, int column) {
+    int line = lineNumber - 1;
+    column--;
+    if (line < 0 || line >= lineStarts.length - 1 || column < 0) {
+      return null;
+    }
+
+    int start = lineStarts[line];
+    int end = lineStarts[line + 1];
+    // The last entry on the line at or before the column
+    int low = start;
+    int high = end - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      if (generatedColumns[mid] <= column) {
+        low = mid + 1;
+      } else {
+        high = mid - 1;
+      }
+    }
+    // If there is none, the last entry of a preceding line applies
+    int entry = high >= start ? high : start - 1;
+    return entry < 0 ? null : getOriginalMapping(entry);
+  }
+
+  /**
+   * Returns the number of mapping entries, including unmapped ones.
+   */
+  int size() {
+    return generatedColumns.length;
+  }
+
+  private OriginalMapping getOriginalMapping(int entry) {
+    if (sourceIds[entry] == UNMAPPED) {
+      return null;
+    }
+    OriginalMapping.Builder builder = OriginalMapping.newBuilder()
+        .setOriginalFile(sources[sourceIds[entry]])
+        .setLineNumber(sourceLines[entry] + 1)
+        .setColumnPosition(sourceColumns[entry] + 1);
+    if (nameIds[entry] != UNMAPPED) {
+      builder.setIdentifier(names[nameIds[entry]]);
+    }
+    return builder.build();
+  }
+}
@@ -19,19 +19,29 @@ import com.google.gwt.thirdparty.debugging.sourcemap.SourceMapConsumerFactory;
 import com.google.gwt.thirdparty.debugging.sourcemap.SourceMapping;
 import com.google.gwt.thirdparty.debugging.sourcemap.proto.Mapping;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.net.URL;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Scanner;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -45,6 +55,9 @@ import java.util.regex.Pattern;
  * argument to specify the location of the folder into which the generated <code>symbolMaps</code>
  * directory is written. By default, the final <code>symbolMaps</code> directory is
  * <code>war/WEB-INF/deploy/<i>yourmodulename</i>/symbolMaps/</code>.
+ * <p>
+ * Instances are thread-safe once configured, and stack traces can be deobfuscated concurrently.
+ * </p>
  */
 public abstract class StackTraceDeobfuscator {
 
@@ -92,24 +105,104 @@ public abstract class StackTraceDeobfuscator {
   /**
    * A cache that maps obfuscated symbols to arbitrary non-null string values. The cache can assume
    * each (strongName, symbol) pair always maps to the same value (never goes invalid), but must
-   * treat data as an opaque string.
+   * treat data as an opaque string. Implementations must be thread-safe, and may drop entries at
+   * any time.
+   *
+   * @see #setSymbolCache(SymbolCache)
    */
-  private static class SymbolCache {
-    // TODO(srogoff): This SymbolCache implementation never drops old entries. If clients ever need
-    // to cap memory usage even with lazy loading, consider making SymbolCache an interface.
-    // This could allow clients to pass their own implementation to the StackTraceDeobfuscator
-    // constructor, backed by a Guava Cache or other entry-evicting mapping.
+  public interface SymbolCache {
+    /**
+     * Adds some symbol data to the cache for the given strong name.
+     */
+    void putAll(String strongName, Map<String, String> symbolMap);
 
-    private final ConcurrentHashMap<String, HashMap<String, String>> symbolMaps;
+    /**
+     * Returns the data for each of the specified symbols that's currently cached for the given
+     * strong name. There will be no entry for symbols that are not in the cache. If none of the
+     * symbols are cached, an empty Map is returned.
+     */
+    Map<String, String> getAll(String strongName, Set<String> symbols);
+  }
 
-    SymbolCache() {
-      symbolMaps = new ConcurrentHashMap<String, HashMap<String, String>>();
+  /**
+   * A {@link SymbolCache} that holds at most a fixed number of symbols across all permutations,
+   * dropping the least recently used ones first. Combined with {@link #setLazyLoad lazy loading},
+   * this caps the memory used for symbol data regardless of how many permutations are seen.
+   */
+  public static class BoundedSymbolCache implements SymbolCache {
+    private final Map<String, String> symbols;
+
+    /**
+     * @param maximumSize the maximum number of symbols to keep
+     */
+    public BoundedSymbolCache(final int maximumSize) {
+      if (maximumSize <= 0) {
+        throw new IllegalArgumentException("maximumSize must be positive: " + maximumSize);
+      }
+      symbols = new LinkedHashMap<String, String>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+          return size() > maximumSize;
+        }
+      };
+    }
+
+    @Override
+    public Map<String, String> getAll(String strongName, Set<String> symbols) {
+      Map<String, String> toReturn = new HashMap<String, String>();
+      if (strongName == null || symbols.isEmpty()) {
+        return toReturn;
+      }
+      synchronized (this.symbols) {
+        for (String symbol : symbols) {
+          String symbolData = this.symbols.get(getKey(strongName, symbol));
+          if (symbolData != null) {
+            toReturn.put(symbol, symbolData);
+          }
+        }
+      }
+      return toReturn;
+    }
+
+    @Override
+    public void putAll(String strongName, Map<String, String> symbolMap) {
+      if (strongName == null || symbolMap.size() == 0) {
+        return;
+      }
+      synchronized (symbols) {
+        for (Map.Entry<String, String> entry : symbolMap.entrySet()) {
+          symbols.put(getKey(strongName, entry.getKey()), entry.getValue());
+        }
+      }
     }
 
     /**
-     * Adds some symbol data to the cache for the given strong name.
+     * Returns the number of symbols currently cached.
      */
-    void putAll(String strongName, Map<String, String> symbolMap) {
+    public int size() {
+      synchronized (symbols) {
+        return symbols.size();
+      }
+    }
+
+    private static String getKey(String strongName, String symbol) {
+      // Strong names never contain ':'
+      return strongName + ':' + symbol;
+    }
+  }
+
+  /**
+   * The default {@link SymbolCache}, which never drops entries.
+   */
+  private static class UnboundedSymbolCache implements SymbolCache {
+    private final ConcurrentHashMap<String, HashMap<String, String>> symbolMaps;
+
+    UnboundedSymbolCache() {
+      symbolMaps = new ConcurrentHashMap<String, HashMap<String, String>>();
+    }
+
+    @Override
+    public void putAll(String strongName, Map<String, String> symbolMap) {
       if (strongName == null || symbolMap.size() == 0) {
         return;
       }
@@ -120,12 +213,8 @@ public abstract class StackTraceDeobfuscator {
       }
     }
 
-    /**
-     * Returns the data for each of the specified symbols that's currently cached for the given
-     * strong name. There will be no entry for symbols that are not in the cache. If none of the
-     * symbols are cached, an empty Map is returned.
-     */
-    Map<String, String> getAll(String strongName, Set<String> symbols) {
+    @Override
+    public Map<String, String> getAll(String strongName, Set<String> symbols) {
       Map<String, String> toReturn = new HashMap<String, String>();
       if (strongName == null || !symbolMaps.containsKey(strongName) || symbols.isEmpty()) {
         return toReturn;
@@ -144,11 +233,18 @@ public abstract class StackTraceDeobfuscator {
 
   private static final Pattern JsniRefPattern = Pattern.compile("@?([^:]+)::([^(]+)(\\((.*)\\))?");
   private static final Pattern fragmentIdPattern = Pattern.compile(".*(\\d+)\\.js");
+  private static final Pattern strongNamePattern = Pattern.compile("[a-zA-Z0-9_]+");
   private static final int LINE_NUMBER_UNKNOWN = -1;
   private static final String SYMBOL_DATA_UNKNOWN = "";
 
-  private final Map<String, SourceMapping> sourceMaps = new HashMap<String, SourceMapping>();
-  private final SymbolCache symbolCache = new SymbolCache();
+  private final ConcurrentMap<String, Future<SourceMapping>> sourceMaps =
+      new ConcurrentHashMap<String, Future<SourceMapping>>();
+  private final Map<String, SymbolMapIndex> symbolMapIndexes =
+      new ConcurrentHashMap<String, SymbolMapIndex>();
+  private final Set<String> unindexedStrongNames =
+      Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+  private File symbolMapIndexDirectory;
+  private SymbolCache symbolCache = new UnboundedSymbolCache();
   private boolean lazyLoad = false;
 
   /**
@@ -160,6 +256,32 @@ public abstract class StackTraceDeobfuscator {
     this.lazyLoad = lazyLoad;
   }
 
+  /**
+   * Sets the cache that symbol data is kept in. By default all loaded symbol data is kept for the
+   * lifetime of the deobfuscator; use a {@link BoundedSymbolCache} to cap it. Should be called
+   * before the deobfuscator is used.
+   */
+  public void setSymbolCache(SymbolCache symbolCache) {
+    this.symbolCache = symbolCache;
+  }
+
+  /**
+   * Sets a writable directory where symbol maps are converted to an indexed format (see
+   * {@link SymbolMapIndex}) on first use. Symbols missing from the {@link SymbolCache} are then
+   * looked up by binary search in the memory-mapped index rather than by reading through the whole
+   * symbol map, and the symbol map itself is never held in memory. Index files are reused across
+   * restarts; they can also be created ahead of time with
+   * {@link SymbolMapIndex#write(InputStream, java.io.OutputStream)}, naming them
+   * <code><i>permutation-strong-name</i>.symbolIndex</code>. Should be called before the
+   * deobfuscator is used.
+   *
+   * @param symbolMapIndexDirectory the directory to store indexes in, or <code>null</code> to read
+   *          symbol maps directly
+   */
+  public void setSymbolMapIndexDirectory(File symbolMapIndexDirectory) {
+    this.symbolMapIndexDirectory = symbolMapIndexDirectory;
+  }
+
   /**
    * Replaces the stack traces in the given Throwable and its causes with deobfuscated stack traces
    * wherever possible.
@@ -347,22 +469,62 @@ public abstract class StackTraceDeobfuscator {
    */
   protected abstract InputStream openInputStream(String fileName) throws IOException;
 
-  private SourceMapping loadSourceMap(String permutationStrongName, int fragmentId) {
-    SourceMapping toReturn = sourceMaps.get(permutationStrongName + fragmentId);
-    if (toReturn == null) {
-      try {
-        String sourceMapString = loadStreamAsString(
-            getSourceMapInputStream(permutationStrongName, fragmentId));
-        toReturn = SourceMapConsumerFactory.parse(sourceMapString);
-        sourceMaps.put(permutationStrongName + fragmentId, toReturn);
-      } catch (Exception e) {
+  /**
+   * Returns the source map for the given fragment, or null if it cannot be loaded. Each source map
+   * is loaded once, by the first thread that needs it, while other threads that need it wait;
+   * afterwards lookups don't lock. Failures are not remembered, so that strong names made up by
+   * clients cannot fill the map.
+   */
+  private SourceMapping loadSourceMap(final String permutationStrongName, final int fragmentId) {
+    if (permutationStrongName == null
+        || !strongNamePattern.matcher(permutationStrongName).matches()) {
+      return null;
+    }
+    String key = permutationStrongName + '_' + fragmentId;
+    Future<SourceMapping> future = sourceMaps.get(key);
+    if (future == null) {
+      FutureTask<SourceMapping> task = new FutureTask<SourceMapping>(
+          new Callable<SourceMapping>() {
+            @Override
+            public SourceMapping call() throws Exception {
+              String sourceMapString = loadStreamAsString(
+                  getSourceMapInputStream(permutationStrongName, fragmentId));
+              try {
+                return CompactSourceMapping.parse(sourceMapString);
+              } catch (IllegalArgumentException e) {
+                // Not a source map the compact form supports, such as an index map
+                return SourceMapConsumerFactory.parse(sourceMapString);
+              }
+            }
+          });
+      future = sourceMaps.putIfAbsent(key, task);
+      if (future == null) {
+        future = task;
+        task.run();
       }
     }
-    return toReturn;
+
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      sourceMaps.remove(key, future);
+      return null;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return null;
+    }
   }
 
   private String loadStreamAsString(InputStream stream) {
-    return new Scanner(stream).useDelimiter("\\A").next();
+    try {
+      return new Scanner(stream, "UTF-8").useDelimiter("\\A").next();
+    } finally {
+      try {
+        stream.close();
+      } catch (IOException e) {
+        // Ignored, the contents were read
+      }
+    }
   }
 
   private String loadOneSymbol(String strongName, String symbol) {
@@ -385,6 +547,17 @@ public abstract class StackTraceDeobfuscator {
       return toReturn;
     }
 
+    SymbolMapIndex index = loadSymbolMapIndex(strongName);
+    if (index != null) {
+      toReturn = new HashMap<String, String>();
+      for (String symbol : requiredSymbols) {
+        String symbolData = index.get(symbol);
+        toReturn.put(symbol, symbolData == null ? SYMBOL_DATA_UNKNOWN : symbolData);
+      }
+      symbolCache.putAll(strongName, toReturn);
+      return toReturn;
+    }
+
     Set<String> symbolsLeftToFind = new HashSet<String>(requiredSymbols);
     toReturn = new HashMap<String, String>();
     String line;
@@ -429,6 +602,82 @@ public abstract class StackTraceDeobfuscator {
     return toReturn;
   }
 
+  /**
+   * Returns the index of the symbol map for the given strong name, creating it if needed, or null
+   * if there is no index directory or the index cannot be created. An index that cannot be read is
+   * rebuilt once; strong names whose symbol map cannot be indexed are remembered, so that their
+   * symbol maps are read directly from then on.
+   */
+  private SymbolMapIndex loadSymbolMapIndex(String strongName) {
+    File indexDirectory = symbolMapIndexDirectory;
+    if (indexDirectory == null || strongName == null
+        || !strongNamePattern.matcher(strongName).matches()
+        || unindexedStrongNames.contains(strongName)) {
+      return null;
+    }
+
+    SymbolMapIndex index = symbolMapIndexes.get(strongName);
+    if (index != null) {
+      return index;
+    }
+
+    File indexFile = new File(indexDirectory, strongName + ".symbolIndex");
+    if (indexFile.isFile()) {
+      try {
+        index = SymbolMapIndex.open(indexFile);
+      } catch (IOException e) {
+        // Corrupt or from an incompatible version; rebuild it below
+        indexFile.delete();
+      }
+    }
+
+    if (index == null) {
+      InputStream symbolMap;
+      try {
+        symbolMap = getSymbolMapInputStream(strongName);
+      } catch (IOException e) {
+        // Not remembered, since strong names come from clients; reading the symbol map directly
+        // fails the same way
+        return null;
+      }
+      try {
+        index = createSymbolMapIndex(strongName, symbolMap, indexFile);
+      } catch (IOException e) {
+        unindexedStrongNames.add(strongName);
+        return null;
+      }
+    }
+    symbolMapIndexes.put(strongName, index);
+    return index;
+  }
+
+  /**
+   * Writes the index of the given symbol map and opens it.
+   */
+  private SymbolMapIndex createSymbolMapIndex(String strongName, InputStream symbolMap,
+      File indexFile) throws IOException {
+    // Write to a temporary file first so that concurrent readers never see a partial index
+    File tempFile = null;
+    try {
+      tempFile = File.createTempFile(strongName, ".tmp", indexFile.getParentFile());
+      OutputStream out = new BufferedOutputStream(new FileOutputStream(tempFile));
+      try {
+        SymbolMapIndex.write(symbolMap, out);
+      } finally {
+        out.close();
+      }
+      if (!tempFile.renameTo(indexFile) && !indexFile.isFile()) {
+        throw new IOException("Could not create " + indexFile);
+      }
+    } finally {
+      symbolMap.close();
+      if (tempFile != null) {
+        tempFile.delete();
+      }
+    }
+    return SymbolMapIndex.open(indexFile);
+  }
+
   /**
    * Extracts the declaring class and method name from a JSNI ref, or null if the information cannot
    * be extracted.
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.core.server;
+
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The method symbols of a <code>.symbolMap</code> file in an indexed form that is memory-mapped
+ * and binary-searched, so that looking up a symbol neither reads through nor holds the whole
+ * symbol map. Used by {@link StackTraceDeobfuscator#setSymbolMapIndexDirectory(File)}.
+ * <p>
+ * The format is a header of three big-endian ints (magic number, version and record count), a
+ * table with the offset of each record relative to the first record, and the records themselves,
+ * each being the UTF-8 encoding of a symbol map line's <code>symbol,data</code> followed by a
+ * newline. Records are sorted by the unsigned bytes of their symbol.
+ * </p>
+ * Instances are thread-safe.
+ */
+public final class SymbolMapIndex {
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private static final int MAGIC = 0x47575453;
+
+  private static final int VERSION = 1;
+
+  private static final int HEADER_SIZE = 3 * 4;
+
+  private static final Comparator<byte[]> SYMBOL_ORDER = new Comparator<byte[]>() {
+    @Override
+    public int compare(byte[] a, byte[] b) {
+      for (int i = 0; ; i++) {
+        int ca = a[i] == ',' ? -1 : a[i] & 0xff;
+        int cb = b[i] == ',' ? -1 : b[i] & 0xff;
+        if (ca != cb || ca == -1) {
+          return ca - cb;
+        }
+      }
+    }
+  };
+
+  /**
+   * Memory-maps an index file created by {@link #write(InputStream, OutputStream)}.
+   *
+   * @throws IOException if the file cannot be read or is not an index
+   */
+  public static SymbolMapIndex open(File indexFile) throws IOException {
+    RandomAccessFile file = new RandomAccessFile(indexFile, "r");
+    try {
+      FileChannel channel = file.getChannel();
+      // The mapping stays valid after the channel is closed
+      ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC
+          || buffer.getInt(4) != VERSION) {
+        throw new IOException("Not a symbol map index: " + indexFile);
+      }
+      int count = buffer.getInt(8);
+      if (count < 0 || HEADER_SIZE + 4L * count > buffer.limit()) {
+        throw new IOException("Corrupt symbol map index: " + indexFile);
+      }
+      return new SymbolMapIndex(buffer, count);
+    } finally {
+      file.close();
+    }
+  }
+
+  /**
+   * Converts a symbol map to an index. Only method symbols are indexed, since only they appear in
+   * stack traces; if a symbol is listed more than once, the last entry wins.
+   *
+   * @param symbolMap the contents of a <code>.symbolMap</code> file
+   * @param out receives the index; not closed
+   */
+  public static void write(InputStream symbolMap, OutputStream out) throws IOException {
+    List<byte[]> records = new ArrayList<byte[]>();
+    BufferedReader reader = new BufferedReader(new InputStreamReader(symbolMap, UTF8));
+    String line;
+    while ((line = reader.readLine()) != null) {
+      if (line.isEmpty() || line.charAt(0) == '#') {
+        continue;
+      }
+      int idx = line.indexOf(',');
+      int jsniIdEnd = line.indexOf(',', idx + 1);
+      if (idx <= 0 || jsniIdEnd < 0 || line.lastIndexOf(')', jsniIdEnd) < idx) {
+        // Methods jsni names have to contain parens.
+        continue;
+      }
+      records.add((line + '\n').getBytes(UTF8));
+    }
+
+    // A stable sort keeps duplicates in file order, so the last one can be kept
+    Collections.sort(records, SYMBOL_ORDER);
+    List<byte[]> unique = new ArrayList<byte[]>(records.size());
+    for (byte[] record : records) {
+      int last = unique.size() - 1;
+      if (last >= 0 && SYMBOL_ORDER.compare(unique.get(last), record) == 0) {
+        unique.set(last, record);
+      } else {
+        unique.add(record);
+      }
+    }
+
+    DataOutputStream data = new DataOutputStream(out);
+    data.writeInt(MAGIC);
+    data.writeInt(VERSION);
+    data.writeInt(unique.size());
+    int offset = 0;
+    for (byte[] record : unique) {
+      data.writeInt(offset);
+      offset += record.length;
+    }
+    for (byte[] record : unique) {
+      data.write(record);
+    }
+    data.flush();
+  }
+
+  private final ByteBuffer buffer;
+
+  private final int count;
+
+  private final int recordsStart;
+
+  private SymbolMapIndex(ByteBuffer buffer, int count) {
+    this.buffer = buffer;
+    this.count = count;
+    this.recordsStart = HEADER_SIZE + 4 * count;
+  }
+
+  /**
+   * Returns the data for the given symbol (everything after the first comma in its symbol map
+   * line), or <code>null</code> if it is not a method symbol in this map.
+   */
+  public String get(String symbol) {
+    byte[] key = symbol.getBytes(UTF8);
+    int low = 0;
+    int high = count - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int record = recordsStart + buffer.getInt(HEADER_SIZE + 4 * mid);
+      int cmp = compareSymbol(record, key);
+      if (cmp < 0) {
+        low = mid + 1;
+      } else if (cmp > 0) {
+        high = mid - 1;
+      } else {
+        return readData(record + key.length + 1);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns the number of symbols in the index.
+   */
+  public int size() {
+    return count;
+  }
+
+  /**
+   * Compares the symbol of the record at the given position with <code>key</code>.
+   */
+  private int compareSymbol(int record, byte[] key) {
+    for (int i = 0; ; i++) {
+      byte b = buffer.get(record + i);
+      int c = b == ',' ? -1 : b & 0xff;
+      int k = i < key.length ? key[i] & 0xff : -1;
+      if (c != k || c == -1) {
+        return c - k;
+      }
+    }
+  }
+
+  private String readData(int start) {
+    int end = start;
+    while (buffer.get(end) != '\n') {
+      end++;
+    }
+    byte[] bytes = new byte[end - start];
+    // Absolute bulk reads need a private view of the shared buffer
+    ByteBuffer view = buffer.duplicate();
+    view.position(start);
+    view.get(bytes);
+    return new String(bytes, UTF8);
+  }
+}
@@ -18,6 +18,7 @@ package com.google.gwt.http.client;
 import com.google.gwt.core.client.JavaScriptException;
 import com.google.gwt.xhr.client.ReadyStateChangeHandler;
 import com.google.gwt.xhr.client.XMLHttpRequest;
+import com.google.gwt.xhr.client.XMLHttpRequest.ResponseType;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -105,6 +106,11 @@ public class RequestBuilder {
    */
   private String requestData;
 
+  /**
+   * The type the response is read as.
+   */
+  private ResponseType responseType = ResponseType.Default;
+
   /**
    * Timeout in milliseconds before the request timeouts and fails.
    */
@@ -203,6 +209,15 @@ public class RequestBuilder {
     return requestData;
   }
 
+  /**
+   * Returns the response type previously set by
+   * {@link #setResponseType(ResponseType)}, or {@link ResponseType#Default} if
+   * no response type was set.
+   */
+  public ResponseType getResponseType() {
+    return responseType;
+  }
+
   /**
    * Returns the timeoutMillis previously set by {@link #setTimeoutMillis(int)},
    * or <code>0</code> if no timeoutMillis was set.
@@ -323,6 +338,24 @@ public class RequestBuilder {
     this.requestData = requestData;
   }
 
+  /**
+   * Sets the type the response is read as. With
+   * {@link ResponseType#ArrayBuffer}, which may only be used if
+   * {@link com.google.gwt.typedarrays.shared.TypedArrays#isSupported()}
+   * returns true, the response is available from
+   * {@link Response#getArrayBuffer()}.
+   * 
+   * @param responseType the type to read the response as
+   * @throws NullPointerException if the response type is null
+   */
+  public void setResponseType(ResponseType responseType) {
+    if (responseType == null) {
+      throw new NullPointerException("responseType cannot be null");
+    }
+
+    this.responseType = responseType;
+  }
+
   /**
    * Sets the number of milliseconds to wait for a request to complete. Should
    * the request timeout, the
@@ -401,6 +434,9 @@ public class RequestBuilder {
     if (includeCredentials) {
       xmlHttpRequest.setWithCredentials(true);
     }
+    if (responseType != ResponseType.Default) {
+      xmlHttpRequest.setResponseType(responseType);
+    }
 
     final Request request = new Request(xmlHttpRequest, timeoutMillis, callback);
 
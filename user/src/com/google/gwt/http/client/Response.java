@@ -15,6 +15,8 @@
  */
 package com.google.gwt.http.client;
 
+import com.google.gwt.typedarrays.shared.ArrayBuffer;
+
 /**
  * Wrapper which provides access to the components of an HTTP response.
  * 
@@ -65,6 +67,19 @@ public abstract class Response {
   public static final int SC_UNSUPPORTED_MEDIA_TYPE = 415;
   public static final int SC_USE_PROXY = 305;
 
+  /**
+   * Returns the body of the response if it was read as an
+   * {@link ArrayBuffer}, which is the case if the request's
+   * {@link RequestBuilder#setResponseType response type} was
+   * {@link com.google.gwt.xhr.client.XMLHttpRequest.ResponseType#ArrayBuffer
+   * ArrayBuffer}. The default implementation returns <code>null</code>.
+   * 
+   * @return the response body, or <code>null</code>
+   */
+  public ArrayBuffer getArrayBuffer() {
+    return null;
+  }
+
   /**
    * Returns the value of the requested header or null if the header was not
    * specified.
@@ -15,8 +15,13 @@
  */
 package com.google.gwt.http.client;
 
+import com.google.gwt.typedarrays.shared.ArrayBuffer;
+import com.google.gwt.typedarrays.shared.TypedArrays;
+import com.google.gwt.typedarrays.shared.Uint8Array;
 import com.google.gwt.xhr.client.XMLHttpRequest;
+import com.google.gwt.xhr.client.XMLHttpRequest.ResponseType;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -33,6 +38,11 @@ class ResponseImpl extends Response {
     assert isResponseReady();
   }
 
+  @Override
+  public ArrayBuffer getArrayBuffer() {
+    return isArrayBufferResponse() ? xmlHttpRequest.getResponseArrayBuffer() : null;
+  }
+
   @Override
   public String getHeader(String header) {
     StringValidator.throwIfEmptyOrNull("header", header);
@@ -100,10 +110,28 @@ class ResponseImpl extends Response {
 
   @Override
   public String getText() {
+    if (isArrayBufferResponse()) {
+      // The text of an ArrayBuffer response is not available from the XHR
+      ArrayBuffer buffer = xmlHttpRequest.getResponseArrayBuffer();
+      if (buffer == null) {
+        return null;
+      }
+      Uint8Array array = TypedArrays.createUint8Array(buffer);
+      byte[] bytes = new byte[array.length()];
+      for (int i = 0; i < bytes.length; i++) {
+        bytes[i] = (byte) array.get(i);
+      }
+      return new String(bytes, StandardCharsets.UTF_8);
+    }
     return xmlHttpRequest.getResponseText();
   }
 
   protected boolean isResponseReady() {
     return xmlHttpRequest.getReadyState() == XMLHttpRequest.DONE;
   }
+
+  private boolean isArrayBufferResponse() {
+    return ResponseType.ArrayBuffer.getResponseTypeString().equals(
+        xmlHttpRequest.getResponseType());
+  }
 }
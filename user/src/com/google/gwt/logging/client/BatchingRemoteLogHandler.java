@@ -0,0 +1,203 @@
+/*
+ * Copyright 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.logging.client;
+
+import com.google.gwt.core.client.GWT;
+import com.google.gwt.core.client.Scheduler;
+import com.google.gwt.core.client.Scheduler.RepeatingCommand;
+import com.google.gwt.core.client.Scheduler.ScheduledCommand;
+import com.google.gwt.logging.shared.BatchedRemoteLoggingService;
+import com.google.gwt.logging.shared.BatchedRemoteLoggingServiceAsync;
+import com.google.gwt.logging.shared.RemoteLoggingService;
+import com.google.gwt.logging.shared.RemoteLoggingServiceAsync;
+import com.google.gwt.user.client.rpc.AsyncCallback;
+import com.google.gwt.user.client.rpc.IncompatibleRemoteServiceException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+/**
+ * A handler which queues records and sends them to the server together via
+ * GWT RPC, so that a burst of records (for instance, while errors are being
+ * reported repeatedly) costs one request rather than one per record. The
+ * server must implement {@link BatchedRemoteLoggingService}, as
+ * {@link com.google.gwt.logging.server.RemoteLoggingServiceImpl} does; if it
+ * turns out not to, records are sent one at a time instead.
+ * <p>
+ * Records still queued when the page is unloaded are lost. Call
+ * {@link #flush()} before leaving the page, or use
+ * {@link SimpleRemoteLogHandler}, which sends each record immediately, where
+ * that matters.
+ * </p>
+ */
+public final class BatchingRemoteLogHandler extends RemoteLogHandlerBase {
+  class DefaultCallback implements AsyncCallback<String> {
+    public void onFailure(Throwable caught) {
+      wireLogger.log(Level.SEVERE, "Remote logging failed: ", caught);
+    }
+    public void onSuccess(String result) {
+      if (result != null) {
+        wireLogger.severe("Remote logging failed: " + result);
+      } else {
+        wireLogger.finest("Remote logging message acknowledged");
+      }
+    }
+  }
+
+  /**
+   * Falls back to sending records one at a time if the server does not
+   * accept batches.
+   */
+  class BatchCallback extends DefaultCallback {
+    private final List<LogRecord> batch;
+
+    BatchCallback(List<LogRecord> batch) {
+      this.batch = batch;
+    }
+
+    @Override
+    public void onFailure(Throwable caught) {
+      if (!(caught instanceof IncompatibleRemoteServiceException)) {
+        super.onFailure(caught);
+        return;
+      }
+      wireLogger.fine("Remote logging batches not supported; sending records one at a time");
+      batchesSupported = false;
+      for (LogRecord record : batch) {
+        recordService.logOnServer(record, callback);
+      }
+    }
+  }
+
+  private static final int DEFAULT_MAX_BATCH_SIZE = 50;
+
+  private final int batchDelayMillis;
+  private boolean batchesSupported = true;
+  private boolean flushScheduled = false;
+  private final int maxBatchSize;
+  private List<LogRecord> queue = new ArrayList<LogRecord>();
+
+  private final AsyncCallback<String> callback;
+  private final Scheduler scheduler;
+  private final BatchedRemoteLoggingServiceAsync service;
+
+  /**
+   * Sends single records, through the interface that all servers implement.
+   */
+  private final RemoteLoggingServiceAsync recordService;
+
+  /**
+   * Creates a handler that sends the records published while handling an
+   * event together, at the end of the event loop, in batches of at most 50.
+   */
+  public BatchingRemoteLogHandler() {
+    this(DEFAULT_MAX_BATCH_SIZE, 0);
+  }
+
+  /**
+   * Creates a handler with the given batching behavior.
+   *
+   * @param maxBatchSize the largest number of records to send in one request
+   * @param batchDelayMillis how long after a record is queued to send it along
+   *          with any records queued meanwhile, or 0 to send it at the end of
+   *          the current event loop
+   */
+  public BatchingRemoteLogHandler(int maxBatchSize, int batchDelayMillis) {
+    this(maxBatchSize, batchDelayMillis,
+        (BatchedRemoteLoggingServiceAsync) GWT.create(BatchedRemoteLoggingService.class),
+        (RemoteLoggingServiceAsync) GWT.create(RemoteLoggingService.class), Scheduler.get());
+  }
+
+  /**
+   * Creates a handler that sends records through the given services and
+   * schedules its flushes on the given scheduler.
+   */
+  BatchingRemoteLogHandler(int maxBatchSize, int batchDelayMillis,
+      BatchedRemoteLoggingServiceAsync service, RemoteLoggingServiceAsync recordService,
+      Scheduler scheduler) {
+    if (maxBatchSize < 1) {
+      throw new IllegalArgumentException("maxBatchSize must be positive");
+    }
+    this.service = service;
+    this.recordService = recordService;
+    this.scheduler = scheduler;
+    this.callback = new DefaultCallback();
+    this.maxBatchSize = maxBatchSize;
+    this.batchDelayMillis = batchDelayMillis;
+  }
+
+  @Override
+  public void close() {
+    flush();
+    super.close();
+  }
+
+  /**
+   * Sends any queued records to the server.
+   */
+  @Override
+  public void flush() {
+    if (queue.isEmpty()) {
+      return;
+    }
+    List<LogRecord> batch = queue;
+    queue = new ArrayList<LogRecord>();
+    if (batch.size() == 1 || !batchesSupported) {
+      for (LogRecord record : batch) {
+        recordService.logOnServer(record, callback);
+      }
+    } else {
+      service.logOnServerBatch(batch, new BatchCallback(batch));
+    }
+  }
+
+  @Override
+  public void publish(LogRecord record) {
+    if (!isLoggable(record)) {
+      return;
+    }
+    queue.add(record);
+    if (queue.size() >= maxBatchSize) {
+      flush();
+    } else if (!flushScheduled) {
+      flushScheduled = true;
+      scheduleFlush();
+    }
+  }
+
+  private void scheduleFlush() {
+    if (batchDelayMillis <= 0) {
+      scheduler.scheduleDeferred(new ScheduledCommand() {
+        @Override
+        public void execute() {
+          flushScheduled = false;
+          flush();
+        }
+      });
+    } else {
+      scheduler.scheduleFixedDelay(new RepeatingCommand() {
+        @Override
+        public boolean execute() {
+          flushScheduled = false;
+          flush();
+          return false;
+        }
+      }, batchDelayMillis);
+    }
+  }
+}
@@ -18,40 +18,138 @@ package com.google.gwt.logging.server;
 
 import com.google.gwt.core.server.StackTraceDeobfuscator;
 import com.google.gwt.logging.server.RemoteLoggingServiceUtil.RemoteLoggingException;
-import com.google.gwt.logging.shared.RemoteLoggingService;
+import com.google.gwt.logging.shared.BatchedRemoteLoggingService;
+import com.google.gwt.user.server.rpc.RPCServletUtils;
 import com.google.gwt.user.server.rpc.RemoteServiceServlet;
 
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.LogRecord;
 import java.util.logging.Logger;
 
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletException;
+
 /**
- * Server-side code for the remote log handler.
+ * Server-side code for the remote log handlers, which also accepts the batches
+ * sent by {@link com.google.gwt.logging.client.BatchingRemoteLogHandler}.
+ * <p>
+ * By default, records are deobfuscated and logged in the request thread. If
+ * the {@value #ASYNC_THREADS_PARAM} initialization parameter is set, or
+ * {@link #setLogExecutor(Executor)} is called, this is instead done by a pool
+ * of worker threads and requests return as soon as their records are queued;
+ * when the queue is full, records are logged in the request thread.
+ * </p>
  */
-public class RemoteLoggingServiceImpl extends RemoteServiceServlet implements RemoteLoggingService {
+public class RemoteLoggingServiceImpl extends RemoteServiceServlet
+    implements BatchedRemoteLoggingService {
+
+  /**
+   * Initialization parameter for the number of worker threads that deobfuscate
+   * and log records. Zero, the default, logs them in the request thread.
+   */
+  public static final String ASYNC_THREADS_PARAM = "gwt.logging.async_threads";
+
+  /**
+   * Initialization parameter for the number of requests whose records can be
+   * waiting for a worker thread; the default is 1000.
+   */
+  public static final String ASYNC_QUEUE_SIZE_PARAM = "gwt.logging.async_queue_size";
+
+  private static final int DEFAULT_ASYNC_QUEUE_SIZE = 1000;
 
   private static Logger logger = Logger.getLogger(RemoteServiceServlet.class.getName());
 
   // No deobfuscator by default
-  private StackTraceDeobfuscator deobfuscator = null;
-  private String loggerNameOverride = null;
+  private volatile StackTraceDeobfuscator deobfuscator = null;
+  private volatile Executor logExecutor = null;
+  private volatile String loggerNameOverride = null;
+
+  /**
+   * The executor created for {@link #ASYNC_THREADS_PARAM}, shut down when the
+   * servlet is destroyed.
+   */
+  private ExecutorService ownedExecutor;
+
+  /**
+   * Overridden to shut down the worker threads created for
+   * {@link #ASYNC_THREADS_PARAM}. Records that are still queued are logged
+   * before the threads exit.
+   */
+  @Override
+  public void destroy() {
+    if (ownedExecutor != null) {
+      ownedExecutor.shutdown();
+    }
+    super.destroy();
+  }
+
+  /**
+   * Overridden to create the worker threads requested by
+   * {@link #ASYNC_THREADS_PARAM}.
+   */
+  @Override
+  public void init(ServletConfig config) throws ServletException {
+    super.init(config);
+    int threads = RPCServletUtils.getNonNegativeInitParameter(config, ASYNC_THREADS_PARAM, 0);
+    if (threads > 0) {
+      int queueSize = RPCServletUtils.getNonNegativeInitParameter(config,
+          ASYNC_QUEUE_SIZE_PARAM, DEFAULT_ASYNC_QUEUE_SIZE);
+      ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60,
+          TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(Math.max(queueSize, 1)),
+          new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+              Thread thread = new Thread(r, "RemoteLogging-" + count.incrementAndGet());
+              thread.setDaemon(true);
+              return thread;
+            }
+          });
+      executor.allowCoreThreadTimeOut(true);
+      ownedExecutor = executor;
+      logExecutor = executor;
+    }
+  }
 
   /**
    * Logs a Log Record which has been serialized using GWT RPC on the server.
-   * @return either an error message, or null if logging is successful.
+   * @return either an error message, or null if logging is successful or the
+   *         record was queued for logging.
    */
   public final String logOnServer(LogRecord lr) {
-    String strongName = getPermutationStrongName();
-    try {
-      RemoteLoggingServiceUtil.logOnServer(
-          lr, strongName, deobfuscator, loggerNameOverride);
-    } catch (RemoteLoggingException e) {
-      logger.log(Level.SEVERE, "Remote logging failed", e);
-      return "Remote logging failed, check stack trace for details.";
-    }
-    return null;
+    return publish(Collections.singletonList(lr));
   }
-  
+
+  /**
+   * Logs Log Records which have been serialized using GWT RPC on the server.
+   * @return either an error message, or null if logging is successful or the
+   *         records were queued for logging.
+   */
+  public final String logOnServerBatch(List<LogRecord> records) {
+    return publish(records);
+  }
+
+  /**
+   * Sets the executor that deobfuscates and logs records, or <code>null</code>
+   * to do so in the request thread. The executor should be bounded, since
+   * records are logged in the request thread when it rejects them; an executor
+   * created for {@link #ASYNC_THREADS_PARAM} is replaced but not shut down.
+   */
+  public void setLogExecutor(Executor executor) {
+    logExecutor = executor;
+  }
+
   /**
    * By default, messages are logged to a logger that has the same name as
    * the logger that created them on the client. If you want to log all messages
@@ -62,6 +160,17 @@ public class RemoteLoggingServiceImpl extends RemoteServiceServlet implements Re
     loggerNameOverride = override;
   }
   
+  /**
+   * Sets the deobfuscator used for the stack traces of logged exceptions.
+   * Unlike {@link #setSymbolMapsDirectory(String)}, this allows the
+   * deobfuscator's symbol cache and symbol map index to be configured; see
+   * {@link StackTraceDeobfuscator#setSymbolCache} and
+   * {@link StackTraceDeobfuscator#setSymbolMapIndexDirectory}.
+   */
+  public void setStackTraceDeobfuscator(StackTraceDeobfuscator deobfuscator) {
+    this.deobfuscator = deobfuscator;
+  }
+
   /**
    * By default, this service does not do any deobfuscation. In order to do
    * server-side deobfuscation, you must copy the symbolMaps files to a
@@ -70,4 +179,38 @@ public class RemoteLoggingServiceImpl extends RemoteServiceServlet implements Re
   public void setSymbolMapsDirectory(String symbolMapsDir) {
     deobfuscator = StackTraceDeobfuscator.fromFileSystem(symbolMapsDir);
   }
+
+  private String logRecords(List<LogRecord> records, String strongName) {
+    String result = null;
+    for (LogRecord lr : records) {
+      try {
+        RemoteLoggingServiceUtil.logOnServer(
+            lr, strongName, deobfuscator, loggerNameOverride);
+      } catch (RemoteLoggingException e) {
+        logger.log(Level.SEVERE, "Remote logging failed", e);
+        result = "Remote logging failed, check stack trace for details.";
+      }
+    }
+    return result;
+  }
+
+  private String publish(final List<LogRecord> records) {
+    // Read the strong name now, since it comes from the request
+    final String strongName = getPermutationStrongName();
+    Executor executor = logExecutor;
+    if (executor != null) {
+      try {
+        executor.execute(new Runnable() {
+          @Override
+          public void run() {
+            logRecords(records, strongName);
+          }
+        });
+        return null;
+      } catch (RejectedExecutionException e) {
+        // The workers are falling behind, so slow this client down instead
+      }
+    }
+    return logRecords(records, strongName);
+  }
 }
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.logging.shared;
+
+import com.google.gwt.user.client.rpc.RemoteServiceRelativePath;
+
+import java.util.List;
+import java.util.logging.LogRecord;
+
+/**
+ * The client-side stub for a logging RPC service that also accepts several
+ * records in one request. Used by
+ * {@link com.google.gwt.logging.client.BatchingRemoteLogHandler}.
+ */
+@RemoteServiceRelativePath("remote_logging")
+public interface BatchedRemoteLoggingService extends RemoteLoggingService {
+  /**
+   * Logs several records in one request.
+   *
+   * @return either an error message, or null if logging is successful or the
+   *         records were queued for logging
+   */
+  String logOnServerBatch(List<LogRecord> records);
+}
@@ -0,0 +1,28 @@
+/*
+ * Copyright 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.logging.shared;
+
+import com.google.gwt.user.client.rpc.AsyncCallback;
+
+import java.util.List;
+import java.util.logging.LogRecord;
+
+/**
+ * The async counterpart of <code>BatchedRemoteLoggingService</code>.
+ */
+public interface BatchedRemoteLoggingServiceAsync extends RemoteLoggingServiceAsync {
+  void logOnServerBatch(List<LogRecord> records, AsyncCallback<String> callback);
+}
@@ -0,0 +1,384 @@
+/*
+ * Copyright 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.user.client.rpc;
+
+import com.google.gwt.core.client.GWT;
+import com.google.gwt.core.client.Scheduler;
+import com.google.gwt.core.client.Scheduler.ScheduledCommand;
+import com.google.gwt.http.client.Header;
+import com.google.gwt.http.client.Request;
+import com.google.gwt.http.client.RequestBuilder;
+import com.google.gwt.http.client.RequestCallback;
+import com.google.gwt.http.client.RequestException;
+import com.google.gwt.http.client.Response;
+import com.google.gwt.user.client.rpc.impl.RpcBatch;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An {@link RpcRequestBuilder} that sends the calls made in the same event
+ * loop tick to the same service entry point as a single HTTP request, which
+ * saves round trips on high latency connections. The server must be a
+ * {@link com.google.gwt.user.server.rpc.RemoteServiceServlet}, which answers
+ * each call of the batch separately.
+ * <p>
+ * Calls are queued when they are made and sent when the browser event loop
+ * regains control, with {@link Scheduler#scheduleFinally(ScheduledCommand)},
+ * or as soon as a batch is full. A batch of one call is sent as an ordinary
+ * request. A batch of several calls uses the headers, credentials and timeout
+ * of its first call, and is always answered in the default format, even if
+ * binary responses are requested. To batch calls to several services, give
+ * them the same instance with {@link ServiceDefTarget#setRpcRequestBuilder}.
+ * </p>
+ * <p>
+ * Canceling the {@link Request} returned for a call that has not been sent
+ * yet removes the call from its batch. Once the batch is sent, canceling a
+ * call only prevents its callback from being called.
+ * </p>
+ */
+public class BatchingRpcRequestBuilder extends RpcRequestBuilder {
+
+  /**
+   * The default maximum number of calls per batch.
+   */
+  public static final int DEFAULT_MAX_BATCH_SIZE = 20;
+
+  /**
+   * The calls queued for a service entry point.
+   */
+  private final class Batch implements ScheduledCommand {
+    private final List<BatchedCall> calls = new ArrayList<BatchedCall>();
+    private boolean sent;
+    private final String url;
+
+    Batch(String url) {
+      this.url = url;
+    }
+
+    @Override
+    public void execute() {
+      flush(this);
+    }
+  }
+
+  /**
+   * The request returned for a queued call.
+   */
+  private static final class BatchedCall extends Request {
+    private final BatchedRequestBuilder builder;
+    private boolean done;
+
+    /**
+     * The request the call was sent with, if it was sent on its own.
+     */
+    private Request request;
+
+    BatchedCall(BatchedRequestBuilder builder) {
+      this.builder = builder;
+    }
+
+    @Override
+    public void cancel() {
+      done = true;
+      if (request != null) {
+        request.cancel();
+      }
+    }
+
+    @Override
+    public boolean isPending() {
+      if (request != null) {
+        return request.isPending();
+      }
+      return !done;
+    }
+  }
+
+  /**
+   * Records how a call is configured and queues it when it is sent.
+   */
+  private final class BatchedRequestBuilder extends RequestBuilder {
+    private final Map<String, String> headers = new LinkedHashMap<String, String>();
+    private boolean includeCredentials;
+
+    BatchedRequestBuilder(String url) {
+      super(POST, url);
+    }
+
+    @Override
+    public Request send() throws RequestException {
+      if (getCallback() == null) {
+        throw new NullPointerException("callback cannot be null");
+      }
+      return enqueue(this);
+    }
+
+    @Override
+    public Request sendRequest(String requestData, RequestCallback callback)
+        throws RequestException {
+      setRequestData(requestData);
+      setCallback(callback);
+      return send();
+    }
+
+    @Override
+    public void setHeader(String header, String value) {
+      super.setHeader(header, value);
+      headers.put(header, value);
+    }
+
+    @Override
+    public void setIncludeCredentials(boolean includeCredentials) {
+      super.setIncludeCredentials(includeCredentials);
+      this.includeCredentials = includeCredentials;
+    }
+
+    Request sendNow() throws RequestException {
+      return super.send();
+    }
+  }
+
+  /**
+   * The response to one call of a batch.
+   */
+  private static final class BatchedResponse extends Response {
+    private final Response batchResponse;
+    private final RpcBatch.Entry entry;
+
+    BatchedResponse(Response batchResponse, RpcBatch.Entry entry) {
+      this.batchResponse = batchResponse;
+      this.entry = entry;
+    }
+
+    @Override
+    public String getHeader(String header) {
+      return batchResponse.getHeader(header);
+    }
+
+    @Override
+    public Header[] getHeaders() {
+      return batchResponse.getHeaders();
+    }
+
+    @Override
+    public String getHeadersAsString() {
+      return batchResponse.getHeadersAsString();
+    }
+
+    @Override
+    public int getStatusCode() {
+      return entry.getStatusCode();
+    }
+
+    @Override
+    public String getStatusText() {
+      return entry.getStatusCode() == batchResponse.getStatusCode()
+          ? batchResponse.getStatusText() : "";
+    }
+
+    @Override
+    public String getText() {
+      return entry.getPayload();
+    }
+  }
+
+  private final int maxBatchSize;
+
+  private final Map<String, Batch> pendingBatches = new HashMap<String, Batch>();
+
+  /**
+   * Creates a builder that sends up to {@value #DEFAULT_MAX_BATCH_SIZE} calls
+   * per request.
+   */
+  public BatchingRpcRequestBuilder() {
+    this(DEFAULT_MAX_BATCH_SIZE);
+  }
+
+  /**
+   * Creates a builder that sends up to <code>maxBatchSize</code> calls per
+   * request. The server limits the size of the batches it accepts too, as
+   * configured by
+   * {@link com.google.gwt.user.server.rpc.RemoteServiceServlet#MAX_BATCH_SIZE_PARAM}.
+   *
+   * @param maxBatchSize the maximum number of calls per request
+   * @throws IllegalArgumentException if <code>maxBatchSize</code> is less than
+   *           one
+   */
+  public BatchingRpcRequestBuilder(int maxBatchSize) {
+    if (maxBatchSize < 1) {
+      throw new IllegalArgumentException("maxBatchSize must be positive");
+    }
+    this.maxBatchSize = maxBatchSize;
+  }
+
+  /**
+   * Returns the maximum number of calls sent per request.
+   */
+  public final int getMaxBatchSize() {
+    return maxBatchSize;
+  }
+
+  /**
+   * Creates a RequestBuilder that queues the call when it is sent. Subclasses
+   * must return the RequestBuilder created by this implementation.
+   */
+  @Override
+  protected RequestBuilder doCreate(String serviceEntryPoint) {
+    return new BatchedRequestBuilder(serviceEntryPoint);
+  }
+
+  private Request enqueue(BatchedRequestBuilder builder) {
+    Batch batch = pendingBatches.get(builder.getUrl());
+    if (batch == null) {
+      batch = new Batch(builder.getUrl());
+      pendingBatches.put(batch.url, batch);
+      Scheduler.get().scheduleFinally(batch);
+    }
+
+    BatchedCall call = new BatchedCall(builder);
+    batch.calls.add(call);
+    if (batch.calls.size() == maxBatchSize) {
+      flush(batch);
+    }
+    return call;
+  }
+
+  private void flush(Batch batch) {
+    if (pendingBatches.get(batch.url) == batch) {
+      pendingBatches.remove(batch.url);
+    }
+    if (batch.sent) {
+      return;
+    }
+    batch.sent = true;
+
+    final List<BatchedCall> calls = new ArrayList<BatchedCall>();
+    for (BatchedCall call : batch.calls) {
+      if (!call.done) {
+        calls.add(call);
+      }
+    }
+
+    if (calls.size() == 1) {
+      BatchedCall call = calls.get(0);
+      try {
+        call.request = call.builder.sendNow();
+      } catch (RequestException e) {
+        call.done = true;
+        call.builder.getCallback().onError(call, e);
+      }
+      return;
+    }
+
+    if (calls.isEmpty()) {
+      return;
+    }
+
+    BatchedRequestBuilder first = calls.get(0).builder;
+    RequestBuilder rb = new RequestBuilder(RequestBuilder.POST, batch.url);
+    for (Map.Entry<String, String> header : first.headers.entrySet()) {
+      if (!RESPONSE_FORMAT_HEADER.equals(header.getKey())) {
+        rb.setHeader(header.getKey(), header.getValue());
+      }
+    }
+    rb.setHeader(BATCH_HEADER, String.valueOf(calls.size()));
+    rb.setIncludeCredentials(first.includeCredentials);
+    rb.setTimeoutMillis(first.getTimeoutMillis());
+    if (first.getUser() != null) {
+      rb.setUser(first.getUser());
+    }
+    if (first.getPassword() != null) {
+      rb.setPassword(first.getPassword());
+    }
+
+    StringBuilder requestData = new StringBuilder();
+    for (BatchedCall call : calls) {
+      RpcBatch.appendRequest(requestData, call.builder.getRequestData());
+    }
+    rb.setRequestData(requestData.toString());
+
+    rb.setCallback(new RequestCallback() {
+      @Override
+      public void onError(Request request, Throwable exception) {
+        for (BatchedCall call : calls) {
+          if (!call.done) {
+            call.done = true;
+            fireOnError(call, exception);
+          }
+        }
+      }
+
+      @Override
+      public void onResponseReceived(Request request, Response response) {
+        List<RpcBatch.Entry> entries = null;
+        if (response.getStatusCode() == Response.SC_OK) {
+          // Anything else, such as a failure of the whole batch, is reported
+          // to each call
+          try {
+            entries = RpcBatch.decodeResponses(response.getText());
+          } catch (SerializationException e) {
+            onError(request, e);
+            return;
+          }
+          if (entries.size() != calls.size()) {
+            onError(request, new SerializationException("Expected " + calls.size()
+                + " responses in batch but got " + entries.size()));
+            return;
+          }
+        }
+
+        for (int i = 0; i < calls.size(); i++) {
+          BatchedCall call = calls.get(i);
+          if (!call.done) {
+            call.done = true;
+            fireOnResponseReceived(call,
+                entries == null ? response : new BatchedResponse(response, entries.get(i)));
+          }
+        }
+      }
+    });
+
+    try {
+      rb.send();
+    } catch (RequestException e) {
+      rb.getCallback().onError(null, e);
+    }
+  }
+
+  /**
+   * Calls back one call of a batch, so that an exception thrown by the
+   * callback does not keep the other calls from being called back.
+   */
+  private void fireOnError(BatchedCall call, Throwable exception) {
+    try {
+      call.builder.getCallback().onError(call, exception);
+    } catch (RuntimeException e) {
+      GWT.reportUncaughtException(e);
+    }
+  }
+
+  private void fireOnResponseReceived(BatchedCall call, Response response) {
+    try {
+      call.builder.getCallback().onResponseReceived(call, response);
+    } catch (RuntimeException e) {
+      GWT.reportUncaughtException(e);
+    }
+  }
+}
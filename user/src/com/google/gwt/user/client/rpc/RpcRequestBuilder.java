@@ -18,6 +18,8 @@ package com.google.gwt.user.client.rpc;
 import com.google.gwt.core.client.GWT;
 import com.google.gwt.http.client.RequestBuilder;
 import com.google.gwt.http.client.RequestCallback;
+import com.google.gwt.typedarrays.shared.TypedArrays;
+import com.google.gwt.xhr.client.XMLHttpRequest.ResponseType;
 
 /**
  * This class encapsulates the logic necessary to configure a RequestBuilder for
@@ -48,11 +50,44 @@ public class RpcRequestBuilder {
    */
   public static final String STRONG_NAME_HEADER = "X-GWT-Permutation";
 
+  /**
+   * Used by {@link #doFinish} when binary responses are
+   * {@link #setBinaryResponsesRequested(boolean) requested}, with the value
+   * {@value #BINARY_RESPONSE_FORMAT}.
+   */
+  /*
+   * NB: Also used by RemoteServiceServlet.
+   */
+  public static final String RESPONSE_FORMAT_HEADER = "X-GWT-RPC-Response-Format";
+
+  /**
+   * The value of the {@value #RESPONSE_FORMAT_HEADER} header that asks for a
+   * binary response.
+   */
+  public static final String BINARY_RESPONSE_FORMAT = "binary";
+
+  /**
+   * The content type of binary responses, by which they are told apart from
+   * the default format.
+   */
+  public static final String BINARY_RESPONSE_CONTENT_TYPE = "application/x-gwt-rpc-binary";
+
+  /**
+   * Set by {@link BatchingRpcRequestBuilder} on requests that carry several
+   * calls, to the number of calls.
+   */
+  /*
+   * NB: Also used by RemoteServiceServlet.
+   */
+  public static final String BATCH_HEADER = "X-GWT-RPC-Batch";
+
   /**
    * Not exposed directly to the subclass.
    */
   private RequestBuilder builder;
 
+  private boolean binaryResponsesRequested;
+
   /**
    * Initialize the RpcRequestBuilder. This method must be called before any of
    * the other methods in this class may be called. Calling <code>create</code>
@@ -89,6 +124,34 @@ public class RpcRequestBuilder {
     }
   }
 
+  /**
+   * Returns whether binary responses are requested.
+   *
+   * @see #setBinaryResponsesRequested(boolean)
+   */
+  public final boolean isBinaryResponsesRequested() {
+    return binaryResponsesRequested;
+  }
+
+  /**
+   * Sets whether requests ask the server for a binary response, which is
+   * smaller and faster to decode than the default format. A service selects
+   * binary responses by being given an RpcRequestBuilder that requests them
+   * through {@link ServiceDefTarget#setRpcRequestBuilder}.
+   * <p>
+   * The request is only made in browsers that support typed arrays, and the
+   * server only answers it if it has binary responses enabled; other
+   * responses are handled as usual.
+   * </p>
+   *
+   * @param requested whether to request binary responses
+   * @return <code>this</code>
+   */
+  public final RpcRequestBuilder setBinaryResponsesRequested(boolean requested) {
+    binaryResponsesRequested = requested;
+    return this;
+  }
+
   /**
    * Sets the RequestCallback to be used by the RequestBuilder. Delegates to
    * {@link #doSetCallback}.
@@ -159,13 +222,20 @@ public class RpcRequestBuilder {
    * caller.
    * <p>
    * The default implementation sets the {@value #STRONG_NAME_HEADER} header to
-   * the value returned by {@link GWT#getPermutationStrongName()}.
+   * the value returned by {@link GWT#getPermutationStrongName()}. If binary
+   * responses are requested and typed arrays are supported, it also sets the
+   * {@value #RESPONSE_FORMAT_HEADER} header and has the response read as an
+   * {@link com.google.gwt.typedarrays.shared.ArrayBuffer ArrayBuffer}.
    * 
    * @param rb The RequestBuilder that is currently being configured
    */
   protected void doFinish(RequestBuilder rb) {
     rb.setHeader(STRONG_NAME_HEADER, GWT.getPermutationStrongName());
     rb.setHeader(MODULE_BASE_HEADER, GWT.getModuleBaseURL());
+    if (binaryResponsesRequested && TypedArrays.isSupported()) {
+      rb.setHeader(RESPONSE_FORMAT_HEADER, BINARY_RESPONSE_FORMAT);
+      rb.setResponseType(ResponseType.ArrayBuffer);
+    }
   }
 
   /**
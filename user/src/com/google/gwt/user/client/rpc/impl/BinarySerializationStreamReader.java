@@ -0,0 +1,216 @@
+/*
+ * Copyright 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.user.client.rpc.impl;
+
+import com.google.gwt.typedarrays.shared.ArrayBuffer;
+import com.google.gwt.typedarrays.shared.DataView;
+import com.google.gwt.typedarrays.shared.TypedArrays;
+import com.google.gwt.typedarrays.shared.Uint8Array;
+import com.google.gwt.user.client.rpc.IncompatibleRemoteServiceException;
+import com.google.gwt.user.client.rpc.SerializationException;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the binary RPC response format written by the server when a client
+ * asks for it with
+ * {@link com.google.gwt.user.client.rpc.RpcRequestBuilder#setBinaryResponsesRequested(boolean)}.
+ * <p>
+ * Unlike the default format, which is read from the end, a binary stream is
+ * read from the start, using typed arrays rather than evaluating JavaScript.
+ * After the response's <code>//OK</code> or <code>//EX</code> prefix, it holds:
+ * <ul>
+ * <li>the version and the flags, as ints;</li>
+ * <li>the number of strings in the string table, as a varint, followed by
+ * each string as the varint length of its UTF-8 encoding and that encoding;
+ * </li>
+ * <li>the values, in the order they were written.</li>
+ * </ul>
+ * A varint holds an unsigned number in groups of seven bits, least significant
+ * first, with the high bit of every byte but the last set. Ints, shorts and
+ * longs are written as the varint of their zigzag encoding, so that small
+ * negative numbers are short too, and chars as the varint of their value.
+ * Booleans and bytes take a byte each, and floats and doubles are written as
+ * big-endian IEEE 754 values. As in the default format, strings and objects
+ * are referenced by int.
+ * </p>
+ */
+public final class BinarySerializationStreamReader extends AbstractSerializationStreamReader {
+
+  private ArrayBuffer buffer;
+
+  private DataView dataView;
+
+  private int position;
+
+  private final Serializer serializer;
+
+  private String[] stringTable;
+
+  public BinarySerializationStreamReader(Serializer serializer) {
+    this.serializer = serializer;
+  }
+
+  /**
+   * Prepares to read a stream held in a string with one char per byte, as a
+   * response read as ISO-8859-1 or with the <code>x-user-defined</code>
+   * charset is. Only the low eight bits of each char are used, so both
+   * mappings of the bytes above 0x7F are read correctly.
+   *
+   * @param encoded the stream, starting at the version
+   * @throws SerializationException if the stream header is invalid
+   */
+  @Override
+  public void prepareToRead(String encoded) throws SerializationException {
+    Uint8Array bytes = TypedArrays.createUint8Array(encoded.length());
+    for (int i = 0; i < encoded.length(); i++) {
+      bytes.set(i, encoded.charAt(i) & 0xFF);
+    }
+    prepareToRead(bytes.buffer(), 0);
+  }
+
+  /**
+   * Prepares to read the stream that starts at <code>offset</code> in
+   * <code>buffer</code>.
+   *
+   * @param buffer the response
+   * @param offset the position of the version, after any prefix
+   * @throws SerializationException if the stream header is invalid
+   */
+  public void prepareToRead(ArrayBuffer buffer, int offset) throws SerializationException {
+    this.buffer = buffer;
+    dataView = TypedArrays.createDataView(buffer);
+    position = offset;
+
+    try {
+      super.prepareToRead(null);
+
+      if (getVersion() < SERIALIZATION_STREAM_MIN_VERSION
+          || getVersion() > SERIALIZATION_STREAM_MAX_VERSION) {
+        throw new IncompatibleRemoteServiceException("Got version " + getVersion()
+            + ", expected version between " + SERIALIZATION_STREAM_MIN_VERSION + " and "
+            + SERIALIZATION_STREAM_MAX_VERSION);
+      }
+
+      if (!areFlagsValid()) {
+        throw new IncompatibleRemoteServiceException("Got an unknown flag from "
+            + "server: " + getFlags());
+      }
+
+      long stringCount = readVarint();
+      if (stringCount > buffer.byteLength() - position) {
+        throw new SerializationException("Invalid string table size " + stringCount);
+      }
+      stringTable = new String[(int) stringCount];
+      Uint8Array bytes = TypedArrays.createUint8Array(buffer);
+      for (int i = 0; i < stringTable.length; i++) {
+        stringTable[i] = readUtf8(bytes, (int) readVarint());
+      }
+    } catch (IndexOutOfBoundsException e) {
+      throw new SerializationException("Truncated binary RPC payload", e);
+    }
+  }
+
+  @Override
+  public boolean readBoolean() {
+    return dataView.getUint8(position++) != 0;
+  }
+
+  @Override
+  public byte readByte() {
+    return dataView.getInt8(position++);
+  }
+
+  @Override
+  public char readChar() {
+    return (char) readVarint();
+  }
+
+  @Override
+  public double readDouble() {
+    double value = dataView.getFloat64(position);
+    position += 8;
+    return value;
+  }
+
+  @Override
+  public float readFloat() {
+    float value = dataView.getFloat32(position);
+    position += 4;
+    return value;
+  }
+
+  @Override
+  public int readInt() {
+    int value = (int) readVarint();
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  @Override
+  public long readLong() {
+    long value = readVarint();
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  @Override
+  public short readShort() {
+    return (short) readInt();
+  }
+
+  @Override
+  public String readString() {
+    return getString(readInt());
+  }
+
+  @Override
+  protected Object deserialize(String typeSignature) throws SerializationException {
+    int id = reserveDecodedObjectIndex();
+    Object instance = serializer.instantiate(this, typeSignature);
+    rememberDecodedObject(id, instance);
+    serializer.deserialize(this, instance, typeSignature);
+    return instance;
+  }
+
+  @Override
+  protected String getString(int index) {
+    // index is 1-based
+    return index > 0 ? stringTable[index - 1] : null;
+  }
+
+  private String readUtf8(Uint8Array bytes, int length) {
+    if (position + length > buffer.byteLength()) {
+      throw new IndexOutOfBoundsException();
+    }
+    byte[] utf8 = new byte[length];
+    for (int i = 0; i < length; i++) {
+      utf8[i] = (byte) bytes.get(position + i);
+    }
+    position += length;
+    return new String(utf8, StandardCharsets.UTF_8);
+  }
+
+  private long readVarint() {
+    long value = 0;
+    int shift = 0;
+    int b;
+    do {
+      b = dataView.getUint8(position++);
+      value |= (long) (b & 0x7F) << shift;
+      shift += 7;
+    } while ((b & 0x80) != 0);
+    return value;
+  }
+}
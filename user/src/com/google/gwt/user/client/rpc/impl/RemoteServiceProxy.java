@@ -20,6 +20,7 @@ import com.google.gwt.http.client.Request;
 import com.google.gwt.http.client.RequestBuilder;
 import com.google.gwt.http.client.RequestCallback;
 import com.google.gwt.http.client.RequestException;
+import com.google.gwt.typedarrays.shared.ArrayBuffer;
 import com.google.gwt.user.client.rpc.AsyncCallback;
 import com.google.gwt.user.client.rpc.HasRpcToken;
 import com.google.gwt.user.client.rpc.InvocationException;
@@ -243,6 +244,24 @@ public abstract class RemoteServiceProxy implements SerializationStreamFactory,
     this.serializationPolicyName = serializationPolicyName;
   }
 
+  /**
+   * Returns a {@link SerializationStreamReader} that is ready for reading a
+   * binary response, as requested with
+   * {@link RpcRequestBuilder#setBinaryResponsesRequested(boolean)}.
+   *
+   * @param encoded the response of an RPC request, including its
+   *          <code>//OK</code> or <code>//EX</code> prefix
+   * @return {@link SerializationStreamReader} that is ready for reading
+   * @throws SerializationException
+   */
+  public SerializationStreamReader createBinaryStreamReader(ArrayBuffer encoded)
+      throws SerializationException {
+    BinarySerializationStreamReader binarySerializationStreamReader =
+        new BinarySerializationStreamReader(serializer);
+    binarySerializationStreamReader.prepareToRead(encoded, 4);
+    return binarySerializationStreamReader;
+  }
+
   /**
    * Returns a {@link com.google.gwt.user.client.rpc.SerializationStreamReader
    * SerializationStreamReader} that is ready for reading.
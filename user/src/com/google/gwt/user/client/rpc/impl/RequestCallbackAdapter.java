@@ -18,9 +18,13 @@ package com.google.gwt.user.client.rpc.impl;
 import com.google.gwt.http.client.Request;
 import com.google.gwt.http.client.RequestCallback;
 import com.google.gwt.http.client.Response;
+import com.google.gwt.typedarrays.shared.ArrayBuffer;
+import com.google.gwt.typedarrays.shared.TypedArrays;
+import com.google.gwt.typedarrays.shared.Uint8Array;
 import com.google.gwt.user.client.rpc.AsyncCallback;
 import com.google.gwt.user.client.rpc.IncompatibleRemoteServiceException;
 import com.google.gwt.user.client.rpc.InvocationException;
+import com.google.gwt.user.client.rpc.RpcRequestBuilder;
 import com.google.gwt.user.client.rpc.RpcTokenException;
 import com.google.gwt.user.client.rpc.RpcTokenExceptionHandler;
 import com.google.gwt.user.client.rpc.SerializationException;
@@ -199,23 +203,40 @@ public class RequestCallbackAdapter<T> implements RequestCallback {
     T result = null;
     Throwable caught = null;
     try {
-      String encodedResponse = response.getText();
-      int statusCode = response.getStatusCode();
-      boolean toss = statsContext.isStatsAvailable()
-          && statsContext.stats(
-              statsContext.bytesStat(methodName, encodedResponse.length(), "responseReceived"));
-
-      if (statusCode != Response.SC_OK) {
-        caught = new StatusCodeException(statusCode, response.getStatusText(), encodedResponse);
-      } else if (encodedResponse == null) {
-        // This can happen if the XHR is interrupted by the server dying
-        caught = new InvocationException("No response payload from " + methodName);
-      } else if (RemoteServiceProxy.isReturnValue(encodedResponse)) {
-        result = (T) responseReader.read(streamFactory.createStreamReader(encodedResponse));
-      } else if (RemoteServiceProxy.isThrownException(encodedResponse)) {
-        caught = (Throwable) streamFactory.createStreamReader(encodedResponse).readObject();
+      ArrayBuffer binaryResponse = getBinaryResponse(response);
+      if (binaryResponse != null) {
+        boolean toss = statsContext.isStatsAvailable()
+            && statsContext.stats(statsContext.bytesStat(methodName,
+                binaryResponse.byteLength(), "responseReceived"));
+
+        RemoteServiceProxy proxy = (RemoteServiceProxy) streamFactory;
+        String prefix = getBinaryResponsePrefix(binaryResponse);
+        if (RemoteServiceProxy.isReturnValue(prefix)) {
+          result = (T) responseReader.read(proxy.createBinaryStreamReader(binaryResponse));
+        } else if (RemoteServiceProxy.isThrownException(prefix)) {
+          caught = (Throwable) proxy.createBinaryStreamReader(binaryResponse).readObject();
+        } else {
+          caught = new InvocationException(response.getText() + " from " + methodName);
+        }
       } else {
-        caught = new InvocationException(encodedResponse + " from " + methodName);
+        String encodedResponse = response.getText();
+        int statusCode = response.getStatusCode();
+        boolean toss = statsContext.isStatsAvailable()
+            && statsContext.stats(
+                statsContext.bytesStat(methodName, encodedResponse.length(), "responseReceived"));
+
+        if (statusCode != Response.SC_OK) {
+          caught = new StatusCodeException(statusCode, response.getStatusText(), encodedResponse);
+        } else if (encodedResponse == null) {
+          // This can happen if the XHR is interrupted by the server dying
+          caught = new InvocationException("No response payload from " + methodName);
+        } else if (RemoteServiceProxy.isReturnValue(encodedResponse)) {
+          result = (T) responseReader.read(streamFactory.createStreamReader(encodedResponse));
+        } else if (RemoteServiceProxy.isThrownException(encodedResponse)) {
+          caught = (Throwable) streamFactory.createStreamReader(encodedResponse).readObject();
+        } else {
+          caught = new InvocationException(encodedResponse + " from " + methodName);
+        }
       }
     } catch (com.google.gwt.user.client.rpc.SerializationException e) {
       caught = new IncompatibleRemoteServiceException(
@@ -242,4 +263,35 @@ public class RequestCallbackAdapter<T> implements RequestCallback {
           && statsContext.stats(statsContext.timeStat(methodName, returned, "end"));
     }
   }
+
+  /**
+   * Returns the body of a successful binary response, which is only sent if
+   * the request asked for one, or <code>null</code> if the response is in the
+   * default format.
+   */
+  private ArrayBuffer getBinaryResponse(Response response) {
+    if (response.getStatusCode() != Response.SC_OK
+        || !(streamFactory instanceof RemoteServiceProxy)) {
+      return null;
+    }
+    String contentType = response.getHeader(RpcRequestBuilder.CONTENT_TYPE_HEADER);
+    if (contentType == null
+        || !contentType.startsWith(RpcRequestBuilder.BINARY_RESPONSE_CONTENT_TYPE)) {
+      return null;
+    }
+    return response.getArrayBuffer();
+  }
+
+  /**
+   * Returns the <code>//OK</code> or <code>//EX</code> prefix of a binary
+   * response, which is ASCII as in the default format.
+   */
+  private static String getBinaryResponsePrefix(ArrayBuffer binaryResponse) {
+    Uint8Array bytes = TypedArrays.createUint8Array(binaryResponse);
+    StringBuilder prefix = new StringBuilder();
+    for (int i = 0; i < Math.min(4, bytes.length()); i++) {
+      prefix.append((char) bytes.get(i));
+    }
+    return prefix.toString();
+  }
 }
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.user.client.rpc.impl;
+
+import com.google.gwt.user.client.rpc.SerializationException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Encodes and decodes the payloads of batched RPC requests, which carry
+ * several calls to the same service entry point in one HTTP request. Used by
+ * {@link com.google.gwt.user.client.rpc.BatchingRpcRequestBuilder} and by
+ * {@link com.google.gwt.user.server.rpc.RemoteServiceServlet}.
+ * <p>
+ * A batched request is the concatenation of the payloads of its calls, each
+ * as <code>length:payload</code>. The response holds the response to each
+ * call, in the same order, as <code>status:length:payload</code>, where status
+ * is the HTTP status code the call would have been answered with on its own.
+ * Lengths are decimal numbers of chars.
+ * </p>
+ */
+public final class RpcBatch {
+
+  /**
+   * The response to one call of a batch.
+   */
+  public static final class Entry {
+    private final String payload;
+    private final int statusCode;
+
+    public Entry(int statusCode, String payload) {
+      this.statusCode = statusCode;
+      this.payload = payload;
+    }
+
+    public String getPayload() {
+      return payload;
+    }
+
+    public int getStatusCode() {
+      return statusCode;
+    }
+  }
+
+  /**
+   * Appends the payload of a call to a batched request.
+   */
+  public static void appendRequest(StringBuilder batch, String payload) {
+    batch.append(payload.length()).append(':').append(payload);
+  }
+
+  /**
+   * Appends the response to a call to a batched response.
+   */
+  public static void appendResponse(StringBuilder batch, int statusCode, String payload) {
+    batch.append(statusCode).append(':');
+    appendRequest(batch, payload);
+  }
+
+  /**
+   * Returns the payloads of the calls in a batched request.
+   *
+   * @param batch the batched request
+   * @param maxCalls the number of calls above which the request is rejected
+   * @throws SerializationException if the request is malformed or has more
+   *           than <code>maxCalls</code> calls
+   */
+  public static List<String> decodeRequests(String batch, int maxCalls)
+      throws SerializationException {
+    List<String> toReturn = new ArrayList<String>();
+    int[] position = new int[1];
+    while (position[0] < batch.length()) {
+      if (toReturn.size() == maxCalls) {
+        throw new SerializationException("Too many calls in batch; the limit is " + maxCalls);
+      }
+      toReturn.add(readPayload(batch, position));
+    }
+    return toReturn;
+  }
+
+  /**
+   * Returns the responses to the calls of a batched request.
+   *
+   * @throws SerializationException if the response is malformed
+   */
+  public static List<Entry> decodeResponses(String batch) throws SerializationException {
+    List<Entry> toReturn = new ArrayList<Entry>();
+    int[] position = new int[1];
+    while (position[0] < batch.length()) {
+      int statusCode = readNumber(batch, position);
+      toReturn.add(new Entry(statusCode, readPayload(batch, position)));
+    }
+    return toReturn;
+  }
+
+  private static int readNumber(String batch, int[] position) throws SerializationException {
+    int start = position[0];
+    int end = batch.indexOf(':', start);
+    // Lengths and status codes are well under ten digits
+    if (end <= start || end - start > 9) {
+      throw new SerializationException("Malformed batch at position " + start);
+    }
+    int value = 0;
+    for (int i = start; i < end; i++) {
+      int digit = batch.charAt(i) - '0';
+      if (digit < 0 || digit > 9) {
+        throw new SerializationException("Malformed batch at position " + start);
+      }
+      value = value * 10 + digit;
+    }
+    position[0] = end + 1;
+    return value;
+  }
+
+  private static String readPayload(String batch, int[] position)
+      throws SerializationException {
+    int length = readNumber(batch, position);
+    int start = position[0];
+    if (length > batch.length() - start) {
+      throw new SerializationException("Truncated batch at position " + start);
+    }
+    position[0] = start + length;
+    return batch.substring(start, start + length);
+  }
+
+  private RpcBatch() {
+  }
+}
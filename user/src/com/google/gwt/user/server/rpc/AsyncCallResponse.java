@@ -0,0 +1,304 @@
+/*
+ * Copyright 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.user.server.rpc;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * The response of a call that {@link RemoteServiceServlet} runs on an
+ * executor. When the call times out, the response is taken away from it: from
+ * then on, the call's attempts to change the response fail with an
+ * {@link IllegalStateException}, and the timeout is answered instead. A call
+ * that has started writing its body is given a short grace period to finish,
+ * so that the two never write the same response; if it is still writing after
+ * that, the response is abandoned.
+ */
+class AsyncCallResponse extends HttpServletResponseWrapper {
+
+  /**
+   * What {@link AsyncCallResponse#timeOut(long)} did to the response.
+   */
+  enum TimeoutOutcome {
+    /**
+     * The call finished first; it completes the request itself.
+     */
+    FINISHED,
+    /**
+     * The call had not started writing; the timeout answers the request.
+     */
+    TIMED_OUT,
+    /**
+     * The call was still writing its body at the end of the grace period. The
+     * response can't be answered anymore and the request is completed as is.
+     */
+    ABANDONED
+  }
+
+  private final Object lock = new Object();
+
+  /**
+   * Whether the call has started writing the response body.
+   */
+  private boolean writing;
+
+  private boolean finished;
+
+  private boolean timedOut;
+
+  AsyncCallResponse(HttpServletResponse response) {
+    super(response);
+  }
+
+  @Override
+  public void addCookie(Cookie cookie) {
+    synchronized (lock) {
+      checkNotTimedOut();
+      super.addCookie(cookie);
+    }
+  }
+
+  @Override
+  public void addDateHeader(String name, long date) {
+    synchronized (lock) {
+      checkNotTimedOut();
+      super.addDateHeader(name, date);
+    }
+  }
+
+  @Override
+  public void addHeader(String name, String value) {
+    synchronized (lock) {
+      checkNotTimedOut();
+      super.addHeader(name, value);
+    }
+  }
+
+  @Override
+  public void addIntHeader(String name, int value) {
+    synchronized (lock) {
+      checkNotTimedOut();
+      super.addIntHeader(name, value);
+    }
+  }
+
+  @Override
+  public void flushBuffer() throws IOException {
+    synchronized (lock) {
+      checkNotTimedOut();
+      writing = true;
+      super.flushBuffer();
+    }
+  }
+
+  @Override
+  public ServletOutputStream getOutputStream() throws IOException {
+    synchronized (lock) {
+      checkNotTimedOut();
+      writing = true;
+      return super.getOutputStream();
+    }
+  }
+
+  @Override
+  public PrintWriter getWriter() throws IOException {
+    synchronized (lock) {
+      checkNotTimedOut();
+      writing = true;
+      return super.getWriter();
+    }
+  }
+
+  @Override
+  public void reset() {
+    synchronized (lock) {
+      checkNotTimedOut();
+      super.reset();
+    }
+  }
+
+  @Override
+  public void resetBuffer() {
+    synchronized (lock) {
+      checkNotTimedOut();
+      super.resetBuffer();
+    }
+  }
+
+  @Override
+  public void sendError(int sc) throws IOException {
+    synchronized (lock) {
+      checkNotTimedOut();
+      writing = true;
+      super.sendError(sc);
+    }
+  }
+
+  @Override
+  public void sendError(int sc, String msg) throws IOException {
+    synchronized (lock) {
+      checkNotTimedOut();
+      writing = true;
+      super.sendError(sc, msg);
+    }
+  }
+
+  @Override
+  public void sendRedirect(String location) throws IOException {
+    synchronized (lock) {
+      checkNotTimedOut();
+      writing = true;
+      super.sendRedirect(location);
+    }
+  }
+
+  @Override
+  public void setBufferSize(int size) {
+    synchronized (lock) {
+      checkNotTimedOut();
+      super.setBufferSize(size);
+    }
+  }
+
+  @Override
+  public void setCharacterEncoding(String charset) {
+    synchronized (lock) {
+      checkNotTimedOut();
+      super.setCharacterEncoding(charset);
+    }
+  }
+
+  @Override
+  public void setContentLength(int len) {
+    synchronized (lock) {
+      checkNotTimedOut();
+      super.setContentLength(len);
+    }
+  }
+
+  @Override
+  public void setContentType(String type) {
+    synchronized (lock) {
+      checkNotTimedOut();
+      super.setContentType(type);
+    }
+  }
+
+  @Override
+  public void setDateHeader(String name, long date) {
+    synchronized (lock) {
+      checkNotTimedOut();
+      super.setDateHeader(name, date);
+    }
+  }
+
+  @Override
+  public void setHeader(String name, String value) {
+    synchronized (lock) {
+      checkNotTimedOut();
+      super.setHeader(name, value);
+    }
+  }
+
+  @Override
+  public void setIntHeader(String name, int value) {
+    synchronized (lock) {
+      checkNotTimedOut();
+      super.setIntHeader(name, value);
+    }
+  }
+
+  @Override
+  public void setLocale(Locale loc) {
+    synchronized (lock) {
+      checkNotTimedOut();
+      super.setLocale(loc);
+    }
+  }
+
+  @Override
+  public void setStatus(int sc) {
+    synchronized (lock) {
+      checkNotTimedOut();
+      super.setStatus(sc);
+    }
+  }
+
+  @Deprecated
+  @Override
+  public void setStatus(int sc, String sm) {
+    synchronized (lock) {
+      checkNotTimedOut();
+      super.setStatus(sc, sm);
+    }
+  }
+
+  /**
+   * Records that the call is over. Returns <code>false</code> if it had
+   * already timed out, in which case the request is completed by the timeout
+   * rather than by the call.
+   */
+  boolean finish() {
+    synchronized (lock) {
+      finished = true;
+      lock.notifyAll();
+      return !timedOut;
+    }
+  }
+
+  boolean isTimedOut() {
+    synchronized (lock) {
+      return timedOut;
+    }
+  }
+
+  /**
+   * Takes the response away from a call that has timed out. If the call is
+   * already writing the body, it is waited for at most
+   * <code>graceMillis</code>, so that a stalled client can't hold up the
+   * thread the timeout is reported on.
+   */
+  TimeoutOutcome timeOut(long graceMillis) throws InterruptedException {
+    synchronized (lock) {
+      long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(graceMillis);
+      while (writing && !finished) {
+        long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+        if (remaining <= 0) {
+          break;
+        }
+        lock.wait(remaining);
+      }
+      if (finished) {
+        return TimeoutOutcome.FINISHED;
+      }
+      timedOut = true;
+      return writing ? TimeoutOutcome.ABANDONED : TimeoutOutcome.TIMED_OUT;
+    }
+  }
+
+  private void checkNotTimedOut() {
+    if (timedOut) {
+      throw new IllegalStateException("The call has timed out");
+    }
+  }
+}
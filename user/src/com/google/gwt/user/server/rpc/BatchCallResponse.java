@@ -0,0 +1,201 @@
+/*
+ * Copyright 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.user.server.rpc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UnsupportedEncodingException;
+import java.util.Locale;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * The response that {@link RemoteServiceServlet#doUnexpectedFailure(Throwable)}
+ * writes to for a failed call of a batch. The status and body written are
+ * kept, to become the call's entry in the batched response, rather than
+ * replacing the response of the whole batch. Headers are ignored, as the
+ * batch's response has its own.
+ */
+class BatchCallResponse extends HttpServletResponseWrapper {
+
+  private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+  private ServletOutputStream outputStream;
+
+  private int status = SC_OK;
+
+  private PrintWriter writer;
+
+  BatchCallResponse(HttpServletResponse response) {
+    super(response);
+  }
+
+  @Override
+  public void addCookie(Cookie cookie) {
+  }
+
+  @Override
+  public void addDateHeader(String name, long date) {
+  }
+
+  @Override
+  public void addHeader(String name, String value) {
+  }
+
+  @Override
+  public void addIntHeader(String name, int value) {
+  }
+
+  @Override
+  public void flushBuffer() {
+    if (writer != null) {
+      writer.flush();
+    }
+  }
+
+  /**
+   * Returns the body written, decoded as UTF-8.
+   */
+  String getBody() {
+    flushBuffer();
+    try {
+      return body.toString(RPCServletUtils.CHARSET_UTF8_NAME);
+    } catch (UnsupportedEncodingException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Override
+  public ServletOutputStream getOutputStream() {
+    if (writer != null) {
+      throw new IllegalStateException("getWriter() has already been called");
+    }
+    if (outputStream == null) {
+      outputStream = new ServletOutputStream() {
+        @Override
+        public void write(byte[] b, int off, int len) {
+          body.write(b, off, len);
+        }
+
+        @Override
+        public void write(int b) {
+          body.write(b);
+        }
+      };
+    }
+    return outputStream;
+  }
+
+  @Override
+  public int getStatus() {
+    return status;
+  }
+
+  @Override
+  public PrintWriter getWriter() throws UnsupportedEncodingException {
+    if (outputStream != null) {
+      throw new IllegalStateException("getOutputStream() has already been called");
+    }
+    if (writer == null) {
+      writer = new PrintWriter(new OutputStreamWriter(body, RPCServletUtils.CHARSET_UTF8_NAME));
+    }
+    return writer;
+  }
+
+  @Override
+  public boolean isCommitted() {
+    return false;
+  }
+
+  @Override
+  public void reset() {
+    resetBuffer();
+    status = SC_OK;
+  }
+
+  @Override
+  public void resetBuffer() {
+    flushBuffer();
+    body.reset();
+  }
+
+  @Override
+  public void sendError(int sc) {
+    sendError(sc, "");
+  }
+
+  @Override
+  public void sendError(int sc, String msg) {
+    resetBuffer();
+    status = sc;
+    if (msg != null) {
+      byte[] bytes = msg.getBytes(RPCServletUtils.CHARSET_UTF8);
+      body.write(bytes, 0, bytes.length);
+    }
+  }
+
+  @Override
+  public void sendRedirect(String location) {
+    sendError(SC_FOUND);
+  }
+
+  @Override
+  public void setBufferSize(int size) {
+  }
+
+  @Override
+  public void setCharacterEncoding(String charset) {
+  }
+
+  @Override
+  public void setContentLength(int len) {
+  }
+
+  @Override
+  public void setContentType(String type) {
+  }
+
+  @Override
+  public void setDateHeader(String name, long date) {
+  }
+
+  @Override
+  public void setHeader(String name, String value) {
+  }
+
+  @Override
+  public void setIntHeader(String name, int value) {
+  }
+
+  @Override
+  public void setLocale(Locale loc) {
+  }
+
+  @Override
+  public void setStatus(int sc) {
+    status = sc;
+  }
+
+  @Override
+  @SuppressWarnings("deprecation")
+  public void setStatus(int sc, String sm) {
+    status = sc;
+  }
+}
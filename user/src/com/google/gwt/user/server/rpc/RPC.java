@@ -27,6 +27,8 @@ import com.google.gwt.user.server.rpc.impl.ServerSerializationStreamReader;
 import com.google.gwt.user.server.rpc.impl.ServerSerializationStreamWriter;
 import com.google.gwt.user.server.rpc.impl.TypeNameObfuscator;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Type;
@@ -224,6 +226,39 @@ public final class RPC {
    */
   public static RPCRequest decodeRequest(String encodedRequest, Class<?> type,
       SerializationPolicyProvider serializationPolicyProvider) {
+    return decodeRequest((CharSequence) encodedRequest, type, serializationPolicyProvider);
+  }
+
+  /**
+   * Returns an {@link RPCRequest} that is built by decoding an encoded RPC
+   * request held in any character sequence. The request is tokenized lazily
+   * while it is decoded, so no array of its tokens is created.
+   * 
+   * <p>
+   * Apart from the type of <code>encodedRequest</code>, this behaves exactly
+   * like {@link #decodeRequest(String, Class, SerializationPolicyProvider)}.
+   * The sequence must not be modified while it is being decoded.
+   * </p>
+   * 
+   * @param encodedRequest a character sequence that encodes the
+   *          {@link RemoteService} interface, the service method, and the
+   *          arguments to pass to the service method
+   * @param type if not <code>null</code>, the implementation checks that the
+   *          type is assignable to the {@link RemoteService} interface encoded
+   *          in the encoded request.
+   * @param serializationPolicyProvider if not <code>null</code>, the
+   *          implementation asks this provider for a
+   *          {@link SerializationPolicy} which will be used to restrict the set
+   *          of types that can be decoded from this request
+   * @return an {@link RPCRequest} instance
+   * 
+   * @throws NullPointerException if the encodedRequest is <code>null</code>
+   * @throws IllegalArgumentException if the encodedRequest is empty
+   * @throws IncompatibleRemoteServiceException under the same conditions as
+   *           {@link #decodeRequest(String, Class, SerializationPolicyProvider)}
+   */
+  public static RPCRequest decodeRequest(CharSequence encodedRequest, Class<?> type,
+      SerializationPolicyProvider serializationPolicyProvider) {
     if (encodedRequest == null) {
       throw new NullPointerException("encodedRequest cannot be null");
     }
@@ -350,6 +385,54 @@ public final class RPC {
     }
   }
 
+  /**
+   * Writes the encoding of an exception to <code>out</code>. This is the
+   * streaming equivalent of
+   * {@link #encodeResponseForFailedRequest(RPCRequest, Throwable)}.
+   *
+   * @param rpcRequest the RPCRequest that failed to execute, may be null
+   * @param cause the {@link Throwable} that was thrown
+   * @param out the writer that receives the encoded response
+   * @throws SerializationException if the result cannot be serialized
+   * @throws IOException if writing to <code>out</code> fails
+   */
+  public static void encodeResponseForFailedRequest(RPCRequest rpcRequest, Throwable cause,
+      Writer out) throws SerializationException, IOException {
+    if (rpcRequest == null) {
+      RPC.encodeResponseForFailure(null, cause,
+          getDefaultSerializationPolicy(), AbstractSerializationStream.DEFAULT_FLAGS, out);
+    } else {
+      RPC.encodeResponseForFailure(null, cause,
+          rpcRequest.getSerializationPolicy(), rpcRequest.getFlags(), out);
+    }
+  }
+
+  /**
+   * Returns the binary encoding of an exception, in the format read by
+   * {@link com.google.gwt.user.client.rpc.impl.BinarySerializationStreamReader}.
+   * This is the binary equivalent of
+   * {@link #encodeResponseForFailedRequest(RPCRequest, Throwable)}.
+   *
+   * @param rpcRequest the RPCRequest that failed to execute, may be null
+   * @param cause the {@link Throwable} that was thrown
+   * @return the encoded response
+   * @throws SerializationException if the result cannot be serialized
+   */
+  public static byte[] encodeBinaryResponseForFailedRequest(RPCRequest rpcRequest,
+      Throwable cause) throws SerializationException {
+    SerializationPolicy serializationPolicy;
+    int flags;
+    if (rpcRequest == null) {
+      serializationPolicy = getDefaultSerializationPolicy();
+      flags = AbstractSerializationStream.DEFAULT_FLAGS;
+    } else {
+      serializationPolicy = rpcRequest.getSerializationPolicy();
+      flags = rpcRequest.getFlags();
+    }
+    checkResponseForFailure(null, cause, serializationPolicy);
+    return encodeBinaryResponse(cause.getClass(), cause, true, flags, serializationPolicy);
+  }
+
   /**
    * Returns a string that encodes an exception. If method is not
    * <code>null</code>, it is an error if the exception is not in the method's
@@ -403,20 +486,37 @@ public final class RPC {
 
   public static String encodeResponseForFailure(Method serviceMethod, Throwable cause,
       SerializationPolicy serializationPolicy, int flags) throws SerializationException {
-    if (cause == null) {
-      throw new NullPointerException("cause cannot be null");
-    }
+    checkResponseForFailure(serviceMethod, cause, serializationPolicy);
 
-    if (serializationPolicy == null) {
-      throw new NullPointerException("serializationPolicy");
-    }
+    return encodeResponse(cause.getClass(), cause, true, flags, serializationPolicy);
+  }
 
-    if (serviceMethod != null && !RPCServletUtils.isExpectedException(serviceMethod, cause)) {
-      throw new UnexpectedException("Service method '" + getSourceRepresentation(serviceMethod)
-          + "' threw an unexpected exception: " + cause.toString(), cause);
-    }
+  /**
+   * Writes the encoding of an exception to <code>out</code>. This is the
+   * streaming equivalent of
+   * {@link #encodeResponseForFailure(Method, Throwable, SerializationPolicy, int)};
+   * the response is fully serialized before the first character is written.
+   *
+   * @param serviceMethod the method that threw the exception, may be
+   *          <code>null</code>
+   * @param cause the {@link Throwable} that was thrown
+   * @param serializationPolicy determines the serialization policy to be used
+   * @param flags the RPC flags of the request
+   * @param out the writer that receives the encoded response
+   *
+   * @throws NullPointerException if the cause or the serializationPolicy
+   *           are <code>null</code>
+   * @throws SerializationException if the result cannot be serialized
+   * @throws UnexpectedException if the result was an unexpected exception (a
+   *           checked exception not declared in the serviceMethod's signature)
+   * @throws IOException if writing to <code>out</code> fails
+   */
+  public static void encodeResponseForFailure(Method serviceMethod, Throwable cause,
+      SerializationPolicy serializationPolicy, int flags, Writer out)
+      throws SerializationException, IOException {
+    checkResponseForFailure(serviceMethod, cause, serializationPolicy);
 
-    return encodeResponse(cause.getClass(), cause, true, flags, serializationPolicy);
+    encodeResponse(cause.getClass(), cause, true, flags, serializationPolicy, out);
   }
 
   /**
@@ -470,31 +570,38 @@ public final class RPC {
 
   public static String encodeResponseForSuccess(Method serviceMethod, Object object,
       SerializationPolicy serializationPolicy, int flags) throws SerializationException {
-    if (serviceMethod == null) {
-      throw new NullPointerException("serviceMethod cannot be null");
-    }
+    Class<?> methodReturnType = checkResponseForSuccess(serviceMethod, object,
+        serializationPolicy);
 
-    if (serializationPolicy == null) {
-      throw new NullPointerException("serializationPolicy");
-    }
-
-    Class<?> methodReturnType = serviceMethod.getReturnType();
-    if (methodReturnType != void.class && object != null) {
-      Class<?> actualReturnType;
-      if (methodReturnType.isPrimitive()) {
-        actualReturnType = getPrimitiveClassFromWrapper(object.getClass());
-      } else {
-        actualReturnType = object.getClass();
-      }
+    return encodeResponse(methodReturnType, object, false, flags, serializationPolicy);
+  }
 
-      if (actualReturnType == null || !methodReturnType.isAssignableFrom(actualReturnType)) {
-        throw new IllegalArgumentException("Type '" + printTypeName(object.getClass())
-            + "' does not match the return type in the method's signature: '"
-            + getSourceRepresentation(serviceMethod) + "'");
-      }
-    }
+  /**
+   * Writes the encoding of a service method's result to <code>out</code>.
+   * This is the streaming equivalent of
+   * {@link #encodeResponseForSuccess(Method, Object, SerializationPolicy, int)};
+   * the response is fully serialized before the first character is written.
+   *
+   * @param serviceMethod the method whose result we are encoding
+   * @param object the instance that we wish to encode
+   * @param serializationPolicy determines the serialization policy to be used
+   * @param flags the RPC flags of the request
+   * @param out the writer that receives the encoded response
+   *
+   * @throws IllegalArgumentException if the result is not assignable to the
+   *           service method's return type
+   * @throws NullPointerException if the serviceMethod or the
+   *           serializationPolicy are <code>null</code>
+   * @throws SerializationException if the result cannot be serialized
+   * @throws IOException if writing to <code>out</code> fails
+   */
+  public static void encodeResponseForSuccess(Method serviceMethod, Object object,
+      SerializationPolicy serializationPolicy, int flags, Writer out)
+      throws SerializationException, IOException {
+    Class<?> methodReturnType = checkResponseForSuccess(serviceMethod, object,
+        serializationPolicy);
 
-    return encodeResponse(methodReturnType, object, false, flags, serializationPolicy);
+    encodeResponse(methodReturnType, object, false, flags, serializationPolicy, out);
   }
 
   /**
@@ -608,6 +715,185 @@ public final class RPC {
     return responsePayload;
   }
 
+  /**
+   * Invokes a service method and writes the encoding of its result, which
+   * could be the value returned by the method or an exception thrown by it, to
+   * <code>out</code>. This is the streaming equivalent of
+   * {@link #invokeAndEncodeResponse(Object, Method, Object[], SerializationPolicy, int)}
+   * and avoids building the response as a single string.
+   *
+   * <p>
+   * This method does no security checking; security checking must be done on
+   * the method prior to this invocation.
+   * </p>
+   *
+   * @param target instance on which to invoke the serviceMethod
+   * @param serviceMethod the method to invoke
+   * @param args arguments used for the method invocation
+   * @param serializationPolicy determines the serialization policy to be used
+   * @param flags the RPC flags of the request
+   * @param out the writer that receives the encoded response
+   *
+   * @throws NullPointerException if the serviceMethod or the
+   *           serializationPolicy are <code>null</code>
+   * @throws SecurityException if the method cannot be accessed or if the number
+   *           or type of actual and formal arguments differ
+   * @throws SerializationException if an object could not be serialized by the
+   *           stream
+   * @throws UnexpectedException if the serviceMethod throws a checked exception
+   *           that is not declared in its signature
+   * @throws IOException if writing to <code>out</code> fails
+   */
+  public static void invokeAndEncodeResponse(Object target, Method serviceMethod, Object[] args,
+      SerializationPolicy serializationPolicy, int flags, Writer out)
+      throws SerializationException, IOException {
+    if (serviceMethod == null) {
+      throw new NullPointerException("serviceMethod");
+    }
+
+    if (serializationPolicy == null) {
+      throw new NullPointerException("serializationPolicy");
+    }
+
+    try {
+      Object result = serviceMethod.invoke(target, args);
+
+      encodeResponseForSuccess(serviceMethod, result, serializationPolicy, flags, out);
+    } catch (IllegalAccessException e) {
+      SecurityException securityException =
+          new SecurityException(formatIllegalAccessErrorMessage(target, serviceMethod));
+      securityException.initCause(e);
+      throw securityException;
+    } catch (IllegalArgumentException e) {
+      SecurityException securityException =
+          new SecurityException(formatIllegalArgumentErrorMessage(target, serviceMethod, args));
+      securityException.initCause(e);
+      throw securityException;
+    } catch (InvocationTargetException e) {
+      // Try to encode the caught exception
+      //
+      Throwable cause = e.getCause();
+
+      encodeResponseForFailure(serviceMethod, cause, serializationPolicy, flags, out);
+    }
+  }
+
+  /**
+   * Invokes a service method and returns the binary encoding of its result,
+   * which could be the value returned by the method or an exception thrown by
+   * it, in the format read by
+   * {@link com.google.gwt.user.client.rpc.impl.BinarySerializationStreamReader}.
+   * This is the binary equivalent of
+   * {@link #invokeAndEncodeResponse(Object, Method, Object[], SerializationPolicy, int)}.
+   *
+   * <p>
+   * This method does no security checking; security checking must be done on
+   * the method prior to this invocation.
+   * </p>
+   *
+   * @param target instance on which to invoke the serviceMethod
+   * @param serviceMethod the method to invoke
+   * @param args arguments used for the method invocation
+   * @param serializationPolicy determines the serialization policy to be used
+   * @param flags the RPC flags of the request
+   * @return the encoded response
+   *
+   * @throws NullPointerException if the serviceMethod or the
+   *           serializationPolicy are <code>null</code>
+   * @throws SecurityException if the method cannot be accessed or if the number
+   *           or type of actual and formal arguments differ
+   * @throws SerializationException if an object could not be serialized by the
+   *           stream
+   * @throws UnexpectedException if the serviceMethod throws a checked exception
+   *           that is not declared in its signature
+   */
+  public static byte[] invokeAndEncodeBinaryResponse(Object target, Method serviceMethod,
+      Object[] args, SerializationPolicy serializationPolicy, int flags)
+      throws SerializationException {
+    if (serviceMethod == null) {
+      throw new NullPointerException("serviceMethod");
+    }
+
+    if (serializationPolicy == null) {
+      throw new NullPointerException("serializationPolicy");
+    }
+
+    try {
+      Object result = serviceMethod.invoke(target, args);
+
+      Class<?> responseClass = checkResponseForSuccess(serviceMethod, result, serializationPolicy);
+      return encodeBinaryResponse(responseClass, result, false, flags, serializationPolicy);
+    } catch (IllegalAccessException e) {
+      SecurityException securityException =
+          new SecurityException(formatIllegalAccessErrorMessage(target, serviceMethod));
+      securityException.initCause(e);
+      throw securityException;
+    } catch (IllegalArgumentException e) {
+      SecurityException securityException =
+          new SecurityException(formatIllegalArgumentErrorMessage(target, serviceMethod, args));
+      securityException.initCause(e);
+      throw securityException;
+    } catch (InvocationTargetException e) {
+      // Try to encode the caught exception
+      //
+      Throwable cause = e.getCause();
+
+      checkResponseForFailure(serviceMethod, cause, serializationPolicy);
+      return encodeBinaryResponse(cause.getClass(), cause, true, flags, serializationPolicy);
+    }
+  }
+
+  /**
+   * Validates the arguments of an encodeResponseForFailure call.
+   */
+  private static void checkResponseForFailure(Method serviceMethod, Throwable cause,
+      SerializationPolicy serializationPolicy) {
+    if (cause == null) {
+      throw new NullPointerException("cause cannot be null");
+    }
+
+    if (serializationPolicy == null) {
+      throw new NullPointerException("serializationPolicy");
+    }
+
+    if (serviceMethod != null && !RPCServletUtils.isExpectedException(serviceMethod, cause)) {
+      throw new UnexpectedException("Service method '" + getSourceRepresentation(serviceMethod)
+          + "' threw an unexpected exception: " + cause.toString(), cause);
+    }
+  }
+
+  /**
+   * Validates the arguments of an encodeResponseForSuccess call and returns
+   * the declared return type of the service method.
+   */
+  private static Class<?> checkResponseForSuccess(Method serviceMethod, Object object,
+      SerializationPolicy serializationPolicy) {
+    if (serviceMethod == null) {
+      throw new NullPointerException("serviceMethod cannot be null");
+    }
+
+    if (serializationPolicy == null) {
+      throw new NullPointerException("serializationPolicy");
+    }
+
+    Class<?> methodReturnType = serviceMethod.getReturnType();
+    if (methodReturnType != void.class && object != null) {
+      Class<?> actualReturnType;
+      if (methodReturnType.isPrimitive()) {
+        actualReturnType = getPrimitiveClassFromWrapper(object.getClass());
+      } else {
+        actualReturnType = object.getClass();
+      }
+
+      if (actualReturnType == null || !methodReturnType.isAssignableFrom(actualReturnType)) {
+        throw new IllegalArgumentException("Type '" + printTypeName(object.getClass())
+            + "' does not match the return type in the method's signature: '"
+            + getSourceRepresentation(serviceMethod) + "'");
+      }
+    }
+    return methodReturnType;
+  }
+
   private static int getRpcVersion() throws SerializationException {
     int version =
         Integer.getInteger("gwt.rpc.version",
@@ -636,16 +922,66 @@ public final class RPC {
       int flags, SerializationPolicy serializationPolicy) throws SerializationException {
 
     ServerSerializationStreamWriter stream =
-        new ServerSerializationStreamWriter(serializationPolicy, getRpcVersion());
+        serializeResponse(responseClass, object, flags, serializationPolicy);
+
+    String bufferStr = (wasThrown ? "//EX" : "//OK") + stream.toString();
+    return bufferStr;
+  }
+
+  /**
+   * Writes the results of an RPC call to <code>out</code>. The object graph is
+   * serialized completely before anything is written, so a
+   * {@link SerializationException} never leaves a partial response behind.
+   */
+  private static void encodeResponse(Class<?> responseClass, Object object, boolean wasThrown,
+      int flags, SerializationPolicy serializationPolicy, Writer out)
+      throws SerializationException, IOException {
+
+    ServerSerializationStreamWriter stream =
+        serializeResponse(responseClass, object, flags, serializationPolicy);
+
+    out.write(wasThrown ? "//EX" : "//OK");
+    stream.writeTo(out);
+  }
+
+  /**
+   * Returns the binary encoding of the results of an RPC call: the same
+   * <code>//OK</code> or <code>//EX</code> prefix as the string encoding,
+   * followed by a binary stream.
+   */
+  private static byte[] encodeBinaryResponse(Class<?> responseClass, Object object,
+      boolean wasThrown, int flags, SerializationPolicy serializationPolicy)
+      throws SerializationException {
+
+    ServerSerializationStreamWriter stream =
+        serializeResponse(responseClass, object, flags, serializationPolicy, true);
+
+    byte[] payload = stream.toByteArray();
+    byte[] response = new byte[payload.length + 4];
+    byte[] prefix = (wasThrown ? "//EX" : "//OK").getBytes(RPCServletUtils.CHARSET_UTF8);
+    System.arraycopy(prefix, 0, response, 0, prefix.length);
+    System.arraycopy(payload, 0, response, prefix.length, payload.length);
+    return response;
+  }
+
+  private static ServerSerializationStreamWriter serializeResponse(Class<?> responseClass,
+      Object object, int flags, SerializationPolicy serializationPolicy)
+      throws SerializationException {
+    return serializeResponse(responseClass, object, flags, serializationPolicy, false);
+  }
+
+  private static ServerSerializationStreamWriter serializeResponse(Class<?> responseClass,
+      Object object, int flags, SerializationPolicy serializationPolicy, boolean binary)
+      throws SerializationException {
+    ServerSerializationStreamWriter stream =
+        new ServerSerializationStreamWriter(serializationPolicy, getRpcVersion(), binary);
     stream.setFlags(flags);
 
     stream.prepareToWrite();
     if (responseClass != void.class) {
       stream.serializeValue(object, responseClass);
     }
-
-    String bufferStr = (wasThrown ? "//EX" : "//OK") + stream.toString();
-    return bufferStr;
+    return stream;
   }
 
   private static String formatIllegalAccessErrorMessage(Object target, Method serviceMethod) {
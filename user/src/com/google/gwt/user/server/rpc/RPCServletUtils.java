@@ -15,16 +15,22 @@
  */
 package com.google.gwt.user.server.rpc;
 
+import com.google.gwt.user.client.rpc.RpcRequestBuilder;
 
+import java.io.BufferedWriter;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.lang.reflect.Method;
 import java.nio.charset.Charset;
 import java.util.Locale;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.zip.GZIPOutputStream;
 
+import javax.servlet.ServletConfig;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
@@ -50,6 +56,12 @@ public class RPCServletUtils {
    */
   static final int BUFFER_SIZE = 4096;
 
+  /**
+   * The largest Content-Length that is trusted as a hint for sizing the
+   * buffer a request body is read into.
+   */
+  private static final int MAX_PRESIZED_CONTENT_LENGTH = 8 * 1024 * 1024;
+
   private static final String ACCEPT_ENCODING = "Accept-Encoding";
 
   private static final String ATTACHMENT = "attachment";
@@ -62,7 +74,7 @@ public class RPCServletUtils {
 
   private static final String CONTENT_TYPE_APPLICATION_JSON_UTF8 = "application/json; charset=utf-8";
 
-  private static final String GENERIC_FAILURE_MSG = "The call failed on the server; see server log for details";
+  static final String GENERIC_FAILURE_MSG = "The call failed on the server; see server log for details";
 
   private static final String GWT_RPC_CONTENT_TYPE = "text/x-gwt-rpc";
 
@@ -118,6 +130,17 @@ public class RPCServletUtils {
     return (content.length() * 2) > UNCOMPRESSED_BYTE_SIZE_LIMIT;
   }
 
+  /**
+   * Returns <code>true</code> if the response content is longer than 256
+   * bytes.
+   *
+   * @param content the contents of the response
+   * @return <code>true</code> if the response content is longer than 256 bytes
+   */
+  public static boolean exceedsUncompressedContentLengthLimit(byte[] content) {
+    return content.length > UNCOMPRESSED_BYTE_SIZE_LIMIT;
+  }
+
   /**
    * Get the Charset for a named character set. Caches Charsets to work around
    * a concurrency bottleneck in FastCharsetProvider.
@@ -144,6 +167,56 @@ public class RPCServletUtils {
     return charset;
   }
 
+  /**
+   * Retrieves the specified initialization parameter first from
+   * {@link ServletConfig} followed by {@link ServletContext}, if the former
+   * returns <code>null</code>.
+   *
+   * @param config the configuration of the servlet reading the parameter
+   * @param name the name of the parameter
+   * @return the value of the parameter, or <code>null</code> if not defined
+   */
+  public static String getInitParameter(ServletConfig config, String name) {
+    String value = config.getInitParameter(name);
+    if (value == null) {
+      value = config.getServletContext().getInitParameter(name);
+    }
+    return value;
+  }
+
+  /**
+   * Retrieves a non-negative integer initialization parameter as
+   * {@link #getInitParameter(ServletConfig, String)} does.
+   *
+   * @param config the configuration of the servlet reading the parameter
+   * @param name the name of the parameter
+   * @param defaultValue the value to return if the parameter is not defined
+   * @return the value of the parameter, or <code>defaultValue</code>
+   * @throws ServletException if the parameter has an invalid value
+   */
+  public static int getNonNegativeInitParameter(ServletConfig config, String name,
+      int defaultValue) throws ServletException {
+    String value = getInitParameter(config, name);
+    if (value == null) {
+      return defaultValue;
+    }
+
+    try {
+      int result = Integer.parseInt(value.trim());
+      if (result >= 0) {
+        return result;
+      }
+      // invalid because negative; fall through
+
+    } catch (NumberFormatException e) {
+      // fall through
+    }
+
+    // Fail loudly so that that a configuration error will be noticed.
+    throw new ServletException("Invalid value of " + name
+        + " parameter; expected a non-negative integer but got: " + value);
+  }
+
   /**
    * Returns true if the {@link java.lang.reflect.Method Method} definition on
    * the service is specified to throw the exception contained in the
@@ -212,27 +285,7 @@ public class RPCServletUtils {
       checkCharacterEncodingIgnoreCase(request, expectedCharSet);
     }
 
-    /*
-     * Need to support 'Transfer-Encoding: chunked', so do not rely on
-     * presence of a 'Content-Length' request header.
-     */
-    InputStream in = request.getInputStream();
-    byte[] buffer = new byte[BUFFER_SIZE];
-    ByteArrayOutputStream out = new  ByteArrayOutputStream(BUFFER_SIZE);
-    try {
-      while (true) {
-        int byteCount = in.read(buffer);
-        if (byteCount == -1) {
-          break;
-        }
-        out.write(buffer, 0, byteCount);
-      }
-      return new String(out.toByteArray(), getCharset(expectedCharSet));
-    } finally {
-      if (in != null) {
-        in.close();
-      }
-    }
+    return readContentBytes(request).toString(getCharset(expectedCharSet));
   }
 
   /**
@@ -334,8 +387,37 @@ public class RPCServletUtils {
   public static void writeResponse(ServletContext servletContext,
       HttpServletResponse response, String responseContent, boolean gzipResponse)
       throws IOException {
+    writeResponse(servletContext, response, responseContent.getBytes(CHARSET_UTF8),
+        CONTENT_TYPE_APPLICATION_JSON_UTF8, gzipResponse);
+  }
+
+  /**
+   * Write a binary RPC response, as returned by
+   * {@link RPC#invokeAndEncodeBinaryResponse}, into the
+   * {@link HttpServletResponse}. The response is given the
+   * {@value RpcRequestBuilder#BINARY_RESPONSE_CONTENT_TYPE} content type, by
+   * which the client recognizes it. If <code>gzipResponse</code> is
+   * <code>true</code>, the response content will be gzipped prior to being
+   * written into the response.
+   *
+   * @param servletContext servlet context for this response
+   * @param response response instance
+   * @param responseContent the encoded response
+   * @param gzipResponse if <code>true</code> the response content will be gzip
+   *          encoded before being written into the response
+   * @throws IOException if reading, writing, or closing the response's output
+   *           stream fails
+   */
+  public static void writeBinaryResponse(ServletContext servletContext,
+      HttpServletResponse response, byte[] responseContent, boolean gzipResponse)
+      throws IOException {
+    writeResponse(servletContext, response, responseContent,
+        RpcRequestBuilder.BINARY_RESPONSE_CONTENT_TYPE, gzipResponse);
+  }
 
-    byte[] responseBytes = responseContent.getBytes(CHARSET_UTF8);
+  private static void writeResponse(ServletContext servletContext,
+      HttpServletResponse response, byte[] responseBytes, String contentType,
+      boolean gzipResponse) throws IOException {
     if (gzipResponse) {
       // Compress the reply and adjust headers.
       //
@@ -371,12 +453,44 @@ public class RPCServletUtils {
     // Send the reply.
     //
     response.setContentLength(responseBytes.length);
-    response.setContentType(CONTENT_TYPE_APPLICATION_JSON_UTF8);
+    response.setContentType(contentType);
     response.setStatus(HttpServletResponse.SC_OK);
     response.setHeader(CONTENT_DISPOSITION, ATTACHMENT);
     response.getOutputStream().write(responseBytes);
   }
 
+  /**
+   * Prepares the {@link HttpServletResponse} for a response whose content is
+   * not known up front and returns a buffered UTF-8 {@link Writer} onto its
+   * output stream. If <code>gzipResponse</code> is <code>true</code>, the
+   * content is gzipped on the fly as it is written.
+   * <p>
+   * Unlike {@link #writeResponse(ServletContext, HttpServletResponse, String, boolean)}
+   * no Content-Length header is set, so the container will typically fall back
+   * to chunked transfer encoding. The caller must close the returned writer to
+   * complete the response.
+   * </p>
+   *
+   * @param response response instance
+   * @param gzipResponse if <code>true</code> the response content will be gzip
+   *          encoded as it is written into the response
+   * @return a writer that encodes the response content into the response
+   * @throws IOException if the response's output stream cannot be obtained
+   */
+  public static Writer createResponseWriter(HttpServletResponse response,
+      boolean gzipResponse) throws IOException {
+    response.setContentType(CONTENT_TYPE_APPLICATION_JSON_UTF8);
+    response.setStatus(HttpServletResponse.SC_OK);
+    response.setHeader(CONTENT_DISPOSITION, ATTACHMENT);
+
+    OutputStream output = response.getOutputStream();
+    if (gzipResponse) {
+      setGzipEncodingHeader(response);
+      output = new GZIPOutputStream(output, BUFFER_SIZE);
+    }
+    return new BufferedWriter(new OutputStreamWriter(output, CHARSET_UTF8), BUFFER_SIZE);
+  }
+
   /**
    * Called when the servlet itself has a problem, rather than the invoked
    * third-party method. It writes a simple 500 message back to the client.
@@ -408,6 +522,39 @@ public class RPCServletUtils {
     }
   }
 
+  /**
+   * Reads the whole body of an {@link HttpServletRequest}. The buffer is sized
+   * from the Content-Length header when there is one, so that it does not have
+   * to grow while reading, but the header is only used as a hint.
+   */
+  private static RequestContent readContentBytes(HttpServletRequest request)
+      throws IOException {
+    /*
+     * Need to support 'Transfer-Encoding: chunked', so do not rely on
+     * presence of a 'Content-Length' request header.
+     */
+    int contentLength = request.getContentLength();
+    RequestContent out = new RequestContent(
+        contentLength > 0 && contentLength <= MAX_PRESIZED_CONTENT_LENGTH
+            ? contentLength : BUFFER_SIZE);
+    InputStream in = request.getInputStream();
+    byte[] buffer = new byte[BUFFER_SIZE];
+    try {
+      while (true) {
+        int byteCount = in.read(buffer);
+        if (byteCount == -1) {
+          break;
+        }
+        out.write(buffer, 0, byteCount);
+      }
+      return out;
+    } finally {
+      if (in != null) {
+        in.close();
+      }
+    }
+  }
+
   /**
    * Performs validation of the character encoding, ignoring case.
    *
@@ -483,4 +630,18 @@ public class RPCServletUtils {
   private RPCServletUtils() {
     // Not instantiable
   }
+
+  /**
+   * The raw bytes of a request body, which can be decoded without first being
+   * copied out with {@link ByteArrayOutputStream#toByteArray()}.
+   */
+  private static class RequestContent extends ByteArrayOutputStream {
+    RequestContent(int size) {
+      super(size);
+    }
+
+    String toString(Charset charset) {
+      return new String(buf, 0, count, charset);
+    }
+  }
 }
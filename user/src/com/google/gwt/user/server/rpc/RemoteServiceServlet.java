@@ -15,20 +15,32 @@
  */
 package com.google.gwt.user.server.rpc;
 
+import static com.google.gwt.user.client.rpc.RpcRequestBuilder.BATCH_HEADER;
+import static com.google.gwt.user.client.rpc.RpcRequestBuilder.BINARY_RESPONSE_FORMAT;
 import static com.google.gwt.user.client.rpc.RpcRequestBuilder.MODULE_BASE_HEADER;
+import static com.google.gwt.user.client.rpc.RpcRequestBuilder.RESPONSE_FORMAT_HEADER;
 
 import com.google.gwt.user.client.rpc.IncompatibleRemoteServiceException;
 import com.google.gwt.user.client.rpc.RpcTokenException;
 import com.google.gwt.user.client.rpc.SerializationException;
+import com.google.gwt.user.client.rpc.impl.RpcBatch;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.Writer;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.text.ParseException;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
@@ -43,6 +55,79 @@ import javax.servlet.http.HttpServletResponse;
 public class RemoteServiceServlet extends AbstractRemoteServiceServlet
     implements SerializationPolicyProvider {
 
+  /**
+   * Initialization parameter limiting how many serialization policies are
+   * cached. By default the cache is unbounded.
+   */
+  public static final String POLICY_CACHE_MAX_SIZE_PARAM = "gwt.rpc.policy_cache_max_size";
+
+  /**
+   * Initialization parameter setting how many seconds after loading a cached
+   * serialization policy expires and is reloaded. By default policies never
+   * expire.
+   */
+  public static final String POLICY_CACHE_EXPIRE_SECONDS_PARAM =
+      "gwt.rpc.policy_cache_expire_seconds";
+
+  /**
+   * Initialization parameter listing the context-relative base paths of the
+   * modules (for instance <code>/mymodule/</code>) whose serialization
+   * policies are read when the servlet is initialized, rather than on the
+   * first call from each permutation. Paths are separated by commas. The
+   * policies read are put in the {@link #getSerializationPolicyCache() cache},
+   * where they are bounded and expire like any other policy. Servlets that
+   * override
+   * {@link #doGetSerializationPolicy(HttpServletRequest, String, String)} don't
+   * preload policies.
+   */
+  public static final String POLICY_WARM_UP_PATHS_PARAM = "gwt.rpc.policy_warm_up_paths";
+
+  /**
+   * Initialization parameter that, when <code>true</code>, lets clients ask for
+   * binary responses with
+   * {@link com.google.gwt.user.client.rpc.RpcRequestBuilder#setBinaryResponsesRequested(boolean)}.
+   * By default responses are always in the default format.
+   *
+   * @see #shouldUseBinaryResponse(HttpServletRequest)
+   */
+  public static final String BINARY_RESPONSES_PARAM = "gwt.rpc.binary_responses";
+
+  /**
+   * Initialization parameter limiting how many calls a batched request from
+   * {@link com.google.gwt.user.client.rpc.BatchingRpcRequestBuilder} may
+   * carry; larger batches are rejected. The default is
+   * {@value #DEFAULT_MAX_BATCH_SIZE}, and <code>0</code> rejects all batches.
+   *
+   * @see #processBatchCall(String)
+   */
+  public static final String MAX_BATCH_SIZE_PARAM = "gwt.rpc.max_batch_size";
+
+  /**
+   * The number of calls per batched request accepted when
+   * {@value #MAX_BATCH_SIZE_PARAM} is not set.
+   */
+  public static final int DEFAULT_MAX_BATCH_SIZE = 100;
+
+  /**
+   * Initialization parameter setting how many seconds a call run on the
+   * {@link #getAsyncExecutor(HttpServletRequest) asynchronous executor} may
+   * take before the client is sent a generic failure. The default is
+   * {@value #DEFAULT_ASYNC_TIMEOUT_SECONDS}; the timeout cannot be disabled.
+   */
+  public static final String ASYNC_TIMEOUT_SECONDS_PARAM = "gwt.rpc.async_timeout_seconds";
+
+  /**
+   * The number of seconds an asynchronous call may take when
+   * {@value #ASYNC_TIMEOUT_SECONDS_PARAM} is not set.
+   */
+  public static final int DEFAULT_ASYNC_TIMEOUT_SECONDS = 300;
+
+  /**
+   * How long a timed out call that is already writing its response is given
+   * to finish before the response is abandoned.
+   */
+  private static final long ASYNC_WRITE_GRACE_MILLIS = 1000;
+
   /**
    * Loads a serialization policy stored as a servlet resource in the same
    * ServletContext as this servlet. Returns null if not found.
@@ -86,34 +171,48 @@ public class RemoteServiceServlet extends AbstractRemoteServiceServlet
       String serializationPolicyFilePath = SerializationPolicyLoader.getSerializationPolicyFileName(contextRelativePath
           + strongName);
 
-      // Open the RPC resource file and read its contents.
-      InputStream is = servlet.getServletContext().getResourceAsStream(
+      serializationPolicy = loadSerializationPolicyResource(servlet,
           serializationPolicyFilePath);
-      try {
-        if (is != null) {
-          try {
-            serializationPolicy = SerializationPolicyLoader.loadFromStream(is,
-                null);
-          } catch (ParseException e) {
-            servlet.log("ERROR: Failed to parse the policy file '"
-                + serializationPolicyFilePath + "'", e);
-          } catch (IOException e) {
-            servlet.log("ERROR: Could not read the policy file '"
-                + serializationPolicyFilePath + "'", e);
-          }
-        } else {
-          String message = "ERROR: The serialization policy file '"
-              + serializationPolicyFilePath
-              + "' was not found; did you forget to include it in this deployment?";
-          servlet.log(message);
+    }
+
+    return serializationPolicy;
+  }
+
+  /**
+   * Reads a serialization policy file stored as a servlet resource. Returns
+   * null and logs the reason if it cannot be read.
+   */
+  private static SerializationPolicy loadSerializationPolicyResource(
+      HttpServlet servlet, String serializationPolicyFilePath) {
+    SerializationPolicy serializationPolicy = null;
+
+    // Open the RPC resource file and read its contents.
+    InputStream is = servlet.getServletContext().getResourceAsStream(
+        serializationPolicyFilePath);
+    try {
+      if (is != null) {
+        try {
+          serializationPolicy = SerializationPolicyLoader.loadFromStream(is,
+              null);
+        } catch (ParseException e) {
+          servlet.log("ERROR: Failed to parse the policy file '"
+              + serializationPolicyFilePath + "'", e);
+        } catch (IOException e) {
+          servlet.log("ERROR: Could not read the policy file '"
+              + serializationPolicyFilePath + "'", e);
         }
-      } finally {
-        if (is != null) {
-          try {
-            is.close();
-          } catch (IOException e) {
-            // Ignore this error
-          }
+      } else {
+        String message = "ERROR: The serialization policy file '"
+            + serializationPolicyFilePath
+            + "' was not found; did you forget to include it in this deployment?";
+        servlet.log(message);
+      }
+    } finally {
+      if (is != null) {
+        try {
+          is.close();
+        } catch (IOException e) {
+          // Ignore this error
         }
       }
     }
@@ -125,10 +224,19 @@ public class RemoteServiceServlet extends AbstractRemoteServiceServlet
       new SerializationPolicyClient(5000, 5000);
 
   /**
-   * A cache of moduleBaseURL and serialization policy strong name to
-   * {@link SerializationPolicy}.
+   * A cache of module base URL and serialization policy strong name to
+   * {@link SerializationPolicy}. Replaced in {@link #init(ServletConfig)} if
+   * the cache is configured.
+   */
+  private SerializationPolicyCache serializationPolicyCache = new SerializationPolicyCache();
+
+  /**
+   * Whether policies are loaded by the default
+   * {@link #doGetSerializationPolicy(HttpServletRequest, String, String)}. Its
+   * policies only depend on the path of the module base URL, so they are
+   * cached by path and can be read before the first request.
    */
-  private final Map<String, SerializationPolicy> serializationPolicyCache = new HashMap<String, SerializationPolicy>();
+  private final boolean usesDefaultPolicyLoader = !overridesPolicyLoader(getClass());
 
   /**
    * The implementation of the service.
@@ -142,6 +250,21 @@ public class RemoteServiceServlet extends AbstractRemoteServiceServlet
    */
   private int codeServerPort = 0;
 
+  /**
+   * Whether clients may ask for binary responses.
+   */
+  private boolean binaryResponsesEnabled;
+
+  /**
+   * The maximum number of calls per batched request.
+   */
+  private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+
+  /**
+   * The number of seconds an asynchronous call may take.
+   */
+  private int asyncTimeoutSeconds = DEFAULT_ASYNC_TIMEOUT_SECONDS;
+
   /**
    * The default constructor used by service implementations that
    * extend this class.  The servlet will delegate AJAX requests to
@@ -161,12 +284,49 @@ public class RemoteServiceServlet extends AbstractRemoteServiceServlet
   }
 
   /**
-   * Overridden to load the gwt.codeserver.port system property.
+   * Overridden to load the gwt.codeserver.port system property, configure the
+   * serialization policy cache and binary responses and, if requested, preload
+   * serialization policies into the cache.
+   *
+   * @see #POLICY_CACHE_MAX_SIZE_PARAM
+   * @see #POLICY_CACHE_EXPIRE_SECONDS_PARAM
+   * @see #POLICY_WARM_UP_PATHS_PARAM
+   * @see #BINARY_RESPONSES_PARAM
+   * @see #MAX_BATCH_SIZE_PARAM
+   * @see #ASYNC_TIMEOUT_SECONDS_PARAM
    */
   @Override
   public void init(ServletConfig config) throws ServletException {
     super.init(config);
     codeServerPort = getCodeServerPort();
+    binaryResponsesEnabled = Boolean.parseBoolean(getInitParameterValue(BINARY_RESPONSES_PARAM));
+    if (getInitParameterValue(MAX_BATCH_SIZE_PARAM) != null) {
+      maxBatchSize = getNonNegativeInitParameter(MAX_BATCH_SIZE_PARAM);
+    }
+    if (getInitParameterValue(ASYNC_TIMEOUT_SECONDS_PARAM) != null) {
+      asyncTimeoutSeconds = getNonNegativeInitParameter(ASYNC_TIMEOUT_SECONDS_PARAM);
+      if (asyncTimeoutSeconds == 0) {
+        throw new ServletException("Invalid value of " + ASYNC_TIMEOUT_SECONDS_PARAM
+            + " parameter; expected a positive integer but got: 0");
+      }
+    }
+
+    int maximumSize = getNonNegativeInitParameter(POLICY_CACHE_MAX_SIZE_PARAM);
+    int expireSeconds = getNonNegativeInitParameter(POLICY_CACHE_EXPIRE_SECONDS_PARAM);
+    if (maximumSize > 0 || expireSeconds > 0) {
+      serializationPolicyCache = new SerializationPolicyCache(maximumSize, expireSeconds,
+          TimeUnit.SECONDS);
+    }
+
+    String warmUpPaths = getInitParameterValue(POLICY_WARM_UP_PATHS_PARAM);
+    if (warmUpPaths != null) {
+      for (String modulePath : warmUpPaths.split(",")) {
+        modulePath = modulePath.trim();
+        if (modulePath.length() > 0) {
+          warmUpSerializationPolicies(modulePath);
+        }
+      }
+    }
   }
 
   /**
@@ -196,6 +356,84 @@ public class RemoteServiceServlet extends AbstractRemoteServiceServlet
         + " expected an integer in the range [1-65535] but got: " + value);
   }
 
+  /**
+   * Retrieves the specified initialization parameter first from
+   * {@link ServletConfig} followed by {@link javax.servlet.ServletContext}, if
+   * the former returns {@code null}.
+   */
+  private String getInitParameterValue(String name) {
+    return RPCServletUtils.getInitParameter(getServletConfig(), name);
+  }
+
+  /**
+   * Returns the value of a non-negative integer initialization parameter, or
+   * zero if not defined.
+   *
+   * @throws ServletException if the parameter has an invalid value.
+   */
+  private int getNonNegativeInitParameter(String name) throws ServletException {
+    return RPCServletUtils.getNonNegativeInitParameter(getServletConfig(), name, 0);
+  }
+
+  /**
+   * Returns whether the given subclass overrides
+   * {@link #doGetSerializationPolicy(HttpServletRequest, String, String)}.
+   */
+  private static boolean overridesPolicyLoader(Class<?> type) {
+    for (; type != RemoteServiceServlet.class; type = type.getSuperclass()) {
+      try {
+        type.getDeclaredMethod("doGetSerializationPolicy", HttpServletRequest.class,
+            String.class, String.class);
+        return true;
+      } catch (NoSuchMethodException e) {
+        // Look in the superclass
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Reads the serialization policies of the module at the given
+   * context-relative base path into the policy cache.
+   */
+  private void warmUpSerializationPolicies(String modulePath) {
+    if (!usesDefaultPolicyLoader) {
+      log("WARNING: Serialization policies are not preloaded because "
+          + getClass().getName() + " overrides doGetSerializationPolicy");
+      return;
+    }
+    if (!modulePath.startsWith("/")) {
+      modulePath = "/" + modulePath;
+    }
+    if (!modulePath.endsWith("/")) {
+      modulePath += "/";
+    }
+
+    Set<String> resourcePaths = getServletContext().getResourcePaths(modulePath);
+    if (resourcePaths == null) {
+      log("WARNING: No serialization policies to preload were found in '" + modulePath + "'");
+      return;
+    }
+
+    String extension = SerializationPolicyLoader.getSerializationPolicyFileName("");
+    String moduleBasePath = getServletContext().getContextPath() + modulePath;
+    for (String resourcePath : resourcePaths) {
+      String fileName = resourcePath.substring(resourcePath.lastIndexOf('/') + 1);
+      if (!fileName.endsWith(extension)) {
+        continue;
+      }
+      String strongName = fileName.substring(0, fileName.length() - extension.length());
+
+      long start = System.nanoTime();
+      SerializationPolicy serializationPolicy = loadSerializationPolicyResource(this,
+          resourcePath);
+      if (serializationPolicy != null) {
+        serializationPolicyCache.put(moduleBasePath + strongName, serializationPolicy,
+            System.nanoTime() - start);
+      }
+    }
+  }
+
   /**
    * Extract the module's base path from the current request.
    *
@@ -222,16 +460,33 @@ public class RemoteServiceServlet extends AbstractRemoteServiceServlet
   }
 
   @Override
-  public final SerializationPolicy getSerializationPolicy(String moduleBaseURL,
-      String strongName) {
+  public final SerializationPolicy getSerializationPolicy(final String moduleBaseURL,
+      final String strongName) {
+    // Requests that need a policy while it is being loaded wait for that load
+    // rather than loading it again.
+    return serializationPolicyCache.get(getPolicyCacheKey(moduleBaseURL, strongName),
+        new SerializationPolicyCache.Loader() {
+          @Override
+          public SerializationPolicy load() {
+            return findSerializationPolicy(moduleBaseURL, strongName);
+          }
+        });
+  }
 
-    SerializationPolicy serializationPolicy = getCachedSerializationPolicy(
-        moduleBaseURL, strongName);
-    if (serializationPolicy != null) {
-      return serializationPolicy;
-    }
+  /**
+   * Returns the cache of serialization policies used by
+   * {@link #getSerializationPolicy(String, String)}, for monitoring.
+   */
+  public final SerializationPolicyCache getSerializationPolicyCache() {
+    return serializationPolicyCache;
+  }
 
-    serializationPolicy = doGetSerializationPolicy(getThreadLocalRequest(),
+  /**
+   * Loads the policy for a module base URL and strong name that is not
+   * cached, falling back to Super Dev Mode and then to the default policy.
+   */
+  private SerializationPolicy findSerializationPolicy(String moduleBaseURL, String strongName) {
+    SerializationPolicy serializationPolicy = doGetSerializationPolicy(getThreadLocalRequest(),
         moduleBaseURL, strongName);
 
     // Try SuperDevMode, if configured.
@@ -253,10 +508,8 @@ public class RemoteServiceServlet extends AbstractRemoteServiceServlet
       serializationPolicy = RPC.getDefaultSerializationPolicy();
     }
 
-    // This could cache null or an actual instance. Either way we will not
-    // attempt to lookup the policy again.
-    putCachedSerializationPolicy(moduleBaseURL, strongName, serializationPolicy);
-
+    // This could cache the default policy or an actual instance. Either way we
+    // will not attempt to lookup the policy again until it is evicted.
     return serializationPolicy;
   }
 
@@ -345,6 +598,226 @@ public class RemoteServiceServlet extends AbstractRemoteServiceServlet
     }
   }
 
+  /**
+   * Process a batched request carrying several calls, as sent by
+   * {@link com.google.gwt.user.client.rpc.BatchingRpcRequestBuilder}, and
+   * return the combined response. Each call is decoded and dispatched in turn
+   * by {@link #processCall(String)}, and its response is passed to
+   * {@link #onAfterResponseSerialized(String)}. A call that fails unexpectedly
+   * is passed to {@link #doUnexpectedFailure(Throwable)}, like a failed request
+   * on its own, without failing the other calls: the status and body it writes
+   * become the call's response in the batch. When there is no thread-local
+   * response, the failure is logged and answered with status code 500.
+   * <p>
+   * This is public so that it can be unit tested easily without HTTP.
+   * </p>
+   *
+   * @param payload the UTF-8 batched request payload
+   * @return the responses to the calls, encoded by
+   *         {@link RpcBatch#appendResponse(StringBuilder, int, String)}
+   * @throws SerializationException if the batch is malformed or has more
+   *           calls than allowed by {@value #MAX_BATCH_SIZE_PARAM}
+   * @throws SecurityException if {@link #checkPermutationStrongName()} does
+   */
+  public String processBatchCall(String payload) throws SerializationException {
+    // Check for possible XSRF situation once, failing the whole batch
+    checkPermutationStrongName();
+
+    List<String> calls = RpcBatch.decodeRequests(payload, maxBatchSize);
+    StringBuilder responses = new StringBuilder();
+    for (String call : calls) {
+      String response;
+      try {
+        response = processCall(call);
+      } catch (Exception e) {
+        appendFailedBatchCall(responses, e);
+        continue;
+      }
+      onAfterResponseSerialized(response);
+      RpcBatch.appendResponse(responses, HttpServletResponse.SC_OK, response);
+    }
+    return responses.toString();
+  }
+
+  /**
+   * Appends the response to a call of a batch that failed unexpectedly, as
+   * written by {@link #doUnexpectedFailure(Throwable)}.
+   */
+  private void appendFailedBatchCall(StringBuilder responses, Exception e) {
+    HttpServletResponse response = getThreadLocalResponse();
+    if (response == null) {
+      log("Exception while dispatching batched RPC call", e);
+      RpcBatch.appendResponse(responses, HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
+          RPCServletUtils.GENERIC_FAILURE_MSG);
+      return;
+    }
+    BatchCallResponse callResponse = new BatchCallResponse(response);
+    perThreadResponse.set(callResponse);
+    try {
+      doUnexpectedFailure(e);
+    } finally {
+      perThreadResponse.set(response);
+    }
+    RpcBatch.appendResponse(responses, callResponse.getStatus(), callResponse.getBody());
+  }
+
+  /**
+   * Process a call originating from the given request, returning the binary
+   * encoding of the response. This is the binary equivalent of
+   * {@link #processCall(String)} and is used by {@link #processPost} when
+   * {@link #shouldUseBinaryResponse(HttpServletRequest)} returns
+   * <code>true</code>.
+   * <p>
+   * This is public so that it can be unit tested easily without HTTP.
+   * </p>
+   *
+   * @param payload the UTF-8 request payload
+   * @return the binary encoding of either the method's return, a checked
+   *         exception thrown by the method, or an
+   *         {@link IncompatibleRemoteServiceException}
+   * @throws SerializationException if we cannot serialize the response
+   * @throws UnexpectedException if the invocation throws a checked exception
+   *           that is not declared in the service method's signature
+   * @throws RuntimeException if the service method throws an unchecked
+   *           exception (the exception will be the one thrown by the service)
+   */
+  public byte[] processBinaryCall(String payload) throws SerializationException {
+    // First, check for possible XSRF situation
+    checkPermutationStrongName();
+
+    RPCRequest rpcRequest;
+    try {
+      rpcRequest = RPC.decodeRequest(payload, delegate.getClass(), this);
+    } catch (IncompatibleRemoteServiceException ex) {
+      log(
+          "An IncompatibleRemoteServiceException was thrown while processing this call.",
+          ex);
+      return RPC.encodeBinaryResponseForFailedRequest(null, ex);
+    }
+    return processBinaryCall(rpcRequest);
+  }
+
+  /**
+   * Process an already decoded RPC request, returning the binary encoding of
+   * the response. This is the binary equivalent of
+   * {@link #processCall(RPCRequest)} and uses
+   * {@link RPC#invokeAndEncodeBinaryResponse} to do the actual work.
+   * <p>
+   * Subclasses that override {@link #processCall(RPCRequest)} to route
+   * requests should override this method as well if they enable binary
+   * responses.
+   * </p>
+   * This is public so that it can be unit tested easily without HTTP.
+   *
+   * @param rpcRequest the already decoded RPC request
+   * @return the binary encoding of either the method's return, a checked
+   *         exception thrown by the method, or an
+   *         {@link IncompatibleRemoteServiceException}
+   * @throws SerializationException if we cannot serialize the response
+   * @throws UnexpectedException if the invocation throws a checked exception
+   *           that is not declared in the service method's signature
+   * @throws RuntimeException if the service method throws an unchecked
+   *           exception (the exception will be the one thrown by the service)
+   */
+  public byte[] processBinaryCall(RPCRequest rpcRequest) throws SerializationException {
+    try {
+      onAfterRequestDeserialized(rpcRequest);
+      return RPC.invokeAndEncodeBinaryResponse(delegate, rpcRequest.getMethod(),
+          rpcRequest.getParameters(), rpcRequest.getSerializationPolicy(),
+          rpcRequest.getFlags());
+    } catch (IncompatibleRemoteServiceException ex) {
+      log(
+          "An IncompatibleRemoteServiceException was thrown while processing this call.",
+          ex);
+      return RPC.encodeBinaryResponseForFailedRequest(rpcRequest, ex);
+    } catch (RpcTokenException tokenException) {
+      log("An RpcTokenException was thrown while processing this call.",
+          tokenException);
+      return RPC.encodeBinaryResponseForFailedRequest(rpcRequest, tokenException);
+    }
+  }
+
+  /**
+   * Process a call originating from the given request, writing the encoded
+   * response to <code>responseWriter</code> instead of returning it as a
+   * string. This is the streaming equivalent of {@link #processCall(String)}
+   * and is used by {@link #processPost} when
+   * {@link #shouldStreamResponse(HttpServletRequest)} returns <code>true</code>.
+   * <p>
+   * The response is fully serialized before anything is written to
+   * <code>responseWriter</code>, so failures to serialize it leave the writer
+   * untouched.
+   * </p>
+   * This is public so that it can be unit tested easily without HTTP.
+   *
+   * @param payload the UTF-8 request payload
+   * @param responseWriter the writer that receives the encoded response
+   * @throws SerializationException if we cannot serialize the response
+   * @throws UnexpectedException if the invocation throws a checked exception
+   *           that is not declared in the service method's signature
+   * @throws RuntimeException if the service method throws an unchecked
+   *           exception (the exception will be the one thrown by the service)
+   * @throws IOException if writing to <code>responseWriter</code> fails
+   */
+  public void processCall(String payload, Writer responseWriter)
+      throws SerializationException, IOException {
+    // First, check for possible XSRF situation
+    checkPermutationStrongName();
+
+    RPCRequest rpcRequest;
+    try {
+      rpcRequest = RPC.decodeRequest(payload, delegate.getClass(), this);
+    } catch (IncompatibleRemoteServiceException ex) {
+      log(
+          "An IncompatibleRemoteServiceException was thrown while processing this call.",
+          ex);
+      RPC.encodeResponseForFailedRequest(null, ex, responseWriter);
+      return;
+    }
+    processCall(rpcRequest, responseWriter);
+  }
+
+  /**
+   * Process an already decoded RPC request, writing the encoded response to
+   * <code>responseWriter</code>. This is the streaming equivalent of
+   * {@link #processCall(RPCRequest)} and uses
+   * {@link RPC#invokeAndEncodeResponse(Object, java.lang.reflect.Method, Object[], SerializationPolicy, int, Writer)}
+   * to do the actual work.
+   * <p>
+   * Subclasses that override {@link #processCall(RPCRequest)} to route
+   * requests should override this method as well if they enable
+   * {@link #shouldStreamResponse(HttpServletRequest) streaming}.
+   * </p>
+   * This is public so that it can be unit tested easily without HTTP.
+   *
+   * @param rpcRequest the already decoded RPC request
+   * @param responseWriter the writer that receives the encoded response
+   * @throws SerializationException if we cannot serialize the response
+   * @throws UnexpectedException if the invocation throws a checked exception
+   *           that is not declared in the service method's signature
+   * @throws RuntimeException if the service method throws an unchecked
+   *           exception (the exception will be the one thrown by the service)
+   * @throws IOException if writing to <code>responseWriter</code> fails
+   */
+  public void processCall(RPCRequest rpcRequest, Writer responseWriter)
+      throws SerializationException, IOException {
+    try {
+      onAfterRequestDeserialized(rpcRequest);
+      RPC.invokeAndEncodeResponse(delegate, rpcRequest.getMethod(),
+          rpcRequest.getParameters(), rpcRequest.getSerializationPolicy(),
+          rpcRequest.getFlags(), responseWriter);
+    } catch (IncompatibleRemoteServiceException ex) {
+      log(
+          "An IncompatibleRemoteServiceException was thrown while processing this call.",
+          ex);
+      RPC.encodeResponseForFailedRequest(rpcRequest, ex, responseWriter);
+    } catch (RpcTokenException tokenException) {
+      log("An RpcTokenException was thrown while processing this call.",
+          tokenException);
+      RPC.encodeResponseForFailedRequest(rpcRequest, tokenException, responseWriter);
+    }
+  }
+
   /**
    * Standard HttpServlet method: handle the POST.
    * 
@@ -367,18 +840,15 @@ public class RemoteServiceServlet extends AbstractRemoteServiceServlet
     //
     onBeforeRequestDeserialized(requestPayload);
 
-    // Invoke the core dispatching logic, which returns the serialized
-    // result.
-    //
-    String responsePayload = processCall(requestPayload);
-
-    // Let subclasses see the serialized response.
-    //
-    onAfterResponseSerialized(responsePayload);
+    Executor asyncExecutor = getAsyncExecutor(request);
+    if (asyncExecutor != null && request.isAsyncSupported()) {
+      // Release the container thread; the call is completed by the executor.
+      //
+      dispatchAsync(request, response, requestPayload, asyncExecutor);
+      return;
+    }
 
-    // Write the response.
-    //
-    writeResponse(request, response, responsePayload);
+    processPayload(request, response, requestPayload);
   }
 
   /**
@@ -420,6 +890,33 @@ public class RemoteServiceServlet extends AbstractRemoteServiceServlet
     return RemoteServiceServlet.loadSerializationPolicy(this, request, moduleBaseURL, strongName);
   }
 
+  /**
+   * Returns the executor that calls originating from the given request are
+   * run on, or <code>null</code> to run them on the container's request
+   * thread. The default implementation returns <code>null</code>.
+   * <p>
+   * When an executor is returned and the request supports asynchronous
+   * processing (the servlet is mapped with <code>async-supported</code>),
+   * {@link #processPost} reads the request payload, puts the request into
+   * asynchronous mode and hands the call to the executor, releasing the
+   * container thread while the service method runs. The response is encoded
+   * and written by the executor thread, which also completes the request;
+   * {@link #getThreadLocalRequest()} and {@link #getThreadLocalResponse()}
+   * remain available to the service method and to
+   * {@link #doUnexpectedFailure(Throwable)}. Calls rejected by the executor
+   * are answered with <code>503 Service Unavailable</code>, without running
+   * them. A call still running after
+   * {@value #ASYNC_TIMEOUT_SECONDS_PARAM} seconds is answered with a generic
+   * failure, and its own later changes to the response are rejected.
+   * </p>
+   *
+   * @param request the request being served
+   * @return the executor to run the call on, or <code>null</code>
+   */
+  protected Executor getAsyncExecutor(HttpServletRequest request) {
+    return null;
+  }
+
   /**
    * Returns a URL for fetching a serialization policy from a Super Dev Mode code server.
    *
@@ -505,19 +1002,216 @@ public class RemoteServiceServlet extends AbstractRemoteServiceServlet
     return RPCServletUtils.exceedsUncompressedContentLengthLimit(responsePayload);
   }
 
-  private SerializationPolicy getCachedSerializationPolicy(
-      String moduleBaseURL, String strongName) {
-    synchronized (serializationPolicyCache) {
-      return serializationPolicyCache.get(moduleBaseURL + strongName);
+  /**
+   * Determines whether the response to a streamed call should be GZIP
+   * compressed. This method is only called in cases where the requester
+   * accepts GZIP encoding and {@link #shouldStreamResponse(HttpServletRequest)}
+   * returned <code>true</code>; since the payload size is not known in
+   * advance, this implementation always returns <code>true</code>.
+   *
+   * @param request the request being served
+   * @param response the response that will be written into
+   * @return <code>true</code> if the streamed response should be GZIP
+   *         compressed, otherwise <code>false</code>.
+   */
+  protected boolean shouldCompressStreamedResponse(HttpServletRequest request,
+      HttpServletResponse response) {
+    return true;
+  }
+
+  /**
+   * Determines whether the response to a given servlet request should use the
+   * binary format, which is smaller and faster for the client to decode. The
+   * default implementation returns <code>true</code> if the servlet was
+   * configured with the {@value #BINARY_RESPONSES_PARAM} initialization
+   * parameter and the request asked for a binary response with the
+   * {@value com.google.gwt.user.client.rpc.RpcRequestBuilder#RESPONSE_FORMAT_HEADER}
+   * header.
+   * <p>
+   * When this returns <code>true</code>, {@link #processPost} dispatches
+   * through {@link #processBinaryCall(String)}, ahead of
+   * {@link #shouldStreamResponse(HttpServletRequest) streaming}, and
+   * {@link #onAfterResponseSerialized(String)} is not called. Only return
+   * <code>true</code> for requests that asked for a binary response, since
+   * other clients cannot read one.
+   * </p>
+   *
+   * @param request the request being served
+   * @return <code>true</code> if the response should be binary
+   */
+  protected boolean shouldUseBinaryResponse(HttpServletRequest request) {
+    return binaryResponsesEnabled
+        && BINARY_RESPONSE_FORMAT.equals(request.getHeader(RESPONSE_FORMAT_HEADER));
+  }
+
+  /**
+   * Determines whether the response to a given servlet request should be
+   * serialized directly into the servlet's output stream, rather than being
+   * built up as a string first. Streaming avoids holding the full response
+   * payload in memory as a string, a byte array and a compressed byte array,
+   * which matters for large responses.
+   * <p>
+   * When this returns <code>true</code>, {@link #processPost} dispatches
+   * through {@link #processCall(String, Writer)} instead of
+   * {@link #processCall(String)}, and neither
+   * {@link #onAfterResponseSerialized(String)} nor
+   * {@link #shouldCompressResponse} is called. The default implementation
+   * returns <code>false</code>.
+   * </p>
+   *
+   * @param request the request being served
+   * @return <code>true</code> if the response should be streamed
+   */
+  protected boolean shouldStreamResponse(HttpServletRequest request) {
+    return false;
+  }
+
+  private void dispatchAsync(final HttpServletRequest request,
+      final HttpServletResponse response, final String requestPayload,
+      Executor asyncExecutor) {
+    final AsyncContext asyncContext = request.startAsync(request, response);
+    final AsyncCallResponse callResponse = new AsyncCallResponse(response);
+
+    // A call that outlives the timeout is answered with a generic failure, so
+    // that a hung service method does not keep the request open forever.
+    //
+    asyncContext.setTimeout(TimeUnit.SECONDS.toMillis(asyncTimeoutSeconds));
+    asyncContext.addListener(new AsyncListener() {
+      @Override
+      public void onComplete(AsyncEvent event) {
+      }
+
+      @Override
+      public void onError(AsyncEvent event) {
+      }
+
+      @Override
+      public void onStartAsync(AsyncEvent event) {
+      }
+
+      @Override
+      public void onTimeout(AsyncEvent event) {
+        AsyncCallResponse.TimeoutOutcome outcome;
+        try {
+          outcome = callResponse.timeOut(ASYNC_WRITE_GRACE_MILLIS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+        TimeoutException timeout = new TimeoutException("The call did not complete within "
+            + asyncTimeoutSeconds + " seconds");
+        switch (outcome) {
+          case FINISHED:
+            return;
+          case TIMED_OUT:
+            RPCServletUtils.writeResponseForUnexpectedFailure(getServletContext(), response,
+                timeout);
+            break;
+          case ABANDONED:
+            log("The response of a timed out call was abandoned while being written", timeout);
+            break;
+        }
+        asyncContext.complete();
+      }
+    });
+
+    Runnable call = new Runnable() {
+      @Override
+      public void run() {
+        perThreadRequest.set(request);
+        perThreadResponse.set(callResponse);
+        try {
+          processPayload(request, callResponse, requestPayload);
+        } catch (Throwable e) {
+          // Once the call has timed out, the client has had its answer.
+          if (!callResponse.isTimedOut()) {
+            doUnexpectedFailure(e);
+          }
+        } finally {
+          perThreadRequest.set(null);
+          perThreadResponse.set(null);
+          if (callResponse.finish()) {
+            asyncContext.complete();
+          }
+        }
+      }
+    };
+
+    try {
+      asyncExecutor.execute(call);
+    } catch (RejectedExecutionException e) {
+      // The executor is saturated; shed the call rather than tying up the
+      // container thread with it.
+      log("Rejected a call because the executor is saturated", e);
+      response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+      asyncContext.complete();
+    }
+  }
+
+  /**
+   * Returns the key the policy for a module base URL and strong name is cached
+   * under: the path of the URL and the strong name when the default loader is
+   * used, so that the host the module was loaded from does not matter.
+   */
+  private String getPolicyCacheKey(String moduleBaseURL, String strongName) {
+    if (usesDefaultPolicyLoader && moduleBaseURL != null) {
+      try {
+        return new URL(moduleBaseURL).getPath() + strongName;
+      } catch (MalformedURLException e) {
+        // Key by the URL as given
+      }
     }
+    return moduleBaseURL + strongName;
   }
 
-  private void putCachedSerializationPolicy(String moduleBaseURL,
-      String strongName, SerializationPolicy serializationPolicy) {
-    synchronized (serializationPolicyCache) {
-      serializationPolicyCache.put(moduleBaseURL + strongName,
-          serializationPolicy);
+  private void processPayload(HttpServletRequest request,
+      HttpServletResponse response, String requestPayload) throws IOException,
+      SerializationException {
+    if (request.getHeader(BATCH_HEADER) != null) {
+      // Batches are always answered in the default format.
+      //
+      writeResponse(request, response, processBatchCall(requestPayload));
+      return;
+    }
+
+    if (shouldUseBinaryResponse(request)) {
+      byte[] responsePayload = processBinaryCall(requestPayload);
+
+      boolean gzipEncode = RPCServletUtils.acceptsGzipEncoding(request)
+          && RPCServletUtils.exceedsUncompressedContentLengthLimit(responsePayload);
+      RPCServletUtils.writeBinaryResponse(getServletContext(), response, responsePayload,
+          gzipEncode);
+      return;
+    }
+
+    if (shouldStreamResponse(request)) {
+      // Invoke the core dispatching logic, which serializes the result
+      // directly into the response.
+      //
+      boolean gzipEncode = RPCServletUtils.acceptsGzipEncoding(request)
+          && shouldCompressStreamedResponse(request, response);
+      Writer responseWriter = RPCServletUtils.createResponseWriter(response, gzipEncode);
+      processCall(requestPayload, responseWriter);
+
+      // Closing is deliberately skipped on failure so that nothing buffered is
+      // committed and doUnexpectedFailure() can still reset the response.
+      //
+      responseWriter.close();
+      return;
     }
+
+    // Invoke the core dispatching logic, which returns the serialized
+    // result.
+    //
+    String responsePayload = processCall(requestPayload);
+
+    // Let subclasses see the serialized response.
+    //
+    onAfterResponseSerialized(responsePayload);
+
+    // Write the response.
+    //
+    writeResponse(request, response, responsePayload);
   }
 
   private void writeResponse(HttpServletRequest request,
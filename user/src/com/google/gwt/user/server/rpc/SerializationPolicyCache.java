@@ -0,0 +1,372 @@
+/*
+ * Copyright 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.user.server.rpc;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A cache of {@link SerializationPolicy} instances, as used by
+ * {@link RemoteServiceServlet}. The cache can be bounded in size, evicting the
+ * least recently used policy first, and can expire policies a fixed time after
+ * they were loaded, so that policies for permutations that are no longer
+ * deployed do not accumulate in long-lived servers.
+ * <p>
+ * Lookups do not lock, so that the many request threads of a busy server do
+ * not contend to find the policy of each call. Policies are loaded at most
+ * once at a time per key by {@link #get(String, Loader)}: threads that look up
+ * a policy while it is being loaded wait for that load rather than starting
+ * their own. Only adding a policy to a full cache takes a lock, to evict.
+ * </p>
+ * <p>
+ * The cache keeps counts of hits, misses, loads, waits for loads and
+ * evictions, and the total time spent loading policies, for monitoring.
+ * </p>
+ */
+public class SerializationPolicyCache {
+
+  /**
+   * Loads the policy for a key missing from the cache.
+   */
+  public interface Loader {
+    /**
+     * Returns the policy for the key being looked up, which must not be
+     * <code>null</code>.
+     */
+    SerializationPolicy load();
+  }
+
+  /**
+   * A cached policy, or one that is being loaded.
+   */
+  private static class CachedPolicy {
+    /**
+     * The {@link #accessClock} value of the last lookup, for eviction.
+     */
+    private volatile long lastAccess;
+    private volatile long loadedAtNanos;
+    private final CountDownLatch loaded = new CountDownLatch(1);
+    private volatile SerializationPolicy policy;
+
+    /**
+     * Waits for the policy to be loaded, returning <code>null</code> if
+     * loading it failed.
+     */
+    SerializationPolicy await() {
+      boolean interrupted = false;
+      try {
+        while (true) {
+          try {
+            loaded.await();
+            return policy;
+          } catch (InterruptedException e) {
+            interrupted = true;
+          }
+        }
+      } finally {
+        if (interrupted) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }
+
+    boolean isLoaded() {
+      return loaded.getCount() == 0;
+    }
+
+    void setLoaded(SerializationPolicy policy, long loadedAtNanos) {
+      this.policy = policy;
+      this.loadedAtNanos = loadedAtNanos;
+      loaded.countDown();
+    }
+  }
+
+  private final long expireAfterNanos;
+
+  private final int maximumSize;
+
+  /**
+   * Cached policies and policies being loaded.
+   */
+  private final ConcurrentHashMap<String, CachedPolicy> entries =
+      new ConcurrentHashMap<String, CachedPolicy>();
+
+  /**
+   * Orders lookups, so that the least recently used policy can be evicted.
+   */
+  private final AtomicLong accessClock = new AtomicLong();
+
+  private final Object evictionLock = new Object();
+
+  private final AtomicLong evictionCount = new AtomicLong();
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong loadCount = new AtomicLong();
+  private final AtomicLong loadWaitCount = new AtomicLong();
+  private final AtomicLong missCount = new AtomicLong();
+  private final AtomicLong totalLoadTimeNanos = new AtomicLong();
+
+  /**
+   * Creates an unbounded cache whose entries never expire.
+   */
+  public SerializationPolicyCache() {
+    this(0, 0, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Creates a cache.
+   *
+   * @param maximumSize the maximum number of policies to keep, or zero for no
+   *          limit
+   * @param expireAfterLoad how long after loading a policy expires, or zero
+   *          for never
+   * @param unit the unit of <code>expireAfterLoad</code>
+   */
+  public SerializationPolicyCache(int maximumSize, long expireAfterLoad, TimeUnit unit) {
+    if (maximumSize < 0) {
+      throw new IllegalArgumentException("maximumSize must not be negative: " + maximumSize);
+    }
+    if (expireAfterLoad < 0) {
+      throw new IllegalArgumentException("expireAfterLoad must not be negative: "
+          + expireAfterLoad);
+    }
+    this.maximumSize = maximumSize;
+    this.expireAfterNanos = unit.toNanos(expireAfterLoad);
+  }
+
+  /**
+   * Removes all policies from the cache. The counters are not reset. Loads in
+   * progress complete, but their policies are not kept.
+   */
+  public void clear() {
+    entries.clear();
+  }
+
+  /**
+   * Returns the cached policy for <code>key</code>, or <code>null</code> if
+   * there is none, it has expired or it is still being loaded.
+   */
+  public SerializationPolicy get(String key) {
+    CachedPolicy entry = getUnexpired(key);
+    if (entry == null || !entry.isLoaded()) {
+      missCount.incrementAndGet();
+      return null;
+    }
+    hitCount.incrementAndGet();
+    entry.lastAccess = accessClock.incrementAndGet();
+    return entry.policy;
+  }
+
+  /**
+   * Returns the cached policy for <code>key</code>, loading it with
+   * <code>loader</code> if there is none or it has expired. If another thread
+   * is already loading the policy, waits for it and returns its policy
+   * instead. If <code>loader</code> throws an exception, it is rethrown and
+   * nothing is cached, and any waiting thread loads the policy itself.
+   *
+   * @param key the cache key
+   * @param loader loads the policy if it is not cached
+   * @return the policy
+   */
+  public SerializationPolicy get(String key, Loader loader) {
+    while (true) {
+      CachedPolicy entry = getUnexpired(key);
+      if (entry != null) {
+        if (entry.isLoaded()) {
+          hitCount.incrementAndGet();
+        } else {
+          loadWaitCount.incrementAndGet();
+        }
+        entry.lastAccess = accessClock.incrementAndGet();
+        SerializationPolicy policy = entry.await();
+        if (policy != null) {
+          return policy;
+        }
+        // The load failed; try again
+        continue;
+      }
+
+      CachedPolicy loading = new CachedPolicy();
+      loading.lastAccess = accessClock.incrementAndGet();
+      if (entries.putIfAbsent(key, loading) != null) {
+        // Another thread started loading first
+        continue;
+      }
+
+      missCount.incrementAndGet();
+      long start = System.nanoTime();
+      SerializationPolicy policy = null;
+      try {
+        policy = loader.load();
+        assert policy != null;
+      } finally {
+        if (policy == null) {
+          entries.remove(key, loading);
+        }
+        // Wakes up any waiting threads, even if the load failed
+        loading.setLoaded(policy, currentTimeNanos());
+      }
+      loadCount.incrementAndGet();
+      totalLoadTimeNanos.addAndGet(System.nanoTime() - start);
+      evictIfFull();
+      return policy;
+    }
+  }
+
+  /**
+   * Returns the number of policies removed from the cache because it was full
+   * or because they had expired.
+   */
+  public long getEvictionCount() {
+    return evictionCount.get();
+  }
+
+  /**
+   * Returns the number of lookups that found a loaded policy.
+   */
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  /**
+   * Returns the number of policies loaded by {@link #get(String, Loader)} or
+   * {@link #put} into the cache.
+   */
+  public long getLoadCount() {
+    return loadCount.get();
+  }
+
+  /**
+   * Returns the number of lookups by {@link #get(String, Loader)} that waited
+   * for another thread to load the policy, rather than loading it again. A
+   * high count relative to {@link #getLoadCount()} shows that many requests
+   * arrive for new permutations at once, for instance after a deployment.
+   */
+  public long getLoadWaitCount() {
+    return loadWaitCount.get();
+  }
+
+  /**
+   * Returns the maximum number of policies kept, or zero if unbounded.
+   */
+  public int getMaximumSize() {
+    return maximumSize;
+  }
+
+  /**
+   * Returns the number of lookups that did not find a policy.
+   */
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+  /**
+   * Returns the total time spent loading the policies {@link #getLoadCount()
+   * loaded}, in nanoseconds.
+   */
+  public long getTotalLoadTimeNanos() {
+    return totalLoadTimeNanos.get();
+  }
+
+  /**
+   * Adds a newly loaded policy to the cache, replacing any previous policy for
+   * <code>key</code>.
+   *
+   * @param key the cache key
+   * @param policy the policy
+   * @param loadTimeNanos how long loading the policy took, in nanoseconds
+   */
+  public void put(String key, SerializationPolicy policy, long loadTimeNanos) {
+    assert policy != null;
+    loadCount.incrementAndGet();
+    totalLoadTimeNanos.addAndGet(loadTimeNanos);
+    CachedPolicy entry = new CachedPolicy();
+    entry.lastAccess = accessClock.incrementAndGet();
+    entry.setLoaded(policy, currentTimeNanos());
+    entries.put(key, entry);
+    evictIfFull();
+  }
+
+  /**
+   * Returns the number of policies currently cached, including any that have
+   * expired but have not been looked up since and any being loaded.
+   */
+  public int size() {
+    return entries.size();
+  }
+
+  @Override
+  public String toString() {
+    return "SerializationPolicyCache[size=" + size() + ", hits=" + getHitCount()
+        + ", misses=" + getMissCount() + ", loads=" + getLoadCount() + ", loadWaits="
+        + getLoadWaitCount() + ", evictions=" + getEvictionCount() + ", loadTimeMillis="
+        + TimeUnit.NANOSECONDS.toMillis(getTotalLoadTimeNanos()) + "]";
+  }
+
+  /**
+   * Returns the current value of the clock that expiry is measured with. Only
+   * overridden by tests.
+   */
+  long currentTimeNanos() {
+    return System.nanoTime();
+  }
+
+  /**
+   * Evicts the least recently used loaded policies until the cache is no
+   * larger than its maximum size. Finding them takes a scan of the cache,
+   * which is small, and only happens when a policy is added to a full cache.
+   */
+  private void evictIfFull() {
+    if (maximumSize == 0 || entries.size() <= maximumSize) {
+      return;
+    }
+    synchronized (evictionLock) {
+      while (entries.size() > maximumSize) {
+        Map.Entry<String, CachedPolicy> eldest = null;
+        for (Map.Entry<String, CachedPolicy> entry : entries.entrySet()) {
+          if (entry.getValue().isLoaded() && (eldest == null
+              || entry.getValue().lastAccess < eldest.getValue().lastAccess)) {
+            eldest = entry;
+          }
+        }
+        if (eldest == null) {
+          // Everything left is being loaded
+          return;
+        }
+        if (entries.remove(eldest.getKey(), eldest.getValue())) {
+          evictionCount.incrementAndGet();
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the entry for <code>key</code>, removing it if it has expired.
+   */
+  private CachedPolicy getUnexpired(String key) {
+    CachedPolicy entry = entries.get(key);
+    if (entry != null && expireAfterNanos > 0 && entry.isLoaded()
+        && currentTimeNanos() - entry.loadedAtNanos >= expireAfterNanos) {
+      if (entries.remove(key, entry)) {
+        evictionCount.incrementAndGet();
+      }
+      return null;
+    }
+    return entry;
+  }
+}
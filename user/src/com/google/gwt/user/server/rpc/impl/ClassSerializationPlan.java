@@ -0,0 +1,431 @@
+/*
+ * Copyright 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.user.server.rpc.impl;
+
+import com.google.gwt.user.client.rpc.CustomFieldSerializer;
+import com.google.gwt.user.client.rpc.SerializationException;
+import com.google.gwt.user.server.rpc.SerializationPolicy;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Everything {@link ServerSerializationStreamWriter} and
+ * {@link ServerSerializationStreamReader} need to know to serialize instances
+ * of one class under one {@link SerializationPolicy}: the custom field
+ * serializers bound to the class, the serializable fields in stream order with
+ * precomputed accessors, and whether the superclass's fields follow. Plans are
+ * computed once and shared by all streams that use the same policy, so that
+ * the per-instance path does no reflective lookups.
+ * <p>
+ * Plans never refer to the policy they were computed for; the policy is only
+ * the (weak) key of the {@link Cache} holding them.
+ */
+final class ClassSerializationPlan {
+
+  /**
+   * The plans computed for one serialization policy.
+   */
+  static final class Cache {
+    private final ConcurrentMap<Class<?>, ClassSerializationPlan> plans =
+        new ConcurrentHashMap<Class<?>, ClassSerializationPlan>();
+
+    private Cache() {
+    }
+
+    /**
+     * Returns the plan for <code>instanceClass</code>, computing it on first
+     * use. <code>policy</code> must be the policy this cache was obtained for.
+     */
+    ClassSerializationPlan get(Class<?> instanceClass, SerializationPolicy policy)
+        throws SerializationException {
+      ClassSerializationPlan plan = plans.get(instanceClass);
+      if (plan == null) {
+        plan = new ClassSerializationPlan(instanceClass, policy);
+        ClassSerializationPlan existing = plans.putIfAbsent(instanceClass, plan);
+        if (existing != null) {
+          plan = existing;
+        }
+      }
+      return plan;
+    }
+  }
+
+  /**
+   * A serializable field together with accessors that bypass per-call access
+   * checks.
+   */
+  static final class FieldPlan {
+    private static final MethodType GETTER_TYPE =
+        MethodType.methodType(Object.class, Object.class);
+    private static final MethodType SETTER_TYPE =
+        MethodType.methodType(void.class, Object.class, Object.class);
+
+    private final Field field;
+    private final MethodHandle getter;
+    private final MethodHandle setter;
+    private final Method setterMethod;
+
+    private FieldPlan(Field field, Method setterMethod) {
+      this.field = field;
+      this.setterMethod = setterMethod;
+
+      MethodHandle getter = null;
+      MethodHandle setter = null;
+      try {
+        field.setAccessible(true);
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        getter = lookup.unreflectGetter(field).asType(GETTER_TYPE);
+        setter = lookup.unreflectSetter(field).asType(SETTER_TYPE);
+      } catch (IllegalAccessException e) {
+        // Fall back to Field.get() and Field.set() for whatever is missing
+      } catch (RuntimeException e) {
+        // setAccessible() was refused; Field.get() and Field.set() will report
+        // the failure if the field cannot be accessed at all
+      }
+      this.getter = getter;
+      this.setter = setter;
+    }
+
+    Type getGenericType() {
+      return field.getGenericType();
+    }
+
+    String getName() {
+      return field.getName();
+    }
+
+    Class<?> getType() {
+      return field.getType();
+    }
+
+    Object get(Object instance) throws SerializationException {
+      try {
+        if (getter == null) {
+          return field.get(instance);
+        }
+        return (Object) getter.invokeExact(instance);
+      } catch (RuntimeException e) {
+        throw e;
+      } catch (Error e) {
+        throw e;
+      } catch (Throwable e) {
+        throw new SerializationException(e);
+      }
+    }
+
+    /**
+     * Sets the field's value, calling its setter instead for enhanced classes
+     * that have one. Failures are reported as the equivalent {@link Field#set}
+     * or {@link Method#invoke} failure would be.
+     */
+    void set(Object instance, Object value) throws IllegalAccessException,
+        InvocationTargetException {
+      if (setterMethod != null) {
+        setterMethod.invoke(instance, value);
+      } else if (setter == null) {
+        field.set(instance, value);
+      } else {
+        try {
+          setter.invokeExact(instance, value);
+        } catch (ClassCastException e) {
+          throw new IllegalArgumentException(e);
+        } catch (NullPointerException e) {
+          // Unboxing null into a primitive field
+          throw new IllegalArgumentException(e);
+        } catch (RuntimeException e) {
+          throw e;
+        } catch (Error e) {
+          throw e;
+        } catch (Throwable e) {
+          throw new InvocationTargetException(e);
+        }
+      }
+    }
+  }
+
+  /**
+   * A weak reference to a policy that compares by the identity of the policy,
+   * as long as it has not been collected.
+   */
+  private static final class PolicyKey extends WeakReference<SerializationPolicy> {
+    private final int hashCode;
+
+    PolicyKey(SerializationPolicy policy, ReferenceQueue<SerializationPolicy> queue) {
+      super(policy, queue);
+      hashCode = System.identityHashCode(policy);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (obj == this) {
+        return true;
+      }
+      if (!(obj instanceof PolicyKey)) {
+        return false;
+      }
+      SerializationPolicy policy = get();
+      return policy != null && policy == ((PolicyKey) obj).get();
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+
+  private static final FieldPlan[] NO_FIELDS = new FieldPlan[0];
+
+  private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class);
+
+  /**
+   * The plan caches, weakly keyed by the identity of their policy so that
+   * lookups from concurrent streams do not contend on a lock.
+   */
+  private static final ConcurrentMap<PolicyKey, Cache> CACHES_BY_POLICY =
+      new ConcurrentHashMap<PolicyKey, Cache>();
+
+  private static final ReferenceQueue<SerializationPolicy> COLLECTED_POLICIES =
+      new ReferenceQueue<SerializationPolicy>();
+
+  /**
+   * Returns the plan cache for <code>policy</code>. Streams should look this up
+   * once rather than per instance.
+   */
+  static Cache getCache(SerializationPolicy policy) {
+    Cache cache = CACHES_BY_POLICY.get(new PolicyKey(policy, null));
+    if (cache == null) {
+      // Only a new policy can have replaced a collected one.
+      removeCollectedPolicies();
+      Cache newCache = new Cache();
+      cache = CACHES_BY_POLICY.putIfAbsent(new PolicyKey(policy, COLLECTED_POLICIES), newCache);
+      if (cache == null) {
+        cache = newCache;
+      }
+    }
+    return cache;
+  }
+
+  private static void removeCollectedPolicies() {
+    Reference<? extends SerializationPolicy> collected;
+    while ((collected = COLLECTED_POLICIES.poll()) != null) {
+      CACHES_BY_POLICY.remove(collected);
+    }
+  }
+
+  private final FieldPlan[] clientFields;
+  private final MethodHandle constructor;
+  private final Class<?> customSerializer;
+  private final CustomFieldSerializer<Object> customFieldSerializer;
+  private final Method customSerializeMethod;
+  private final boolean deserializeSuperclass;
+  private final boolean enhanced;
+  private final boolean serializeSuperclass;
+  private final FieldPlan[] serverOnlyFields;
+  private final Class<?> serverCustomSerializer;
+
+  @SuppressWarnings("unchecked")
+  private ClassSerializationPlan(Class<?> instanceClass, SerializationPolicy policy)
+      throws SerializationException {
+    assert (!instanceClass.isArray());
+
+    customSerializer = SerializabilityUtil.hasCustomFieldSerializer(instanceClass);
+    serverCustomSerializer = SerializabilityUtil.hasServerCustomFieldSerializer(instanceClass);
+    if (customSerializer == null) {
+      customFieldSerializer = null;
+      customSerializeMethod = null;
+    } else {
+      customFieldSerializer = (CustomFieldSerializer<Object>)
+          SerializabilityUtil.loadCustomFieldSerializer(customSerializer);
+      customSerializeMethod = customFieldSerializer == null
+          ? findStaticMethod(customSerializer, "serialize") : null;
+    }
+
+    Class<?> superClass = instanceClass.getSuperclass();
+    serializeSuperclass = policy.shouldSerializeFields(superClass);
+    deserializeSuperclass = policy.shouldDeserializeFields(superClass);
+
+    Set<String> clientFieldNames = policy.getClientFieldNamesForEnhancedClass(instanceClass);
+    enhanced = clientFieldNames != null;
+
+    if (instanceClass.isEnum()) {
+      clientFields = NO_FIELDS;
+      serverOnlyFields = enhanced ? NO_FIELDS : null;
+      constructor = null;
+      return;
+    }
+
+    List<FieldPlan> client = new ArrayList<FieldPlan>();
+    List<FieldPlan> serverOnly = new ArrayList<FieldPlan>();
+    for (Field field : SerializabilityUtil.applyFieldSerializationPolicy(instanceClass, policy)) {
+      if (enhanced && !clientFieldNames.contains(field.getName())) {
+        serverOnly.add(new FieldPlan(field, null));
+      } else {
+        client.add(new FieldPlan(field, enhanced ? findSetter(instanceClass, field) : null));
+      }
+    }
+    clientFields = client.toArray(new FieldPlan[client.size()]);
+    serverOnlyFields = enhanced ? serverOnly.toArray(new FieldPlan[serverOnly.size()]) : null;
+    constructor = findConstructor(instanceClass);
+  }
+
+  /**
+   * Returns the fields known to the client, in stream order.
+   */
+  FieldPlan[] getClientFields() {
+    return clientFields;
+  }
+
+  /**
+   * Returns the class holding custom field serialization code for writing
+   * instances, or <code>null</code>. See
+   * {@link SerializabilityUtil#hasCustomFieldSerializer(Class)}.
+   */
+  Class<?> getCustomSerializer() {
+    return customSerializer;
+  }
+
+  /**
+   * Returns the {@link CustomFieldSerializer} instance for
+   * {@link #getCustomSerializer()}, or <code>null</code> if it only has static
+   * methods.
+   */
+  CustomFieldSerializer<Object> getCustomFieldSerializer() {
+    return customFieldSerializer;
+  }
+
+  /**
+   * Returns the static <code>serialize</code> method of
+   * {@link #getCustomSerializer()}, or <code>null</code> if there is none or it
+   * is used through {@link #getCustomFieldSerializer()}.
+   */
+  Method getCustomSerializeMethod() {
+    return customSerializeMethod;
+  }
+
+  /**
+   * Returns the fields to be sent as opaque server-only data, or
+   * <code>null</code> if the class is not enhanced.
+   */
+  FieldPlan[] getServerOnlyFields() {
+    return serverOnlyFields;
+  }
+
+  /**
+   * Returns the class holding custom field deserialization code, or
+   * <code>null</code>. See
+   * {@link SerializabilityUtil#hasServerCustomFieldSerializer(Class)}.
+   */
+  Class<?> getServerCustomSerializer() {
+    return serverCustomSerializer;
+  }
+
+  /**
+   * Returns whether the class has server-only fields per
+   * {@link SerializationPolicy#getClientFieldNamesForEnhancedClass(Class)}.
+   */
+  boolean isEnhanced() {
+    return enhanced;
+  }
+
+  /**
+   * Creates an instance through the class's no-argument constructor, or
+   * returns <code>null</code> if it does not have an accessible one. Like
+   * {@link Constructor#newInstance}, anything thrown by the constructor is
+   * wrapped in an {@link InvocationTargetException}.
+   */
+  Object newInstance() throws InvocationTargetException {
+    if (constructor == null) {
+      return null;
+    }
+    try {
+      return (Object) constructor.invokeExact();
+    } catch (Throwable e) {
+      throw new InvocationTargetException(e);
+    }
+  }
+
+  boolean shouldDeserializeSuperclass() {
+    return deserializeSuperclass;
+  }
+
+  boolean shouldSerializeSuperclass() {
+    return serializeSuperclass;
+  }
+
+  private static MethodHandle findConstructor(Class<?> instanceClass) {
+    if (Modifier.isAbstract(instanceClass.getModifiers())) {
+      return null;
+    }
+    try {
+      Constructor<?> constructor = instanceClass.getDeclaredConstructor();
+      constructor.setAccessible(true);
+      return MethodHandles.lookup().unreflectConstructor(constructor).asType(CONSTRUCTOR_TYPE);
+    } catch (NoSuchMethodException e) {
+      return null;
+    } catch (IllegalAccessException e) {
+      return null;
+    } catch (RuntimeException e) {
+      // setAccessible() was refused
+      return null;
+    }
+  }
+
+  /**
+   * Returns the public <code>void setXXX(T value)</code> method for the field
+   * <code>T XXX</code>, if any. For persistence APIs such as JDO, the setter
+   * methods have been enhanced to manipulate additional object state, causing
+   * direct field writes to fail to update the object state properly.
+   */
+  private static Method findSetter(Class<?> instanceClass, Field field) {
+    if (!SerializabilityUtil.isNotStaticOrTransient(field)
+        || !SerializabilityUtil.isNotFinal(field)) {
+      return null;
+    }
+    String fieldName = field.getName();
+    String setterName =
+        "set" + Character.toUpperCase(fieldName.charAt(0)) + fieldName.substring(1);
+    try {
+      return instanceClass.getMethod(setterName, field.getType());
+    } catch (NoSuchMethodException e) {
+      return null;
+    }
+  }
+
+  private static Method findStaticMethod(Class<?> clazz, String name) {
+    for (Method method : clazz.getMethods()) {
+      if (name.equals(method.getName())) {
+        return method;
+      }
+    }
+    return null;
+  }
+}
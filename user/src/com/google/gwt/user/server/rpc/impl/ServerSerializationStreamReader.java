@@ -35,15 +35,11 @@ import java.lang.reflect.Field;
 import java.lang.reflect.GenericArrayType;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.lang.reflect.Modifier;
 import java.lang.reflect.Type;
 import java.lang.reflect.TypeVariable;
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.Map;
-import java.util.Set;
 import java.util.regex.Pattern;
 
 /**
@@ -60,6 +56,12 @@ public final class ServerSerializationStreamReader extends AbstractSerialization
    */
   private static final Pattern ALLOWED_STRONG_NAME = Pattern.compile("[a-zA-Z0-9_]+");
 
+  /**
+   * Returned by {@link #parseSmallInt(int)} for tokens it cannot parse in
+   * place; outside the range of every type it is compared against.
+   */
+  private static final long NOT_A_SMALL_INT = Long.MIN_VALUE;
+
   /**
    * Used to accumulate elements while deserializing array types. The generic
    * type of the BoundedList will vary from the component type of the array it
@@ -367,22 +369,29 @@ public final class ServerSerializationStreamReader extends AbstractSerialization
 
   private final ClassLoader classLoader;
 
+  /**
+   * The serialization plans for {@link #serializationPolicy}.
+   */
+  private ClassSerializationPlan.Cache planCache;
+
   private SerializationPolicy serializationPolicy = RPC.getDefaultSerializationPolicy();
 
   private final SerializationPolicyProvider serializationPolicyProvider;
 
+  private String[] stringTable;
+
   /**
-   * Used to look up setter methods of the form 'void Class.setXXX(T value)'
-   * given a Class type and a field name XXX corresponding to a field of type T.
+   * The encoded request. It is tokenized lazily: {@link #tokenStart} is the
+   * offset of the next unread token, and numeric tokens are parsed in place
+   * without being copied out into strings.
    */
-  private final Map<Class<?>, Map<String, Method>> settersByClass =
-      new HashMap<Class<?>, Map<String, Method>>();
+  private CharSequence encodedTokens;
 
-  private String[] stringTable;
+  private int numberOfTokens;
 
-  private final ArrayList<String> tokenList = new ArrayList<String>();
+  private int tokenStart;
 
-  private int tokenListIndex;
+  private int tokensRead;
 
   {
     CLASS_TO_VECTOR_READER.put(boolean[].class, VectorReader.BOOLEAN_VECTOR);
@@ -436,7 +445,7 @@ public final class ServerSerializationStreamReader extends AbstractSerialization
   }
 
   public int getNumberOfTokens() {
-    return tokenList.size();
+    return numberOfTokens;
   }
 
   public SerializationPolicy getSerializationPolicy() {
@@ -445,20 +454,33 @@ public final class ServerSerializationStreamReader extends AbstractSerialization
 
   @Override
   public void prepareToRead(String encodedTokens) throws SerializationException {
-    tokenList.clear();
-    tokenListIndex = 0;
+    prepareToRead((CharSequence) encodedTokens);
+  }
+
+  /**
+   * Prepares to read the given encoded request. Unlike the
+   * {@link #prepareToRead(String) String} version, this accepts any character
+   * sequence, such as a {@link java.nio.CharBuffer} decoded straight from the
+   * request body, so the payload never has to be materialized as a String.
+   * The sequence must not be modified while it is being read.
+   */
+  public void prepareToRead(CharSequence encodedTokens) throws SerializationException {
+    this.encodedTokens = encodedTokens;
+    tokenStart = 0;
+    tokensRead = 0;
     stringTable = null;
 
-    int idx = 0, nextIdx;
-    while (-1 != (nextIdx = encodedTokens.indexOf(RPC_SEPARATOR_CHAR, idx))) {
-      String current = encodedTokens.substring(idx, nextIdx);
-      tokenList.add(current);
-      idx = nextIdx + 1;
+    numberOfTokens = 0;
+    for (int i = 0, n = encodedTokens.length(); i < n; ++i) {
+      if (encodedTokens.charAt(i) == RPC_SEPARATOR_CHAR) {
+        ++numberOfTokens;
+      }
     }
-    if (idx == 0) {
+    if (numberOfTokens == 0) {
       // Didn't find any separator, assume an older version with different
       // separators and get the version as the sequence of digits at the
       // beginning of the encoded string.
+      int idx = 0;
       while (idx < encodedTokens.length() && Character.isDigit(encodedTokens.charAt(idx))) {
         ++idx;
       }
@@ -467,14 +489,16 @@ public final class ServerSerializationStreamReader extends AbstractSerialization
             "Malformed or old RPC message received - expecting version between "
                 + SERIALIZATION_STREAM_MIN_VERSION + " and " + SERIALIZATION_STREAM_MAX_VERSION);
       } else {
-        int version = Integer.valueOf(encodedTokens.substring(0, idx));
+        int version = Integer.valueOf(encodedTokens.subSequence(0, idx).toString());
         throw new IncompatibleRemoteServiceException("Expecting version between "
             + SERIALIZATION_STREAM_MIN_VERSION + " and " + SERIALIZATION_STREAM_MAX_VERSION
             + " from client, got " + version + ".");
       }
     }
 
-    super.prepareToRead(encodedTokens);
+    // The base class does not look at the encoded form; it only reads the
+    // version and flags through readInt().
+    super.prepareToRead(null);
 
     // Check the RPC version number sent by the client
     if (getVersion() < SERIALIZATION_STREAM_MIN_VERSION
@@ -509,20 +533,31 @@ public final class ServerSerializationStreamReader extends AbstractSerialization
         throw new NullPointerException("serializationPolicyProvider.getSerializationPolicy()");
       }
     }
+    planCache = ClassSerializationPlan.getCache(serializationPolicy);
   }
 
   @Override
   public boolean readBoolean() throws SerializationException {
-    return !extract().equals("0");
+    int end = nextTokenEnd();
+    boolean value = end - tokenStart != 1 || encodedTokens.charAt(tokenStart) != '0';
+    tokenStart = end + 1;
+    return value;
   }
 
   @Override
   public byte readByte() throws SerializationException {
-    String value = extract();
+    int end = nextTokenEnd();
+    long value = parseSmallInt(end);
+    if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+      tokenStart = end + 1;
+      return (byte) value;
+    }
+
+    String token = extract(end);
     try {
-      return Byte.parseByte(value);
+      return Byte.parseByte(token);
     } catch (NumberFormatException e) {
-      throw getNumberFormatException(value, "byte", Byte.MIN_VALUE, Byte.MAX_VALUE);
+      throw getNumberFormatException(token, "byte", Byte.MIN_VALUE, Byte.MAX_VALUE);
     }
   }
 
@@ -534,21 +569,36 @@ public final class ServerSerializationStreamReader extends AbstractSerialization
 
   @Override
   public double readDouble() throws SerializationException {
-    return Double.parseDouble(extract());
+    int end = nextTokenEnd();
+    long value = parseSmallInt(end);
+    // -0 has to go through parseDouble to keep its sign
+    if (value != NOT_A_SMALL_INT && (value != 0 || encodedTokens.charAt(tokenStart) != '-')) {
+      tokenStart = end + 1;
+      return value;
+    }
+
+    return Double.parseDouble(extract(end));
   }
 
   @Override
   public float readFloat() throws SerializationException {
-    return (float) Double.parseDouble(extract());
+    return (float) readDouble();
   }
 
   @Override
   public int readInt() throws SerializationException {
-    String value = extract();
+    int end = nextTokenEnd();
+    long value = parseSmallInt(end);
+    if (value != NOT_A_SMALL_INT) {
+      tokenStart = end + 1;
+      return (int) value;
+    }
+
+    String token = extract(end);
     try {
-      return Integer.parseInt(value);
+      return Integer.parseInt(token);
     } catch (NumberFormatException e) {
-      throw getNumberFormatException(value, "int", Integer.MIN_VALUE, Integer.MAX_VALUE);
+      throw getNumberFormatException(token, "int", Integer.MIN_VALUE, Integer.MAX_VALUE);
     }
   }
 
@@ -594,11 +644,18 @@ public final class ServerSerializationStreamReader extends AbstractSerialization
 
   @Override
   public short readShort() throws SerializationException {
-    String value = extract();
+    int end = nextTokenEnd();
+    long value = parseSmallInt(end);
+    if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+      tokenStart = end + 1;
+      return (short) value;
+    }
+
+    String token = extract(end);
     try {
-      return Short.parseShort(value);
+      return Short.parseShort(token);
     } catch (NumberFormatException e) {
-      throw getNumberFormatException(value, "short", Short.MIN_VALUE, Short.MAX_VALUE);
+      throw getNumberFormatException(token, "short", Short.MIN_VALUE, Short.MAX_VALUE);
     }
   }
 
@@ -675,16 +732,16 @@ public final class ServerSerializationStreamReader extends AbstractSerialization
 
       serializationPolicy.validateDeserialize(instanceClass);
 
-      Class<?> customSerializer = SerializabilityUtil.hasServerCustomFieldSerializer(instanceClass);
+      // Arrays never have custom field serializers, and have no plan
+      ClassSerializationPlan plan = instanceClass.isArray() ? null : getPlan(instanceClass);
 
       int index = reserveDecodedObjectIndex();
 
-      instance = instantiate(customSerializer, instanceClass, expectedParameterTypes,
-          resolvedTypes);
+      instance = instantiate(plan, instanceClass, expectedParameterTypes, resolvedTypes);
 
       rememberDecodedObject(index, instance);
 
-      Object replacement = deserializeImpl(customSerializer, instanceClass, instance, expectedType,
+      Object replacement = deserializeImpl(plan, instanceClass, instance, expectedType,
           expectedParameterTypes, resolvedTypes);
 
       // Remove resolved types that were added for this instance.
@@ -777,24 +834,17 @@ public final class ServerSerializationStreamReader extends AbstractSerialization
     }
   }
 
-  private void deserializeClass(Class<?> instanceClass, Object instance, Type expectedType,
-      Type[] expectedParameterTypes, DequeMap<TypeVariable<?>, Type> resolvedTypes) throws
-      SerializationException, IllegalAccessException, NoSuchMethodException,
-      InvocationTargetException, ClassNotFoundException {
-    /**
-     * A map from field names to corresponding setter methods. The reference
-     * will be null for classes that do not require special handling for
-     * server-only fields.
-     */
-    Map<String, Method> setters = null;
-
+  private void deserializeClass(ClassSerializationPlan plan, Class<?> instanceClass,
+      Object instance, Type expectedType, Type[] expectedParameterTypes,
+      DequeMap<TypeVariable<?>, Type> resolvedTypes) throws SerializationException,
+      IllegalAccessException, NoSuchMethodException, InvocationTargetException,
+      ClassNotFoundException {
     /**
-     * A list of fields of this class known to the client. If null, assume the
-     * class is not enhanced and don't attempt to deal with server-only fields.
+     * Enhanced classes have fields unknown to the client, sent as opaque data.
+     * Their client-visible fields are set through setter methods where
+     * available (see ClassSerializationPlan.FieldPlan#set).
      */
-    Set<String> clientFieldNames =
-        serializationPolicy.getClientFieldNamesForEnhancedClass(instanceClass);
-    if (clientFieldNames != null) {
+    if (plan.isEnhanced()) {
       // Read and set server-only instance fields encoded in the RPC data
       try {
         String encodedData = readString();
@@ -817,61 +867,33 @@ public final class ServerSerializationStreamReader extends AbstractSerialization
       } catch (NoSuchFieldException e) {
         throw new SerializationException(e);
       }
-
-      setters = getSetters(instanceClass);
     }
 
-    Field[] serializableFields = SerializabilityUtil.applyFieldSerializationPolicy(instanceClass,
-        serializationPolicy);
-    for (Field declField : serializableFields) {
-      assert (declField != null);
-      if ((clientFieldNames != null) && !clientFieldNames.contains(declField.getName())) {
-        continue;
-      }
-
-      Type declGenericType = declField.getGenericType();
-      Object value = deserializeValue(declField.getType(), declGenericType, resolvedTypes);
-
-      String fieldName = declField.getName();
-      Method setter;
-      /*
-       * If setters is non-null and there is a setter method for the given
-       * field, call the setter. Otherwise, set the field value directly. For
-       * persistence APIs such as JDO, the setter methods have been enhanced to
-       * manipulate additional object state, causing direct field writes to fail
-       * to update the object state properly.
-       */
-      if ((setters != null) && ((setter = setters.get(fieldName)) != null)) {
-        setter.invoke(instance, value);
-      } else {
-        boolean isAccessible = declField.isAccessible();
-        boolean needsAccessOverride = (!isAccessible
-            && !Modifier.isPublic(declField.getModifiers()))
-            || Modifier.isFinal(declField.getModifiers());
-        if (needsAccessOverride) {
-          // Override access restrictions
-          declField.setAccessible(true);
-        }
-
-        declField.set(instance, value);
-      }
+    for (ClassSerializationPlan.FieldPlan field : plan.getClientFields()) {
+      Object value = deserializeValue(field.getType(), field.getGenericType(), resolvedTypes);
+      field.set(instance, value);
     }
 
-    Class<?> superClass = instanceClass.getSuperclass();
-    if (serializationPolicy.shouldDeserializeFields(superClass)) {
+    if (plan.shouldDeserializeSuperclass()) {
+      Class<?> superClass = instanceClass.getSuperclass();
       Type[] superParameterTypes = SerializabilityUtil.findExpectedParameterTypes(
           superClass, superClass, resolvedTypes);
-      deserializeImpl(SerializabilityUtil.hasServerCustomFieldSerializer(superClass), superClass,
-          instance, expectedType, superParameterTypes, resolvedTypes);
+      deserializeImpl(getPlan(superClass), superClass, instance, expectedType,
+          superParameterTypes, resolvedTypes);
     }
   }
 
-  private Object deserializeImpl(Class<?> customSerializer, Class<?> instanceClass,
+  /**
+   * @param plan the plan for <code>instanceClass</code>, or <code>null</code>
+   *          if it is an array
+   */
+  private Object deserializeImpl(ClassSerializationPlan plan, Class<?> instanceClass,
       Object instance, Type expectedType, Type[] expectedParameterTypes,
       DequeMap<TypeVariable<?>, Type> resolvedTypes)
       throws NoSuchMethodException, IllegalArgumentException, IllegalAccessException,
       InvocationTargetException, SerializationException, ClassNotFoundException {
 
+    Class<?> customSerializer = plan == null ? null : plan.getServerCustomSerializer();
     if (customSerializer != null) {
       @SuppressWarnings("unchecked")
       CustomFieldSerializer<Object> customFieldSerializer =
@@ -903,7 +925,7 @@ public final class ServerSerializationStreamReader extends AbstractSerialization
     } else if (instanceClass.isEnum()) {
       // Enums are deserialized when they are instantiated
     } else {
-      deserializeClass(instanceClass, instance, expectedType, expectedParameterTypes,
+      deserializeClass(plan, instanceClass, instance, expectedType, expectedParameterTypes,
           resolvedTypes);
     }
 
@@ -990,12 +1012,71 @@ public final class ServerSerializationStreamReader extends AbstractSerialization
     throw new NoSuchMethodException("deserialize");
   }
 
+  /**
+   * Consumes the next token and returns it as a string.
+   */
   private String extract() throws SerializationException {
-    try {
-      return tokenList.get(tokenListIndex++);
-    } catch (IndexOutOfBoundsException e) {
-      throw new SerializationException("Too few tokens in RPC request", e);
+    return extract(nextTokenEnd());
+  }
+
+  /**
+   * Consumes the token that {@link #nextTokenEnd()} has already located and
+   * returns it as a string.
+   */
+  private String extract(int end) {
+    String token = encodedTokens.subSequence(tokenStart, end).toString();
+    tokenStart = end + 1;
+    return token;
+  }
+
+  /**
+   * Returns the offset of the separator that terminates the next token, which
+   * starts at {@link #tokenStart}. The token is counted as read, but
+   * <code>tokenStart</code> is left for the caller to advance once it has
+   * looked at the token's characters.
+   */
+  private int nextTokenEnd() throws SerializationException {
+    if (tokensRead == numberOfTokens) {
+      throw new SerializationException("Too few tokens in RPC request");
+    }
+    ++tokensRead;
+
+    if (encodedTokens instanceof String) {
+      return ((String) encodedTokens).indexOf(RPC_SEPARATOR_CHAR, tokenStart);
+    }
+    int end = tokenStart;
+    while (encodedTokens.charAt(end) != RPC_SEPARATOR_CHAR) {
+      ++end;
+    }
+    return end;
+  }
+
+  /**
+   * Parses the token between {@link #tokenStart} and <code>end</code> in place
+   * if it is an optionally negative decimal integer of at most nine digits,
+   * which is always in int range. Returns {@link #NOT_A_SMALL_INT} for
+   * anything else, which callers hand to the JDK parsers so that malformed
+   * and out-of-range tokens are reported exactly as before.
+   */
+  private long parseSmallInt(int end) {
+    int pos = tokenStart;
+    boolean negative = pos < end && encodedTokens.charAt(pos) == '-';
+    if (negative) {
+      ++pos;
+    }
+    if (pos == end || end - pos > 9) {
+      return NOT_A_SMALL_INT;
+    }
+
+    int value = 0;
+    for (; pos < end; ++pos) {
+      char ch = encodedTokens.charAt(pos);
+      if (ch < '0' || ch > '9') {
+        return NOT_A_SMALL_INT;
+      }
+      value = value * 10 + (ch - '0');
     }
+    return negative ? -value : value;
   }
 
   /**
@@ -1028,51 +1109,19 @@ public final class ServerSerializationStreamReader extends AbstractSerialization
         + value);
   }
 
-  /**
-   * Returns a Map from a field name to the setter method for that field, for a
-   * given class. The results are computed once for each class and cached.
-   * 
-   * @param instanceClass the class to query
-   * @return a Map from Strings to Methods such that the name <code>XXX</code>
-   *         (corresponding to the field <code>T XXX</code>) maps to the method
-   *         <code>void setXXX(T value)</code>, or null if no such method
-   *         exists.
-   */
-  private Map<String, Method> getSetters(Class<?> instanceClass) {
-    synchronized (settersByClass) {
-      Map<String, Method> setters = settersByClass.get(instanceClass);
-      if (setters == null) {
-        setters = new HashMap<String, Method>();
-
-        // Iterate over each field and locate a suitable setter method
-        Field[] fields = instanceClass.getDeclaredFields();
-        for (Field field : fields) {
-          // Consider non-static, non-transient (or @GwtTransient) fields only
-          if (SerializabilityUtil.isNotStaticOrTransient(field)
-              && SerializabilityUtil.isNotFinal(field)) {
-            String fieldName = field.getName();
-            String setterName =
-                "set" + Character.toUpperCase(fieldName.charAt(0)) + fieldName.substring(1);
-            try {
-              Method setter = instanceClass.getMethod(setterName, field.getType());
-              setters.put(fieldName, setter);
-            } catch (NoSuchMethodException e) {
-              // Just leave this field out of the map
-            }
-          }
-        }
-
-        settersByClass.put(instanceClass, setters);
-      }
-
-      return setters;
-    }
+  private ClassSerializationPlan getPlan(Class<?> instanceClass) throws SerializationException {
+    return planCache.get(instanceClass, serializationPolicy);
   }
 
-  private Object instantiate(Class<?> customSerializer, Class<?> instanceClass,
+  /**
+   * @param plan the plan for <code>instanceClass</code>, or <code>null</code>
+   *          if it is an array
+   */
+  private Object instantiate(ClassSerializationPlan plan, Class<?> instanceClass,
       Type[] expectedParameterTypes, DequeMap<TypeVariable<?>, Type> resolvedTypes) throws
       InstantiationException, IllegalAccessException, IllegalArgumentException,
       InvocationTargetException, NoSuchMethodException, SerializationException {
+    Class<?> customSerializer = plan == null ? null : plan.getServerCustomSerializer();
     if (customSerializer != null) {
       CustomFieldSerializer<?> customFieldSerializer =
           SerializabilityUtil.loadCustomFieldSerializer(customSerializer);
@@ -1105,6 +1154,12 @@ public final class ServerSerializationStreamReader extends AbstractSerialization
       assert (ordinal >= 0 && ordinal < enumConstants.length);
       return enumConstants[ordinal];
     } else {
+      Object instance = plan.newInstance();
+      if (instance != null) {
+        return instance;
+      }
+
+      // Let reflection report why the class cannot be instantiated
       Constructor<?> constructor = instanceClass.getDeclaredConstructor();
       constructor.setAccessible(true);
       return constructor.newInstance();
@@ -19,21 +19,21 @@ import com.google.gwt.user.client.rpc.CustomFieldSerializer;
 import com.google.gwt.user.client.rpc.SerializationException;
 import com.google.gwt.user.client.rpc.impl.AbstractSerializationStreamWriter;
 import com.google.gwt.user.server.Base64Utils;
+import com.google.gwt.user.server.rpc.RPCServletUtils;
 import com.google.gwt.user.server.rpc.SerializationPolicy;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectOutputStream;
-import java.lang.reflect.Field;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.IdentityHashMap;
-import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
-import java.util.Set;
 
 /**
  * For internal use only. Used for server call serialization. This class is
@@ -114,6 +114,85 @@ public final class ServerSerializationStreamWriter extends
     }
   }
 
+  /**
+   * Streaming counterpart of {@link LengthConstrainedArray} that writes each
+   * token through to a {@link Writer} as it is added, rather than buffering the
+   * whole array.
+   */
+  private static class LengthConstrainedArrayWriter {
+    private final Writer out;
+    private int count = 0;
+    private boolean needsComma = false;
+    private int total = 0;
+    private boolean javascript = false;
+
+    LengthConstrainedArrayWriter(Writer out) throws IOException {
+      this.out = out;
+      out.write('[');
+    }
+
+    public void addToken(String token) throws IOException {
+      beginToken();
+      out.write(token);
+    }
+
+    public void addEscapedToken(String token) throws IOException {
+      CharVector charVector = createEscapeVector(token);
+      if (escapeStringInto(token, true, charVector)) {
+        javascript = true;
+      }
+      beginToken();
+      out.write(charVector.asArray(), 0, charVector.getSize());
+    }
+
+    public void addToken(int i) throws IOException {
+      addToken(String.valueOf(i));
+    }
+
+    /**
+     * Starts a nested array as the next token of this array. The nested array
+     * must be {@link #close() closed} before any further tokens are added to
+     * this one.
+     */
+    public LengthConstrainedArrayWriter beginArrayToken() throws IOException {
+      beginToken();
+      return new LengthConstrainedArrayWriter(out);
+    }
+
+    public void close() throws IOException {
+      out.write(total > LengthConstrainedArray.MAXIMUM_ARRAY_LENGTH
+          ? LengthConstrainedArray.POSTLUDE : "]");
+    }
+
+    public boolean isJavaScript() {
+      return javascript;
+    }
+
+    public void setJavaScript(boolean javascript) {
+      this.javascript = javascript;
+    }
+
+    private void beginToken() throws IOException {
+      total++;
+      if (count++ == LengthConstrainedArray.MAXIMUM_ARRAY_LENGTH) {
+        if (total == LengthConstrainedArray.MAXIMUM_ARRAY_LENGTH + 1) {
+          out.write(LengthConstrainedArray.PRELUDE);
+          javascript = true;
+        } else {
+          out.write("],[");
+        }
+        count = 0;
+        needsComma = false;
+      }
+
+      if (needsComma) {
+        out.write(',');
+      } else {
+        needsComma = true;
+      }
+    }
+  }
+
   /**
    * Enumeration used to provided typed instance writers.
    */
@@ -412,10 +491,25 @@ public final class ServerSerializationStreamWriter extends
 
   private static String escapeString(String toEscape, boolean splitNodes,
       LengthConstrainedArray array) {
-    // Since escaped characters will increase the output size, allocate extra room to start.
+    CharVector charVector = createEscapeVector(toEscape);
+    if (escapeStringInto(toEscape, splitNodes, charVector) && array != null) {
+      array.setJavaScript(true);
+    }
+    return String.valueOf(charVector.asArray(), 0, charVector.getSize());
+  }
+
+  /**
+   * Appends the escaped JavaScript string literal for <code>toEscape</code> to
+   * <code>charVector</code>.
+   *
+   * @return <code>true</code> if the literal had to be split into several
+   *         string nodes joined with '+', which makes it JavaScript rather than
+   *         JSON
+   */
+  private static boolean escapeStringInto(String toEscape, boolean splitNodes,
+      CharVector charVector) {
     int length = toEscape.length();
-    int capacityIncrement = Math.max(length, 16);
-    CharVector charVector = new CharVector(capacityIncrement * 2, capacityIncrement);
+    boolean split = false;
 
     charVector.add(JS_QUOTE_CHAR);
 
@@ -442,14 +536,18 @@ public final class ServerSerializationStreamWriter extends
         charVector.add(JS_QUOTE_CHAR);
         charVector.add('+');
         charVector.add(JS_QUOTE_CHAR);
-        if (array != null) {
-          array.setJavaScript(true);
-        }
+        split = true;
       }
     }
 
     charVector.add(JS_QUOTE_CHAR);
-    return String.valueOf(charVector.asArray(), 0, charVector.getSize());
+    return split;
+  }
+
+  private static CharVector createEscapeVector(String toEscape) {
+    // Since escaped characters will increase the output size, allocate extra room to start.
+    int capacityIncrement = Math.max(toEscape.length(), 16);
+    return new CharVector(capacityIncrement * 2, capacityIncrement);
   }
 
   /**
@@ -574,14 +672,52 @@ public final class ServerSerializationStreamWriter extends
     }
   }
 
+  /**
+   * Writes the low <code>byteCount</code> bytes of <code>value</code>, most
+   * significant first.
+   */
+  private static void writeFixed(ByteArrayOutputStream out, long value, int byteCount) {
+    for (int shift = 8 * (byteCount - 1); shift >= 0; shift -= 8) {
+      out.write((int) (value >>> shift));
+    }
+  }
+
+  /**
+   * Writes the zigzag encoding of <code>value</code>, which maps small
+   * negative numbers to small unsigned ones, as a varint.
+   */
+  private static void writeSignedVarint(ByteArrayOutputStream out, int value) {
+    writeVarint(out, ((value << 1) ^ (value >> 31)) & 0xFFFFFFFFL);
+  }
+
+  /**
+   * Writes <code>value</code>, taken as unsigned, in groups of seven bits,
+   * least significant first, setting the high bit of every byte but the last.
+   */
+  private static void writeVarint(ByteArrayOutputStream out, long value) {
+    while ((value & ~0x7FL) != 0) {
+      out.write((int) (value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.write((int) value);
+  }
+
+  private final ClassSerializationPlan.Cache planCache;
+
   private final SerializationPolicy serializationPolicy;
 
   private ArrayList<String> tokenList = new ArrayList<String>();
 
   private int tokenListCharCount;
 
+  /**
+   * The values written so far if this stream uses the binary format, or
+   * <code>null</code> if it uses the JavaScript/JSON format.
+   */
+  private final ByteArrayOutputStream binaryPayload;
+
   public ServerSerializationStreamWriter(SerializationPolicy serializationPolicy) {
-    this.serializationPolicy = serializationPolicy;
+    this(serializationPolicy, false);
   }
 
   public ServerSerializationStreamWriter(SerializationPolicy serializationPolicy, int version) {
@@ -589,11 +725,41 @@ public final class ServerSerializationStreamWriter extends
     setVersion(version);
   }
 
+  /**
+   * Creates a stream that writes the binary format read by
+   * {@link com.google.gwt.user.client.rpc.impl.BinarySerializationStreamReader}
+   * if <code>binary</code> is true. A binary stream is written with
+   * {@link #toByteArray()} or {@link #writeTo(OutputStream)}, rather than
+   * {@link #toString()} or {@link #writeTo(Writer)}.
+   */
+  public ServerSerializationStreamWriter(SerializationPolicy serializationPolicy, int version,
+      boolean binary) {
+    this(serializationPolicy, binary);
+    setVersion(version);
+  }
+
+  private ServerSerializationStreamWriter(SerializationPolicy serializationPolicy,
+      boolean binary) {
+    this.serializationPolicy = serializationPolicy;
+    this.planCache = ClassSerializationPlan.getCache(serializationPolicy);
+    this.binaryPayload = binary ? new ByteArrayOutputStream() : null;
+  }
+
+  /**
+   * Returns whether this stream writes the binary format.
+   */
+  public boolean isBinary() {
+    return binaryPayload != null;
+  }
+
   @Override
   public void prepareToWrite() {
     super.prepareToWrite();
     tokenList.clear();
     tokenListCharCount = 0;
+    if (binaryPayload != null) {
+      binaryPayload.reset();
+    }
   }
 
   public void serializeValue(Object value, Class<?> type)
@@ -616,21 +782,145 @@ public final class ServerSerializationStreamWriter extends
    */
   @Override
   public String toString() {
+    if (binaryPayload != null) {
+      throw new IllegalStateException("Binary streams have no string form");
+    }
     // Build a JavaScript string (with escaping, of course).
     // We take a guess at how big to make to buffer to avoid numerous resizes.
     //
     int capacityGuess = 2 * tokenListCharCount + 2 * tokenList.size();
-    LengthConstrainedArray stream = new LengthConstrainedArray(capacityGuess);
+    StringWriter out = new StringWriter(capacityGuess);
+    try {
+      writeTo(out);
+    } catch (IOException e) {
+      throw new RuntimeException("StringWriter should never throw IOException", e);
+    }
+    return out.toString();
+  }
+
+  /**
+   * Writes the same array of JavaScript string literals that
+   * {@link #toString()} returns directly to <code>out</code>, one token at a
+   * time, so that the encoded payload never has to be held in memory as a
+   * single string.
+   *
+   * @param out the writer that receives the encoded payload; it is neither
+   *          flushed nor closed by this method
+   * @throws IOException if writing to <code>out</code> fails
+   */
+  public void writeTo(Writer out) throws IOException {
+    if (binaryPayload != null) {
+      throw new IllegalStateException("Binary streams must be written to an OutputStream");
+    }
+    LengthConstrainedArrayWriter stream = new LengthConstrainedArrayWriter(out);
     writePayload(stream);
     writeStringTable(stream);
     writeHeader(stream);
-
-    return stream.toString();
+    stream.close();
   }
   
+  /**
+   * Returns the encoding of a binary stream: its header, string table and
+   * values.
+   *
+   * @throws IllegalStateException if this is not a binary stream
+   */
+  public byte[] toByteArray() {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(binaryPayload == null ? 0
+        : binaryPayload.size() + 16 * getStringTable().size() + 16);
+    try {
+      writeTo(out);
+    } catch (IOException e) {
+      throw new RuntimeException("ByteArrayOutputStream should never throw IOException", e);
+    }
+    return out.toByteArray();
+  }
+
+  @Override
+  public void writeBoolean(boolean fieldValue) {
+    if (binaryPayload != null) {
+      binaryPayload.write(fieldValue ? 1 : 0);
+    } else {
+      super.writeBoolean(fieldValue);
+    }
+  }
+
+  @Override
+  public void writeByte(byte fieldValue) {
+    if (binaryPayload != null) {
+      binaryPayload.write(fieldValue);
+    } else {
+      super.writeByte(fieldValue);
+    }
+  }
+
+  @Override
+  public void writeChar(char ch) {
+    if (binaryPayload != null) {
+      writeVarint(binaryPayload, ch);
+    } else {
+      super.writeChar(ch);
+    }
+  }
+
+  @Override
+  public void writeFloat(float fieldValue) {
+    if (binaryPayload != null) {
+      writeFixed(binaryPayload, Float.floatToIntBits(fieldValue), 4);
+    } else {
+      super.writeFloat(fieldValue);
+    }
+  }
+
+  @Override
+  public void writeInt(int fieldValue) {
+    if (binaryPayload != null) {
+      writeSignedVarint(binaryPayload, fieldValue);
+    } else {
+      super.writeInt(fieldValue);
+    }
+  }
+
+  @Override
+  public void writeShort(short value) {
+    if (binaryPayload != null) {
+      writeInt(value);
+    } else {
+      super.writeShort(value);
+    }
+  }
+
+  /**
+   * Writes a binary stream to <code>out</code>, as returned by
+   * {@link #toByteArray()}.
+   *
+   * @param out the stream that receives the encoded payload; it is neither
+   *          flushed nor closed by this method
+   * @throws IllegalStateException if this is not a binary stream
+   * @throws IOException if writing to <code>out</code> fails
+   */
+  public void writeTo(OutputStream out) throws IOException {
+    if (binaryPayload == null) {
+      throw new IllegalStateException("Only binary streams can be written to an OutputStream");
+    }
+    ByteArrayOutputStream header = new ByteArrayOutputStream();
+    writeSignedVarint(header, getVersion());
+    writeSignedVarint(header, getFlags());
+    writeVarint(header, getStringTable().size());
+    for (String string : getStringTable()) {
+      byte[] bytes = string.getBytes(RPCServletUtils.CHARSET_UTF8);
+      writeVarint(header, bytes.length);
+      header.write(bytes);
+    }
+    header.writeTo(out);
+    binaryPayload.writeTo(out);
+  }
+
   @Override
   public void writeLong(long value) {
-    if (getVersion() == SERIALIZATION_STREAM_MIN_VERSION) {
+    if (binaryPayload != null) {
+      writeVarint(binaryPayload, (value << 1) ^ (value >> 63));
+    } else if (getVersion() == SERIALIZATION_STREAM_MIN_VERSION) {
       // Write longs as a pair of doubles for backwards compatibility
       double[] parts = getAsDoubleArray(value);
       assert parts != null && parts.length == 2;
@@ -647,7 +937,9 @@ public final class ServerSerializationStreamWriter extends
 
   @Override
   public void writeDouble(double fieldValue) {
-    if (getVersion() >= SERIALIZATION_STREAM_JSON_VERSION
+    if (binaryPayload != null) {
+      writeFixed(binaryPayload, Double.doubleToLongBits(fieldValue), 8);
+    } else if (getVersion() >= SERIALIZATION_STREAM_JSON_VERSION
         && (Double.isNaN(fieldValue) || Double.isInfinite(fieldValue))) {
       append('"' + String.valueOf(fieldValue) + '"');
     } else {
@@ -719,84 +1011,48 @@ public final class ServerSerializationStreamWriter extends
     }
   }
 
-  private void serializeClass(Object instance, Class<?> instanceClass)
-      throws SerializationException {
+  private void serializeClass(Object instance, Class<?> instanceClass,
+      ClassSerializationPlan plan) throws SerializationException {
     assert (instance != null);
-    Field[] serializableFields = SerializabilityUtil.applyFieldSerializationPolicy(instanceClass,
-        serializationPolicy);
 
     /**
-     * If clientFieldNames is non-null, identify any additional server-only fields and serialize
-     * them separately.  Java serialization is used to construct a byte array, which is encoded
-     * as a String and written prior to the rest of the field data.
+     * For enhanced classes, serialize any additional server-only fields
+     * separately.  Java serialization is used to construct a byte array, which is
+     * encoded as a String and written prior to the rest of the field data.
      */
-    Set<String> clientFieldNames = serializationPolicy.getClientFieldNamesForEnhancedClass(instanceClass);
-    if (clientFieldNames != null) {
-      List<Field> serverFields = new ArrayList<Field>();
-      for (Field declField : serializableFields) {
-        assert (declField != null);
-        
-        // Identify server-only fields
-        if (!clientFieldNames.contains(declField.getName())) {
-          serverFields.add(declField);
-          continue;
-        }
-      }
-      
+    ClassSerializationPlan.FieldPlan[] serverFields = plan.getServerOnlyFields();
+    if (serverFields != null) {
       // Serialize the server-only fields into a byte array and encode as a String
       try {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         ObjectOutputStream oos = new ObjectOutputStream(baos);
-        oos.writeInt(serverFields.size());
-        for (Field f : serverFields) {
+        oos.writeInt(serverFields.length);
+        for (ClassSerializationPlan.FieldPlan f : serverFields) {
           oos.writeObject(f.getName());
-          f.setAccessible(true);
-          Object fieldData = f.get(instance);
-          oos.writeObject(fieldData);
+          oos.writeObject(f.get(instance));
         }
         oos.close();
 
         byte[] serializedData = baos.toByteArray();
         String encodedData = Base64Utils.toBase64(serializedData);
         writeString(encodedData);
-      } catch (IllegalAccessException e) {
-        throw new SerializationException(e);
       } catch (IOException e) {
         throw new SerializationException(e);
       }
     }
-    
-    // Write the client-visible field data
-    for (Field declField : serializableFields) {
-      if ((clientFieldNames != null) && !clientFieldNames.contains(declField.getName())) {
-        // Skip server-only fields
-        continue;
-      }
-
-      boolean isAccessible = declField.isAccessible();
-      boolean needsAccessOverride = !isAccessible
-          && !Modifier.isPublic(declField.getModifiers());
-      if (needsAccessOverride) {
-        // Override the access restrictions
-        declField.setAccessible(true);
-      }
 
-      Object value;
+    // Write the client-visible field data
+    for (ClassSerializationPlan.FieldPlan field : plan.getClientFields()) {
       try {
-        value = declField.get(instance);
-        serializeValue(value, declField.getType());
+        serializeValue(field.get(instance), field.getType());
 
       } catch (IllegalArgumentException e) {
         throw new SerializationException(e);
-
-      } catch (IllegalAccessException e) {
-        throw new SerializationException(e);
       }
     }
 
-    Class<?> superClass = instanceClass.getSuperclass();
-    if (serializationPolicy.shouldSerializeFields(superClass)) {
-      serializeImpl(instance, superClass);
+    if (plan.shouldSerializeSuperclass()) {
+      serializeImpl(instance, instanceClass.getSuperclass());
     }
   }
 
@@ -804,42 +1060,38 @@ public final class ServerSerializationStreamWriter extends
       throws SerializationException {
     assert (instance != null);
 
-    Class<?> customSerializer = SerializabilityUtil.hasCustomFieldSerializer(instanceClass);
-    if (customSerializer != null) {
+    if (instanceClass.isArray()) {
+      // Arrays never have custom field serializers
+      serializeArray(instanceClass, instance);
+      return;
+    }
+
+    ClassSerializationPlan plan = planCache.get(instanceClass, serializationPolicy);
+    if (plan.getCustomSerializer() != null) {
       // Use custom field serializer
-      @SuppressWarnings("unchecked")
-      CustomFieldSerializer<Object> customFieldSerializer =
-          (CustomFieldSerializer<Object>)
-              SerializabilityUtil.loadCustomFieldSerializer(customSerializer);
+      CustomFieldSerializer<Object> customFieldSerializer = plan.getCustomFieldSerializer();
       if (customFieldSerializer == null) {
-        serializeWithCustomSerializer(customSerializer, instance,
-            instanceClass);
+        serializeWithCustomSerializer(plan, instance);
       } else {
         customFieldSerializer.serializeInstance(this, instance);
       }
-    } else if (instanceClass.isArray()) {
-      serializeArray(instanceClass, instance);
     } else if (instanceClass.isEnum()) {
       writeInt(((Enum<?>) instance).ordinal());
     } else {
       // Regular class instance
-      serializeClass(instance, instanceClass);
+      serializeClass(instance, instanceClass, plan);
     }
   }
 
-  private void serializeWithCustomSerializer(Class<?> customSerializer,
-      Object instance, Class<?> instanceClass) throws SerializationException {
+  private void serializeWithCustomSerializer(ClassSerializationPlan plan,
+      Object instance) throws SerializationException {
 
     try {
-      assert (!instanceClass.isArray());
-
-      for (Method method : customSerializer.getMethods()) {
-        if ("serialize".equals(method.getName())) {
-          method.invoke(null, this, instance);
-          return;
-        }
+      Method serialize = plan.getCustomSerializeMethod();
+      if (serialize == null) {
+        throw new NoSuchMethodException("serialize");
       }
-      throw new NoSuchMethodException("serialize");
+      serialize.invoke(null, this, instance);
     } catch (SecurityException e) {
       throw new SerializationException(e);
 
@@ -861,7 +1113,7 @@ public final class ServerSerializationStreamWriter extends
    * Notice that the field are written in reverse order that the client can just
    * pop items out of the stream.
    */
-  private void writeHeader(LengthConstrainedArray stream) {
+  private void writeHeader(LengthConstrainedArrayWriter stream) throws IOException {
     stream.addToken(getFlags());
     if (stream.isJavaScript() && getVersion() >= SERIALIZATION_STREAM_JSON_VERSION) {
       // Ensure we are not using the JSON supported version if stream is Javascript instead of JSON
@@ -871,19 +1123,19 @@ public final class ServerSerializationStreamWriter extends
     }
   }
 
-  private void writePayload(LengthConstrainedArray stream) {
+  private void writePayload(LengthConstrainedArrayWriter stream) throws IOException {
     ListIterator<String> tokenIterator = tokenList.listIterator(tokenList.size());
     while (tokenIterator.hasPrevious()) {
       stream.addToken(tokenIterator.previous());
     }
   }
 
-  private void writeStringTable(LengthConstrainedArray stream) {
-    LengthConstrainedArray tableStream = new LengthConstrainedArray();
+  private void writeStringTable(LengthConstrainedArrayWriter stream) throws IOException {
+    LengthConstrainedArrayWriter tableStream = stream.beginArrayToken();
     for (String s : getStringTable()) {
       tableStream.addEscapedToken(s);
     }
-    stream.addToken(tableStream.toString());
+    tableStream.close();
     stream.setJavaScript(stream.isJavaScript() || tableStream.isJavaScript());
   }
 }
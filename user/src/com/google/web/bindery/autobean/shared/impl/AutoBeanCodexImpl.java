@@ -53,6 +53,20 @@ public class AutoBeanCodexImpl {
     Splittable extractSplittable(EncodeState state, Object value);
   }
 
+  /**
+   * Receives the text of an encoded payload in chunks as it is produced, so
+   * that large payloads need not be held in memory in full.
+   *
+   * @see EncodeState#forEncode(AutoBeanFactory, StringBuilder, EncodeSink)
+   */
+  public interface EncodeSink {
+    /**
+     * Consumes the contents of <code>buffer</code>, which is cleared
+     * afterwards.
+     */
+    void write(StringBuilder buffer);
+  }
+
   /**
    * Contains transient state for Coder operation.
    */
@@ -61,14 +75,24 @@ public class AutoBeanCodexImpl {
      * Constructs a state object used for decoding payloads.
      */
     public static EncodeState forDecode(AutoBeanFactory factory) {
-      return new EncodeState(factory, null);
+      return new EncodeState(factory, null, null);
     }
 
     /**
      * Constructs a state object used for encoding payloads.
      */
     public static EncodeState forEncode(AutoBeanFactory factory, StringBuilder sb) {
-      return new EncodeState(factory, sb);
+      return new EncodeState(factory, sb, null);
+    }
+
+    /**
+     * Constructs a state object used for encoding payloads that passes the
+     * payload to <code>sink</code> whenever <code>sb</code> grows beyond a few
+     * thousand chars. Call {@link #flush()} after encoding to pass the rest.
+     */
+    public static EncodeState forEncode(AutoBeanFactory factory, StringBuilder sb,
+        EncodeSink sink) {
+      return new EncodeState(factory, sb, sink);
     }
 
     /**
@@ -76,19 +100,46 @@ public class AutoBeanCodexImpl {
      * AutoBean implementation details.
      */
     public static EncodeState forTesting() {
-      return new EncodeState(null, null);
+      return new EncodeState(null, null, null);
     }
 
+    /**
+     * The size at which the encoded text is passed to the sink.
+     */
+    private static final int FLUSH_THRESHOLD = 8192;
+
     final EnumMap enumMap;
     final AutoBeanFactory factory;
     final StringBuilder sb;
     final Stack<AutoBean<?>> seen;
+    private final EncodeSink sink;
 
-    private EncodeState(AutoBeanFactory factory, StringBuilder sb) {
+    private EncodeState(AutoBeanFactory factory, StringBuilder sb, EncodeSink sink) {
       this.factory = factory;
       enumMap = factory instanceof EnumMap ? (EnumMap) factory : null;
       this.sb = sb;
       this.seen = sb == null ? null : new Stack<AutoBean<?>>();
+      this.sink = sink;
+    }
+
+    /**
+     * Passes any encoded text to the sink, if there is one.
+     */
+    public void flush() {
+      if (sink != null && sb.length() > 0) {
+        sink.write(sb);
+        sb.setLength(0);
+      }
+    }
+
+    /**
+     * Called between values, which are the points at which the encoded text
+     * may be passed to the sink.
+     */
+    void flushIfFull() {
+      if (sink != null && sb.length() >= FLUSH_THRESHOLD) {
+        flush();
+      }
     }
   }
 
@@ -163,6 +214,7 @@ public class AutoBeanCodexImpl {
         elementDecoder.encode(state, it.next());
         while (it.hasNext()) {
           state.sb.append(",");
+          state.flushIfFull();
           elementDecoder.encode(state, it.next());
         }
       }
@@ -266,6 +318,7 @@ public class AutoBeanCodexImpl {
             first = false;
           } else {
             state.sb.append(",");
+            state.flushIfFull();
           }
 
           keyDecoder.encode(state, mapKey);
@@ -407,6 +460,7 @@ public class AutoBeanCodexImpl {
         first = false;
       } else {
         state.sb.append(",");
+        state.flushIfFull();
       }
       state.sb.append(StringQuoter.quote(propertyName));
       state.sb.append(":");
@@ -63,6 +63,23 @@ public class Configuration {
       return this;
     }
 
+    /**
+     * Sets whether concrete classes are generated for AutoBean interfaces,
+     * rather than having each method call dispatched reflectively through a
+     * {@link java.lang.reflect.Proxy}. Classes are only generated for public
+     * interfaces whose methods are all property accessors, when there are no
+     * categories and ASM is on the classpath; other interfaces still use
+     * Proxy instances. Defaults to the value of the
+     * {@value Configuration#GENERATE_CLASSES_PROPERTY} system property.
+     * 
+     * @param generateClasses whether to generate classes
+     * @return the Builder
+     */
+    public Builder setGenerateClasses(boolean generateClasses) {
+      toReturn.generateClasses = generateClasses;
+      return this;
+    }
+
     /**
      * Equivalent to applying a
      * {@link com.google.web.bindery.autobean.shared.AutoBeanFactory.NoWrap
@@ -77,8 +94,18 @@ public class Configuration {
     }
   }
 
+  /**
+   * The system property that enables
+   * {@link Builder#setGenerateClasses(boolean) class generation} by default,
+   * including for the factories created by
+   * {@link AutoBeanFactorySource#create(Class)}.
+   */
+  public static final String GENERATE_CLASSES_PROPERTY = "gwt.autobean.generateClasses";
+
   private List<Class<?>> categories = Collections.emptyList();
 
+  private boolean generateClasses = Boolean.getBoolean(GENERATE_CLASSES_PROPERTY);
+
   private Set<Class<?>> noWrap = new HashSet<Class<?>>();
 
   private Configuration() {
@@ -91,4 +118,8 @@ public class Configuration {
   public Set<Class<?>> getNoWrap() {
     return noWrap;
   }
+
+  public boolean isGenerateClasses() {
+    return generateClasses;
+  }
 }
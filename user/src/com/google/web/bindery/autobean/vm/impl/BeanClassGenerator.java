@@ -0,0 +1,411 @@
+/*
+ * Copyright 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.web.bindery.autobean.vm.impl;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Generates concrete shim and simple peer classes for AutoBean interfaces with
+ * ASM, so that property access calls the {@link ProxyAutoBean} directly rather
+ * than going through {@link java.lang.reflect.Proxy} and
+ * {@link java.lang.reflect.InvocationHandler} dispatch.
+ * <p>
+ * Only public interfaces whose methods are all getters and setters of public
+ * types are supported. Other interfaces, and every interface when ASM is not on
+ * the classpath, keep using Proxy instances.
+ */
+final class BeanClassGenerator {
+  /**
+   * The generated classes for a bean type.
+   */
+  static final class BeanClasses {
+    private final Constructor<?> peer;
+    private final Constructor<?> shim;
+
+    BeanClasses(Constructor<?> peer, Constructor<?> shim) {
+      this.peer = peer;
+      this.shim = shim;
+    }
+
+    /**
+     * Creates a simple peer, which implements the bean type.
+     */
+    Object createPeer(ProxyAutoBean<?> bean) {
+      return newInstance(peer, bean);
+    }
+
+    /**
+     * Creates a shim, which implements the bean type and extends
+     * {@link GeneratedShim}.
+     */
+    GeneratedShim createShim(ProxyAutoBean<?> bean) {
+      return (GeneratedShim) newInstance(shim, bean);
+    }
+
+    private Object newInstance(Constructor<?> constructor, ProxyAutoBean<?> bean) {
+      try {
+        return constructor.newInstance(bean);
+      } catch (InstantiationException e) {
+        throw new RuntimeException(e);
+      } catch (IllegalAccessException e) {
+        throw new RuntimeException(e);
+      } catch (InvocationTargetException e) {
+        throw new RuntimeException(e.getCause());
+      }
+    }
+  }
+
+  /**
+   * Defines the classes generated for a bean type.
+   */
+  private static class BeanClassLoader extends ClassLoader {
+    BeanClassLoader(ClassLoader parent) {
+      super(parent);
+    }
+
+    Class<?> define(String name, byte[] bytes) {
+      return defineClass(name, bytes, 0, bytes.length);
+    }
+
+    /**
+     * The generated classes also refer to the AutoBean classes, which the
+     * loader of the bean type may not see.
+     */
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+      return Class.forName(name, false, BeanClassGenerator.class.getClassLoader());
+    }
+  }
+
+  private static final String PEER_SUFFIX = "$$AutoBeanPeer";
+  private static final String PEER_SUPER = Type.getInternalName(GeneratedSimplePeer.class);
+  private static final String SHIM_SUFFIX = "$$AutoBeanShim";
+  private static final String SHIM_SUPER = Type.getInternalName(GeneratedShim.class);
+
+  private static final String CLASS_DESC = Type.getDescriptor(Class.class);
+  private static final String CONSTRUCTOR_DESC = Type.getMethodDescriptor(Type.VOID_TYPE,
+      Type.getType(ProxyAutoBean.class));
+  private static final String OBJECT_DESC = Type.getDescriptor(Object.class);
+  private static final String STRING_DESC = Type.getDescriptor(String.class);
+
+  /**
+   * Returns the generated classes for <code>beanType</code>, or
+   * <code>null</code> if they cannot be generated.
+   *
+   * @param beanType the bean interface
+   * @param getters the getters that {@link GeneratedShim#getProperty(int)}
+   *          calls, by index
+   */
+  static BeanClasses generate(Class<?> beanType, List<Method> getters) {
+    Collection<Method> methods = getImplementedMethods(beanType);
+    if (methods == null) {
+      return null;
+    }
+    try {
+      BeanClassLoader loader = new BeanClassLoader(beanType.getClassLoader());
+      String peerName = beanType.getName() + PEER_SUFFIX;
+      Class<?> peer = loader.define(peerName, generatePeer(beanType, peerName, methods));
+      String shimName = beanType.getName() + SHIM_SUFFIX;
+      Class<?> shim = loader.define(shimName, generateShim(beanType, shimName, methods, getters));
+      return new BeanClasses(peer.getConstructor(ProxyAutoBean.class),
+          shim.getConstructor(ProxyAutoBean.class));
+    } catch (NoSuchMethodException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static void box(MethodVisitor mv, Class<?> type) {
+    if (type.isPrimitive()) {
+      String boxed = Type.getInternalName(TypeUtils.maybeAutobox(type));
+      mv.visitMethodInsn(Opcodes.INVOKESTATIC, boxed, "valueOf",
+          "(" + Type.getDescriptor(type) + ")L" + boxed + ";", false);
+    }
+  }
+
+  private static void castOrUnbox(MethodVisitor mv, Class<?> type) {
+    if (type.isPrimitive()) {
+      String boxed = Type.getInternalName(TypeUtils.maybeAutobox(type));
+      mv.visitTypeInsn(Opcodes.CHECKCAST, boxed);
+      mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, boxed, type.getName() + "Value", "()"
+          + Type.getDescriptor(type), false);
+    } else if (!Object.class.equals(type)) {
+      mv.visitTypeInsn(Opcodes.CHECKCAST, Type.getInternalName(type));
+    }
+  }
+
+  private static void endMethod(MethodVisitor mv) {
+    // Computed by the ClassWriter
+    mv.visitMaxs(0, 0);
+    mv.visitEnd();
+  }
+
+  /**
+   * Generates the simple peer, which behaves like {@link SimpleBeanHandler}.
+   */
+  private static byte[] generatePeer(Class<?> beanType, String name,
+      Collection<Method> methods) {
+    String internalName = name.replace('.', '/');
+    ClassWriter cw = startClass(beanType, internalName, PEER_SUPER);
+
+    for (Method method : methods) {
+      MethodVisitor mv = startMethod(cw, method);
+      Class<?> returnType = method.getReturnType();
+      mv.visitVarInsn(Opcodes.ALOAD, 0);
+      if (BeanMethod.GET.matches(method)) {
+        mv.visitLdcInsn(BeanMethod.GET.inferName(method));
+        if (returnType.isPrimitive()) {
+          pushClass(mv, returnType);
+          mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, PEER_SUPER, "get", "(" + STRING_DESC
+              + CLASS_DESC + ")" + OBJECT_DESC, false);
+        } else {
+          mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, PEER_SUPER, "get", "(" + STRING_DESC + ")"
+              + OBJECT_DESC, false);
+        }
+        castOrUnbox(mv, returnType);
+      } else {
+        Class<?> paramType = method.getParameterTypes()[0];
+        mv.visitLdcInsn(BeanMethod.SET.inferName(method));
+        loadParameter(mv, paramType);
+        box(mv, paramType);
+        if (Void.TYPE.equals(returnType)) {
+          mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, PEER_SUPER, "set", "(" + STRING_DESC
+              + OBJECT_DESC + ")V", false);
+        } else {
+          mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, PEER_SUPER, "setAndReturn", "(" + STRING_DESC
+              + OBJECT_DESC + ")" + OBJECT_DESC, false);
+          castOrUnbox(mv, returnType);
+        }
+      }
+      mv.visitInsn(Type.getType(returnType).getOpcode(Opcodes.IRETURN));
+      endMethod(mv);
+    }
+
+    cw.visitEnd();
+    return cw.toByteArray();
+  }
+
+  /**
+   * Generates the shim, which behaves like {@link ShimHandler} without
+   * categories.
+   */
+  private static byte[] generateShim(Class<?> beanType, String name,
+      Collection<Method> methods, List<Method> getters) {
+    String internalName = name.replace('.', '/');
+    ClassWriter cw = startClass(beanType, internalName, SHIM_SUPER);
+
+    for (Method method : methods) {
+      MethodVisitor mv = startMethod(cw, method);
+      Class<?> returnType = method.getReturnType();
+      if (BeanMethod.GET.matches(method)) {
+        // return (R) get("getFoo", wrapped().getFoo(), R.class);
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitLdcInsn(method.getName());
+        invokeWrapped(mv, method);
+        box(mv, returnType);
+        pushClass(mv, returnType);
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, SHIM_SUPER, "get", "(" + STRING_DESC
+            + OBJECT_DESC + CLASS_DESC + ")" + OBJECT_DESC, false);
+        castOrUnbox(mv, returnType);
+      } else if (Void.TYPE.equals(returnType)) {
+        // wrapped().setFoo(foo); set("setFoo", foo);
+        Class<?> paramType = method.getParameterTypes()[0];
+        invokeWrapped(mv, method);
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitLdcInsn(method.getName());
+        loadParameter(mv, paramType);
+        box(mv, paramType);
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, SHIM_SUPER, "set", "(" + STRING_DESC
+            + OBJECT_DESC + ")V", false);
+      } else {
+        // return (R) set("setFoo", foo, wrapped().setFoo(foo), R.class);
+        Class<?> paramType = method.getParameterTypes()[0];
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitLdcInsn(method.getName());
+        loadParameter(mv, paramType);
+        box(mv, paramType);
+        invokeWrapped(mv, method);
+        pushClass(mv, returnType);
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, SHIM_SUPER, "set", "(" + STRING_DESC
+            + OBJECT_DESC + OBJECT_DESC + CLASS_DESC + ")" + OBJECT_DESC, false);
+        castOrUnbox(mv, returnType);
+      }
+      mv.visitInsn(Type.getType(returnType).getOpcode(Opcodes.IRETURN));
+      endMethod(mv);
+    }
+
+    // protected Object getProperty(int index) { switch (index) { ... } }
+    MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PROTECTED, "getProperty", "(I)"
+        + OBJECT_DESC, null, null);
+    mv.visitCode();
+    Label outOfBounds = new Label();
+    if (!getters.isEmpty()) {
+      Label[] cases = new Label[getters.size()];
+      for (int i = 0; i < cases.length; i++) {
+        cases[i] = new Label();
+      }
+      mv.visitVarInsn(Opcodes.ILOAD, 1);
+      mv.visitTableSwitchInsn(0, cases.length - 1, outOfBounds, cases);
+      for (int i = 0; i < cases.length; i++) {
+        Method getter = getters.get(i);
+        mv.visitLabel(cases[i]);
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, internalName, getter.getName(), Type
+            .getMethodDescriptor(getter), false);
+        box(mv, getter.getReturnType());
+        mv.visitInsn(Opcodes.ARETURN);
+      }
+    }
+    mv.visitLabel(outOfBounds);
+    String exception = Type.getInternalName(IndexOutOfBoundsException.class);
+    mv.visitTypeInsn(Opcodes.NEW, exception);
+    mv.visitInsn(Opcodes.DUP);
+    mv.visitMethodInsn(Opcodes.INVOKESPECIAL, exception, "<init>", "()V", false);
+    mv.visitInsn(Opcodes.ATHROW);
+    endMethod(mv);
+
+    cw.visitEnd();
+    return cw.toByteArray();
+  }
+
+  /**
+   * Returns the methods that the generated classes must implement, or
+   * <code>null</code> if <code>beanType</code> is not supported.
+   */
+  private static Collection<Method> getImplementedMethods(Class<?> beanType) {
+    if (!beanType.isInterface() || beanType.getName().startsWith("java.")
+        || !isAccessible(beanType)) {
+      return null;
+    }
+
+    // Covariant overrides each need their own implementation
+    Map<String, Method> toReturn = new LinkedHashMap<String, Method>();
+    for (Method method : beanType.getMethods()) {
+      if (!Modifier.isAbstract(method.getModifiers())) {
+        // Inherit default methods
+        continue;
+      }
+      if (!BeanMethod.GET.matches(method) && !BeanMethod.SET.matches(method)
+          && !BeanMethod.SET_BUILDER.matches(method)) {
+        return null;
+      }
+      if (!isAccessible(method.getDeclaringClass()) || !isAccessible(method.getReturnType())) {
+        return null;
+      }
+      for (Class<?> paramType : method.getParameterTypes()) {
+        if (!isAccessible(paramType)) {
+          return null;
+        }
+      }
+      String key = method.getName() + Type.getMethodDescriptor(method);
+      if (!toReturn.containsKey(key)) {
+        toReturn.put(key, method);
+      }
+    }
+    return toReturn.values();
+  }
+
+  /**
+   * Calls <code>method</code> on the wrapped object with the method's
+   * parameters.
+   */
+  private static void invokeWrapped(MethodVisitor mv, Method method) {
+    String owner = Type.getInternalName(method.getDeclaringClass());
+    mv.visitVarInsn(Opcodes.ALOAD, 0);
+    mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, SHIM_SUPER, "wrapped", "()" + OBJECT_DESC, false);
+    mv.visitTypeInsn(Opcodes.CHECKCAST, owner);
+    Class<?>[] paramTypes = method.getParameterTypes();
+    if (paramTypes.length == 1) {
+      loadParameter(mv, paramTypes[0]);
+    }
+    mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, owner, method.getName(), Type
+        .getMethodDescriptor(method), true);
+  }
+
+  /**
+   * Only public types can be referred to from another class loader.
+   */
+  private static boolean isAccessible(Class<?> clazz) {
+    while (clazz.isArray()) {
+      clazz = clazz.getComponentType();
+    }
+    if (clazz.isPrimitive()) {
+      return true;
+    }
+    for (Class<?> c = clazz; c != null; c = c.getEnclosingClass()) {
+      if (!Modifier.isPublic(c.getModifiers())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Loads the only parameter of a setter.
+   */
+  private static void loadParameter(MethodVisitor mv, Class<?> type) {
+    mv.visitVarInsn(Type.getType(type).getOpcode(Opcodes.ILOAD), 1);
+  }
+
+  private static void pushClass(MethodVisitor mv, Class<?> type) {
+    if (type.isPrimitive()) {
+      mv.visitFieldInsn(Opcodes.GETSTATIC, Type.getInternalName(TypeUtils.maybeAutobox(type)),
+          "TYPE", CLASS_DESC);
+    } else {
+      mv.visitLdcInsn(Type.getType(type));
+    }
+  }
+
+  private static ClassWriter startClass(Class<?> beanType, String internalName,
+      String superName) {
+    ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+    // Class files of this version do not need stack map frames
+    cw.visit(Opcodes.V1_5, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL | Opcodes.ACC_SUPER
+        | Opcodes.ACC_SYNTHETIC, internalName, null, superName, new String[] {Type
+        .getInternalName(beanType)});
+
+    MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", CONSTRUCTOR_DESC, null, null);
+    mv.visitCode();
+    mv.visitVarInsn(Opcodes.ALOAD, 0);
+    mv.visitVarInsn(Opcodes.ALOAD, 1);
+    mv.visitMethodInsn(Opcodes.INVOKESPECIAL, superName, "<init>", CONSTRUCTOR_DESC, false);
+    mv.visitInsn(Opcodes.RETURN);
+    endMethod(mv);
+    return cw;
+  }
+
+  private static MethodVisitor startMethod(ClassWriter cw, Method method) {
+    MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, method.getName(), Type
+        .getMethodDescriptor(method), null, null);
+    mv.visitCode();
+    return mv;
+  }
+
+  private BeanClassGenerator() {
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.web.bindery.autobean.vm.impl;
+
+/**
+ * The superclass of the shims generated by {@link BeanClassGenerator}, which
+ * behave like {@link ShimHandler} without reflective dispatch. Not intended for
+ * direct use.
+ */
+public abstract class GeneratedShim {
+  private final ProxyAutoBean<?> bean;
+
+  protected GeneratedShim(ProxyAutoBean<?> bean) {
+    this.bean = bean;
+  }
+
+  @Override
+  public boolean equals(Object couldBeShim) {
+    if (couldBeShim == null) {
+      return false;
+    }
+    // Handles the foo.equals(foo) case
+    if (this == couldBeShim) {
+      return true;
+    }
+    return bean.getWrapped().equals(couldBeShim);
+  }
+
+  @Override
+  public int hashCode() {
+    return bean.getWrapped().hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return bean.getWrapped().toString();
+  }
+
+  /**
+   * Called by generated getters with the value returned by the wrapped object.
+   */
+  protected final Object get(String method, Object value, Class<?> returnType) {
+    value = bean.get(method, value);
+    return wrap(returnType, value);
+  }
+
+  /**
+   * Returns the value of the property at <code>index</code> among the getters
+   * given to {@link BeanClassGenerator#generate}, as returned by its getter.
+   */
+  protected abstract Object getProperty(int index);
+
+  /**
+   * Called by generated setters after calling the wrapped object.
+   */
+  protected final void set(String method, Object value) {
+    bean.set(method, value);
+  }
+
+  /**
+   * Called by generated builder setters after calling the wrapped object.
+   */
+  protected final Object set(String method, Object value, Object returned, Class<?> returnType) {
+    bean.set(method, value);
+    return wrap(returnType, returned);
+  }
+
+  /**
+   * Returns the object that generated methods call.
+   */
+  protected final Object wrapped() {
+    return bean.getWrapped();
+  }
+
+  private Object wrap(Class<?> returnType, Object value) {
+    if (Object.class.equals(returnType)) {
+      return value;
+    }
+    return ShimHandler.maybeWrap(bean, returnType, value);
+  }
+}
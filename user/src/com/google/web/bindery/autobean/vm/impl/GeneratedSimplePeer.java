@@ -0,0 +1,70 @@
+/*
+ * Copyright 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.web.bindery.autobean.vm.impl;
+
+/**
+ * The superclass of the simple peers generated by {@link BeanClassGenerator},
+ * which behave like {@link SimpleBeanHandler} without reflective dispatch. Not
+ * intended for direct use.
+ */
+public abstract class GeneratedSimplePeer {
+  private final ProxyAutoBean<?> bean;
+
+  protected GeneratedSimplePeer(ProxyAutoBean<?> bean) {
+    this.bean = bean;
+  }
+
+  /**
+   * For debugging use only.
+   */
+  @Override
+  public String toString() {
+    return bean.getSplittable().getPayload();
+  }
+
+  /**
+   * Called by generated getters of reference types.
+   */
+  protected final Object get(String propertyName) {
+    return bean.getOrReify(propertyName);
+  }
+
+  /**
+   * Called by generated getters of primitive types.
+   */
+  protected final Object get(String propertyName, Class<?> primitiveType) {
+    Object toReturn = bean.getOrReify(propertyName);
+    if (toReturn == null) {
+      toReturn = TypeUtils.getDefaultPrimitiveValue(primitiveType);
+    }
+    return toReturn;
+  }
+
+  /**
+   * Called by generated setters.
+   */
+  protected final void set(String propertyName, Object value) {
+    bean.setProperty(propertyName, value);
+  }
+
+  /**
+   * Called by generated builder setters.
+   */
+  protected final Object setAndReturn(String propertyName, Object value) {
+    bean.setProperty(propertyName, value);
+    return bean.as();
+  }
+}
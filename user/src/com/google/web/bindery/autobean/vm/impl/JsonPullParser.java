@@ -0,0 +1,252 @@
+/*
+ * Copyright 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.web.bindery.autobean.vm.impl;
+
+import com.google.gwt.thirdparty.json.JSONArray;
+import com.google.gwt.thirdparty.json.JSONException;
+import com.google.gwt.thirdparty.json.JSONObject;
+import com.google.web.bindery.autobean.shared.Splittable;
+
+/**
+ * A JSON parser that builds the org.json values backing {@link JsonSplittable}
+ * in a single pass over the payload, taking strings without escapes from the
+ * payload as they are. The values are the same as <code>JSONTokener</code>
+ * produces: integers that fit are Integers or Longs, other numbers Doubles.
+ */
+final class JsonPullParser {
+
+  /**
+   * Parses a JSON payload.
+   *
+   * @return the Splittable for the payload, or <code>null</code> if it is
+   *         <code>null</code>
+   * @throws RuntimeException if the payload is not valid JSON
+   */
+  static Splittable parse(CharSequence payload) {
+    JsonPullParser parser = new JsonPullParser(payload);
+    try {
+      Object value = parser.readValue();
+      parser.skipWhitespace();
+      if (parser.position < payload.length()) {
+        throw parser.syntaxError("Unexpected data after value");
+      }
+      return JsonSplittable.wrap(value);
+    } catch (JSONException e) {
+      throw new RuntimeException("Could not parse payload", e);
+    }
+  }
+
+  private final CharSequence payload;
+  private int position;
+
+  private JsonPullParser(CharSequence payload) {
+    this.payload = payload;
+  }
+
+  private char next() {
+    if (position == payload.length()) {
+      throw syntaxError("Unexpected end of payload");
+    }
+    return payload.charAt(position++);
+  }
+
+  private char nextNonWhitespace() {
+    skipWhitespace();
+    return next();
+  }
+
+  private JSONArray readArray() throws JSONException {
+    JSONArray array = new JSONArray();
+    if (nextNonWhitespace() == ']') {
+      return array;
+    }
+    position--;
+    while (true) {
+      array.put(readValue());
+      char c = nextNonWhitespace();
+      if (c == ']') {
+        return array;
+      } else if (c != ',') {
+        throw syntaxError("Expected , or ]");
+      }
+    }
+  }
+
+  private Object readLiteral(String literal, Object value) {
+    int end = position - 1 + literal.length();
+    if (end > payload.length()
+        || !literal.contentEquals(payload.subSequence(position - 1, end))) {
+      throw syntaxError("Unexpected literal");
+    }
+    position = end;
+    return value;
+  }
+
+  private Object readNumber() {
+    int start = position - 1;
+    boolean integral = true;
+    while (position < payload.length()) {
+      char c = payload.charAt(position);
+      if (c == '.' || c == 'e' || c == 'E') {
+        integral = false;
+      } else if (!(c >= '0' && c <= '9') && c != '-' && c != '+') {
+        break;
+      }
+      position++;
+    }
+    String number = payload.subSequence(start, position).toString();
+    try {
+      if (integral) {
+        try {
+          long value = Long.parseLong(number);
+          if (value == (int) value) {
+            return (int) value;
+          }
+          return value;
+        } catch (NumberFormatException e) {
+          // Too large for a long
+        }
+      }
+      return Double.valueOf(number);
+    } catch (NumberFormatException e) {
+      throw syntaxError("Invalid number " + number);
+    }
+  }
+
+  private JSONObject readObject() throws JSONException {
+    JSONObject object = new JSONObject();
+    char c = nextNonWhitespace();
+    if (c == '}') {
+      return object;
+    }
+    while (true) {
+      if (c != '"') {
+        throw syntaxError("Expected a property name");
+      }
+      String name = readString();
+      if (nextNonWhitespace() != ':') {
+        throw syntaxError("Expected :");
+      }
+      object.put(name, readValue());
+      c = nextNonWhitespace();
+      if (c == '}') {
+        return object;
+      } else if (c != ',') {
+        throw syntaxError("Expected , or }");
+      }
+      c = nextNonWhitespace();
+    }
+  }
+
+  /**
+   * Reads the rest of a string whose opening quote has been read.
+   */
+  private String readString() {
+    int start = position;
+    // Most strings have no escapes, and can be taken as they are
+    while (position < payload.length()) {
+      char c = payload.charAt(position);
+      if (c == '"') {
+        return payload.subSequence(start, position++).toString();
+      } else if (c == '\\') {
+        break;
+      }
+      position++;
+    }
+
+    StringBuilder sb = new StringBuilder().append(payload, start, position);
+    while (true) {
+      char c = next();
+      if (c == '"') {
+        return sb.toString();
+      } else if (c != '\\') {
+        sb.append(c);
+        continue;
+      }
+      c = next();
+      switch (c) {
+        case 'b':
+          sb.append('\b');
+          break;
+        case 'f':
+          sb.append('\f');
+          break;
+        case 'n':
+          sb.append('\n');
+          break;
+        case 'r':
+          sb.append('\r');
+          break;
+        case 't':
+          sb.append('\t');
+          break;
+        case 'u':
+          if (position + 4 > payload.length()) {
+            throw syntaxError("Truncated escape");
+          }
+          try {
+            sb.append((char) Integer.parseInt(
+                payload.subSequence(position, position + 4).toString(), 16));
+          } catch (NumberFormatException e) {
+            throw syntaxError("Invalid escape");
+          }
+          position += 4;
+          break;
+        default:
+          // Covers \", \\ and \/, and is lenient like JSONTokener otherwise
+          sb.append(c);
+      }
+    }
+  }
+
+  private Object readValue() throws JSONException {
+    char c = nextNonWhitespace();
+    switch (c) {
+      case '{':
+        return readObject();
+      case '[':
+        return readArray();
+      case '"':
+        return readString();
+      case 't':
+        return readLiteral("true", Boolean.TRUE);
+      case 'f':
+        return readLiteral("false", Boolean.FALSE);
+      case 'n':
+        return readLiteral("null", JSONObject.NULL);
+      default:
+        if (c == '-' || (c >= '0' && c <= '9')) {
+          return readNumber();
+        }
+        throw syntaxError("Unexpected character " + c);
+    }
+  }
+
+  private void skipWhitespace() {
+    while (position < payload.length()) {
+      char c = payload.charAt(position);
+      if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+        return;
+      }
+      position++;
+    }
+  }
+
+  private RuntimeException syntaxError(String message) {
+    return new RuntimeException("Could not parse payload: " + message + " at position "
+        + position);
+  }
+}
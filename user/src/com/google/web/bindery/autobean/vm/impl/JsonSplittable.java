@@ -81,6 +81,27 @@ public class JsonSplittable implements Splittable, HasSplittable {
     return new JsonSplittable();
   }
 
+  /**
+   * Wraps a value parsed by {@link JsonPullParser}, which is a JSONObject, a
+   * JSONArray, a String, a Number, a Boolean or {@link JSONObject#NULL}.
+   */
+  static Splittable wrap(Object value) {
+    if (JSONObject.NULL.equals(value)) {
+      return null;
+    } else if (value instanceof JSONObject) {
+      return new JsonSplittable((JSONObject) value);
+    } else if (value instanceof JSONArray) {
+      return new JsonSplittable((JSONArray) value);
+    } else if (value instanceof String) {
+      return new JsonSplittable((String) value);
+    } else if (value instanceof Number) {
+      return new JsonSplittable(((Number) value).doubleValue());
+    } else if (value instanceof Boolean) {
+      return new JsonSplittable(((Boolean) value).booleanValue());
+    }
+    throw new RuntimeException("Unhandled type " + value.getClass());
+  }
+
   /**
    * Private equivalent of com.google.gwt.thirdparty.json.JSONObject.getNames(JSONObject) since that
    * method is not available in Android 2.2. Used to represent a null value.
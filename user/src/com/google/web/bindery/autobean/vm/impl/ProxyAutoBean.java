@@ -22,6 +22,7 @@ import com.google.web.bindery.autobean.shared.AutoBeanUtils;
 import com.google.web.bindery.autobean.shared.AutoBeanVisitor;
 import com.google.web.bindery.autobean.shared.impl.AbstractAutoBean;
 import com.google.web.bindery.autobean.vm.Configuration;
+import com.google.web.bindery.autobean.vm.impl.BeanClassGenerator.BeanClasses;
 
 import java.lang.ref.WeakReference;
 import java.lang.reflect.InvocationHandler;
@@ -31,6 +32,7 @@ import java.lang.reflect.Proxy;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -46,6 +48,10 @@ public class ProxyAutoBean<T> extends AbstractAutoBean<T> {
     final Class<?> elementType;
     final Type genericType;
     final Method getter;
+    /**
+     * The position of the property in the map, used by generated shims.
+     */
+    int index;
     final Class<?> keyType;
     final PropertyType propertyType;
     Method setter;
@@ -81,6 +87,19 @@ public class ProxyAutoBean<T> extends AbstractAutoBean<T> {
   private static final Map<Class<?>, Map<String, Data>> cache =
       new WeakHashMap<Class<?>, Map<String, Data>>();
 
+  /**
+   * The generated classes for each bean type, or null for the types that use
+   * Proxy instances.
+   */
+  private static final Map<Class<?>, BeanClasses> generatedCache =
+      new WeakHashMap<Class<?>, BeanClasses>();
+
+  /**
+   * Set if ASM is not on the classpath, in which case no classes are
+   * generated.
+   */
+  private static volatile boolean asmMissing;
+
   /**
    * Utility method to crete a new {@link Proxy} instance.
    * 
@@ -161,12 +180,51 @@ public class ProxyAutoBean<T> extends AbstractAutoBean<T> {
           }
         }
 
+        int index = 0;
+        for (Data data : toReturn.values()) {
+          data.index = index++;
+        }
+
         cache.put(beanType, toReturn);
       }
     }
     return toReturn;
   }
 
+  /**
+   * Returns the generated classes to use for a bean, or null to use Proxy
+   * instances. Generated classes do not support categories, which may intercept
+   * any call.
+   */
+  private static BeanClasses getBeanClasses(Class<?> beanType, Configuration configuration,
+      Map<String, Data> propertyData) {
+    if (!configuration.isGenerateClasses() || !configuration.getCategories().isEmpty()) {
+      return null;
+    }
+    synchronized (generatedCache) {
+      if (generatedCache.containsKey(beanType)) {
+        return generatedCache.get(beanType);
+      }
+      BeanClasses toReturn = null;
+      if (!asmMissing) {
+        List<Method> getters =
+            new ArrayList<Method>(Collections.<Method> nCopies(propertyData.size(), null));
+        for (Data data : propertyData.values()) {
+          getters.set(data.index, data.getter);
+        }
+        try {
+          toReturn = BeanClassGenerator.generate(beanType, getters);
+        } catch (NoClassDefFoundError e) {
+          // ASM is optional, keep using Proxy instances
+          asmMissing = true;
+        }
+      }
+      generatedCache.put(beanType, toReturn);
+      return toReturn;
+    }
+  }
+
+  private final BeanClasses beanClasses;
   private final Class<T> beanType;
   private final Configuration configuration;
   private final Map<String, Data> propertyData;
@@ -204,6 +262,7 @@ public class ProxyAutoBean<T> extends AbstractAutoBean<T> {
     this.beanType = (Class<T>) beanType;
     this.configuration = configuration;
     this.propertyData = calculateData(beanType);
+    this.beanClasses = getBeanClasses(beanType, configuration, propertyData);
   }
 
   @SuppressWarnings("unchecked")
@@ -213,6 +272,7 @@ public class ProxyAutoBean<T> extends AbstractAutoBean<T> {
     this.beanType = (Class<T>) beanType;
     this.configuration = configuration;
     this.propertyData = calculateData(beanType);
+    this.beanClasses = getBeanClasses(beanType, configuration, propertyData);
   }
 
   @Override
@@ -288,7 +348,11 @@ public class ProxyAutoBean<T> extends AbstractAutoBean<T> {
   @Override
   protected T getWrapped() {
     if (wrapped == null && isUsingSimplePeer()) {
-      wrapped = ProxyAutoBean.<T> makeProxy(beanType, new SimpleBeanHandler<T>(this));
+      if (beanClasses == null) {
+        wrapped = ProxyAutoBean.<T> makeProxy(beanType, new SimpleBeanHandler<T>(this));
+      } else {
+        wrapped = beanType.cast(beanClasses.createPeer(this));
+      }
     }
     return super.getWrapped();
   }
@@ -317,15 +381,19 @@ public class ProxyAutoBean<T> extends AbstractAutoBean<T> {
 
       // Use the shim to handle automatic wrapping
       Object value;
-      try {
-        getter.setAccessible(true);
-        value = getter.invoke(as());
-      } catch (IllegalArgumentException e) {
-        throw new RuntimeException(e);
-      } catch (IllegalAccessException e) {
-        throw new RuntimeException(e);
-      } catch (InvocationTargetException e) {
-        throw new RuntimeException(e.getCause());
+      if (beanClasses != null) {
+        value = ((GeneratedShim) as()).getProperty(data.index);
+      } else {
+        try {
+          getter.setAccessible(true);
+          value = getter.invoke(as());
+        } catch (IllegalArgumentException e) {
+          throw new RuntimeException(e);
+        } catch (IllegalAccessException e) {
+          throw new RuntimeException(e);
+        } catch (InvocationTargetException e) {
+          throw new RuntimeException(e.getCause());
+        }
       }
 
       // Create the context used for the property visitation
@@ -390,7 +458,13 @@ public class ProxyAutoBean<T> extends AbstractAutoBean<T> {
   }
 
   private T createShim() {
-    T toReturn = ProxyAutoBean.makeProxy(beanType, new ShimHandler<T>(this, getWrapped()));
+    T toWrap = getWrapped();
+    T toReturn;
+    if (beanClasses == null) {
+      toReturn = ProxyAutoBean.makeProxy(beanType, new ShimHandler<T>(this, toWrap));
+    } else {
+      toReturn = beanType.cast(beanClasses.createShim(this));
+    }
     WeakMapping.setWeak(toReturn, AutoBean.class.getName(), this);
     return toReturn;
   }
@@ -88,7 +88,7 @@ class ShimHandler<T> implements InvocationHandler {
       Class<?> intf = method.getReturnType();
       if (!Object.class.equals(intf)) {
         // XXX Need to deal with resolving generic T return types
-        toReturn = maybeWrap(intf, toReturn);
+        toReturn = maybeWrap(bean, intf, toReturn);
       }
       if (interceptor != null) {
         toReturn = interceptor.invoke(null, bean, toReturn);
@@ -104,7 +104,11 @@ class ShimHandler<T> implements InvocationHandler {
     return bean.getWrapped().toString();
   }
 
-  private Object maybeWrap(Class<?> intf, Object toReturn) {
+  /**
+   * Returns the value to return from a shim method declared to return
+   * <code>intf</code>. Also used by {@link GeneratedShim}.
+   */
+  static Object maybeWrap(ProxyAutoBean<?> bean, Class<?> intf, Object toReturn) {
     if (toReturn == null) {
       return null;
     }
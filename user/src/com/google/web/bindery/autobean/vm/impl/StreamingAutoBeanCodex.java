@@ -0,0 +1,118 @@
+/*
+ * Copyright 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.web.bindery.autobean.vm.impl;
+
+import com.google.web.bindery.autobean.shared.AutoBean;
+import com.google.web.bindery.autobean.shared.AutoBeanCodex;
+import com.google.web.bindery.autobean.shared.AutoBeanFactory;
+import com.google.web.bindery.autobean.shared.impl.AutoBeanCodexImpl;
+import com.google.web.bindery.autobean.shared.impl.AutoBeanCodexImpl.EncodeSink;
+import com.google.web.bindery.autobean.shared.impl.AutoBeanCodexImpl.EncodeState;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * A server-side alternative to {@link AutoBeanCodex} for large payloads.
+ * Payloads are decoded with {@link JsonPullParser}, and encoded straight to a
+ * {@link Writer} in chunks, rather than being built up as a string and then
+ * parsed again into a {@link com.google.web.bindery.autobean.shared.Splittable
+ * Splittable}. The payloads are the same as those of {@link AutoBeanCodex}.
+ */
+public class StreamingAutoBeanCodex {
+
+  /**
+   * Carries an IOException thrown by the Writer through the encoder.
+   */
+  private static class WriteException extends RuntimeException {
+    WriteException(IOException cause) {
+      super(cause);
+    }
+
+    @Override
+    public IOException getCause() {
+      return (IOException) super.getCause();
+    }
+  }
+
+  /**
+   * Writes chunks of the encoded payload, copying them through a reused
+   * buffer.
+   */
+  private static class WriterSink implements EncodeSink {
+    private char[] buffer = new char[0];
+    private final Writer writer;
+
+    WriterSink(Writer writer) {
+      this.writer = writer;
+    }
+
+    @Override
+    public void write(StringBuilder chunk) {
+      if (buffer.length < chunk.length()) {
+        buffer = new char[chunk.length()];
+      }
+      chunk.getChars(0, chunk.length(), buffer, 0);
+      try {
+        writer.write(buffer, 0, chunk.length());
+      } catch (IOException e) {
+        throw new WriteException(e);
+      }
+    }
+  }
+
+  /**
+   * Decode an AutoBeanCodex payload.
+   *
+   * @param <T> the expected return type
+   * @param factory an AutoBeanFactory capable of producing {@code AutoBean<T>}
+   * @param clazz the expected return type
+   * @param payload a payload previously generated by {@link #encode} or
+   *          {@link AutoBeanCodex#encode(AutoBean)}
+   * @return an AutoBean containing the payload contents
+   */
+  public static <T> AutoBean<T> decode(AutoBeanFactory factory, Class<T> clazz,
+      CharSequence payload) {
+    return AutoBeanCodex.decode(factory, clazz, JsonPullParser.parse(payload));
+  }
+
+  /**
+   * Encodes an AutoBean to <code>writer</code>, which is not flushed or
+   * closed. If encoding fails, part of the payload may have been written.
+   *
+   * @param bean the bean to encode, or <code>null</code>
+   * @param writer the writer that receives the payload
+   * @throws IOException if writing fails
+   */
+  public static void encode(AutoBean<?> bean, Writer writer) throws IOException {
+    if (bean == null) {
+      writer.write("null");
+      return;
+    }
+
+    EncodeState state = EncodeState.forEncode(bean.getFactory(), new StringBuilder(),
+        new WriterSink(writer));
+    try {
+      AutoBeanCodexImpl.doEncode(state, bean);
+      state.flush();
+    } catch (WriteException e) {
+      throw e.getCause();
+    }
+  }
+
+  private StreamingAutoBeanCodex() {
+  }
+}
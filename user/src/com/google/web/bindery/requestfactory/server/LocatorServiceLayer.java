@@ -16,6 +16,7 @@
 package com.google.web.bindery.requestfactory.server;
 
 import com.google.web.bindery.requestfactory.shared.BaseProxy;
+import com.google.web.bindery.requestfactory.shared.BatchLocator;
 import com.google.web.bindery.requestfactory.shared.Locator;
 import com.google.web.bindery.requestfactory.shared.ProxyFor;
 import com.google.web.bindery.requestfactory.shared.ProxyForName;
@@ -27,6 +28,13 @@ import com.google.web.bindery.requestfactory.shared.ServiceName;
 
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Adds support to the ServiceLayer chain for using {@link Locator} and
@@ -90,6 +98,57 @@ final class LocatorServiceLayer extends ServiceLayerDecorator {
     return doLoadDomainObject(clazz, domainId);
   }
 
+  /**
+   * Loads the objects of each type that has a {@link BatchLocator} with a
+   * single call to {@link BatchLocator#findAll}. The other objects are loaded
+   * by the rest of the chain.
+   */
+  @Override
+  public List<Object> loadDomainObjects(List<Class<?>> classes, List<Object> domainIds) {
+    if (classes.size() != domainIds.size()) {
+      die(null, "Size mismatch in paramaters. classes.size() = %d domainIds.size=%d", classes
+          .size(), domainIds.size());
+    }
+
+    // The positions of the objects to load, by type
+    Map<Class<?>, List<Integer>> batches = new LinkedHashMap<Class<?>, List<Integer>>();
+    List<Integer> otherPositions = new ArrayList<Integer>();
+    for (int i = 0, j = classes.size(); i < j; i++) {
+      Class<?> clazz = classes.get(i);
+      List<Integer> positions = batches.get(clazz);
+      if (positions == null) {
+        if (!(getLocator(clazz) instanceof BatchLocator)) {
+          otherPositions.add(i);
+          continue;
+        }
+        positions = new ArrayList<Integer>();
+        batches.put(clazz, positions);
+      }
+      positions.add(i);
+    }
+    if (batches.isEmpty()) {
+      return super.loadDomainObjects(classes, domainIds);
+    }
+
+    Object[] toReturn = new Object[classes.size()];
+    for (Map.Entry<Class<?>, List<Integer>> entry : batches.entrySet()) {
+      doFindAll(entry.getKey(), entry.getValue(), domainIds, toReturn);
+    }
+    if (!otherPositions.isEmpty()) {
+      List<Class<?>> otherClasses = new ArrayList<Class<?>>(otherPositions.size());
+      List<Object> otherIds = new ArrayList<Object>(otherPositions.size());
+      for (int position : otherPositions) {
+        otherClasses.add(classes.get(position));
+        otherIds.add(domainIds.get(position));
+      }
+      List<Object> loaded = super.loadDomainObjects(otherClasses, otherIds);
+      for (int i = 0, j = otherPositions.size(); i < j; i++) {
+        toReturn[otherPositions.get(i)] = loaded.get(i);
+      }
+    }
+    return new ArrayList<Object>(Arrays.asList(toReturn));
+  }
+
   /**
    * Returns true if the context method returns a {@link Request} and the domain
    * method is non-static.
@@ -188,6 +247,27 @@ final class LocatorServiceLayer extends ServiceLayerDecorator {
     return l.isLive(domainObject);
   }
 
+  /**
+   * Loads the objects of a type at the given positions with a single call to
+   * {@link BatchLocator#findAll}.
+   */
+  private <T, I> void doFindAll(Class<T> clazz, List<Integer> positions,
+      List<Object> domainIds, Object[] toReturn) {
+    @SuppressWarnings("unchecked")
+    BatchLocator<T, I> l = (BatchLocator<T, I>) getLocator(clazz);
+    Set<I> ids = new LinkedHashSet<I>();
+    for (int position : positions) {
+      ids.add(l.getIdType().cast(domainIds.get(position)));
+    }
+    Map<I, T> found = l.findAll(clazz, ids);
+    if (found == null) {
+      die(null, "%s.findAll() returned null", l.getClass().getCanonicalName());
+    }
+    for (int position : positions) {
+      toReturn[position] = found.get(domainIds.get(position));
+    }
+  }
+
   private <T, I> T doLoadDomainObject(Class<T> clazz, Object domainId) {
     @SuppressWarnings("unchecked")
     Locator<T, I> l = (Locator<T, I>) getLocator(clazz);
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.web.bindery.requestfactory.server;
+
+import com.google.web.bindery.autobean.vm.impl.TypeUtils;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The getters and setters of domain types, compiled into method handles the
+ * first time a property is accessed. Used by {@link ReflectiveServiceLayer} so
+ * that copying the properties of many domain objects, as {@link Resolver} does
+ * for large result sets, needs neither per-property method lookups nor
+ * reflective invocations.
+ */
+final class PropertyAccessors {
+
+  /**
+   * A compiled getter or setter.
+   */
+  static final class Accessor {
+    private static final MethodType GETTER_TYPE =
+        MethodType.methodType(Object.class, Object.class);
+    private static final MethodType SETTER_TYPE =
+        MethodType.methodType(void.class, Object.class, Object.class);
+
+    private final MethodHandle handle;
+    private final Method method;
+    private final Class<?> valueType;
+
+    private Accessor(Method method, boolean isSetter) {
+      this.method = method;
+      MethodHandle handle = null;
+      try {
+        method.setAccessible(true);
+        handle =
+            MethodHandles.lookup().unreflect(method).asType(isSetter ? SETTER_TYPE : GETTER_TYPE);
+      } catch (IllegalAccessException e) {
+        // Fall back to Method.invoke()
+      } catch (RuntimeException e) {
+        // setAccessible() was refused; Method.invoke() will report the failure
+      }
+      this.handle = handle;
+      this.valueType = isSetter ? TypeUtils.maybeAutobox(method.getParameterTypes()[0]) : null;
+    }
+
+    /**
+     * Returns the value of the property, reporting failures as
+     * {@link Method#invoke} would.
+     */
+    Object get(Object domainObject) throws IllegalAccessException, InvocationTargetException {
+      if (handle == null) {
+        return method.invoke(domainObject);
+      }
+      try {
+        return (Object) handle.invokeExact(domainObject);
+      } catch (Throwable e) {
+        throw new InvocationTargetException(e);
+      }
+    }
+
+    /**
+     * Sets the value of the property, reporting failures as
+     * {@link Method#invoke} would.
+     */
+    void set(Object domainObject, Object value) throws IllegalAccessException,
+        InvocationTargetException {
+      if (handle == null || !valueType.isInstance(value)) {
+        // Let reflection apply widening conversions and reject other values
+        method.invoke(domainObject, value);
+        return;
+      }
+      try {
+        handle.invokeExact(domainObject, value);
+      } catch (Throwable e) {
+        throw new InvocationTargetException(e);
+      }
+    }
+  }
+
+  /**
+   * The accessors of one domain type.
+   */
+  private static final class Table {
+    final ConcurrentMap<String, Accessor> getters = new ConcurrentHashMap<String, Accessor>();
+    final ConcurrentMap<String, Accessor> setters = new ConcurrentHashMap<String, Accessor>();
+  }
+
+  private final ConcurrentMap<Class<?>, Table> tables = new ConcurrentHashMap<Class<?>, Table>();
+
+  /**
+   * Returns the compiled getter of a property, or <code>null</code> if it has
+   * not been compiled yet.
+   */
+  Accessor getGetter(Class<?> domainType, String property) {
+    Table table = tables.get(domainType);
+    return table == null ? null : table.getters.get(property);
+  }
+
+  /**
+   * Returns the compiled setter of a property, or <code>null</code> if it has
+   * not been compiled yet.
+   */
+  Accessor getSetter(Class<?> domainType, String property) {
+    Table table = tables.get(domainType);
+    return table == null ? null : table.setters.get(property);
+  }
+
+  /**
+   * Compiles and records the getter of a property.
+   */
+  Accessor putGetter(Class<?> domainType, String property, Method getter) {
+    return putIfAbsent(getTable(domainType).getters, property, new Accessor(getter, false));
+  }
+
+  /**
+   * Compiles and records the setter of a property.
+   */
+  Accessor putSetter(Class<?> domainType, String property, Method setter) {
+    return putIfAbsent(getTable(domainType).setters, property, new Accessor(setter, true));
+  }
+
+  private Table getTable(Class<?> domainType) {
+    Table table = tables.get(domainType);
+    if (table == null) {
+      table = new Table();
+      Table existing = tables.putIfAbsent(domainType, table);
+      if (existing != null) {
+        table = existing;
+      }
+    }
+    return table;
+  }
+
+  private Accessor putIfAbsent(ConcurrentMap<String, Accessor> map, String property,
+      Accessor accessor) {
+    Accessor existing = map.putIfAbsent(property, accessor);
+    return existing == null ? accessor : existing;
+  }
+}
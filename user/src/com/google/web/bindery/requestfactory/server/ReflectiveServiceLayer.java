@@ -66,6 +66,11 @@ final class ReflectiveServiceLayer extends ServiceLayerDecorator {
     jsr303Validator = found;
   }
 
+  /**
+   * The getters and setters found through {@link #getTop()}, compiled once.
+   */
+  private final PropertyAccessors accessors = new PropertyAccessors();
+
   /**
    * Linear search, but we want to handle getFoo, isFoo, and hasFoo. The result
    * of this method will be cached by the ServiceLayerCache.
@@ -123,13 +128,17 @@ final class ReflectiveServiceLayer extends ServiceLayerDecorator {
   @Override
   public Object getProperty(Object domainObject, String property) {
     try {
-      Method getter = getTop().getGetter(domainObject.getClass(), property);
+      Class<?> domainType = domainObject.getClass();
+      PropertyAccessors.Accessor getter = accessors.getGetter(domainType, property);
       if (getter == null) {
-        die(null, "Could not determine getter for property %s on type %s", property, domainObject
-            .getClass().getCanonicalName());
+        Method method = getTop().getGetter(domainType, property);
+        if (method == null) {
+          die(null, "Could not determine getter for property %s on type %s", property, domainType
+              .getCanonicalName());
+        }
+        getter = accessors.putGetter(domainType, property, method);
       }
-      Object value = getter.invoke(domainObject);
-      return value;
+      return getter.get(domainObject);
     } catch (IllegalAccessException e) {
       return die(e, "Could not retrieve property %s", property);
     } catch (InvocationTargetException e) {
@@ -226,12 +235,17 @@ final class ReflectiveServiceLayer extends ServiceLayerDecorator {
   @Override
   public void setProperty(Object domainObject, String property, Class<?> expectedType, Object value) {
     try {
-      Method setter = getTop().getSetter(domainObject.getClass(), property);
+      Class<?> domainType = domainObject.getClass();
+      PropertyAccessors.Accessor setter = accessors.getSetter(domainType, property);
       if (setter == null) {
-        die(null, "Could not locate setter for property %s in type %s", property, domainObject
-            .getClass().getCanonicalName());
+        Method method = getTop().getSetter(domainType, property);
+        if (method == null) {
+          die(null, "Could not locate setter for property %s in type %s", property, domainType
+              .getCanonicalName());
+        }
+        setter = accessors.putSetter(domainType, property, method);
       }
-      setter.invoke(domainObject, value);
+      setter.set(domainObject, value);
       return;
     } catch (IllegalAccessException e) {
       die(e, "Could not set property %s", property);
@@ -20,9 +20,17 @@ import com.google.web.bindery.requestfactory.shared.RequestFactory;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
@@ -35,6 +43,16 @@ import javax.servlet.http.HttpServletResponse;
 @SuppressWarnings("serial")
 public class RequestFactoryServlet extends HttpServlet {
 
+  /**
+   * Initialization parameter setting how many threads invoke the
+   * {@link com.google.web.bindery.requestfactory.shared.SideEffectFree
+   * SideEffectFree} invocations of a request in parallel. By default all the
+   * invocations of a request are invoked one after the other.
+   * 
+   * @see SimpleRequestProcessor#setInvocationExecutor
+   */
+  public static final String INVOCATION_THREADS_PARAM = "gwt.rf.invocation_threads";
+
   private static final boolean DUMP_PAYLOAD = Boolean.getBoolean("gwt.rpc.dumpPayload");
   private static final String JSON_CHARSET = "UTF-8";
   private static final String JSON_CONTENT_TYPE = "application/json";
@@ -79,7 +97,13 @@ public class RequestFactoryServlet extends HttpServlet {
     return perThreadContext.get();
   }
 
+  /**
+   * The name the cache of the ServiceLayer is registered under, if it was.
+   */
+  private ObjectName cacheName;
+  private ExecutorService invocationPool;
   private final SimpleRequestProcessor processor;
+  private final ServiceLayer serviceLayer;
 
   /**
    * Constructs a new {@link RequestFactoryServlet} with a
@@ -100,10 +124,92 @@ public class RequestFactoryServlet extends HttpServlet {
    */
   public RequestFactoryServlet(ExceptionHandler exceptionHandler,
       ServiceLayerDecorator... serviceDecorators) {
-    processor = new SimpleRequestProcessor(ServiceLayer.create(serviceDecorators));
+    serviceLayer = ServiceLayer.create(serviceDecorators);
+    processor = new SimpleRequestProcessor(serviceLayer);
     processor.setExceptionHandler(exceptionHandler);
   }
 
+  /**
+   * Unregisters the {@link ServiceLayerCacheMXBean} registered by
+   * {@link #init()}.
+   */
+  @Override
+  public void destroy() {
+    if (cacheName != null) {
+      try {
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(cacheName);
+      } catch (JMException e) {
+        log.log(Level.WARNING, "Could not unregister " + cacheName, e);
+      }
+      cacheName = null;
+    }
+    if (invocationPool != null) {
+      invocationPool.shutdown();
+      invocationPool = null;
+    }
+    super.destroy();
+  }
+
+  /**
+   * Registers the {@link ServiceLayerCacheMXBean} of the servlet's
+   * ServiceLayer with the platform MBean server, so that the efficiency of the
+   * cache can be monitored, and creates the threads that invoke side-effect
+   * free invocations in parallel, if requested.
+   * 
+   * @throws ServletException if an error occurs in the servlet
+   * @see #INVOCATION_THREADS_PARAM
+   */
+  @Override
+  public void init() throws ServletException {
+    super.init();
+    String threads = getInitParameter(INVOCATION_THREADS_PARAM);
+    if (threads != null) {
+      int count;
+      try {
+        count = Integer.parseInt(threads.trim());
+      } catch (NumberFormatException e) {
+        count = -1;
+      }
+      if (count < 0) {
+        throw new ServletException("Invalid value of " + INVOCATION_THREADS_PARAM + ": "
+            + threads);
+      }
+      if (count > 0) {
+        final ExecutorService pool = Executors.newFixedThreadPool(count, new ThreadFactory() {
+          private final AtomicInteger created = new AtomicInteger();
+
+          @Override
+          public Thread newThread(Runnable r) {
+            Thread thread =
+                new Thread(r, getServletName() + " invocation thread "
+                    + created.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+          }
+        });
+        invocationPool = pool;
+        processor.setInvocationExecutor(new Executor() {
+          @Override
+          public void execute(Runnable command) {
+            pool.execute(withThreadLocals(command));
+          }
+        });
+      }
+    }
+    if (serviceLayer instanceof ServiceLayerCacheMXBean) {
+      try {
+        ObjectName name =
+            new ObjectName(ServiceLayerCacheMXBean.OBJECT_NAME_PREFIX
+                + ObjectName.quote(getServletName()));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(serviceLayer, name);
+        cacheName = name;
+      } catch (JMException e) {
+        // For instance, the same servlet name in another web application
+        log.log(Level.WARNING, "Could not register the ServiceLayer cache", e);
+      }
+    }
+  }
+
   /**
    * Processes a POST to the server.
    * 
@@ -130,18 +236,30 @@ public class RequestFactoryServlet extends HttpServlet {
       }
 
       try {
-        String payload = processor.process(jsonRequestString);
         if (DUMP_PAYLOAD) {
+          String payload = processor.process(jsonRequestString);
           System.out.println("<<< " + payload);
+          response.setStatus(HttpServletResponse.SC_OK);
+          response.setContentType(RequestFactory.JSON_CONTENT_TYPE_UTF8);
+          // The Writer must be obtained after setting the content type
+          PrintWriter writer = response.getWriter();
+          writer.print(payload);
+          writer.flush();
+        } else {
+          response.setStatus(HttpServletResponse.SC_OK);
+          response.setContentType(RequestFactory.JSON_CONTENT_TYPE_UTF8);
+          // The response is encoded straight to the Writer, which must be
+          // obtained after setting the content type
+          PrintWriter writer = response.getWriter();
+          processor.process(jsonRequestString, writer);
+          writer.flush();
         }
-        response.setStatus(HttpServletResponse.SC_OK);
-        response.setContentType(RequestFactory.JSON_CONTENT_TYPE_UTF8);
-        // The Writer must be obtained after setting the content type
-        PrintWriter writer = response.getWriter();
-        writer.print(payload);
-        writer.flush();
       } catch (RuntimeException e) {
-        response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        // Once part of a streamed response has been sent, the client can only
+        // be left with a truncated payload
+        if (!response.isCommitted()) {
+          response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        }
         log.log(Level.SEVERE, "Unexpected error", e);
       }
     } finally {
@@ -157,4 +275,29 @@ public class RequestFactoryServlet extends HttpServlet {
       Logging.setSymbolMapsDirectory(symbolMapsDirectory);
     }
   }
+
+  /**
+   * Returns a Runnable that runs <code>command</code> with the thread-local
+   * HTTP transaction of the calling thread.
+   */
+  private Runnable withThreadLocals(final Runnable command) {
+    final ServletContext context = perThreadContext.get();
+    final HttpServletRequest request = perThreadRequest.get();
+    final HttpServletResponse response = perThreadResponse.get();
+    return new Runnable() {
+      @Override
+      public void run() {
+        perThreadContext.set(context);
+        perThreadRequest.set(request);
+        perThreadResponse.set(response);
+        try {
+          command.run();
+        } finally {
+          perThreadContext.set(null);
+          perThreadRequest.set(null);
+          perThreadResponse.set(null);
+        }
+      }
+    };
+  }
 }
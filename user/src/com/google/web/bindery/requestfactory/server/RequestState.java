@@ -35,9 +35,11 @@ import com.google.web.bindery.requestfactory.shared.messages.IdMessage.Strength;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.IdentityHashMap;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Encapsulates all state relating to the processing of a single request so that
@@ -46,6 +48,11 @@ import java.util.List;
 class RequestState implements EntityCodex.EntitySource {
   final IdToEntityMap beans = new IdToEntityMap();
   private final IdentityHashMap<Object, SimpleProxyId<?>> domainObjectsToId;
+  /**
+   * The domain objects loaded during the request, by domain type and id, so
+   * that each is loaded only once, even when referenced by several proxy types.
+   */
+  private final Map<Pair<Class<?>, Object>, Object> loadedDomainObjects;
   private final IdFactory idFactory;
   private final ServiceLayer service;
   private final Resolver resolver;
@@ -53,6 +60,7 @@ class RequestState implements EntityCodex.EntitySource {
   public RequestState(RequestState parent) {
     idFactory = parent.idFactory;
     domainObjectsToId = parent.domainObjectsToId;
+    loadedDomainObjects = parent.loadedDomainObjects;
     service = parent.service;
     resolver = new Resolver(this);
   }
@@ -82,6 +90,7 @@ class RequestState implements EntityCodex.EntitySource {
       }
     };
     domainObjectsToId = new IdentityHashMap<Object, SimpleProxyId<?>>();
+    loadedDomainObjects = new HashMap<Pair<Class<?>, Object>, Object>();
     resolver = new Resolver(this);
   }
 
@@ -224,9 +233,9 @@ class RequestState implements EntityCodex.EntitySource {
    * they do not yet exist.
    */
   private List<AutoBean<? extends BaseProxy>> getBeansForIds(List<SimpleProxyId<?>> ids) {
-    List<Class<?>> domainClasses = new ArrayList<Class<?>>(ids.size());
-    List<Object> domainIds = new ArrayList<Object>(ids.size());
-    List<SimpleProxyId<?>> idsToLoad = new ArrayList<SimpleProxyId<?>>();
+    // The ids to load, by domain type and id, so that each is loaded once
+    Map<Pair<Class<?>, Object>, List<SimpleProxyId<?>>> idsToLoad =
+        new LinkedHashMap<Pair<Class<?>, Object>, List<SimpleProxyId<?>>>();
 
     /*
      * Create proxies for ephemeral or synthetic ids that we haven't seen. Queue
@@ -257,28 +266,50 @@ class RequestState implements EntityCodex.EntitySource {
           domainParam = new SimpleRequestProcessor(service).decodeOobMessage(param, split).get(0);
         }
 
+        if (domainParam == null) {
+          // Not a valid key for the cache, and loaded as null anyway
+          putLoadedBean(id, service.loadDomainObject(domainClass, null));
+          continue;
+        }
+        Pair<Class<?>, Object> key = new Pair<Class<?>, Object>(domainClass, domainParam);
+        if (loadedDomainObjects.containsKey(key)) {
+          // Already loaded for another proxy type
+          putLoadedBean(id, loadedDomainObjects.get(key));
+          continue;
+        }
+
         // Enqueue
-        domainClasses.add(service.resolveDomainClass(id.getProxyClass()));
-        domainIds.add(domainParam);
-        idsToLoad.add(id);
+        List<SimpleProxyId<?>> list = idsToLoad.get(key);
+        if (list == null) {
+          list = new ArrayList<SimpleProxyId<?>>(1);
+          idsToLoad.put(key, list);
+        }
+        list.add(id);
       }
     }
 
     // Actually load the data
-    if (!domainClasses.isEmpty()) {
-      assert domainClasses.size() == domainIds.size() && domainClasses.size() == idsToLoad.size();
+    if (!idsToLoad.isEmpty()) {
+      List<Class<?>> domainClasses = new ArrayList<Class<?>>(idsToLoad.size());
+      List<Object> domainIds = new ArrayList<Object>(idsToLoad.size());
+      for (Pair<Class<?>, Object> key : idsToLoad.keySet()) {
+        domainClasses.add(key.getA());
+        domainIds.add(key.getB());
+      }
       List<Object> loaded = service.loadDomainObjects(domainClasses, domainIds);
       if (idsToLoad.size() != loaded.size()) {
         throw new UnexpectedException("Expected " + idsToLoad.size()
             + " objects to be loaded, got " + loaded.size(), null);
       }
 
-      Iterator<Object> itLoaded = loaded.iterator();
-      for (SimpleProxyId<?> id : idsToLoad) {
-        Object domain = itLoaded.next();
-        domainObjectsToId.put(domain, id);
-        AutoBean<? extends BaseProxy> bean = createProxyBean(id, domain);
-        beans.put(id, bean);
+      int i = 0;
+      for (Map.Entry<Pair<Class<?>, Object>, List<SimpleProxyId<?>>> entry : idsToLoad
+          .entrySet()) {
+        Object domain = loaded.get(i++);
+        loadedDomainObjects.put(entry.getKey(), domain);
+        for (SimpleProxyId<?> id : entry.getValue()) {
+          putLoadedBean(id, domain);
+        }
       }
     }
 
@@ -290,4 +321,11 @@ class RequestState implements EntityCodex.EntitySource {
     }
     return toReturn;
   }
+
+  private void putLoadedBean(SimpleProxyId<?> id, Object domain) {
+    if (!beans.containsKey(id)) {
+      domainObjectsToId.put(domain, id);
+      beans.put(id, createProxyBean(id, domain));
+    }
+  }
 }
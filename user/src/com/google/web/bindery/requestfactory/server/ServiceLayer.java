@@ -257,8 +257,11 @@ public abstract class ServiceLayer {
    * allow more efficient access to the backing store by providing all objects
    * referenced in an incoming payload.
    * <p>
-   * The default implementation of this method will delegate to
-   * {@link #loadDomainObject(Class, Object)}.
+   * The default implementation of this method will load the objects of each
+   * type whose {@link com.google.web.bindery.requestfactory.shared.Locator
+   * Locator} is a {@link com.google.web.bindery.requestfactory.shared.BatchLocator
+   * BatchLocator} with a single call to its <code>findAll</code> method, and
+   * delegate to {@link #loadDomainObject(Class, Object)} for the others.
    * 
    * @param classes type type of each object to load
    * @param domainIds the ids previously returned from {@link #getId(Object)}
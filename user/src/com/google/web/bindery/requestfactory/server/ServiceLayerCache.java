@@ -21,19 +21,50 @@ import com.google.web.bindery.requestfactory.shared.RequestContext;
 import com.google.web.bindery.requestfactory.shared.RequestFactory;
 import com.google.web.bindery.requestfactory.shared.ServiceLocator;
 
-import java.lang.ref.SoftReference;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Type;
-import java.util.Map;
+import java.util.Iterator;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A cache for idempotent methods in {@link ServiceLayer}. The caching is
  * separate from {@link ReflectiveServiceLayer} so that the cache can be applied
  * to any decorators injected by the user.
+ * <p>
+ * Each ServiceLayer has its own cache, keyed by method and arguments, which
+ * holds at most {@value #DEFAULT_MAXIMUM_SIZE} entries unless the
+ * {@value #MAXIMUM_SIZE_PROPERTY} system property says otherwise. When the
+ * cache is full, entries that were not used since the previous eviction are
+ * evicted first. The cache's statistics are available through
+ * {@link ServiceLayerCacheMXBean}.
  */
-class ServiceLayerCache extends ServiceLayerDecorator {
+class ServiceLayerCache extends ServiceLayerDecorator implements ServiceLayerCacheMXBean {
+
+  /**
+   * The default maximum number of cached entries.
+   */
+  static final int DEFAULT_MAXIMUM_SIZE = 10000;
+
+  /**
+   * The system property that sets the maximum number of cached entries.
+   */
+  static final String MAXIMUM_SIZE_PROPERTY = "gwt.rf.ServiceLayerCache.maximumSize";
+
+  /**
+   * A cached value, and whether it was used since the previous eviction.
+   */
+  private static class CachedValue {
+    final Object value;
+    volatile boolean used;
+
+    CachedValue(Object value) {
+      this.value = value;
+    }
+  }
 
   /**
    * ConcurrentHashMaps don't allow null keys or values, but sometimes we want
@@ -41,8 +72,6 @@ class ServiceLayerCache extends ServiceLayerDecorator {
    */
   private static final Object NULL_MARKER = new Object();
 
-  private static SoftReference<Map<Method, Map<Object, Object>>> methodCache;
-
   private static final Method createLocator;
   private static final Method createServiceInstance;
   private static final Method getDomainClassLoader;
@@ -85,15 +114,6 @@ class ServiceLayerCache extends ServiceLayerDecorator {
     resolveTypeToken = getMethod("resolveTypeToken", Class.class);
   }
 
-  private static Map<Method, Map<Object, Object>> getCache() {
-    Map<Method, Map<Object, Object>> toReturn = methodCache == null ? null : methodCache.get();
-    if (toReturn == null) {
-      toReturn = new ConcurrentHashMap<Method, Map<Object, Object>>();
-      methodCache = new SoftReference<Map<Method, Map<Object, Object>>>(toReturn);
-    }
-    return toReturn;
-  }
-
   private static Method getMethod(String name, Class<?>... argTypes) {
     try {
       return ServiceLayer.class.getMethod(name, argTypes);
@@ -104,7 +124,32 @@ class ServiceLayerCache extends ServiceLayerDecorator {
     }
   }
 
-  private final Map<Method, Map<Object, Object>> methodMap = getCache();
+  private final ConcurrentMap<Pair<Method, Object>, CachedValue> cache =
+      new ConcurrentHashMap<Pair<Method, Object>, CachedValue>();
+  private final AtomicBoolean evicting = new AtomicBoolean();
+  private final AtomicLong evictionCount = new AtomicLong();
+  private final AtomicLong hitCount = new AtomicLong();
+  private final int maximumSize;
+  private final AtomicLong missCount = new AtomicLong();
+
+  ServiceLayerCache() {
+    this(Integer.getInteger(MAXIMUM_SIZE_PROPERTY, DEFAULT_MAXIMUM_SIZE));
+  }
+
+  /**
+   * @param maximumSize the maximum number of cached entries
+   */
+  ServiceLayerCache(int maximumSize) {
+    if (maximumSize < 1) {
+      throw new IllegalArgumentException("maximumSize must be positive");
+    }
+    this.maximumSize = maximumSize;
+  }
+
+  @Override
+  public void clear() {
+    cache.clear();
+  }
 
   @Override
   public <T extends Locator<?, ?>> T createLocator(Class<T> clazz) {
@@ -127,11 +172,31 @@ class ServiceLayerCache extends ServiceLayerDecorator {
         domainType, property);
   }
 
+  @Override
+  public long getEvictionCount() {
+    return evictionCount.get();
+  }
+
+  @Override
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
   @Override
   public Class<?> getIdType(Class<?> domainType) {
     return getOrCache(getIdType, domainType, Class.class, domainType);
   }
 
+  @Override
+  public int getMaximumSize() {
+    return maximumSize;
+  }
+
+  @Override
+  public long getMissCount() {
+    return missCount.get();
+  }
+
   @Override
   public Type getRequestReturnType(Method contextMethod) {
     return getOrCache(getRequestReturnType, contextMethod, Type.class, contextMethod);
@@ -143,6 +208,11 @@ class ServiceLayerCache extends ServiceLayerDecorator {
         domainType, property);
   }
 
+  @Override
+  public int getSize() {
+    return cache.size();
+  }
+
   @Override
   public boolean requiresServiceLocator(Method contextMethod, Method domainMethod) {
     return getOrCache(requiresServiceLocator,
@@ -215,38 +285,70 @@ class ServiceLayerCache extends ServiceLayerDecorator {
     return getOrCache(resolveTypeToken, domainClass, String.class, domainClass);
   }
 
-  private <K, T> T getOrCache(Method method, K key, Class<T> valueType, Object... args) {
-    Map<Object, Object> map = methodMap.get(method);
-    if (map == null) {
-      map = new ConcurrentHashMap<Object, Object>();
-      methodMap.put(method, map);
-    }
-    Object raw = map.get(key);
-    if (raw == NULL_MARKER) {
-      return null;
+  /**
+   * Evicts entries until the cache is a little smaller than its maximum size,
+   * so that evictions are not needed again for a while. Entries used since
+   * the previous eviction are only evicted if all the others already were.
+   */
+  private void evict() {
+    if (!evicting.compareAndSet(false, true)) {
+      // Another thread is already evicting
+      return;
     }
-    T toReturn = valueType.cast(raw);
-    if (toReturn == null) {
-      Throwable ex = null;
-      try {
-        toReturn = valueType.cast(method.invoke(getNext(), args));
-        map.put(key, toReturn == null ? NULL_MARKER : toReturn);
-      } catch (InvocationTargetException e) {
-        // The next layer threw an exception
-        Throwable cause = e.getCause();
-        if (cause instanceof RuntimeException) {
-          // Re-throw RuntimeExceptions, which likely originate from die()
-          throw ((RuntimeException) cause);
+    try {
+      int targetSize = maximumSize - maximumSize / 10;
+      while (cache.size() > targetSize) {
+        Iterator<CachedValue> it = cache.values().iterator();
+        while (it.hasNext() && cache.size() > targetSize) {
+          CachedValue cached = it.next();
+          if (cached.used) {
+            cached.used = false;
+          } else {
+            it.remove();
+            evictionCount.incrementAndGet();
+          }
         }
-        die(cause, "Unexpected checked exception");
-      } catch (IllegalArgumentException e) {
-        ex = e;
-      } catch (IllegalAccessException e) {
-        ex = e;
       }
-      if (ex != null) {
-        die(ex, "Bad method invocation");
+    } finally {
+      evicting.set(false);
+    }
+  }
+
+  private <K, T> T getOrCache(Method method, K key, Class<T> valueType, Object... args) {
+    Pair<Method, Object> cacheKey = new Pair<Method, Object>(method, key);
+    CachedValue cached = cache.get(cacheKey);
+    if (cached != null) {
+      hitCount.incrementAndGet();
+      if (!cached.used) {
+        cached.used = true;
+      }
+      return cached.value == NULL_MARKER ? null : valueType.cast(cached.value);
+    }
+
+    missCount.incrementAndGet();
+    T toReturn = null;
+    Throwable ex = null;
+    try {
+      toReturn = valueType.cast(method.invoke(getNext(), args));
+      cache.put(cacheKey, new CachedValue(toReturn == null ? NULL_MARKER : toReturn));
+      if (cache.size() > maximumSize) {
+        evict();
+      }
+    } catch (InvocationTargetException e) {
+      // The next layer threw an exception
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        // Re-throw RuntimeExceptions, which likely originate from die()
+        throw ((RuntimeException) cause);
       }
+      die(cause, "Unexpected checked exception");
+    } catch (IllegalArgumentException e) {
+      ex = e;
+    } catch (IllegalAccessException e) {
+      ex = e;
+    }
+    if (ex != null) {
+      die(ex, "Bad method invocation");
     }
     return toReturn;
   }
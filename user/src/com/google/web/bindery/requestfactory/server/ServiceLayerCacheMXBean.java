@@ -0,0 +1,62 @@
+/*
+ * Copyright 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.web.bindery.requestfactory.server;
+
+/**
+ * The management interface of the cache that each {@link ServiceLayer}
+ * created by {@link ServiceLayer#create(ServiceLayerDecorator...)} keeps of
+ * its type and method lookups. {@link RequestFactoryServlet} registers the
+ * cache of its ServiceLayer with the platform MBean server, under the name
+ * {@value #OBJECT_NAME_PREFIX}<i>servlet name</i>.
+ */
+public interface ServiceLayerCacheMXBean {
+
+  /**
+   * The prefix of the names the caches are registered under.
+   */
+  String OBJECT_NAME_PREFIX = "com.google.web.bindery.requestfactory:type=ServiceLayerCache,name=";
+
+  /**
+   * Removes all the entries from the cache. The statistics are kept.
+   */
+  void clear();
+
+  /**
+   * Returns the number of entries evicted to keep the cache within its
+   * maximum size.
+   */
+  long getEvictionCount();
+
+  /**
+   * Returns the number of lookups answered from the cache.
+   */
+  long getHitCount();
+
+  /**
+   * Returns the maximum number of entries in the cache.
+   */
+  int getMaximumSize();
+
+  /**
+   * Returns the number of lookups that were not answered from the cache.
+   */
+  long getMissCount();
+
+  /**
+   * Returns the number of entries in the cache.
+   */
+  int getSize();
+}
@@ -24,6 +24,7 @@ import com.google.web.bindery.autobean.shared.Splittable;
 import com.google.web.bindery.autobean.shared.ValueCodex;
 import com.google.web.bindery.autobean.vm.AutoBeanFactorySource;
 import com.google.web.bindery.autobean.vm.Configuration;
+import com.google.web.bindery.autobean.vm.impl.StreamingAutoBeanCodex;
 import com.google.web.bindery.autobean.vm.impl.TypeUtils;
 import com.google.web.bindery.requestfactory.shared.BaseProxy;
 import com.google.web.bindery.requestfactory.shared.EntityProxyId;
@@ -31,11 +32,14 @@ import com.google.web.bindery.requestfactory.shared.InstanceRequest;
 import com.google.web.bindery.requestfactory.shared.Request;
 import com.google.web.bindery.requestfactory.shared.RequestContext;
 import com.google.web.bindery.requestfactory.shared.ServerFailure;
+import com.google.web.bindery.requestfactory.shared.SideEffectFree;
 import com.google.web.bindery.requestfactory.shared.WriteOperation;
 import com.google.web.bindery.requestfactory.shared.impl.BaseProxyCategory;
 import com.google.web.bindery.requestfactory.shared.impl.Constants;
 import com.google.web.bindery.requestfactory.shared.impl.EntityCodex;
 import com.google.web.bindery.requestfactory.shared.impl.EntityProxyCategory;
+import com.google.web.bindery.requestfactory.shared.impl.EntitySnapshot;
+import com.google.web.bindery.requestfactory.shared.impl.MessageFactoryHolder;
 import com.google.web.bindery.requestfactory.shared.impl.SimpleProxyId;
 import com.google.web.bindery.requestfactory.shared.impl.ValueProxyCategory;
 import com.google.web.bindery.requestfactory.shared.messages.IdMessage;
@@ -48,7 +52,9 @@ import com.google.web.bindery.requestfactory.shared.messages.ResponseMessage;
 import com.google.web.bindery.requestfactory.shared.messages.ServerFailureMessage;
 import com.google.web.bindery.requestfactory.shared.messages.ViolationMessage;
 
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.io.Writer;
 import java.lang.reflect.Method;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
@@ -62,6 +68,11 @@ import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.validation.ConstraintViolation;
 
@@ -116,6 +127,7 @@ public class SimpleRequestProcessor {
   }
 
   private ExceptionHandler exceptionHandler = new DefaultExceptionHandler();
+  private Executor invocationExecutor;
   private final ServiceLayer service;
 
   public SimpleRequestProcessor(ServiceLayer serviceLayer) {
@@ -130,22 +142,53 @@ public class SimpleRequestProcessor {
    */
   public String process(String payload) {
     RequestMessage req = AutoBeanCodex.decode(FACTORY, RequestMessage.class, payload).as();
-    AutoBean<ResponseMessage> responseBean = FACTORY.response();
-    try {
-      process(req, responseBean.as());
-    } catch (ReportableException e) {
-      // Create a new response envelope, since the state is unknown
-      responseBean = FACTORY.response();
-      responseBean.as().setGeneralFailure(createFailureMessage(e).as());
-    }
     // Return a JSON-formatted payload
-    return AutoBeanCodex.encode(responseBean).getPayload();
+    return AutoBeanCodex.encode(createResponse(req)).getPayload();
+  }
+
+  /**
+   * Process a payload sent by a RequestFactory client, writing the response
+   * payload to <code>writer</code>. This is equivalent to
+   * {@link #process(String)}, but the request is parsed in a single pass and
+   * the response is encoded straight to <code>writer</code>, without building
+   * the whole response payload in memory, which matters for large batches.
+   * <p>
+   * The writer is not flushed or closed. If encoding the response fails, part
+   * of it may have been written.
+   * </p>
+   *
+   * @param payload the payload sent by the client
+   * @param writer the writer that receives the payload to return to the client
+   * @throws IOException if writing fails
+   */
+  public void process(String payload, Writer writer) throws IOException {
+    RequestMessage req =
+        StreamingAutoBeanCodex.decode(FACTORY, RequestMessage.class, payload).as();
+    StreamingAutoBeanCodex.encode(createResponse(req), writer);
   }
 
   public void setExceptionHandler(ExceptionHandler exceptionHandler) {
     this.exceptionHandler = exceptionHandler;
   }
 
+  /**
+   * Sets the executor that invokes the service methods of consecutive
+   * invocations marked {@link SideEffectFree} in parallel. By default, or if
+   * <code>executor</code> is <code>null</code>, all the invocations of a
+   * request are invoked one after the other on the calling thread.
+   * <p>
+   * The calling thread invokes the invocations that the executor has not
+   * started yet itself, so a busy executor does not hold up requests. Service
+   * methods invoked by the executor cannot rely on the calling thread's
+   * thread-local state.
+   * </p>
+   *
+   * @param executor the executor that invokes side-effect-free invocations
+   */
+  public void setInvocationExecutor(Executor executor) {
+    this.invocationExecutor = executor;
+  }
+
   /**
    * Encode a list of objects into a self-contained message that can be used for
    * out-of-band communication.
@@ -171,7 +214,7 @@ public class SimpleRequestProcessor {
     IdToEntityMap map = new IdToEntityMap();
     map.putAll(state.beans);
     List<OperationMessage> operations = new ArrayList<OperationMessage>();
-    createReturnOperations(operations, state, map);
+    createReturnOperations(operations, state, map, Collections.<String, String> emptyMap());
 
     InvocationMessage invocation = FACTORY.invocation().as();
     invocation.setParameters(encodedValues);
@@ -237,7 +280,11 @@ public class SimpleRequestProcessor {
     IdToEntityMap toProcess = new IdToEntityMap();
     toProcess.putAll(source.beans);
     toProcess.putAll(returnState.beans);
-    createReturnOperations(operations, returnState, toProcess);
+    Map<String, String> knownEntities = req.getKnownEntities();
+    if (knownEntities == null) {
+      knownEntities = Collections.emptyMap();
+    }
+    createReturnOperations(operations, returnState, toProcess, knownEntities);
 
     assert invocationResults.size() == invocationSuccess.size();
     if (!invocationResults.isEmpty()) {
@@ -261,8 +308,28 @@ public class SimpleRequestProcessor {
     return bean;
   }
 
+  /**
+   * Processes a request, returning the response envelope.
+   */
+  private AutoBean<ResponseMessage> createResponse(RequestMessage req) {
+    AutoBean<ResponseMessage> responseBean = FACTORY.response();
+    try {
+      process(req, responseBean.as());
+    } catch (ReportableException e) {
+      // Create a new response envelope, since the state is unknown
+      responseBean = FACTORY.response();
+      responseBean.as().setGeneralFailure(createFailureMessage(e).as());
+    }
+    return responseBean;
+  }
+
+  /**
+   * Creates the operations that return entities to the client. The properties
+   * of the updated entities whose snapshot the client holds, as announced in
+   * <code>knownEntities</code>, are not sent if they are unchanged.
+   */
   private void createReturnOperations(List<OperationMessage> operations, RequestState returnState,
-      IdToEntityMap toProcess) {
+      IdToEntityMap toProcess, Map<String, String> knownEntities) {
     for (Map.Entry<SimpleProxyId<?>, AutoBean<? extends BaseProxy>> entry : toProcess.entrySet()) {
       SimpleProxyId<?> id = entry.getKey();
 
@@ -288,6 +355,7 @@ public class SimpleRequestProcessor {
       }
 
       Splittable version = null;
+      String encodedVersion = null;
       if (writeOperation == WriteOperation.PERSIST || writeOperation == WriteOperation.UPDATE) {
         /*
          * If we're sending an operation, the domain object must be persistent.
@@ -299,6 +367,7 @@ public class SimpleRequestProcessor {
               + service.getId(domainObject) + " has a null version", null);
         }
         version = returnState.flatten(domainVersion);
+        encodedVersion = toBase64(version.getPayload());
       }
 
       boolean inResponse = bean.getTag(Constants.IN_RESPONSE) != null;
@@ -339,7 +408,12 @@ public class SimpleRequestProcessor {
             propertyMap.put(d.getKey(), EntityCodex.encode(returnState, value));
           }
         }
-        op.setPropertyMap(propertyMap);
+        if (WriteOperation.UPDATE.equals(writeOperation)
+            && isSnapshotCurrent(knownEntities, id, encodedVersion, propertyMap, diff.values())) {
+          op.setNotModified(true);
+        } else {
+          op.setPropertyMap(propertyMap);
+        }
       }
 
       if (!id.isEphemeral() && !id.isSynthetic()) {
@@ -355,14 +429,18 @@ public class SimpleRequestProcessor {
       }
 
       op.setTypeToken(service.resolveTypeToken(id.getProxyClass()));
-      if (version != null) {
-        op.setVersion(toBase64(version.getPayload()));
+      if (encodedVersion != null) {
+        op.setVersion(encodedVersion);
       }
 
       operations.add(op);
     }
   }
 
+  private IdMessage decodeIdMessage(Splittable split) {
+    return AutoBeanCodex.decode(MessageFactoryHolder.FACTORY, IdMessage.class, split).as();
+  }
+
   /**
    * Decode the arguments to pass into the domain method. If the domain method
    * is not static, the instance object will be in the 0th position.
@@ -401,19 +479,21 @@ public class SimpleRequestProcessor {
     }
 
     assert parameters.size() == contextArgs.length;
-    List<Object> args = new ArrayList<Object>(contextArgs.length);
+    Class<?>[] elementTypes = new Class<?>[contextArgs.length];
     for (int i = 0, j = contextArgs.length; i < j; i++) {
-      Class<?> type = contextArgs[i];
-      Class<?> elementType = null;
-      Splittable split;
-      if (Collection.class.isAssignableFrom(type)) {
-        elementType =
+      if (Collection.class.isAssignableFrom(contextArgs[i])) {
+        elementTypes[i] =
             TypeUtils.ensureBaseType(TypeUtils.getSingleParameterization(Collection.class,
                 genericArgs[i]));
-        split = parameters.get(i);
-      } else {
-        split = parameters.get(i);
       }
+    }
+    preloadEntityArguments(source, parameters, contextArgs, elementTypes);
+
+    List<Object> args = new ArrayList<Object>(contextArgs.length);
+    for (int i = 0, j = contextArgs.length; i < j; i++) {
+      Class<?> type = contextArgs[i];
+      Class<?> elementType = elementTypes[i];
+      Splittable split = parameters.get(i);
       Object arg = EntityCodex.decode(source, type, elementType, split);
       arg =
           source.getResolver().resolveDomainValue(arg, !EntityProxyId.class.equals(contextArgs[i]));
@@ -423,6 +503,214 @@ public class SimpleRequestProcessor {
     return args;
   }
 
+  /**
+   * Returns the result of an invocation, rethrowing what its service method
+   * threw.
+   */
+  private Object getInvocationResult(FutureTask<Object> task) {
+    boolean interrupted = false;
+    try {
+      while (true) {
+        try {
+          return task.get();
+        } catch (InterruptedException e) {
+          // The invocation must complete before the response is sent
+          interrupted = true;
+        }
+      }
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        // Includes the ReportableExceptions thrown by the ServiceLayer
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new UnexpectedException(cause);
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * Returns whether a value refers to proxies whose ids are only valid in a
+   * single payload.
+   */
+  private boolean hasTransientIds(Object value) {
+    if (value instanceof BaseProxy) {
+      AutoBean<BaseProxy> bean = AutoBeanUtils.getAutoBean((BaseProxy) value);
+      SimpleProxyId<?> id = BaseProxyCategory.stableId(bean);
+      return id.isEphemeral() || id.isSynthetic();
+    } else if (value instanceof Collection<?>) {
+      for (Object element : (Collection<?>) value) {
+        if (hasTransientIds(element)) {
+          return true;
+        }
+      }
+    } else if (value instanceof Map<?, ?>) {
+      for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+        if (hasTransientIds(entry.getKey()) || hasTransientIds(entry.getValue())) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Invokes a run of invocations and adds their results to
+   * <code>invocationResults</code> and <code>success</code>. The arguments of
+   * all the invocations are decoded first, since the RequestState is not
+   * thread-safe. If there are several invocations, they are then invoked in
+   * parallel by the invocation executor.
+   */
+  private void invokeAll(RequestState state, List<InvocationMessage> invocations,
+      List<Method> contextMethods, List<Object> invocationResults, List<Boolean> success,
+      Map<Object, SortedSet<String>> allPropertyRefs) {
+    int size = invocations.size();
+    Object[] results = new Object[size];
+    List<FutureTask<Object>> tasks = new ArrayList<FutureTask<Object>>(size);
+    for (int i = 0; i < size; i++) {
+      FutureTask<Object> task = null;
+      try {
+        task = prepareInvocation(state, invocations.get(i), contextMethods.get(i));
+      } catch (ReportableException e) {
+        results[i] = AutoBeanCodex.encode(createFailureMessage(e));
+      }
+      tasks.add(task);
+    }
+
+    if (size > 1) {
+      for (FutureTask<Object> task : tasks) {
+        if (task != null) {
+          try {
+            invocationExecutor.execute(task);
+          } catch (RejectedExecutionException e) {
+            // Invoked below instead
+          }
+        }
+      }
+    }
+
+    for (int i = 0; i < size; i++) {
+      InvocationMessage invocation = invocations.get(i);
+      FutureTask<Object> task = tasks.get(i);
+      boolean ok = false;
+      if (task != null) {
+        try {
+          // Does nothing if the executor already ran it
+          task.run();
+          Object domainReturnValue = getInvocationResult(task);
+          if (invocation.getPropertyRefs() != null) {
+            SortedSet<String> paths = allPropertyRefs.get(domainReturnValue);
+            if (paths == null) {
+              paths = new TreeSet<String>();
+              allPropertyRefs.put(domainReturnValue, paths);
+            }
+            paths.addAll(invocation.getPropertyRefs());
+          }
+          results[i] = domainReturnValue;
+          ok = true;
+        } catch (ReportableException e) {
+          results[i] = AutoBeanCodex.encode(createFailureMessage(e));
+        }
+      }
+      invocationResults.add(results[i]);
+      success.add(ok);
+    }
+  }
+
+  private boolean isSideEffectFree(Method contextMethod) {
+    return contextMethod.isAnnotationPresent(SideEffectFree.class);
+  }
+
+  /**
+   * Returns whether the client holds a snapshot of an entity with the same
+   * version and properties as the ones about to be sent. The snapshot can't be
+   * reused if the properties refer to proxies whose ids were only valid in the
+   * response the snapshot was taken from.
+   */
+  private boolean isSnapshotCurrent(Map<String, String> knownEntities, SimpleProxyId<?> id,
+      String encodedVersion, Map<String, Splittable> propertyMap, Collection<Object> values) {
+    if (knownEntities.isEmpty() || encodedVersion == null) {
+      return false;
+    }
+    String known =
+        knownEntities.get(EntitySnapshot.key(toBase64(id.getServerId()), service
+            .resolveTypeToken(id.getProxyClass())));
+    String stamp = EntitySnapshot.stamp(encodedVersion, propertyMap.keySet());
+    if (!stamp.equals(known)) {
+      return false;
+    }
+    for (Object value : values) {
+      if (hasTransientIds(value)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Loads the entities referenced by the arguments of an invocation, including
+   * the elements of collections, together, so that a {@link ServiceLayer} can
+   * load them in a single call instead of one at a time as they are decoded.
+   */
+  private void preloadEntityArguments(RequestState source, List<Splittable> parameters,
+      Class<?>[] contextArgs, Class<?>[] elementTypes) {
+    List<IdMessage> idMessages = new ArrayList<IdMessage>();
+    for (int i = 0, j = contextArgs.length; i < j; i++) {
+      Splittable split = parameters.get(i);
+      if (split == null || split == Splittable.NULL) {
+        continue;
+      }
+      if (elementTypes[i] == null) {
+        if (source.isEntityType(contextArgs[i])) {
+          idMessages.add(decodeIdMessage(split));
+        }
+      } else if (source.isEntityType(elementTypes[i])) {
+        for (int k = 0, l = split.size(); k < l; k++) {
+          if (!split.isNull(k)) {
+            idMessages.add(decodeIdMessage(split.get(k)));
+          }
+        }
+      }
+    }
+    if (idMessages.size() > 1) {
+      source.getBeansForPayload(idMessages);
+    }
+  }
+
+  /**
+   * Decodes the arguments of an invocation, and returns the task that invokes
+   * its service method.
+   */
+  private FutureTask<Object> prepareInvocation(RequestState state, InvocationMessage invocation,
+      Method contextMethod) {
+    String operation = invocation.getOperation();
+    final Method domainMethod = service.resolveDomainMethod(operation);
+    if (domainMethod == null) {
+      throw new UnexpectedException("Cannot resolve domain method " + invocation.getOperation(),
+          null);
+    }
+
+    // Compute the arguments
+    final List<Object> args = decodeInvocationArguments(state, invocation, contextMethod);
+    // Possibly use a ServiceLocator
+    if (service.requiresServiceLocator(contextMethod, domainMethod)) {
+      Class<? extends RequestContext> requestContext = service.resolveRequestContext(operation);
+      Object serviceInstance = service.createServiceInstance(requestContext);
+      args.add(0, serviceInstance);
+    }
+    return new FutureTask<Object>(new Callable<Object>() {
+      @Override
+      public Object call() {
+        return service.invoke(domainMethod, args.toArray());
+      }
+    });
+  }
+
   private void processInvocationMessages(RequestState state, RequestMessage req,
       List<Splittable> results, List<Boolean> success, RequestState returnState) {
     List<InvocationMessage> invocations = req.getInvocations();
@@ -433,49 +721,35 @@ public class SimpleRequestProcessor {
     List<Method> contextMethods = new ArrayList<Method>(invocations.size());
     List<Object> invocationResults = new ArrayList<Object>(invocations.size());
     Map<Object, SortedSet<String>> allPropertyRefs = new HashMap<Object, SortedSet<String>>();
-    for (InvocationMessage invocation : invocations) {
-      Object domainReturnValue;
-      boolean ok;
-      try {
-        // Find the Method
-        String operation = invocation.getOperation();
-        Method contextMethod = service.resolveRequestContextMethod(operation);
-        if (contextMethod == null) {
-          throw new UnexpectedException("Cannot resolve operation " + invocation.getOperation(),
-              null);
-        }
-        contextMethods.add(contextMethod);
-        Method domainMethod = service.resolveDomainMethod(operation);
-        if (domainMethod == null) {
-          throw new UnexpectedException(
-              "Cannot resolve domain method " + invocation.getOperation(), null);
-        }
+    for (int i = 0, j = invocations.size(); i < j;) {
+      // Find the Method
+      InvocationMessage invocation = invocations.get(i);
+      Method contextMethod = service.resolveRequestContextMethod(invocation.getOperation());
+      if (contextMethod == null) {
+        throw new UnexpectedException("Cannot resolve operation " + invocation.getOperation(),
+            null);
+      }
+      contextMethods.add(contextMethod);
 
-        // Compute the arguments
-        List<Object> args = decodeInvocationArguments(state, invocation, contextMethod);
-        // Possibly use a ServiceLocator
-        if (service.requiresServiceLocator(contextMethod, domainMethod)) {
-          Class<? extends RequestContext> requestContext = service.resolveRequestContext(operation);
-          Object serviceInstance = service.createServiceInstance(requestContext);
-          args.add(0, serviceInstance);
-        }
-        // Invoke it
-        domainReturnValue = service.invoke(domainMethod, args.toArray());
-        if (invocation.getPropertyRefs() != null) {
-          SortedSet<String> paths = allPropertyRefs.get(domainReturnValue);
-          if (paths == null) {
-            paths = new TreeSet<String>();
-            allPropertyRefs.put(domainReturnValue, paths);
+      /*
+       * Consecutive side-effect-free invocations are invoked together. An
+       * operation that can't be resolved ends the group, so that the
+       * invocations before it are still made before the request fails.
+       */
+      int end = i + 1;
+      if (invocationExecutor != null && isSideEffectFree(contextMethod)) {
+        while (end < j) {
+          Method next = service.resolveRequestContextMethod(invocations.get(end).getOperation());
+          if (next == null || !isSideEffectFree(next)) {
+            break;
           }
-          paths.addAll(invocation.getPropertyRefs());
+          contextMethods.add(next);
+          end++;
         }
-        ok = true;
-      } catch (ReportableException e) {
-        domainReturnValue = AutoBeanCodex.encode(createFailureMessage(e));
-        ok = false;
       }
-      invocationResults.add(domainReturnValue);
-      success.add(ok);
+      invokeAll(state, invocations.subList(i, end), contextMethods.subList(i, end),
+          invocationResults, success, allPropertyRefs);
+      i = end;
     }
     Iterator<Method> contextMethodIt = contextMethods.iterator();
     Iterator<Object> objects = invocationResults.iterator();
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.web.bindery.requestfactory.shared;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * A {@link Locator} that can retrieve many objects at once. When a request
+ * refers to several entities of a type whose locator is a BatchLocator, the
+ * RequestFactory service layer loads them with a single call to
+ * {@link #findAll(Class, Collection)} instead of one call to
+ * {@link #find(Class, Object)} per entity, which allows a backing store to
+ * fetch them with a single query.
+ *
+ * @param <T> the type of domain object the Locator will operate on
+ * @param <I> the type of object the Locator expects to use as an id for the
+ *          domain object
+ */
+public abstract class BatchLocator<T, I> extends Locator<T, I> {
+
+  /**
+   * Retrieve an object. The default implementation calls
+   * {@link #findAll(Class, Collection)} with the single id.
+   *
+   * @param clazz the type of object to retrieve
+   * @param id an id previously returned from {@link #getId(Object)}
+   * @return the requested object or {@code null} if it could not be found
+   */
+  @Override
+  public T find(Class<? extends T> clazz, I id) {
+    return findAll(clazz, Collections.singleton(id)).get(id);
+  }
+
+  /**
+   * Retrieve several objects. The ids are distinct. Objects that could not be
+   * found may be left out of the returned map.
+   *
+   * @param clazz the type of objects to retrieve
+   * @param ids ids previously returned from {@link #getId(Object)}
+   * @return the requested objects, keyed by id
+   */
+  public abstract Map<I, T> findAll(Class<? extends T> clazz, Collection<I> ids);
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.web.bindery.requestfactory.shared;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation on methods of {@link RequestContext} interfaces whose service
+ * methods have no side effects, and so neither depend on nor affect the other
+ * invocations of the same request. When the server has an executor for
+ * invocations, consecutive invocations of such methods in a request are
+ * invoked in parallel, and their results are returned in the order in which
+ * they were made.
+ * <p>
+ * Service methods may not rely on being invoked on the thread that handles
+ * the HTTP request. {@link com.google.web.bindery.requestfactory.server.RequestFactoryServlet
+ * RequestFactoryServlet} makes its thread-local request, response and servlet
+ * context available to them.
+ * </p>
+ *
+ * @see com.google.web.bindery.requestfactory.server.SimpleRequestProcessor#setInvocationExecutor
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface SideEffectFree {
+}
@@ -96,6 +96,10 @@ public abstract class AbstractRequestContext implements RequestContext, EntityCo
    * Encapsulates all state contained by the AbstractRequestContext.
    */
   protected static class State {
+    /**
+     * The entity snapshots announced to the server by the request in flight, by persisted id.
+     */
+    public Map<String, EntitySnapshot> announcedSnapshots = Collections.emptyMap();
     /**
      * Supports the case where chained contexts are used and a response comes back from the server
      * with a proxy type not reachable from the canonical context.
@@ -342,6 +346,16 @@ public abstract class AbstractRequestContext implements RequestContext, EntityCo
       if (!operations.isEmpty()) {
         requestMessage.setOperations(operations);
       }
+
+      // Tell the server which entities it need not send again if unchanged
+      state.announcedSnapshots = getRequestFactory().getEntitySnapshots();
+      if (!state.announcedSnapshots.isEmpty()) {
+        Map<String, String> knownEntities = new HashMap<String, String>();
+        for (Map.Entry<String, EntitySnapshot> entry : state.announcedSnapshots.entrySet()) {
+          knownEntities.put(entry.getKey(), entry.getValue().getStamp());
+        }
+        requestMessage.setKnownEntities(knownEntities);
+      }
       return AutoBeanCodex.encode(bean).getPayload();
     }
 
@@ -405,6 +419,7 @@ public abstract class AbstractRequestContext implements RequestContext, EntityCo
         }
       }
       // After success, shut down the context
+      state.announcedSnapshots = Collections.emptyMap();
       state.editedProxies.clear();
       state.invocations.clear();
       state.returnedProxies.clear();
@@ -921,7 +936,7 @@ public abstract class AbstractRequestContext implements RequestContext, EntityCo
     AutoBean<Q> toMutate = getProxyForReturnPayloadGraph(id);
     toMutate.setTag(Constants.VERSION_PROPERTY_B64, op.getVersion());
 
-    final Map<String, Splittable> properties = op.getPropertyMap();
+    final Map<String, Splittable> properties = getReturnedProperties(id, op);
     if (properties != null) {
       // Apply updates
       toMutate.accept(new AutoBeanVisitor() {
@@ -1171,6 +1186,37 @@ public abstract class AbstractRequestContext implements RequestContext, EntityCo
     }
   }
 
+  /**
+   * Returns the properties of a returned entity, which are those of its
+   * snapshot if the server reports it unchanged, and updates the snapshot of
+   * the entity.
+   */
+  private Map<String, Splittable> getReturnedProperties(SimpleProxyId<?> id, OperationMessage op) {
+    Map<String, Splittable> properties = op.getPropertyMap();
+    if (op.getServerId() == null || !state.requestFactory.isEntityType(id.getProxyClass())) {
+      return properties;
+    }
+
+    String persistedId = EntitySnapshot.key(op.getServerId(), op.getTypeToken());
+    if (op.isNotModified()) {
+      EntitySnapshot snapshot = state.announcedSnapshots.get(persistedId);
+      if (snapshot == null) {
+        throw new IllegalStateException("The server reused an unknown snapshot of "
+            + persistedId);
+      }
+      // Marks the snapshot as recently received
+      state.requestFactory.putEntitySnapshot(persistedId, snapshot);
+      return snapshot.getProperties();
+    }
+    if (WriteOperation.DELETE.equals(op.getOperation())) {
+      state.requestFactory.putEntitySnapshot(persistedId, null);
+    } else if (properties != null && op.getVersion() != null) {
+      state.requestFactory.putEntitySnapshot(persistedId, new EntitySnapshot(op.getVersion(),
+          properties));
+    }
+    return properties;
+  }
+
   /**
    * Make an EntityProxy immutable.
    */
@@ -25,6 +25,8 @@ import com.google.web.bindery.requestfactory.shared.Request;
 import com.google.web.bindery.requestfactory.shared.RequestFactory;
 import com.google.web.bindery.requestfactory.shared.RequestTransport;
 
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -37,6 +39,20 @@ public abstract class AbstractRequestFactory extends IdFactory implements Reques
 
   private EventBus eventBus;
 
+  private int snapshotLimit;
+
+  /**
+   * The properties of the entities last received, by persisted id.
+   */
+  @SuppressWarnings("serial")
+  private final Map<String, EntitySnapshot> snapshots =
+      new LinkedHashMap<String, EntitySnapshot>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Entry<String, EntitySnapshot> eldest) {
+          return size() > snapshotLimit;
+        }
+      };
+
   @SuppressWarnings("serial")
   private final Map<String, String> version = new LinkedHashMap<String, String>(16, 0.75f, true) {
     @Override
@@ -111,6 +127,46 @@ public abstract class AbstractRequestFactory extends IdFactory implements Reques
     this.transport = transport;
   }
 
+  /**
+   * Sets how many entities this factory keeps the last received properties
+   * of, which is zero by default. Each request then tells the server which
+   * versions of these entities the client has, and the server sends only a
+   * "not modified" marker instead of the properties of a returned entity
+   * whose version and requested properties are unchanged. This shrinks the
+   * responses of requests that are repeated, such as polling for the rows of
+   * a table.
+   * <p>
+   * Each request carries the id and version of every kept entity, so the
+   * limit should be about the number of entities on display. The least
+   * recently received entities are forgotten first.
+   * </p>
+   * <p>
+   * This is not part of the {@link RequestFactory} interface. Client code can
+   * cast a factory created with {@code GWT.create()} to this class, and JRE
+   * code can use
+   * {@link com.google.web.bindery.requestfactory.vm.RequestFactorySource#setEntitySnapshotLimit(RequestFactory, int)
+   * RequestFactorySource.setEntitySnapshotLimit()}.
+   * </p>
+   * 
+   * @param limit the maximum number of entities to keep, or zero to keep none
+   */
+  public void setEntitySnapshotLimit(int limit) {
+    if (limit < 0) {
+      throw new IllegalArgumentException("limit must not be negative");
+    }
+    snapshotLimit = limit;
+    if (limit == 0) {
+      snapshots.clear();
+    } else if (snapshots.size() > limit) {
+      // Forget the least recently received entities
+      Iterator<String> it = snapshots.keySet().iterator();
+      for (int i = snapshots.size() - limit; i > 0; i--) {
+        it.next();
+        it.remove();
+      }
+    }
+  }
+
   /**
    * Implementations of EntityProxies are provided by an AutoBeanFactory, which
    * is itself a generated type. This method knows about all proxy types used in
@@ -121,6 +177,17 @@ public abstract class AbstractRequestFactory extends IdFactory implements Reques
    */
   protected abstract AutoBeanFactory getAutoBeanFactory();
 
+  /**
+   * Used by {@link AbstractRequestContext} to collect the snapshots to announce
+   * to the server.
+   */
+  Map<String, EntitySnapshot> getEntitySnapshots() {
+    if (snapshots.isEmpty()) {
+      return Collections.emptyMap();
+    }
+    return new LinkedHashMap<String, EntitySnapshot>(snapshots);
+  }
+
   /**
    * Used by {@link AbstractRequestContext} to quiesce update events for objects
    * that haven't truly changed.
@@ -137,4 +204,17 @@ public abstract class AbstractRequestFactory extends IdFactory implements Reques
     }
     return toReturn;
   }
+
+  /**
+   * Used by {@link AbstractRequestContext} to record the properties of a
+   * received entity, or to forget them if <code>snapshot</code> is
+   * <code>null</code>.
+   */
+  void putEntitySnapshot(String persistedId, EntitySnapshot snapshot) {
+    if (snapshot == null) {
+      snapshots.remove(persistedId);
+    } else if (snapshotLimit > 0) {
+      snapshots.put(persistedId, snapshot);
+    }
+  }
 }
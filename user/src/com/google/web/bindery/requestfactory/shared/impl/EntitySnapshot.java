@@ -0,0 +1,103 @@
+/*
+ * Copyright 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.web.bindery.requestfactory.shared.impl;
+
+import com.google.web.bindery.autobean.shared.Splittable;
+import com.google.web.bindery.autobean.shared.impl.StringQuoter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The properties of an entity last received by a client, which the server can
+ * tell the client to reuse when the entity has not changed since. See
+ * {@link AbstractRequestFactory#setEntitySnapshotLimit(int)}.
+ * <p>
+ * The client identifies its snapshots to the server by their stamps, which
+ * combine the version of the entity with the sorted names of the
+ * properties it received. The properties depend on the paths requested with
+ * {@link com.google.web.bindery.requestfactory.shared.Request#with(String...)
+ * Request.with()}, so a snapshot is only reused if the server would send the
+ * same properties.
+ * </p>
+ */
+public final class EntitySnapshot {
+
+  /**
+   * Returns the key under which the snapshot of an entity is announced.
+   *
+   * @param serverId the base64-encoded server id of the entity
+   * @param typeToken the type token of the entity's proxy
+   */
+  public static String key(String serverId, String typeToken) {
+    return IdUtil.persistedId(serverId, typeToken);
+  }
+
+  /**
+   * Returns the stamp of the properties of an entity.
+   *
+   * @param version the base64-encoded version of the entity
+   * @param propertyNames the names of the properties sent for the entity
+   */
+  public static String stamp(String version, Collection<String> propertyNames) {
+    List<String> sorted = new ArrayList<String>(propertyNames);
+    Collections.sort(sorted);
+    // Property names are identifiers, so they can't contain the separators
+    StringBuilder sb = new StringBuilder(version).append("/");
+    for (int i = 0, j = sorted.size(); i < j; i++) {
+      if (i > 0) {
+        sb.append(",");
+      }
+      sb.append(sorted.get(i));
+    }
+    return sb.toString();
+  }
+
+  /**
+   * The properties are kept as payloads because decoding a Splittable caches
+   * the objects it produces, which belong to a single RequestContext.
+   */
+  private final Map<String, String> payloads = new HashMap<String, String>();
+  private final String stamp;
+
+  public EntitySnapshot(String version, Map<String, Splittable> properties) {
+    for (Map.Entry<String, Splittable> entry : properties.entrySet()) {
+      Splittable value = entry.getValue();
+      payloads.put(entry.getKey(), value == null ? null : value.getPayload());
+    }
+    this.stamp = stamp(version, properties.keySet());
+  }
+
+  /**
+   * Returns fresh copies of the properties of the entity.
+   */
+  public Map<String, Splittable> getProperties() {
+    Map<String, Splittable> toReturn = new HashMap<String, Splittable>();
+    for (Map.Entry<String, String> entry : payloads.entrySet()) {
+      String payload = entry.getValue();
+      toReturn.put(entry.getKey(), payload == null ? null : StringQuoter.split(payload));
+    }
+    return toReturn;
+  }
+
+  public String getStamp() {
+    return stamp;
+  }
+}
@@ -25,6 +25,7 @@ import java.util.Map;
  * Represents an operation to be carried out on a single entity on the server.
  */
 public interface OperationMessage extends IdMessage, VersionedMessage {
+  String NOT_MODIFIED = "N";
   String OPERATION = "O";
   String PROPERTY_MAP = "P";
 
@@ -34,6 +35,16 @@ public interface OperationMessage extends IdMessage, VersionedMessage {
   @PropertyName(PROPERTY_MAP)
   Map<String, Splittable> getPropertyMap();
 
+  /**
+   * Whether the properties of the entity are the ones of the snapshot the
+   * client announced, and so were not sent.
+   */
+  @PropertyName(NOT_MODIFIED)
+  boolean isNotModified();
+
+  @PropertyName(NOT_MODIFIED)
+  void setNotModified(boolean value);
+
   @PropertyName(OPERATION)
   void setOperation(WriteOperation value);
 
@@ -18,6 +18,7 @@ package com.google.web.bindery.requestfactory.shared.messages;
 import com.google.web.bindery.autobean.shared.AutoBean.PropertyName;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  * The message sent from the client to the server.
@@ -25,11 +26,21 @@ import java.util.List;
 public interface RequestMessage extends VersionedMessage {
   String FACTORY = "F";
   String INVOCATION = "I";
+  String KNOWN_ENTITIES = "K";
   String OPERATIONS = "O";
 
   @PropertyName(INVOCATION)
   List<InvocationMessage> getInvocations();
 
+  /**
+   * The stamps of the entity snapshots held by the client, keyed by persisted
+   * id.
+   *
+   * @see com.google.web.bindery.requestfactory.shared.impl.EntitySnapshot
+   */
+  @PropertyName(KNOWN_ENTITIES)
+  Map<String, String> getKnownEntities();
+
   @PropertyName(OPERATIONS)
   List<OperationMessage> getOperations();
 
@@ -39,6 +50,9 @@ public interface RequestMessage extends VersionedMessage {
   @PropertyName(INVOCATION)
   void setInvocations(List<InvocationMessage> value);
 
+  @PropertyName(KNOWN_ENTITIES)
+  void setKnownEntities(Map<String, String> value);
+
   @PropertyName(OPERATIONS)
   void setOperations(List<OperationMessage> value);
 
@@ -70,6 +70,10 @@ class InProcessRequestFactory extends AbstractRequestFactory {
       return context.cast(Proxy.newProxyInstance(Thread.currentThread().getContextClassLoader(),
           new Class<?>[] {context}, handler));
     }
+
+    InProcessRequestFactory getRequestFactory() {
+      return InProcessRequestFactory.this;
+    }
   }
 
   private final Class<? extends RequestFactory> requestFactoryInterface;
@@ -18,6 +18,7 @@ package com.google.web.bindery.requestfactory.vm;
 import com.google.web.bindery.requestfactory.shared.RequestFactory;
 import com.google.web.bindery.requestfactory.vm.InProcessRequestFactory.RequestFactoryHandler;
 
+import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Proxy;
 
 /**
@@ -46,6 +47,25 @@ public class RequestFactorySource {
         .getContextClassLoader(), new Class<?>[] {requestFactory}, handler));
   }
 
+  /**
+   * Sets how many entities a RequestFactory created by this class keeps the
+   * last received properties of.
+   * 
+   * @param requestFactory a RequestFactory returned by {@link #create(Class)}
+   * @param limit the maximum number of entities to keep, or zero to keep none
+   * @see com.google.web.bindery.requestfactory.shared.impl.AbstractRequestFactory#setEntitySnapshotLimit(int)
+   */
+  public static void setEntitySnapshotLimit(RequestFactory requestFactory, int limit) {
+    InvocationHandler handler =
+        Proxy.isProxyClass(requestFactory.getClass()) ? Proxy.getInvocationHandler(requestFactory)
+            : null;
+    if (!(handler instanceof RequestFactoryHandler)) {
+      throw new IllegalArgumentException("Not created by RequestFactorySource: "
+          + requestFactory.getClass().getName());
+    }
+    ((RequestFactoryHandler) handler).getRequestFactory().setEntitySnapshotLimit(limit);
+  }
+
   private RequestFactorySource() {
   }
 }
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.core.server;
+
+import com.google.gwt.thirdparty.debugging.sourcemap.FilePosition;
+import com.google.gwt.thirdparty.debugging.sourcemap.SourceMapConsumerV3;
+import com.google.gwt.thirdparty.debugging.sourcemap.SourceMapGeneratorV3;
+import com.google.gwt.thirdparty.debugging.sourcemap.proto.Mapping.OriginalMapping;
+
+import junit.framework.TestCase;
+
+import java.util.Random;
+
+/**
+ * Tests for {@link CompactSourceMapping}.
+ */
+public class CompactSourceMappingTest extends TestCase {
+
+  private static final int LINES = 40;
+  private static final int COLUMNS = 60;
+
+  public void testInvalid() {
+    assertInvalid("{\"version\":2,\"sources\":[],\"mappings\":\"\"}");
+    assertInvalid("{\"version\":3,\"sections\":[]}");
+    assertInvalid("{\"version\":3,\"sources\":[],\"mappings\":\"AAAA\"}");
+    assertInvalid("{\"version\":3,\"sources\":[\"a\"],\"mappings\":\"AA\"}");
+    assertInvalid("{\"version\":3,\"sources\":[\"a\"],\"mappings\":\"A!\"}");
+    assertInvalid("not json");
+  }
+
+  public void testLookups() {
+    OriginalMapping mapping = CompactSourceMapping.parse("{\"version\":3,\"sources\":[\"A.java\","
+        + "\"B.java\"],\"names\":[\"foo\"],\"mappings\":\";EAAAA,KCEY,G;;A\"}")
+        .getMappingForLine(2, 8);
+    assertEquals("B.java", mapping.getOriginalFile());
+    assertEquals(3, mapping.getLineNumber());
+    assertEquals(13, mapping.getColumnPosition());
+    assertEquals("", mapping.getIdentifier());
+  }
+
+  public void testSameAsConsumer() throws Exception {
+    Random random = new Random(42);
+    SourceMapGeneratorV3 generator = new SourceMapGeneratorV3();
+    for (int line = 0; line < LINES; line++) {
+      if (random.nextInt(4) == 0) {
+        // Leave some lines without mappings
+        continue;
+      }
+      int column = random.nextInt(5);
+      while (column < COLUMNS) {
+        int end = column + 1 + random.nextInt(10);
+        generator.addMapping("Source" + random.nextInt(3) + ".java",
+            random.nextBoolean() ? "name" + random.nextInt(5) : null,
+            new FilePosition(random.nextInt(100), random.nextInt(20)),
+            new FilePosition(line, column), new FilePosition(line, end));
+        // Leave gaps, which are unmapped
+        column = end + random.nextInt(3);
+      }
+    }
+    StringBuilder json = new StringBuilder();
+    generator.appendTo(json, "test.js");
+
+    SourceMapConsumerV3 expected = new SourceMapConsumerV3();
+    expected.parse(json.toString());
+    CompactSourceMapping actual = CompactSourceMapping.parse(json.toString());
+    assertTrue(actual.size() > LINES);
+
+    for (int line = 1; line <= LINES + 2; line++) {
+      for (int column = 1; column <= COLUMNS + 2; column++) {
+        assertEquals("line " + line + ", column " + column,
+            expected.getMappingForLine(line, column), actual.getMappingForLine(line, column));
+      }
+    }
+  }
+
+  private void assertInvalid(String json) {
+    try {
+      CompactSourceMapping.parse(json);
+      fail("Expected IllegalArgumentException for " + json);
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.core.server;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for {@link StackTraceDeobfuscator} symbol caching and {@link SymbolMapIndex}.
+ */
+public class StackTraceDeobfuscatorTest extends TestCase {
+
+  private static final String STRONG_NAME = "ABCDEF0123";
+
+  private static final String SYMBOL_MAP =
+      "# { 0 }\n"
+      + "# jsName, jsniIdent, className, memberName, sourceUri, sourceLine, fragmentNumber\n"
+      + "b,com.example.Foo::bar()V,com.example.Foo,bar,file:/src/com/example/Foo.java,42,0\n"
+      + "aB,com.example.Foo::baz(I)I,com.example.Foo,baz,file:/src/com/example/Foo.java,7,0\n"
+      + "f,com.example.Foo::field,com.example.Foo,field,file:/src/com/example/Foo.java,3,0\n"
+      + "a,com.example.Bar::run()V,com.example.Bar,run,Unknown,12,1\n";
+
+  private static final String SOURCE_MAP = "{\"version\":3,\"sources\":[\"A.java\",\"B.java\"],"
+      + "\"names\":[\"foo\"],\"mappings\":\";EAAAA,KCEY,G\"}";
+
+  private static class MockDeobfuscator extends StackTraceDeobfuscator {
+    private final AtomicInteger sourceMapReads = new AtomicInteger();
+    private final AtomicInteger symbolMapReads = new AtomicInteger();
+    private final List<String> fileNames = Collections.synchronizedList(new ArrayList<String>());
+
+    @Override
+    protected InputStream openInputStream(String fileName) throws IOException {
+      fileNames.add(fileName);
+      String contents;
+      if (fileName.equals(STRONG_NAME + ".symbolMap")) {
+        symbolMapReads.incrementAndGet();
+        contents = SYMBOL_MAP;
+      } else if (fileName.equals(STRONG_NAME + "_sourceMap0.json")) {
+        sourceMapReads.incrementAndGet();
+        contents = SOURCE_MAP;
+      } else {
+        throw new FileNotFoundException(fileName);
+      }
+      return new ByteArrayInputStream(contents.getBytes("UTF-8"));
+    }
+  }
+
+  private File indexDirectory;
+
+  @Override
+  protected void setUp() throws Exception {
+    indexDirectory = File.createTempFile("symbolIndex", "");
+    assertTrue(indexDirectory.delete());
+    assertTrue(indexDirectory.mkdir());
+  }
+
+  @Override
+  protected void tearDown() {
+    for (File file : indexDirectory.listFiles()) {
+      file.delete();
+    }
+    indexDirectory.delete();
+  }
+
+  public void testBoundedSymbolCache() {
+    StackTraceDeobfuscator.BoundedSymbolCache cache =
+        new StackTraceDeobfuscator.BoundedSymbolCache(2);
+    cache.putAll("s1", Collections.singletonMap("a", "1"));
+    cache.putAll("s2", Collections.singletonMap("a", "2"));
+    assertEquals("1", cache.getAll("s1", Collections.singleton("a")).get("a"));
+    cache.putAll("s1", Collections.singletonMap("b", "3"));
+
+    assertEquals(2, cache.size());
+    Map<String, String> s1 = cache.getAll("s1", new HashSet<String>(Arrays.asList("a", "b")));
+    assertEquals("1", s1.get("a"));
+    assertEquals("3", s1.get("b"));
+    assertTrue(cache.getAll("s2", Collections.singleton("a")).isEmpty());
+  }
+
+  public void testResymbolizeWithIndex() {
+    MockDeobfuscator deobfuscator = new MockDeobfuscator();
+    deobfuscator.setSymbolCache(new StackTraceDeobfuscator.BoundedSymbolCache(1));
+    deobfuscator.setSymbolMapIndexDirectory(indexDirectory);
+
+    assertResymbolized(deobfuscator);
+    assertTrue(new File(indexDirectory, STRONG_NAME + ".symbolIndex").isFile());
+
+    // Symbols evicted from the cache are found in the index, without reading the symbol map
+    assertResymbolized(deobfuscator);
+    assertEquals(1, deobfuscator.symbolMapReads.get());
+
+    // Unknown permutations are left alone
+    StackTraceElement ste = new StackTraceElement("Unknown", "b", "x.js", 3);
+    assertSame(ste, deobfuscator.resymbolize(ste, "0000"));
+  }
+
+  public void testResymbolizeWithCorruptIndex() throws IOException {
+    File indexFile = new File(indexDirectory, STRONG_NAME + ".symbolIndex");
+    FileOutputStream out = new FileOutputStream(indexFile);
+    try {
+      out.write("not an index".getBytes("UTF-8"));
+    } finally {
+      out.close();
+    }
+    MockDeobfuscator deobfuscator = new MockDeobfuscator();
+    deobfuscator.setSymbolMapIndexDirectory(indexDirectory);
+
+    // The index is rebuilt from the symbol map
+    assertResymbolized(deobfuscator);
+    assertEquals(1, deobfuscator.symbolMapReads.get());
+    assertEquals(3, SymbolMapIndex.open(indexFile).size());
+  }
+
+  public void testResymbolizeWithUnreadableSymbolMap() {
+    MockDeobfuscator deobfuscator = new MockDeobfuscator() {
+      @Override
+      protected InputStream openInputStream(String fileName) throws IOException {
+        super.openInputStream(fileName);
+        return new InputStream() {
+          @Override
+          public int read() throws IOException {
+            throw new IOException("Unreadable");
+          }
+        };
+      }
+    };
+    deobfuscator.setLazyLoad(true);
+    deobfuscator.setSymbolMapIndexDirectory(indexDirectory);
+
+    deobfuscator.resymbolize(new StackTraceElement("Unknown", "b", "x.js", -1), STRONG_NAME);
+    assertEquals(2, deobfuscator.symbolMapReads.get());
+
+    // Building the index is not attempted again
+    deobfuscator.resymbolize(new StackTraceElement("Unknown", "aB", "x.js", -1), STRONG_NAME);
+    assertEquals(3, deobfuscator.symbolMapReads.get());
+  }
+
+  public void testResymbolizeWithoutIndex() {
+    MockDeobfuscator deobfuscator = new MockDeobfuscator();
+    deobfuscator.setLazyLoad(true);
+    assertResymbolized(deobfuscator);
+  }
+
+  public void testResymbolizeWithSourceMapConcurrently() throws Exception {
+    final MockDeobfuscator deobfuscator = new MockDeobfuscator();
+    final StackTraceElement expected = new StackTraceElement("com.example.Foo", "bar", "B.java", 3);
+    final AtomicInteger failures = new AtomicInteger();
+    Thread[] threads = new Thread[8];
+    for (int i = 0; i < threads.length; i++) {
+      threads[i] = new Thread() {
+        @Override
+        public void run() {
+          for (int j = 0; j < 100; j++) {
+            StackTraceElement ste = new StackTraceElement("Unknown", "b",
+                STRONG_NAME + ".cache.js@8", 2);
+            if (!expected.equals(deobfuscator.resymbolize(ste, STRONG_NAME))) {
+              failures.incrementAndGet();
+            }
+          }
+        }
+      };
+      threads[i].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertEquals(0, failures.get());
+    assertEquals(1, deobfuscator.sourceMapReads.get());
+
+    // Frames in fragments without a source map keep what the symbol map says
+    StackTraceElement ste = new StackTraceElement("Unknown", "a", STRONG_NAME + ".cache.js@8", 2);
+    assertEquals(new StackTraceElement("com.example.Bar", "run", null, 2),
+        deobfuscator.resymbolize(ste, STRONG_NAME));
+  }
+
+  public void testSourceMapFailuresNotRemembered() {
+    MockDeobfuscator deobfuscator = new MockDeobfuscator();
+    String sourceMap1 = STRONG_NAME + "_sourceMap1.json";
+    StackTraceElement ste = new StackTraceElement("Unknown", "a", STRONG_NAME + ".cache.js@8", 2);
+    deobfuscator.resymbolize(ste, STRONG_NAME);
+    deobfuscator.resymbolize(ste, STRONG_NAME);
+    assertEquals(2, Collections.frequency(deobfuscator.fileNames, sourceMap1));
+
+    // Source maps are not looked up for strong names that cannot be valid
+    deobfuscator.fileNames.clear();
+    ste = new StackTraceElement("Unknown", "a", "../" + STRONG_NAME + ".cache.js@8", 2);
+    deobfuscator.resymbolize(ste, "../" + STRONG_NAME);
+    assertFalse(deobfuscator.fileNames.isEmpty());
+    for (String fileName : deobfuscator.fileNames) {
+      assertFalse(fileName, fileName.contains("sourceMap"));
+    }
+  }
+
+  public void testSymbolMapIndex() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    SymbolMapIndex.write(new ByteArrayInputStream((SYMBOL_MAP
+        + "b,com.example.Foo::bar2()V,com.example.Foo,bar2,Unknown,1,0\n").getBytes("UTF-8")), out);
+    File indexFile = new File(indexDirectory, "test.symbolIndex");
+    FileOutputStream fileOut = new FileOutputStream(indexFile);
+    try {
+      fileOut.write(out.toByteArray());
+    } finally {
+      fileOut.close();
+    }
+
+    SymbolMapIndex index = SymbolMapIndex.open(indexFile);
+    assertEquals(3, index.size());
+    assertEquals("com.example.Bar::run()V,com.example.Bar,run,Unknown,12,1", index.get("a"));
+    assertEquals("com.example.Foo::baz(I)I,com.example.Foo,baz,file:/src/com/example/Foo.java,7,0",
+        index.get("aB"));
+    // The last entry for a symbol wins
+    assertEquals("com.example.Foo::bar2()V,com.example.Foo,bar2,Unknown,1,0", index.get("b"));
+    // Fields are not indexed
+    assertNull(index.get("f"));
+    assertNull(index.get("A"));
+    assertNull(index.get("aBc"));
+    assertNull(index.get(""));
+  }
+
+  private void assertResymbolized(StackTraceDeobfuscator deobfuscator) {
+    StackTraceElement[] resymbolized = deobfuscator.resymbolize(new StackTraceElement[] {
+        new StackTraceElement("Unknown", "b", "x.js", -1),
+        new StackTraceElement("Unknown", "a", "x.js", -1)}, STRONG_NAME);
+    assertEquals(new StackTraceElement("com.example.Foo", "bar", "Foo.java", 42), resymbolized[0]);
+    assertEquals(new StackTraceElement("com.example.Bar", "run", null, 12), resymbolized[1]);
+  }
+}
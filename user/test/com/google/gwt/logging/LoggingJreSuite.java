@@ -15,6 +15,9 @@
  */
 package com.google.gwt.logging;
 
+import com.google.gwt.logging.client.BatchingRemoteLogHandlerTest;
+import com.google.gwt.logging.server.RemoteLoggingServiceImplTest;
+
 import junit.framework.Test;
 import junit.framework.TestSuite;
 
@@ -25,7 +28,9 @@ public class LoggingJreSuite {
 
   public static Test suite() {
     TestSuite suite = new TestSuite("Non-browser tests for com.google.gwt.logging");
+    suite.addTestSuite(BatchingRemoteLogHandlerTest.class);
     suite.addTestSuite(LogConfigurationJreTest.class);
+    suite.addTestSuite(RemoteLoggingServiceImplTest.class);
     return suite;
   }
 }
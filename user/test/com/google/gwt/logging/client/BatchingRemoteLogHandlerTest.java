@@ -0,0 +1,173 @@
+/*
+ * Copyright 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.logging.client;
+
+import com.google.gwt.core.client.testing.StubScheduler;
+import com.google.gwt.logging.shared.BatchedRemoteLoggingServiceAsync;
+import com.google.gwt.user.client.rpc.AsyncCallback;
+import com.google.gwt.user.client.rpc.IncompatibleRemoteServiceException;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+/**
+ * Tests for {@link BatchingRemoteLogHandler}.
+ */
+public class BatchingRemoteLogHandlerTest extends TestCase {
+
+  /**
+   * Records what the handler sends, as batches and as single records.
+   */
+  private static class RecordingService implements BatchedRemoteLoggingServiceAsync {
+    final List<List<LogRecord>> batches = new ArrayList<List<LogRecord>>();
+    final List<AsyncCallback<String>> batchCallbacks = new ArrayList<AsyncCallback<String>>();
+    final List<LogRecord> records = new ArrayList<LogRecord>();
+
+    @Override
+    public void logOnServer(LogRecord record, AsyncCallback<String> callback) {
+      records.add(record);
+    }
+
+    @Override
+    public void logOnServerBatch(List<LogRecord> records, AsyncCallback<String> callback) {
+      batches.add(records);
+      batchCallbacks.add(callback);
+    }
+  }
+
+  private RecordingService service;
+  private StubScheduler scheduler;
+
+  /**
+   * Test that the records published during an event are sent together at the
+   * end of the event loop, and that a lone record is sent by itself.
+   */
+  public void testBatchesUntilEndOfEventLoop() {
+    BatchingRemoteLogHandler handler = createHandler(50, 0);
+    List<LogRecord> published = publish(handler, 3);
+    assertTrue(service.batches.isEmpty());
+    assertEquals(1, scheduler.getScheduledCommands().size());
+
+    scheduler.executeScheduledCommands();
+    assertEquals(Arrays.asList(published), service.batches);
+    assertTrue(service.records.isEmpty());
+
+    published = publish(handler, 1);
+    scheduler.executeScheduledCommands();
+    assertEquals(1, service.batches.size());
+    assertEquals(published, service.records);
+    assertTrue(scheduler.getScheduledCommands().isEmpty());
+  }
+
+  /**
+   * Test that a full batch is sent right away, without waiting for the
+   * scheduled flush, which then sends what is left.
+   */
+  public void testFlushesFullBatch() {
+    BatchingRemoteLogHandler handler = createHandler(2, 0);
+    List<LogRecord> published = publish(handler, 5);
+    assertEquals(Arrays.asList(published.subList(0, 2), published.subList(2, 4)),
+        service.batches);
+    assertTrue(service.records.isEmpty());
+    assertEquals(1, scheduler.getScheduledCommands().size());
+
+    scheduler.executeScheduledCommands();
+    assertEquals(2, service.batches.size());
+    assertEquals(published.subList(4, 5), service.records);
+  }
+
+  /**
+   * Test that with a delay, queued records are sent once by a timer.
+   */
+  public void testFlushesAfterDelay() {
+    BatchingRemoteLogHandler handler = createHandler(50, 1000);
+    List<LogRecord> published = publish(handler, 2);
+    assertTrue(scheduler.getScheduledCommands().isEmpty());
+    assertEquals(1, scheduler.getRepeatingCommands().size());
+    assertTrue(service.batches.isEmpty());
+
+    assertFalse(scheduler.executeRepeatingCommands());
+    assertEquals(Arrays.asList(published), service.batches);
+
+    published = publish(handler, 2);
+    assertEquals(1, scheduler.getRepeatingCommands().size());
+    scheduler.executeRepeatingCommands();
+    assertEquals(published, service.batches.get(1));
+  }
+
+  /**
+   * Test that closing the handler sends the queued records, and that no
+   * records are queued afterwards.
+   */
+  public void testCloseFlushes() {
+    BatchingRemoteLogHandler handler = createHandler(50, 0);
+    List<LogRecord> published = publish(handler, 2);
+    handler.close();
+    assertEquals(Arrays.asList(published), service.batches);
+
+    publish(handler, 1);
+    scheduler.executeScheduledCommands();
+    assertEquals(1, service.batches.size());
+    assertTrue(service.records.isEmpty());
+  }
+
+  /**
+   * Test that records are sent one at a time when the server does not accept
+   * batches, including those of the rejected batch.
+   */
+  public void testFallsBackToSingleRecords() {
+    BatchingRemoteLogHandler handler = createHandler(50, 0);
+    List<LogRecord> published = publish(handler, 2);
+    scheduler.executeScheduledCommands();
+    assertEquals(1, service.batchCallbacks.size());
+
+    service.batchCallbacks.get(0).onFailure(new IncompatibleRemoteServiceException());
+    assertEquals(published, service.records);
+
+    List<LogRecord> expected = new ArrayList<LogRecord>(published);
+    expected.addAll(publish(handler, 2));
+    scheduler.executeScheduledCommands();
+    assertEquals(1, service.batches.size());
+    assertEquals(expected, service.records);
+  }
+
+  @Override
+  protected void setUp() {
+    service = new RecordingService();
+    scheduler = new StubScheduler();
+  }
+
+  private BatchingRemoteLogHandler createHandler(int maxBatchSize, int batchDelayMillis) {
+    return new BatchingRemoteLogHandler(maxBatchSize, batchDelayMillis, service, service,
+        scheduler);
+  }
+
+  private List<LogRecord> publish(BatchingRemoteLogHandler handler, int count) {
+    List<LogRecord> published = new ArrayList<LogRecord>();
+    for (int i = 0; i < count; i++) {
+      LogRecord record = new LogRecord(Level.INFO, "message " + i);
+      record.setLoggerName(getName());
+      handler.publish(record);
+      published.add(record);
+    }
+    return published;
+  }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.logging.server;
+
+import com.google.gwt.user.server.rpc.MockHttpServletRequest;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Tests for {@link RemoteLoggingServiceImpl}.
+ */
+public class RemoteLoggingServiceImplTest extends TestCase {
+
+  private static final String LOGGER_NAME = RemoteLoggingServiceImplTest.class.getName();
+
+  private static class MockRemoteLoggingServiceImpl extends RemoteLoggingServiceImpl {
+    MockRemoteLoggingServiceImpl() {
+      perThreadRequest = new ThreadLocal<HttpServletRequest>();
+      perThreadRequest.set(new MockHttpServletRequest() {
+        @Override
+        public String getHeader(String name) {
+          return "STRONGNAME";
+        }
+      });
+    }
+  }
+
+  private final List<LogRecord> published = new ArrayList<LogRecord>();
+
+  private final Handler handler = new Handler() {
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void publish(LogRecord record) {
+      published.add(record);
+    }
+  };
+
+  private Logger logger;
+
+  @Override
+  protected void setUp() {
+    logger = Logger.getLogger(LOGGER_NAME);
+    logger.setUseParentHandlers(false);
+    logger.addHandler(handler);
+  }
+
+  @Override
+  protected void tearDown() {
+    logger.removeHandler(handler);
+    logger.setUseParentHandlers(true);
+  }
+
+  public void testBatchOnExecutor() {
+    final List<Runnable> tasks = new ArrayList<Runnable>();
+    RemoteLoggingServiceImpl service = new MockRemoteLoggingServiceImpl();
+    service.setLogExecutor(new Executor() {
+      @Override
+      public void execute(Runnable command) {
+        tasks.add(command);
+      }
+    });
+
+    LogRecord first = createRecord("first");
+    LogRecord second = createRecord("second");
+    assertNull(service.logOnServerBatch(Arrays.asList(first, second)));
+    assertTrue(published.isEmpty());
+    assertEquals(1, tasks.size());
+
+    tasks.get(0).run();
+    assertEquals(Arrays.asList(first, second), published);
+  }
+
+  public void testRejectedBatchIsLoggedInline() {
+    RemoteLoggingServiceImpl service = new MockRemoteLoggingServiceImpl();
+    service.setLogExecutor(new Executor() {
+      @Override
+      public void execute(Runnable command) {
+        throw new RejectedExecutionException();
+      }
+    });
+
+    LogRecord record = createRecord("record");
+    assertNull(service.logOnServerBatch(Arrays.asList(record)));
+    assertEquals(Arrays.asList(record), published);
+  }
+
+  public void testSynchronous() {
+    RemoteLoggingServiceImpl service = new MockRemoteLoggingServiceImpl();
+    LogRecord first = createRecord("first");
+    LogRecord second = createRecord("second");
+    assertNull(service.logOnServer(first));
+    assertNull(service.logOnServerBatch(Arrays.asList(second)));
+    assertEquals(Arrays.asList(first, second), published);
+  }
+
+  private LogRecord createRecord(String message) {
+    LogRecord record = new LogRecord(Level.INFO, message);
+    record.setLoggerName(LOGGER_NAME);
+    return record;
+  }
+}
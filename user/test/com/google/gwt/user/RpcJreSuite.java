@@ -16,7 +16,9 @@
 package com.google.gwt.user;
 
 import com.google.gwt.dev.BootStrapPlatform;
+import com.google.gwt.user.client.rpc.impl.BinarySerializationStreamReaderTest;
 import com.google.gwt.user.client.rpc.impl.ClientSerializationStreamReaderTest;
+import com.google.gwt.user.client.rpc.impl.RpcBatchTest;
 import com.google.gwt.user.rebind.rpc.BlacklistTypeFilterTest;
 import com.google.gwt.user.rebind.rpc.SerializableTypeOracleBuilderTest;
 import com.google.gwt.user.rebind.rpc.SerializationUtilsTest;
@@ -71,6 +73,8 @@ public class RpcJreSuite {
     suite.addTestSuite(UtilTest.class);
     suite.addTestSuite(AbstractXsrfProtectedServiceServletTest.class);
     suite.addTestSuite(ClientSerializationStreamReaderTest.class);
+    suite.addTestSuite(BinarySerializationStreamReaderTest.class);
+    suite.addTestSuite(RpcBatchTest.class);
     suite.addTestSuite(ServerSerializationStreamWriterTest.class);
     return suite;
   }
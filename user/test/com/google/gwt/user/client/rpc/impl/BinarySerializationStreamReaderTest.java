@@ -0,0 +1,233 @@
+/*
+ * Copyright 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.user.client.rpc.impl;
+
+import com.google.gwt.typedarrays.shared.ArrayBuffer;
+import com.google.gwt.typedarrays.shared.TypedArrays;
+import com.google.gwt.typedarrays.shared.Uint8Array;
+import com.google.gwt.user.client.rpc.SerializationException;
+import com.google.gwt.user.client.rpc.SerializationStreamReader;
+import com.google.gwt.user.client.rpc.SerializationStreamWriter;
+import com.google.gwt.user.client.rpc.core.java.lang.Integer_CustomFieldSerializer;
+import com.google.gwt.user.client.rpc.core.java.lang.String_CustomFieldSerializer;
+import com.google.gwt.user.client.rpc.core.java.util.ArrayList_CustomFieldSerializer;
+import com.google.gwt.user.server.rpc.RPC;
+import com.google.gwt.user.server.rpc.impl.ServerSerializationStreamWriter;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests {@link BinarySerializationStreamReader} against the binary format of
+ * {@link ServerSerializationStreamWriter}.
+ */
+public class BinarySerializationStreamReaderTest extends TestCase {
+
+  /**
+   * Reads the only types these tests write, as generated serializers would.
+   */
+  private static class TestSerializer implements Serializer {
+    @Override
+    @SuppressWarnings("unchecked")
+    public void deserialize(SerializationStreamReader stream, Object instance,
+        String typeSignature) throws SerializationException {
+      if (instance instanceof ArrayList) {
+        ArrayList_CustomFieldSerializer.deserialize(stream, (ArrayList<Object>) instance);
+      }
+    }
+
+    @Override
+    public String getSerializationSignature(Class<?> clazz) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Object instantiate(SerializationStreamReader stream, String typeSignature)
+        throws SerializationException {
+      if (typeSignature.startsWith("java.util.ArrayList/")) {
+        return new ArrayList<Object>();
+      } else if (typeSignature.startsWith("java.lang.Integer/")) {
+        return Integer_CustomFieldSerializer.instantiate(stream);
+      } else if (typeSignature.startsWith("java.lang.String/")) {
+        return String_CustomFieldSerializer.instantiate(stream);
+      }
+      throw new SerializationException(typeSignature);
+    }
+
+    @Override
+    public void serialize(SerializationStreamWriter stream, Object instance,
+        String typeSignature) {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  public void testObjects() throws SerializationException {
+    List<Object> inner = new ArrayList<Object>(Arrays.<Object> asList(-1, "inner"));
+    List<Object> list = new ArrayList<Object>(Arrays.<Object> asList(7, "seven", null, inner,
+        inner, "seven"));
+
+    ServerSerializationStreamWriter writer = createWriter();
+    writer.writeObject(list);
+
+    BinarySerializationStreamReader reader = createReader(writer.toByteArray());
+    List<?> read = (List<?>) reader.readObject();
+    assertEquals(list, read);
+    // Back references are kept
+    assertSame(read.get(3), read.get(4));
+  }
+
+  public void testPrimitives() throws SerializationException {
+    ServerSerializationStreamWriter writer = createWriter();
+    writer.writeBoolean(true);
+    writer.writeBoolean(false);
+    writer.writeByte(Byte.MIN_VALUE);
+    writer.writeChar('\uffff');
+    writer.writeShort(Short.MIN_VALUE);
+    for (int value : new int[] {0, 1, -1, 63, -64, 64, Integer.MAX_VALUE, Integer.MIN_VALUE}) {
+      writer.writeInt(value);
+    }
+    for (long value : new long[] {0, -1, Long.MAX_VALUE, Long.MIN_VALUE, 1L << 40}) {
+      writer.writeLong(value);
+    }
+    writer.writeFloat(-1.5f);
+    writer.writeDouble(Double.NaN);
+    writer.writeDouble(-0.0);
+    writer.writeDouble(Math.PI);
+    writer.writeString("caf\u00e9 \u4e2d \ud83d\ude00");
+    writer.writeString(null);
+    writer.writeString("");
+
+    BinarySerializationStreamReader reader = createReader(writer.toByteArray());
+    assertEquals(AbstractSerializationStream.SERIALIZATION_STREAM_VERSION, reader.getVersion());
+    assertTrue(reader.readBoolean());
+    assertFalse(reader.readBoolean());
+    assertEquals(Byte.MIN_VALUE, reader.readByte());
+    assertEquals('\uffff', reader.readChar());
+    assertEquals(Short.MIN_VALUE, reader.readShort());
+    for (int value : new int[] {0, 1, -1, 63, -64, 64, Integer.MAX_VALUE, Integer.MIN_VALUE}) {
+      assertEquals(value, reader.readInt());
+    }
+    for (long value : new long[] {0, -1, Long.MAX_VALUE, Long.MIN_VALUE, 1L << 40}) {
+      assertEquals(value, reader.readLong());
+    }
+    assertEquals(-1.5f, reader.readFloat());
+    assertTrue(Double.isNaN(reader.readDouble()));
+    assertEquals(Double.doubleToLongBits(-0.0), Double.doubleToLongBits(reader.readDouble()));
+    assertEquals(Math.PI, reader.readDouble());
+    assertEquals("caf\u00e9 \u4e2d \ud83d\ude00", reader.readString());
+    assertNull(reader.readString());
+    assertEquals("", reader.readString());
+  }
+
+  public void testSmallerThanDefaultFormat() throws SerializationException {
+    ServerSerializationStreamWriter binary = createWriter();
+    ServerSerializationStreamWriter text = new ServerSerializationStreamWriter(
+        RPC.getDefaultSerializationPolicy(),
+        AbstractSerializationStream.SERIALIZATION_STREAM_VERSION);
+    text.prepareToWrite();
+    for (ServerSerializationStreamWriter writer : Arrays.asList(binary, text)) {
+      for (int i = 0; i < 1000; i++) {
+        writer.writeInt(i * 37);
+        writer.writeLong(i * 1234567L);
+        writer.writeBoolean(i % 2 == 0);
+      }
+    }
+
+    int binarySize = binary.toByteArray().length;
+    int textSize = text.toString().getBytes().length;
+    assertTrue(binarySize + " should be well under " + textSize, binarySize * 3 < textSize * 2);
+  }
+
+  public void testTextOnlyMethods() {
+    ServerSerializationStreamWriter writer = createWriter();
+    try {
+      writer.toString();
+      fail("Expected IllegalStateException");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+  }
+
+  /**
+   * Test that a stream can be read from a string of its bytes, whether the
+   * bytes above 0x7F were mapped as in ISO-8859-1 or as in
+   * <code>x-user-defined</code>.
+   */
+  public void testReadFromString() throws SerializationException {
+    ServerSerializationStreamWriter writer = createWriter();
+    writer.writeInt(-300);
+    writer.writeDouble(-0.5);
+    writer.writeString("caf\u00e9 \u4e2d");
+    byte[] bytes = writer.toByteArray();
+
+    StringBuilder latin1 = new StringBuilder();
+    StringBuilder userDefined = new StringBuilder();
+    for (byte b : bytes) {
+      latin1.append((char) (b & 0xFF));
+      userDefined.append((char) (b >= 0 ? b : 0xF700 + (b & 0xFF)));
+    }
+    for (String encoded : new String[] {latin1.toString(), userDefined.toString()}) {
+      BinarySerializationStreamReader reader =
+          new BinarySerializationStreamReader(new TestSerializer());
+      reader.prepareToRead(encoded);
+      assertEquals(-300, reader.readInt());
+      assertEquals(-0.5, reader.readDouble());
+      assertEquals("caf\u00e9 \u4e2d", reader.readString());
+    }
+  }
+
+  public void testTruncated() {
+    ServerSerializationStreamWriter writer = createWriter();
+    writer.writeString("a string that will be cut short");
+    byte[] bytes = writer.toByteArray();
+
+    try {
+      createReader(Arrays.copyOf(bytes, bytes.length - 5));
+      fail("Expected SerializationException");
+    } catch (SerializationException e) {
+      // expected
+    }
+  }
+
+  private BinarySerializationStreamReader createReader(byte[] payload)
+      throws SerializationException {
+    // Prefixed like a response
+    Uint8Array array = TypedArrays.createUint8Array(payload.length + 4);
+    for (int i = 0; i < 4; i++) {
+      array.set(i, "//OK".charAt(i));
+    }
+    for (int i = 0; i < payload.length; i++) {
+      array.set(i + 4, payload[i]);
+    }
+    ArrayBuffer buffer = array.buffer();
+
+    BinarySerializationStreamReader reader =
+        new BinarySerializationStreamReader(new TestSerializer());
+    reader.prepareToRead(buffer, 4);
+    return reader;
+  }
+
+  private ServerSerializationStreamWriter createWriter() {
+    ServerSerializationStreamWriter writer = new ServerSerializationStreamWriter(
+        RPC.getDefaultSerializationPolicy(),
+        AbstractSerializationStream.SERIALIZATION_STREAM_VERSION, true);
+    writer.prepareToWrite();
+    return writer;
+  }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.user.client.rpc.impl;
+
+import com.google.gwt.user.client.rpc.SerializationException;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tests for {@link RpcBatch}.
+ */
+public class RpcBatchTest extends TestCase {
+
+  public void testMalformed() {
+    for (String batch : Arrays.asList("5:abc", "x:abc", ":abc", "3abc", "-1:", "1234567890:")) {
+      try {
+        RpcBatch.decodeRequests(batch, 10);
+        fail("Expected SerializationException for " + batch);
+      } catch (SerializationException e) {
+        // expected
+      }
+    }
+    try {
+      RpcBatch.decodeResponses("200:3:ab");
+      fail("Expected SerializationException");
+    } catch (SerializationException e) {
+      // expected
+    }
+  }
+
+  public void testRequests() throws SerializationException {
+    List<String> payloads = Arrays.asList("7|3|4|a\uffffb|", "", "12:34", "\u4e2d");
+    StringBuilder batch = new StringBuilder();
+    for (String payload : payloads) {
+      RpcBatch.appendRequest(batch, payload);
+    }
+    assertEquals(payloads, RpcBatch.decodeRequests(batch.toString(), payloads.size()));
+    assertEquals(Collections.emptyList(), RpcBatch.decodeRequests("", 0));
+
+    try {
+      RpcBatch.decodeRequests(batch.toString(), payloads.size() - 1);
+      fail("Expected SerializationException");
+    } catch (SerializationException e) {
+      // expected
+    }
+  }
+
+  public void testResponses() throws SerializationException {
+    StringBuilder batch = new StringBuilder();
+    RpcBatch.appendResponse(batch, 200, "//OK[1,[],0,7]");
+    RpcBatch.appendResponse(batch, 500, "failed");
+    List<RpcBatch.Entry> entries = RpcBatch.decodeResponses(batch.toString());
+    assertEquals(2, entries.size());
+    assertEquals(200, entries.get(0).getStatusCode());
+    assertEquals("//OK[1,[],0,7]", entries.get(0).getPayload());
+    assertEquals(500, entries.get(1).getStatusCode());
+    assertEquals("failed", entries.get(1).getPayload());
+  }
+}
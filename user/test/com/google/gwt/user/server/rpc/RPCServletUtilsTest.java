@@ -260,6 +260,16 @@ public class RPCServletUtilsTest extends TestCase {
     }
   }
 
+  /**
+   * Content spanning several read buffers should be read in full.
+   */
+  public void testReadContentAsGwtRpcSeveralBuffers() throws IOException, ServletException {
+    int contentLength = RPCServletUtils.BUFFER_SIZE * 3 + 17;
+    String content = UnicodeEscapingTest.getStringContainingCharacterRange(0, contentLength);
+    HttpServletRequest m = new MockReqContentType("text/x-gwt-rpc", content);
+    assertEquals(content, RPCServletUtils.readContentAsGwtRpc(m));
+  }
+
   /**
    * Implement a test that returns content-type text/x-gwt-rpc.
    */
@@ -17,6 +17,8 @@ package com.google.gwt.user.server.rpc;
 
 import static com.google.gwt.user.client.rpc.impl.AbstractSerializationStream.RPC_SEPARATOR_CHAR;
 
+import com.google.gwt.typedarrays.shared.TypedArrays;
+import com.google.gwt.typedarrays.shared.Uint8Array;
 import com.google.gwt.user.client.rpc.IncompatibleRemoteServiceException;
 import com.google.gwt.user.client.rpc.IsSerializable;
 import com.google.gwt.user.client.rpc.RemoteService;
@@ -24,13 +26,17 @@ import com.google.gwt.user.client.rpc.RpcToken;
 import com.google.gwt.user.client.rpc.SerializableException;
 import com.google.gwt.user.client.rpc.SerializationException;
 import com.google.gwt.user.client.rpc.impl.AbstractSerializationStream;
+import com.google.gwt.user.client.rpc.impl.BinarySerializationStreamReader;
 import com.google.gwt.user.server.rpc.impl.ServerSerializationStreamReader;
 import com.google.gwt.user.server.rpc.impl.TypeNameObfuscator;
 
 import junit.framework.TestCase;
 
+import java.io.IOException;
 import java.io.Serializable;
+import java.io.StringWriter;
 import java.lang.reflect.Method;
+import java.nio.CharBuffer;
 import java.util.Set;
 
 /**
@@ -405,6 +411,30 @@ public class RPCTest extends TestCase {
     RPC.decodeRequest(VALID_ENCODED_REQUEST);
   }
 
+  /**
+   * Tests that decoding a request held in a {@link CharBuffer} or another
+   * non-String {@link CharSequence} gives the same result as decoding the
+   * equivalent String.
+   */
+  public void testDecodeRequestCharSequence() throws SecurityException, NoSuchMethodException {
+    RPCRequest expected = RPC.decodeRequest(VALID_ENCODED_REQUEST, A.class, null);
+    for (CharSequence encoded : new CharSequence[] {
+        CharBuffer.wrap(VALID_ENCODED_REQUEST),
+        new StringBuilder(VALID_ENCODED_REQUEST)}) {
+      RPCRequest request = RPC.decodeRequest(encoded, A.class, null);
+      assertEquals(expected.getMethod(), request.getMethod());
+      assertEquals(0, request.getParameters().length);
+      assertEquals(expected.getFlags(), request.getFlags());
+    }
+
+    try {
+      RPC.decodeRequest(CharBuffer.wrap(""), A.class, null);
+      fail("Expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      // expected to get here
+    }
+  }
+
   /**
    * Tests for method {@link RPC#decodeRequest(String, Class)}.
    * 
@@ -849,6 +879,140 @@ public class RPCTest extends TestCase {
     }, A_method1, null);
   }
 
+  /**
+   * Tests that the streaming overload of
+   * {@link RPC#invokeAndEncodeResponse(Object, Method, Object[], SerializationPolicy, int, java.io.Writer)}
+   * writes exactly what the string-returning overload returns.
+   */
+  public void testInvokeAndEncodeResponseToWriter() throws SecurityException,
+      NoSuchMethodException, SerializationException, IOException {
+    A service = new A() {
+      @Override
+      public void method1() throws SerializableException {
+        throw new SerializableException("streamed");
+      }
+
+      @Override
+      public int method2() {
+        return 42;
+      }
+
+      @Override
+      public int method3(int val) {
+        return val;
+      }
+    };
+    SerializationPolicy policy = RPC.getDefaultSerializationPolicy();
+    int flags = AbstractSerializationStream.DEFAULT_FLAGS;
+
+    for (Method method : new Method[] {
+        A.class.getMethod("method1"), A.class.getMethod("method2")}) {
+      StringWriter out = new StringWriter();
+      RPC.invokeAndEncodeResponse(service, method, null, policy, flags, out);
+      assertEquals(RPC.invokeAndEncodeResponse(service, method, null, policy, flags),
+          out.toString());
+    }
+
+    // Nothing is written if the response cannot be encoded
+    StringWriter out = new StringWriter();
+    try {
+      RPC.encodeResponseForFailure(A.class.getMethod("method2"),
+          new SerializableException(), policy, flags, out);
+      fail("Expected an UnexpectedException");
+    } catch (UnexpectedException e) {
+      // expected to get here
+    }
+    assertEquals("", out.toString());
+  }
+
+  public void testInvokeAndEncodeBinaryResponse() throws SecurityException,
+      NoSuchMethodException, SerializationException {
+    A service = new A() {
+      @Override
+      public void method1() throws SerializableException {
+        throw new SerializableException("binary");
+      }
+
+      @Override
+      public int method2() {
+        return 42;
+      }
+
+      @Override
+      public int method3(int val) {
+        return val;
+      }
+    };
+    SerializationPolicy policy = RPC.getDefaultSerializationPolicy();
+    int flags = AbstractSerializationStream.DEFAULT_FLAGS;
+
+    byte[] success = RPC.invokeAndEncodeBinaryResponse(service, A.class.getMethod("method2"),
+        null, policy, flags);
+    assertEquals("//OK", new String(success, 0, 4, RPCServletUtils.CHARSET_UTF8));
+    Uint8Array array = TypedArrays.createUint8Array(success.length);
+    for (int i = 0; i < success.length; i++) {
+      array.set(i, success[i]);
+    }
+    BinarySerializationStreamReader reader = new BinarySerializationStreamReader(null);
+    reader.prepareToRead(array.buffer(), 4);
+    assertEquals(42, reader.readInt());
+
+    byte[] failure = RPC.invokeAndEncodeBinaryResponse(service, A.class.getMethod("method1"),
+        null, policy, flags);
+    assertEquals("//EX", new String(failure, 0, 4, RPCServletUtils.CHARSET_UTF8));
+
+    byte[] failedRequest = RPC.encodeBinaryResponseForFailedRequest(null,
+        new IncompatibleRemoteServiceException());
+    assertEquals("//EX", new String(failedRequest, 0, 4, RPCServletUtils.CHARSET_UTF8));
+  }
+
+  /**
+   * Tests that numeric tokens are read correctly, both when they are parsed
+   * in place and when they fall back to the JDK parsers.
+   */
+  public void testSerializationStreamNumbers() throws SerializationException {
+    String request = ""
+        + AbstractSerializationStream.SERIALIZATION_STREAM_VERSION
+        + RPC_SEPARATOR_CHAR + // version
+        "0" + RPC_SEPARATOR_CHAR + // flags
+        "2" + RPC_SEPARATOR_CHAR + // string table entry count
+        "moduleBaseURL" + RPC_SEPARATOR_CHAR + // string table entry #1
+        "whitelistHashcode" + RPC_SEPARATOR_CHAR + // string table entry #2
+        "1" + RPC_SEPARATOR_CHAR + // module base URL
+        "2" + RPC_SEPARATOR_CHAR + // whitelist hashcode
+        "0" + RPC_SEPARATOR_CHAR + "00" + RPC_SEPARATOR_CHAR + // booleans
+        "-128" + RPC_SEPARATOR_CHAR + "+127" + RPC_SEPARATOR_CHAR + // bytes
+        "-32768" + RPC_SEPARATOR_CHAR + // short
+        "999999999" + RPC_SEPARATOR_CHAR + "-2147483648" + RPC_SEPARATOR_CHAR + // ints
+        "2147483647" + RPC_SEPARATOR_CHAR + "0012" + RPC_SEPARATOR_CHAR + // ints
+        "-0" + RPC_SEPARATOR_CHAR + "42" + RPC_SEPARATOR_CHAR + // doubles
+        "1.5E300" + RPC_SEPARATOR_CHAR + "3" + RPC_SEPARATOR_CHAR; // doubles
+
+    for (CharSequence encoded : new CharSequence[] {request, CharBuffer.wrap(request)}) {
+      ServerSerializationStreamReader reader = new ServerSerializationStreamReader(null, null);
+      reader.prepareToRead(encoded);
+      assertFalse(reader.readBoolean());
+      assertTrue(reader.readBoolean());
+      assertEquals(Byte.MIN_VALUE, reader.readByte());
+      assertEquals(Byte.MAX_VALUE, reader.readByte());
+      assertEquals(Short.MIN_VALUE, reader.readShort());
+      assertEquals(999999999, reader.readInt());
+      assertEquals(Integer.MIN_VALUE, reader.readInt());
+      assertEquals(Integer.MAX_VALUE, reader.readInt());
+      assertEquals(12, reader.readInt());
+      assertEquals(Double.doubleToLongBits(-0.0), Double.doubleToLongBits(reader.readDouble()));
+      assertEquals(42.0, reader.readDouble());
+      assertEquals(1.5E300, reader.readDouble());
+      assertEquals(3.0f, reader.readFloat());
+      try {
+        reader.readInt();
+        fail("Expected SerializationException");
+      } catch (SerializationException e) {
+        // expected to get here
+      }
+    }
+  }
+
   public void testSerializationStreamDequote() throws SerializationException {
     ServerSerializationStreamReader reader = new ServerSerializationStreamReader(
         null, null);
@@ -16,21 +16,38 @@
 package com.google.gwt.user.server.rpc;
 
 import com.google.gwt.user.client.rpc.IsSerializable;
+import com.google.gwt.user.client.rpc.RpcRequestBuilder;
 import com.google.gwt.user.client.rpc.SerializationException;
+import com.google.gwt.user.client.rpc.impl.RpcBatch;
 
 import junit.framework.TestCase;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.Serializable;
 import java.io.UnsupportedEncodingException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.EventListener;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncListener;
 import javax.servlet.Filter;
 import javax.servlet.FilterRegistration;
 import javax.servlet.FilterRegistration.Dynamic;
@@ -39,16 +56,23 @@ import javax.servlet.Servlet;
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
 import javax.servlet.ServletRegistration;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
 import javax.servlet.SessionCookieConfig;
 import javax.servlet.SessionTrackingMode;
 import javax.servlet.descriptor.JspConfigDescriptor;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
 
 /**
  * Test some of the failure modes associated with
  * {@link RemoteServiceServlet#doGetSerializationPolicy(HttpServletRequest, String, String)}.
  * 
- * TODO: test caching of policies?
+ * Also tests caching of policies.
  */
 public class RemoteServiceServletTest extends TestCase {
 
@@ -73,13 +97,14 @@ public class RemoteServiceServletTest extends TestCase {
 
   private static class MockServletConfig implements ServletConfig {
     private ServletContext context;
+    private final Map<String, String> initParameters = new HashMap<String, String>();
 
     public MockServletConfig(ServletContext context) {
       this.context = context;
     }
 
     public String getInitParameter(String arg0) {
-      throw new UnsupportedOperationException();
+      return initParameters.get(arg0);
     }
 
     public Enumeration<String> getInitParameterNames() {
@@ -118,7 +143,7 @@ public class RemoteServiceServletTest extends TestCase {
     }
 
     public String getInitParameter(String arg0) {
-      throw new UnsupportedOperationException();
+      return null;
     }
 
     public Enumeration<String> getInitParameterNames() {
@@ -403,6 +428,431 @@ public class RemoteServiceServletTest extends TestCase {
     assertNotValidDeserialize(serializationPolicy, Baz.class);
   }
 
+  /**
+   * Test that when {@link RemoteServiceServlet#getAsyncExecutor} returns an
+   * executor, the call is handed to it without producing a response on the
+   * container thread, and that the executor thread reports the outcome and
+   * completes the asynchronous request.
+   */
+  public void testProcessPostAsync() throws ServletException {
+    final List<Runnable> calls = new ArrayList<Runnable>();
+    RemoteServiceServlet rss = new RemoteServiceServlet() {
+      @Override
+      protected Executor getAsyncExecutor(HttpServletRequest request) {
+        return new Executor() {
+          @Override
+          public void execute(Runnable command) {
+            calls.add(command);
+          }
+        };
+      }
+    };
+    MockServletContext mockContext = new MockServletContext();
+    rss.init(new MockServletConfig(mockContext));
+
+    List<String> asyncEvents = new ArrayList<String>();
+    AsyncContext asyncContext = mock(AsyncContext.class, asyncEvents);
+    HttpServletRequest mockRequest = createAsyncRequest(asyncContext, asyncEvents);
+    List<String> responseEvents = new ArrayList<String>();
+    HttpServletResponse mockResponse = mock(HttpServletResponse.class,
+        responseEvents);
+
+    rss.doPost(mockRequest, mockResponse);
+    assertEquals(1, calls.size());
+    assertEquals(Arrays.asList("startAsync", "setTimeout", "addListener"), asyncEvents);
+    assertTrue(responseEvents.isEmpty());
+
+    // The request has no strong name, so the call fails on the executor thread
+    calls.get(0).run();
+    assertEquals("complete", asyncEvents.get(asyncEvents.size() - 1));
+    assertTrue(responseEvents.contains("reset"));
+    assertTrue(responseEvents.contains("setStatus"));
+    assertNotNull(mockContext.messageLogged);
+  }
+
+  /**
+   * Test that an asynchronous call that outlives the configured timeout is
+   * answered with a generic failure, and that the call's own failure is then
+   * neither written nor completes the request a second time.
+   */
+  public void testProcessPostAsyncTimeout() throws IOException, ServletException {
+    final List<Runnable> calls = new ArrayList<Runnable>();
+    RemoteServiceServlet rss = new RemoteServiceServlet() {
+      @Override
+      protected Executor getAsyncExecutor(HttpServletRequest request) {
+        return new Executor() {
+          @Override
+          public void execute(Runnable command) {
+            calls.add(command);
+          }
+        };
+      }
+    };
+    MockServletContext mockContext = new MockServletContext();
+    MockServletConfig mockConfig = new MockServletConfig(mockContext);
+    mockConfig.initParameters.put(RemoteServiceServlet.ASYNC_TIMEOUT_SECONDS_PARAM, "30");
+    rss.init(mockConfig);
+
+    List<String> asyncEvents = new ArrayList<String>();
+    List<Object> asyncArguments = new ArrayList<Object>();
+    AsyncContext asyncContext = mock(AsyncContext.class, asyncEvents, asyncArguments);
+    HttpServletRequest mockRequest = createAsyncRequest(asyncContext, asyncEvents);
+    List<String> responseEvents = new ArrayList<String>();
+    HttpServletResponse mockResponse = mock(HttpServletResponse.class,
+        responseEvents);
+
+    rss.doPost(mockRequest, mockResponse);
+    assertEquals(Arrays.asList("startAsync", "setTimeout", "addListener"), asyncEvents);
+    assertEquals(Arrays.<Object> asList(30000L), asyncArguments.subList(0, 1));
+    AsyncListener listener = (AsyncListener) asyncArguments.get(1);
+
+    listener.onTimeout(null);
+    assertEquals("complete", asyncEvents.get(asyncEvents.size() - 1));
+    assertTrue(responseEvents.contains("setStatus"));
+    assertTrue(responseEvents.contains("getOutputStream"));
+
+    asyncEvents.clear();
+    responseEvents.clear();
+    calls.get(0).run();
+    assertTrue(asyncEvents.isEmpty());
+    assertTrue(responseEvents.isEmpty());
+  }
+
+  /**
+   * Test that a timed out call still writing its response is waited for only
+   * for a bounded time, after which the response is abandoned.
+   */
+  public void testAsyncTimeoutAbandonsStalledWrite() throws IOException,
+      InterruptedException {
+    List<String> responseEvents = new ArrayList<String>();
+    AsyncCallResponse callResponse = new AsyncCallResponse(mock(HttpServletResponse.class,
+        responseEvents));
+    callResponse.getOutputStream();
+
+    long start = System.nanoTime();
+    assertEquals(AsyncCallResponse.TimeoutOutcome.ABANDONED, callResponse.timeOut(50));
+    assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(40));
+    assertTrue(callResponse.isTimedOut());
+    assertFalse(callResponse.finish());
+    try {
+      callResponse.setStatus(HttpServletResponse.SC_OK);
+      fail("Expected IllegalStateException");
+    } catch (IllegalStateException expected) {
+    }
+
+    callResponse = new AsyncCallResponse(mock(HttpServletResponse.class, responseEvents));
+    assertEquals(AsyncCallResponse.TimeoutOutcome.TIMED_OUT, callResponse.timeOut(50));
+    callResponse = new AsyncCallResponse(mock(HttpServletResponse.class, responseEvents));
+    callResponse.getOutputStream();
+    assertTrue(callResponse.finish());
+    assertEquals(AsyncCallResponse.TimeoutOutcome.FINISHED, callResponse.timeOut(50));
+  }
+
+  /**
+   * Test that a call rejected by a saturated executor is answered with 503
+   * without being run on the container thread.
+   */
+  public void testProcessPostAsyncRejected() throws ServletException {
+    RemoteServiceServlet rss = new RemoteServiceServlet() {
+      @Override
+      protected Executor getAsyncExecutor(HttpServletRequest request) {
+        return new Executor() {
+          @Override
+          public void execute(Runnable command) {
+            throw new RejectedExecutionException();
+          }
+        };
+      }
+    };
+    MockServletContext mockContext = new MockServletContext();
+    rss.init(new MockServletConfig(mockContext));
+
+    List<String> asyncEvents = new ArrayList<String>();
+    AsyncContext asyncContext = mock(AsyncContext.class, asyncEvents);
+    HttpServletRequest mockRequest = createAsyncRequest(asyncContext, asyncEvents);
+    List<String> responseEvents = new ArrayList<String>();
+    List<Object> responseArguments = new ArrayList<Object>();
+    HttpServletResponse mockResponse = mock(HttpServletResponse.class,
+        responseEvents, responseArguments);
+
+    rss.doPost(mockRequest, mockResponse);
+    assertEquals("complete", asyncEvents.get(asyncEvents.size() - 1));
+    assertEquals(Arrays.asList("setStatus"), responseEvents);
+    assertEquals(Arrays.<Object> asList(HttpServletResponse.SC_SERVICE_UNAVAILABLE),
+        responseArguments);
+    assertNotNull(mockContext.messageLogged);
+  }
+
+  /**
+   * Test that the asynchronous call timeout cannot be disabled.
+   */
+  public void testAsyncTimeoutMustBePositive() {
+    MockServletConfig mockConfig = new MockServletConfig(new MockServletContext());
+    mockConfig.initParameters.put(RemoteServiceServlet.ASYNC_TIMEOUT_SECONDS_PARAM, "0");
+    try {
+      new RemoteServiceServlet().init(mockConfig);
+      fail("Expected ServletException");
+    } catch (ServletException e) {
+      // Expected
+    }
+  }
+
+  /**
+   * Test that each call of a batch is dispatched and answered separately, and
+   * that batches above the configured size are rejected.
+   */
+  public void testProcessBatchCall() throws ServletException, SerializationException {
+    final List<String> serializedResponses = new ArrayList<String>();
+    RemoteServiceServlet rss = new RemoteServiceServlet() {
+      @Override
+      public String processCall(String payload) {
+        if (payload.equals("fail")) {
+          throw new IllegalStateException();
+        }
+        return "//OK" + payload;
+      }
+
+      @Override
+      protected void checkPermutationStrongName() {
+      }
+
+      @Override
+      protected void onAfterResponseSerialized(String serializedResponse) {
+        serializedResponses.add(serializedResponse);
+      }
+    };
+    MockServletContext mockContext = new MockServletContext();
+    MockServletConfig mockConfig = new MockServletConfig(mockContext);
+    mockConfig.initParameters.put(RemoteServiceServlet.MAX_BATCH_SIZE_PARAM, "3");
+    rss.init(mockConfig);
+
+    StringBuilder batch = new StringBuilder();
+    for (String payload : Arrays.asList("a", "fail", "b:c")) {
+      RpcBatch.appendRequest(batch, payload);
+    }
+    List<RpcBatch.Entry> responses = RpcBatch.decodeResponses(
+        rss.processBatchCall(batch.toString()));
+    assertEquals(3, responses.size());
+    assertEquals(200, responses.get(0).getStatusCode());
+    assertEquals("//OKa", responses.get(0).getPayload());
+    assertEquals(500, responses.get(1).getStatusCode());
+    assertEquals(RPCServletUtils.GENERIC_FAILURE_MSG, responses.get(1).getPayload());
+    assertEquals(200, responses.get(2).getStatusCode());
+    assertEquals("//OKb:c", responses.get(2).getPayload());
+    assertEquals(Arrays.asList("//OKa", "//OKb:c"), serializedResponses);
+    assertNotNull(mockContext.messageLogged);
+
+    RpcBatch.appendRequest(batch, "d");
+    try {
+      rss.processBatchCall(batch.toString());
+      fail("Expected SerializationException");
+    } catch (SerializationException e) {
+      // expected
+    }
+  }
+
+  /**
+   * Test that a call of a batch that fails unexpectedly is passed to
+   * {@link RemoteServiceServlet#doUnexpectedFailure(Throwable)}, and that what
+   * it writes becomes the call's response rather than the batch's.
+   */
+  public void testProcessBatchCallUnexpectedFailure() throws IOException, ServletException,
+      SerializationException {
+    final IllegalStateException failure = new IllegalStateException();
+    final List<Throwable> failures = new ArrayList<Throwable>();
+    RemoteServiceServlet rss = new RemoteServiceServlet() {
+      @Override
+      public String processCall(String payload) {
+        if (payload.equals("fail")) {
+          throw failure;
+        }
+        return "//OK" + payload;
+      }
+
+      @Override
+      protected void checkPermutationStrongName() {
+      }
+
+      @Override
+      protected void doUnexpectedFailure(Throwable e) {
+        failures.add(e);
+        super.doUnexpectedFailure(e);
+        getThreadLocalResponse().setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+      }
+    };
+    MockServletContext mockContext = new MockServletContext();
+    rss.init(new MockServletConfig(mockContext));
+
+    StringBuilder batch = new StringBuilder();
+    for (String payload : Arrays.asList("a", "fail", "b")) {
+      RpcBatch.appendRequest(batch, payload);
+    }
+    List<String> responseEvents = new ArrayList<String>();
+    List<Object> responseArguments = new ArrayList<Object>();
+    final ByteArrayOutputStream body = new ByteArrayOutputStream();
+    HttpServletResponse mockResponse = new HttpServletResponseWrapper(
+        mock(HttpServletResponse.class, responseEvents, responseArguments)) {
+      @Override
+      public ServletOutputStream getOutputStream() {
+        return new ServletOutputStream() {
+          @Override
+          public void write(int b) {
+            body.write(b);
+          }
+        };
+      }
+    };
+
+    rss.doPost(createBatchRequest(batch.toString()), mockResponse);
+    assertEquals(Arrays.<Throwable> asList(failure), failures);
+    assertFalse(responseEvents.contains("reset"));
+    assertFalse(responseArguments.contains(HttpServletResponse.SC_SERVICE_UNAVAILABLE));
+    assertNotNull(mockContext.messageLogged);
+
+    List<RpcBatch.Entry> responses = RpcBatch.decodeResponses(body.toString("UTF-8"));
+    assertEquals(3, responses.size());
+    assertEquals("//OKa", responses.get(0).getPayload());
+    assertEquals(HttpServletResponse.SC_SERVICE_UNAVAILABLE, responses.get(1).getStatusCode());
+    assertEquals(RPCServletUtils.GENERIC_FAILURE_MSG, responses.get(1).getPayload());
+    assertEquals("//OKb", responses.get(2).getPayload());
+  }
+
+  /**
+   * Test that policies are cached by module base URL and strong name, and that
+   * the cache honors its configured size limit.
+   */
+  public void testSerializationPolicyCache() throws ServletException {
+    final String[] strongNames = {"11111", "22222"};
+    final int[] loads = new int[1];
+    MockServletContext mockContext = new MockServletContext();
+    MockServletConfig mockConfig = new MockServletConfig(mockContext);
+    mockConfig.initParameters.put(RemoteServiceServlet.POLICY_CACHE_MAX_SIZE_PARAM, "1");
+
+    RemoteServiceServlet rss = new RemoteServiceServlet() {
+      @Override
+      protected SerializationPolicy doGetSerializationPolicy(HttpServletRequest request,
+          String moduleBaseURL, String strongName) {
+        loads[0]++;
+        return RPC.getDefaultSerializationPolicy();
+      }
+    };
+    rss.init(mockConfig);
+    SerializationPolicyCache cache = rss.getSerializationPolicyCache();
+    assertEquals(1, cache.getMaximumSize());
+
+    rss.getSerializationPolicy("http://www.google.com/MyModule/", strongNames[0]);
+    rss.getSerializationPolicy("http://www.google.com/MyModule/", strongNames[0]);
+    assertEquals(1, loads[0]);
+    assertEquals(1, cache.getHitCount());
+
+    rss.getSerializationPolicy("http://www.example.com/MyModule/", strongNames[0]);
+    rss.getSerializationPolicy("http://www.google.com/MyModule/", strongNames[1]);
+    assertEquals(3, loads[0]);
+    assertEquals(2, cache.getEvictionCount());
+    assertEquals(1, cache.size());
+  }
+
+  /**
+   * Test that the policies of the modules named by
+   * {@link RemoteServiceServlet#POLICY_WARM_UP_PATHS_PARAM} are read into the
+   * policy cache at initialization and used for module base URLs on any host.
+   */
+  public void testSerializationPolicyWarmUp() throws ServletException,
+      SerializationException {
+    List<String> reads = new ArrayList<String>();
+    MockServletConfig mockConfig = new MockServletConfig(createPolicyContext(reads,
+        "12345"));
+    mockConfig.initParameters.put(RemoteServiceServlet.POLICY_WARM_UP_PATHS_PARAM, "MyModule");
+
+    RemoteServiceServlet rss = new RemoteServiceServlet();
+    rss.init(mockConfig);
+    assertEquals(1, reads.size());
+    SerializationPolicyCache cache = rss.getSerializationPolicyCache();
+    assertEquals(1, cache.size());
+
+    SerializationPolicy serializationPolicy = rss.getSerializationPolicy(
+        "http://www.google.com/app/MyModule/", "12345");
+    assertValidDeserialize(serializationPolicy, Foo.class);
+    assertSame(serializationPolicy, rss.getSerializationPolicy(
+        "http://www.example.com/app/MyModule/", "12345"));
+    assertEquals(1, reads.size());
+    assertEquals(2, cache.getHitCount());
+    assertEquals(1, cache.size());
+  }
+
+  /**
+   * Test that preloaded policies are subject to the cache's size limit, and
+   * that they are not preloaded when the servlet loads policies itself.
+   */
+  public void testSerializationPolicyWarmUpUsesCache() throws ServletException {
+    List<String> reads = new ArrayList<String>();
+    MockServletConfig mockConfig = new MockServletConfig(createPolicyContext(reads,
+        "11111", "22222"));
+    mockConfig.initParameters.put(RemoteServiceServlet.POLICY_WARM_UP_PATHS_PARAM, "MyModule");
+    mockConfig.initParameters.put(RemoteServiceServlet.POLICY_CACHE_MAX_SIZE_PARAM, "1");
+
+    RemoteServiceServlet rss = new RemoteServiceServlet();
+    rss.init(mockConfig);
+    assertEquals(2, reads.size());
+    assertEquals(1, rss.getSerializationPolicyCache().size());
+    assertEquals(1, rss.getSerializationPolicyCache().getEvictionCount());
+
+    reads.clear();
+    final int[] loads = new int[1];
+    rss = new RemoteServiceServlet() {
+      @Override
+      protected SerializationPolicy doGetSerializationPolicy(HttpServletRequest request,
+          String moduleBaseURL, String strongName) {
+        loads[0]++;
+        return RPC.getDefaultSerializationPolicy();
+      }
+    };
+    rss.init(mockConfig);
+    assertTrue(reads.isEmpty());
+    assertEquals(0, rss.getSerializationPolicyCache().size());
+    rss.getSerializationPolicy("http://www.google.com/app/MyModule/", "11111");
+    assertEquals(1, loads[0]);
+  }
+
+  /**
+   * Creates a servlet context at <code>/app</code> whose <code>/MyModule/</code>
+   * directory holds a policy for each of the given strong names, recording the
+   * policy files read.
+   */
+  private MockServletContext createPolicyContext(final List<String> reads,
+      String... strongNames) {
+    final Set<String> resourcePaths = new HashSet<String>();
+    for (String strongName : strongNames) {
+      resourcePaths.add("/MyModule/"
+          + SerializationPolicyLoader.getSerializationPolicyFileName(strongName));
+    }
+    resourcePaths.add("/MyModule/gwt/");
+    return new MockServletContext() {
+      @Override
+      public String getContextPath() {
+        return "/app";
+      }
+
+      @Override
+      public Set<String> getResourcePaths(String path) {
+        assertEquals("/MyModule/", path);
+        return resourcePaths;
+      }
+
+      @Override
+      public InputStream getResourceAsStream(String resource) {
+        assertTrue(resourcePaths.contains(resource));
+        reads.add(resource);
+        try {
+          return new ByteArrayInputStream((Foo.class.getName() + ",true\n").getBytes(
+              SerializationPolicyLoader.SERIALIZATION_POLICY_FILE_ENCODING));
+        } catch (UnsupportedEncodingException e) {
+          return null;
+        }
+      }
+    };
+  }
+
   private void assertDeserializeFields(SerializationPolicy policy,
       Class<?> clazz) {
     assertTrue(policy.shouldDeserializeFields(clazz));
@@ -428,4 +878,120 @@ public class RemoteServiceServletTest extends TestCase {
       throws SerializationException {
     policy.validateDeserialize(clazz);
   }
+
+  /**
+   * Creates a batched request carrying the given calls.
+   */
+  private static HttpServletRequest createBatchRequest(final String batch) {
+    return new MockHttpServletRequest() {
+      @Override
+      public String getCharacterEncoding() {
+        return "utf-8";
+      }
+
+      @Override
+      public int getContentLength() {
+        return -1;
+      }
+
+      @Override
+      public String getContentType() {
+        return "text/x-gwt-rpc; charset=utf-8";
+      }
+
+      @Override
+      public String getHeader(String name) {
+        return RpcRequestBuilder.BATCH_HEADER.equals(name) ? "3" : null;
+      }
+
+      @Override
+      public ServletInputStream getInputStream() throws IOException {
+        return new RPCServletUtilsTest.MockServletInputStream(batch);
+      }
+    };
+  }
+
+  /**
+   * Creates a request for an RPC without a strong name that supports
+   * asynchronous processing with the given context.
+   */
+  private static HttpServletRequest createAsyncRequest(final AsyncContext asyncContext,
+      final List<String> asyncEvents) {
+    return new MockHttpServletRequest() {
+      @Override
+      public String getCharacterEncoding() {
+        return "utf-8";
+      }
+
+      @Override
+      public int getContentLength() {
+        return -1;
+      }
+
+      @Override
+      public String getContentType() {
+        return "text/x-gwt-rpc; charset=utf-8";
+      }
+
+      @Override
+      public String getHeader(String name) {
+        return null;
+      }
+
+      @Override
+      public ServletInputStream getInputStream() throws IOException {
+        return new RPCServletUtilsTest.MockServletInputStream("payload");
+      }
+
+      @Override
+      public boolean isAsyncSupported() {
+        return true;
+      }
+
+      @Override
+      public AsyncContext startAsync(ServletRequest request,
+          ServletResponse response) {
+        asyncEvents.add("startAsync");
+        return asyncContext;
+      }
+    };
+  }
+
+  /**
+   * Creates a mock of the given interface that records the names of the
+   * methods called on it. Calls return <code>false</code>, a discarding
+   * {@link ServletOutputStream}, or <code>null</code>.
+   */
+  private static <T> T mock(Class<T> type, List<String> events) {
+    return mock(type, events, new ArrayList<Object>());
+  }
+
+  /**
+   * Creates a mock of the given interface that also records the arguments of
+   * the methods called on it.
+   */
+  private static <T> T mock(Class<T> type, final List<String> events,
+      final List<Object> arguments) {
+    return type.cast(Proxy.newProxyInstance(type.getClassLoader(),
+        new Class<?>[] {type}, new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args) {
+            events.add(method.getName());
+            if (args != null) {
+              arguments.addAll(Arrays.asList(args));
+            }
+            if (method.getReturnType() == boolean.class) {
+              return false;
+            }
+            if (method.getReturnType() == ServletOutputStream.class) {
+              return new ServletOutputStream() {
+                @Override
+                public void write(int b) {
+                }
+              };
+            }
+            return null;
+          }
+        }));
+  }
 }
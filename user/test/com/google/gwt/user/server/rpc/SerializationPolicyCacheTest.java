@@ -0,0 +1,188 @@
+/*
+ * Copyright 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.user.server.rpc;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for {@link SerializationPolicyCache}.
+ */
+public class SerializationPolicyCacheTest extends TestCase {
+
+  private static class MockClockCache extends SerializationPolicyCache {
+    private long now;
+
+    MockClockCache(int maximumSize, long expireAfterLoad, TimeUnit unit) {
+      super(maximumSize, expireAfterLoad, unit);
+    }
+
+    @Override
+    long currentTimeNanos() {
+      return now;
+    }
+  }
+
+  private final SerializationPolicy policy = RPC.getDefaultSerializationPolicy();
+
+  public void testCounters() {
+    SerializationPolicyCache cache = new SerializationPolicyCache();
+    assertNull(cache.get("a"));
+    cache.put("a", policy, 10);
+    cache.put("b", policy, 5);
+    assertSame(policy, cache.get("a"));
+    assertSame(policy, cache.get("a"));
+
+    assertEquals(2, cache.getHitCount());
+    assertEquals(1, cache.getMissCount());
+    assertEquals(2, cache.getLoadCount());
+    assertEquals(15, cache.getTotalLoadTimeNanos());
+    assertEquals(0, cache.getEvictionCount());
+    assertEquals(2, cache.size());
+
+    cache.clear();
+    assertEquals(0, cache.size());
+    assertNull(cache.get("a"));
+  }
+
+  public void testExpiry() {
+    MockClockCache cache = new MockClockCache(0, 10, TimeUnit.SECONDS);
+    cache.put("a", policy, 0);
+    cache.now = TimeUnit.SECONDS.toNanos(9);
+    assertSame(policy, cache.get("a"));
+
+    // Expiry is measured from loading, not from the last access
+    cache.now = TimeUnit.SECONDS.toNanos(10);
+    assertNull(cache.get("a"));
+    assertEquals(1, cache.getEvictionCount());
+    assertEquals(0, cache.size());
+  }
+
+  public void testLeastRecentlyUsedEviction() {
+    SerializationPolicyCache cache = new SerializationPolicyCache(2, 0, TimeUnit.SECONDS);
+    cache.put("a", policy, 0);
+    cache.put("b", policy, 0);
+    assertSame(policy, cache.get("a"));
+    cache.put("c", policy, 0);
+
+    assertEquals(1, cache.getEvictionCount());
+    assertSame(policy, cache.get("a"));
+    assertNull(cache.get("b"));
+    assertSame(policy, cache.get("c"));
+  }
+
+  public void testLoadFailure() {
+    SerializationPolicyCache cache = new SerializationPolicyCache();
+    try {
+      cache.get("a", new SerializationPolicyCache.Loader() {
+        @Override
+        public SerializationPolicy load() {
+          throw new IllegalStateException();
+        }
+      });
+      fail("Expected IllegalStateException");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+    assertEquals(0, cache.size());
+
+    assertSame(policy, cache.get("a", constantLoader()));
+    assertEquals(1, cache.getLoadCount());
+  }
+
+  public void testLoadOnce() throws InterruptedException {
+    final SerializationPolicyCache cache = new SerializationPolicyCache(1, 0, TimeUnit.SECONDS);
+    final CountDownLatch loading = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final AtomicInteger loads = new AtomicInteger();
+    final SerializationPolicyCache.Loader loader = new SerializationPolicyCache.Loader() {
+      @Override
+      public SerializationPolicy load() {
+        loads.incrementAndGet();
+        loading.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          throw new RuntimeException(e);
+        }
+        return policy;
+      }
+    };
+
+    final AtomicInteger found = new AtomicInteger();
+    Thread[] threads = new Thread[8];
+    for (int i = 0; i < threads.length; i++) {
+      threads[i] = new Thread() {
+        @Override
+        public void run() {
+          if (cache.get("a", loader) == policy) {
+            found.incrementAndGet();
+          }
+        }
+      };
+      threads[i].start();
+    }
+    loading.await();
+    // Give the other threads time to find the load in progress
+    while (cache.getLoadWaitCount() < threads.length - 1) {
+      Thread.sleep(1);
+    }
+    // A load in progress is not evicted, and is not a hit for get(String)
+    cache.put("b", policy, 0);
+    assertNull(cache.get("a"));
+    release.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertEquals(threads.length, found.get());
+    assertEquals(1, loads.get());
+    assertEquals(threads.length - 1, cache.getLoadWaitCount());
+    assertSame(policy, cache.get("a", loader));
+    assertEquals(1, cache.getHitCount());
+    assertEquals(1, loads.get());
+    // "b" was evicted to make room, since "a" was being loaded
+    assertEquals(1, cache.size());
+    assertNull(cache.get("b"));
+  }
+
+  public void testInvalidArguments() {
+    try {
+      new SerializationPolicyCache(-1, 0, TimeUnit.SECONDS);
+      fail("Expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    try {
+      new SerializationPolicyCache(0, -1, TimeUnit.SECONDS);
+      fail("Expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  private SerializationPolicyCache.Loader constantLoader() {
+    return new SerializationPolicyCache.Loader() {
+      @Override
+      public SerializationPolicy load() {
+        return policy;
+      }
+    };
+  }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.user.server.rpc.impl;
+
+import com.google.gwt.user.client.rpc.SerializationException;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Tests for {@link ClassSerializationPlan}.
+ */
+public class ClassSerializationPlanTest extends TestCase {
+
+  static class Base {
+    private String name;
+  }
+
+  static class Sub extends Base {
+    private int count;
+    private String label;
+    private transient String ignored;
+
+    private Sub() {
+    }
+
+    public void setLabel(String label) {
+      this.label = "set:" + label;
+    }
+  }
+
+  public void testCachePerPolicy() throws SerializationException {
+    StandardSerializationPolicy policy = createPolicy(null);
+    ClassSerializationPlan.Cache cache = ClassSerializationPlan.getCache(policy);
+    assertSame(cache, ClassSerializationPlan.getCache(policy));
+    assertSame(cache.get(Sub.class, policy), cache.get(Sub.class, policy));
+
+    StandardSerializationPolicy other = createPolicy(null);
+    assertNotSame(cache, ClassSerializationPlan.getCache(other));
+  }
+
+  public void testEnhancedClass() throws Exception {
+    Map<Class<?>, Set<String>> clientFields = new HashMap<Class<?>, Set<String>>();
+    clientFields.put(Sub.class, Collections.singleton("label"));
+    StandardSerializationPolicy policy = createPolicy(clientFields);
+    ClassSerializationPlan plan = ClassSerializationPlan.getCache(policy).get(Sub.class, policy);
+
+    assertTrue(plan.isEnhanced());
+    assertEquals(Arrays.asList("label"), getNames(plan.getClientFields()));
+    assertEquals(Arrays.asList("count"), getNames(plan.getServerOnlyFields()));
+
+    // Client fields of enhanced classes are set through their setters
+    Sub sub = (Sub) plan.newInstance();
+    plan.getClientFields()[0].set(sub, "x");
+    assertEquals("set:x", sub.label);
+  }
+
+  public void testFields() throws Exception {
+    StandardSerializationPolicy policy = createPolicy(null);
+    ClassSerializationPlan.Cache cache = ClassSerializationPlan.getCache(policy);
+    ClassSerializationPlan plan = cache.get(Sub.class, policy);
+
+    assertFalse(plan.isEnhanced());
+    assertNull(plan.getServerOnlyFields());
+    assertNull(plan.getCustomSerializer());
+    assertNull(plan.getServerCustomSerializer());
+    assertTrue(plan.shouldSerializeSuperclass());
+    assertTrue(plan.shouldDeserializeSuperclass());
+    assertFalse(cache.get(Base.class, policy).shouldSerializeSuperclass());
+
+    // Fields are in canonical order, without transient fields
+    ClassSerializationPlan.FieldPlan[] fields = plan.getClientFields();
+    assertEquals(Arrays.asList("count", "label"), getNames(fields));
+    assertEquals(int.class, fields[0].getType());
+
+    Sub sub = (Sub) plan.newInstance();
+    fields[0].set(sub, 42);
+    fields[1].set(sub, "x");
+    assertEquals(42, sub.count);
+    assertEquals("x", sub.label);
+    assertEquals(42, fields[0].get(sub));
+    assertEquals("x", fields[1].get(sub));
+
+    try {
+      fields[0].set(sub, "not an int");
+      fail("Expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      // expected, as from Field.set()
+    }
+    try {
+      fields[0].set(sub, null);
+      fail("Expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      // expected, as from Field.set()
+    }
+  }
+
+  private StandardSerializationPolicy createPolicy(Map<Class<?>, Set<String>> clientFields) {
+    Map<Class<?>, Boolean> whitelist = new HashMap<Class<?>, Boolean>();
+    whitelist.put(Base.class, Boolean.TRUE);
+    whitelist.put(Sub.class, Boolean.TRUE);
+    return new StandardSerializationPolicy(whitelist, whitelist,
+        new HashMap<Class<?>, String>(), clientFields);
+  }
+
+  private List<String> getNames(ClassSerializationPlan.FieldPlan[] fields) {
+    List<String> names = new ArrayList<String>();
+    for (ClassSerializationPlan.FieldPlan field : fields) {
+      names.add(field.getName());
+    }
+    return names;
+  }
+}
@@ -16,8 +16,13 @@
 
 package com.google.gwt.user.server.rpc.impl;
 
+import com.google.gwt.user.server.Base64Utils;
+
 import junit.framework.TestCase;
 
+import java.io.IOException;
+import java.io.StringWriter;
+
 /**
  * Tests {@link ServerSerializationStreamWriter}.
  */
@@ -114,6 +119,43 @@ public class ServerSerializationStreamWriterTest extends TestCase {
         escaped);
   }
 
+  public void testWriteTo() throws IOException {
+    ServerSerializationStreamWriter writer = new ServerSerializationStreamWriter(null, 8);
+    writer.writeInt(7);
+    writer.writeString("foo");
+    writer.writeString("\"quoted\"");
+    writer.writeString("foo");
+    writer.writeLong(Long.MAX_VALUE);
+
+    StringWriter out = new StringWriter();
+    writer.writeTo(out);
+    assertEquals(writer.toString(), out.toString());
+    assertEquals("[\"" + Base64Utils.toBase64(Long.MAX_VALUE) + "\",1,2,1,7,"
+        + "[\"foo\",\"\\\"quoted\\\"\"],0,8]", out.toString());
+  }
+
+  public void testWriteToLengthConstrained() throws IOException {
+    StringBuilder longString = new StringBuilder(0xFFFF * 2);
+    for (int i = 0; i < 0xFFFF * 2; i++) {
+      longString.append('a');
+    }
+    int tokenCount =
+        ServerSerializationStreamWriter.LengthConstrainedArray.MAXIMUM_ARRAY_LENGTH * 2 + 100;
+    ServerSerializationStreamWriter writer = new ServerSerializationStreamWriter(null, 8);
+    for (int i = 0; i < tokenCount; i++) {
+      writer.writeInt(i);
+    }
+    writer.writeString(longString.toString());
+
+    StringWriter out = new StringWriter();
+    writer.writeTo(out);
+    String encoded = out.toString();
+    assertEquals(writer.toString(), encoded);
+    assertTrue(encoded.contains("].concat(["));
+    assertTrue(encoded.contains("],["));
+    assertTrue(encoded.endsWith(",0,7])"));
+  }
+
   public void testWritingRpcVersion8Message() {
     ServerSerializationStreamWriter writer = new ServerSerializationStreamWriter(null, 8);
     writer.writeDouble(Double.NEGATIVE_INFINITY);
@@ -21,7 +21,9 @@ import com.google.web.bindery.autobean.shared.AutoBeanCodexTest;
 import com.google.web.bindery.autobean.shared.SplittableTest;
 import com.google.web.bindery.autobean.vm.AutoBeanCodexJreTest;
 import com.google.web.bindery.autobean.vm.AutoBeanJreTest;
+import com.google.web.bindery.autobean.vm.GeneratedAutoBeanTest;
 import com.google.web.bindery.autobean.vm.SplittableJreTest;
+import com.google.web.bindery.autobean.vm.StreamingAutoBeanCodexTest;
 
 import junit.framework.Test;
 
@@ -36,8 +38,10 @@ public class AutoBeanSuite {
     suite.addTestSuite(AutoBeanCodexTest.class);
     suite.addTestSuite(AutoBeanJreTest.class);
     suite.addTestSuite(AutoBeanTest.class);
+    suite.addTestSuite(GeneratedAutoBeanTest.class);
     suite.addTestSuite(SplittableJreTest.class);
     suite.addTestSuite(SplittableTest.class);
+    suite.addTestSuite(StreamingAutoBeanCodexTest.class);
     return suite;
   }
 }
@@ -0,0 +1,288 @@
+/*
+ * Copyright 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.web.bindery.autobean.vm;
+
+import com.google.web.bindery.autobean.shared.AutoBean;
+import com.google.web.bindery.autobean.shared.AutoBeanCodex;
+import com.google.web.bindery.autobean.shared.AutoBeanFactory;
+import com.google.web.bindery.autobean.shared.AutoBeanUtils;
+import com.google.web.bindery.autobean.shared.AutoBeanVisitor;
+
+import junit.framework.TestCase;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests the AutoBean classes generated when
+ * {@link Configuration.Builder#setGenerateClasses(boolean)} is set.
+ */
+public class GeneratedAutoBeanTest extends TestCase {
+
+  /**
+   * The factory under test.
+   */
+  public interface Factory extends AutoBeanFactory {
+    AutoBean<Builder> builder();
+
+    AutoBean<Child> child();
+
+    AutoBean<Child> child(Child toWrap);
+
+    AutoBean<Hidden> hidden();
+
+    AutoBean<Parent> parent();
+  }
+
+  /**
+   * Has chained setters.
+   */
+  public interface Builder {
+    int getCount();
+
+    String getName();
+
+    Builder setCount(int count);
+
+    Builder setName(String name);
+  }
+
+  /**
+   * A simple bean.
+   */
+  public interface Child {
+    String getName();
+
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    void setName(String name);
+  }
+
+  /**
+   * A simple implementation to wrap.
+   */
+  public static class ChildImpl implements Child {
+    private boolean enabled;
+    private String name;
+
+    @Override
+    public String getName() {
+      return name;
+    }
+
+    @Override
+    public boolean isEnabled() {
+      return enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+      this.enabled = enabled;
+    }
+
+    @Override
+    public void setName(String name) {
+      this.name = name;
+    }
+  }
+
+  /**
+   * A bean with properties of each kind.
+   */
+  public interface Parent {
+    Child getChild();
+
+    List<Child> getChildren();
+
+    double getDouble();
+
+    Integer getInteger();
+
+    long getLong();
+
+    Map<String, Integer> getMap();
+
+    String getName();
+
+    void setChild(Child child);
+
+    void setChildren(List<Child> children);
+
+    void setDouble(double value);
+
+    void setInteger(Integer value);
+
+    void setLong(long value);
+
+    void setMap(Map<String, Integer> map);
+
+    void setName(String name);
+  }
+
+  /**
+   * Cannot be implemented from another class loader.
+   */
+  interface Hidden {
+    String getName();
+
+    void setName(String name);
+  }
+
+  private Factory factory;
+  private Factory proxyFactory;
+
+  public void testBuilder() {
+    AutoBean<Builder> bean = factory.builder();
+    Builder builder = bean.as();
+    assertFalse(Proxy.isProxyClass(builder.getClass()));
+    assertSame(builder, builder.setCount(3).setName("name"));
+    assertEquals(3, builder.getCount());
+    assertEquals("name", builder.getName());
+  }
+
+  public void testCodex() {
+    Parent parent = createParent();
+    String payload = AutoBeanCodex.encode(AutoBeanUtils.getAutoBean(parent)).getPayload();
+
+    // The payload is the same as with Proxy instances
+    Parent proxyParent = AutoBeanCodex.decode(proxyFactory, Parent.class, payload).as();
+    assertTrue(Proxy.isProxyClass(proxyParent.getClass()));
+    assertEquals(payload, AutoBeanCodex.encode(AutoBeanUtils.getAutoBean(proxyParent))
+        .getPayload());
+
+    Parent decoded = AutoBeanCodex.decode(factory, Parent.class, payload).as();
+    assertFalse(Proxy.isProxyClass(decoded.getClass()));
+    assertEquals("parent", decoded.getName());
+    assertEquals(1.5, decoded.getDouble());
+    assertEquals(Integer.valueOf(42), decoded.getInteger());
+    assertEquals(Long.MAX_VALUE, decoded.getLong());
+    assertEquals(Integer.valueOf(1), decoded.getMap().get("one"));
+    assertEquals("child", decoded.getChild().getName());
+    assertTrue(decoded.getChild().isEnabled());
+    assertEquals(2, decoded.getChildren().size());
+    assertEquals("second", decoded.getChildren().get(1).getName());
+    assertTrue(AutoBeanUtils.deepEquals(AutoBeanUtils.getAutoBean(parent),
+        AutoBeanUtils.getAutoBean(decoded)));
+  }
+
+  public void testDefaults() {
+    Parent parent = factory.parent().as();
+    assertEquals(0.0, parent.getDouble());
+    assertEquals(0L, parent.getLong());
+    assertNull(parent.getInteger());
+    assertNull(parent.getChild());
+    assertFalse(factory.child().as().isEnabled());
+  }
+
+  public void testFallbacks() {
+    // Non-public interfaces still use Proxy instances
+    Hidden hidden = factory.hidden().as();
+    assertTrue(Proxy.isProxyClass(hidden.getClass()));
+    hidden.setName("hidden");
+    assertEquals("hidden", hidden.getName());
+
+    // As do all beans without the option
+    assertTrue(Proxy.isProxyClass(proxyFactory.child().as().getClass()));
+  }
+
+  public void testFreezing() {
+    AutoBean<Child> bean = factory.child();
+    bean.as().setName("before");
+    bean.setFrozen(true);
+    try {
+      bean.as().setName("after");
+      fail("Expected IllegalStateException");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+    assertEquals("before", bean.as().getName());
+  }
+
+  public void testTraversal() {
+    Parent parent = createParent();
+    final List<String> visited = new ArrayList<String>();
+    AutoBeanUtils.getAutoBean(parent).accept(new AutoBeanVisitor() {
+      @Override
+      public boolean visitValueProperty(String propertyName, Object value, PropertyContext ctx) {
+        visited.add(propertyName + "=" + value);
+        return false;
+      }
+    });
+    assertTrue(visited.toString(), visited.containsAll(Arrays.asList("name=parent",
+        "double=1.5", "integer=42", "long=" + Long.MAX_VALUE, "name=child", "enabled=true")));
+  }
+
+  public void testWrapper() {
+    ChildImpl impl = new ChildImpl();
+    AutoBean<Child> bean = factory.child(impl);
+    Child shim = bean.as();
+    assertFalse(Proxy.isProxyClass(shim.getClass()));
+    assertSame(bean, AutoBeanUtils.getAutoBean(shim));
+
+    shim.setName("wrapped");
+    shim.setEnabled(true);
+    assertEquals("wrapped", impl.getName());
+    assertTrue(impl.isEnabled());
+    assertEquals("wrapped", shim.getName());
+    assertTrue(shim.equals(impl));
+    assertEquals(impl.hashCode(), shim.hashCode());
+    assertSame(impl, bean.unwrap());
+    try {
+      shim.getName();
+      fail("Expected IllegalStateException");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    proxyFactory = AutoBeanFactorySource.create(Factory.class);
+    System.setProperty(Configuration.GENERATE_CLASSES_PROPERTY, "true");
+    try {
+      factory = AutoBeanFactorySource.create(Factory.class);
+    } finally {
+      System.clearProperty(Configuration.GENERATE_CLASSES_PROPERTY);
+    }
+  }
+
+  private Parent createParent() {
+    Parent parent = factory.parent().as();
+    assertFalse(Proxy.isProxyClass(parent.getClass()));
+    parent.setName("parent");
+    parent.setDouble(1.5);
+    parent.setInteger(42);
+    parent.setLong(Long.MAX_VALUE);
+    parent.setMap(Collections.singletonMap("one", 1));
+
+    Child child = factory.child().as();
+    child.setName("child");
+    child.setEnabled(true);
+    parent.setChild(child);
+
+    Child second = factory.child().as();
+    second.setName("second");
+    parent.setChildren(Arrays.asList(child, second));
+    return parent;
+  }
+}
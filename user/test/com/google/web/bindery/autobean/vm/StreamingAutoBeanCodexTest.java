@@ -0,0 +1,159 @@
+/*
+ * Copyright 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.web.bindery.autobean.vm;
+
+import com.google.web.bindery.autobean.shared.AutoBean;
+import com.google.web.bindery.autobean.shared.AutoBeanCodex;
+import com.google.web.bindery.autobean.shared.AutoBeanFactory;
+import com.google.web.bindery.autobean.shared.Splittable;
+import com.google.web.bindery.autobean.vm.impl.StreamingAutoBeanCodex;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests for {@link StreamingAutoBeanCodex}.
+ */
+public class StreamingAutoBeanCodexTest extends TestCase {
+
+  interface Factory extends AutoBeanFactory {
+    AutoBean<Node> node();
+  }
+
+  interface Node {
+    boolean getFlag();
+
+    List<Node> getChildren();
+
+    long getId();
+
+    Map<String, Integer> getMap();
+
+    String getName();
+
+    double getRatio();
+
+    Splittable getRaw();
+
+    void setChildren(List<Node> children);
+
+    void setFlag(boolean flag);
+
+    void setId(long id);
+
+    void setMap(Map<String, Integer> map);
+
+    void setName(String name);
+
+    void setRatio(double ratio);
+
+    void setRaw(Splittable raw);
+  }
+
+  /**
+   * Counts the writes it receives.
+   */
+  private static class CountingWriter extends StringWriter {
+    private int writes;
+
+    @Override
+    public void write(char[] cbuf, int off, int len) {
+      writes++;
+      super.write(cbuf, off, len);
+    }
+  }
+
+  private final Factory f = AutoBeanFactorySource.create(Factory.class);
+
+  public void testDecode() {
+    String payload = "{\"name\" : \"a \\\"quoted\\\" \\u00e9\\/\\n name\", \"flag\":true,"
+        + "\"id\":\"12345678901234\",\"ratio\":-1.5e2,\"map\":{\"x\":1,\"y\":null},"
+        + "\"raw\":[1, 2.0, {\"z\":false}, null],"
+        + "\"children\":[{\"name\":\"child\",\"children\":[]}]}";
+    Node expected = AutoBeanCodex.decode(f, Node.class, payload).as();
+    Node actual = StreamingAutoBeanCodex.decode(f, Node.class, payload).as();
+
+    assertEquals("a \"quoted\" \u00e9/\n name", actual.getName());
+    assertEquals(expected.getName(), actual.getName());
+    assertTrue(actual.getFlag());
+    assertEquals(12345678901234L, actual.getId());
+    assertEquals(-150.0, actual.getRatio());
+    assertEquals(Integer.valueOf(1), actual.getMap().get("x"));
+    assertTrue(actual.getMap().containsKey("y"));
+    assertNull(actual.getMap().get("y"));
+    assertEquals(expected.getRaw().getPayload(), actual.getRaw().getPayload());
+    assertEquals("child", actual.getChildren().get(0).getName());
+    assertTrue(actual.getChildren().get(0).getChildren().isEmpty());
+    assertEquals(AutoBeanCodex.encode(AutoBeanCodex.decode(f, Node.class, payload)).getPayload(),
+        AutoBeanCodex.encode(StreamingAutoBeanCodex.decode(f, Node.class, payload)).getPayload());
+  }
+
+  public void testEncode() throws IOException {
+    AutoBean<Node> bean = f.node();
+    Node root = bean.as();
+    root.setName("root \u2028 \"</script>\"");
+    root.setId(Long.MAX_VALUE);
+    root.setRatio(0.25);
+    root.setMap(Collections.singletonMap("k", 3));
+    List<Node> children = new ArrayList<Node>();
+    for (int i = 0; i < 2000; i++) {
+      Node child = f.node().as();
+      child.setName("child " + i);
+      child.setFlag(i % 2 == 0);
+      children.add(child);
+    }
+    root.setChildren(children);
+
+    CountingWriter writer = new CountingWriter();
+    StreamingAutoBeanCodex.encode(bean, writer);
+    String payload = writer.toString();
+    assertTrue("Expected the payload in chunks", writer.writes > 1);
+    assertEquals(AutoBeanCodex.encode(bean).getPayload(), AutoBeanCodex.encode(
+        StreamingAutoBeanCodex.decode(f, Node.class, payload)).getPayload());
+
+    Node decoded = StreamingAutoBeanCodex.decode(f, Node.class, payload).as();
+    assertEquals(root.getName(), decoded.getName());
+    assertEquals(Long.MAX_VALUE, decoded.getId());
+    assertEquals(0.25, decoded.getRatio());
+    assertEquals(Integer.valueOf(3), decoded.getMap().get("k"));
+    assertEquals(2000, decoded.getChildren().size());
+    assertEquals("child 1999", decoded.getChildren().get(1999).getName());
+    assertFalse(decoded.getChildren().get(1999).getFlag());
+
+    StringWriter nullWriter = new StringWriter();
+    StreamingAutoBeanCodex.encode(null, nullWriter);
+    assertEquals("null", nullWriter.toString());
+  }
+
+  public void testMalformed() {
+    for (String payload : Arrays.asList("", "{", "{\"a\"}", "{\"a\":1,}", "[1 2]", "tru",
+        "\"unterminated", "{\"a\":\"\\u12\"}", "{} {}", "{a:1}", "-")) {
+      try {
+        StreamingAutoBeanCodex.decode(f, Node.class, payload);
+        fail("Expected RuntimeException for " + payload);
+      } catch (RuntimeException e) {
+        // expected
+      }
+    }
+  }
+}
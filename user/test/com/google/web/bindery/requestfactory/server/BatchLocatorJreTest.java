@@ -0,0 +1,212 @@
+/*
+ * Copyright 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.web.bindery.requestfactory.server;
+
+import com.google.web.bindery.requestfactory.shared.BatchLocator;
+import com.google.web.bindery.requestfactory.shared.EntityProxy;
+import com.google.web.bindery.requestfactory.shared.ProxyFor;
+import com.google.web.bindery.requestfactory.shared.Receiver;
+import com.google.web.bindery.requestfactory.shared.Request;
+import com.google.web.bindery.requestfactory.shared.RequestContext;
+import com.google.web.bindery.requestfactory.shared.RequestFactory;
+import com.google.web.bindery.requestfactory.shared.Service;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests that entities with a {@link BatchLocator} are loaded in batches, and
+ * only once per request.
+ */
+public class BatchLocatorJreTest extends TestCase {
+
+  /**
+   * The factory being tested.
+   */
+  protected interface Factory extends RequestFactory {
+    Context context();
+  }
+
+  @Service(ContextImpl.class)
+  interface Context extends RequestContext {
+    Request<List<ItemAliasProxy>> aliases(List<String> ids);
+
+    Request<Integer> count(List<ItemProxy> items);
+
+    Request<List<ItemProxy>> items(List<String> ids);
+
+    Request<Boolean> same(ItemProxy item, ItemAliasProxy alias);
+  }
+
+  static class ContextImpl {
+    public static List<Item> aliases(List<String> ids) {
+      return items(ids);
+    }
+
+    public static Integer count(List<Item> items) {
+      return items.size();
+    }
+
+    public static List<Item> items(List<String> ids) {
+      List<Item> toReturn = new ArrayList<Item>();
+      for (String id : ids) {
+        toReturn.add(new Item(id));
+      }
+      return toReturn;
+    }
+
+    public static Boolean same(Item item, Item alias) {
+      return item == alias;
+    }
+  }
+
+  static class Item {
+    private final String id;
+
+    public Item(String id) {
+      this.id = id;
+    }
+
+    public String getId() {
+      return id;
+    }
+  }
+
+  @ProxyFor(value = Item.class, locator = ItemLocator.class)
+  interface ItemAliasProxy extends EntityProxy {
+    String getId();
+  }
+
+  static class ItemLocator extends BatchLocator<Item, String> {
+    static final List<Collection<String>> FIND_ALL_CALLS = new ArrayList<Collection<String>>();
+
+    @Override
+    public Item create(Class<? extends Item> clazz) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Map<String, Item> findAll(Class<? extends Item> clazz, Collection<String> ids) {
+      FIND_ALL_CALLS.add(new ArrayList<String>(ids));
+      Map<String, Item> toReturn = new HashMap<String, Item>();
+      for (String id : ids) {
+        toReturn.put(id, new Item(id));
+      }
+      return toReturn;
+    }
+
+    @Override
+    public Class<Item> getDomainType() {
+      return Item.class;
+    }
+
+    @Override
+    public String getId(Item domainObject) {
+      return domainObject.getId();
+    }
+
+    @Override
+    public Class<String> getIdType() {
+      return String.class;
+    }
+
+    @Override
+    public Object getVersion(Item domainObject) {
+      return 0;
+    }
+
+    @Override
+    public boolean isLive(Item domainObject) {
+      return true;
+    }
+  }
+
+  @ProxyFor(value = Item.class, locator = ItemLocator.class)
+  interface ItemProxy extends EntityProxy {
+    String getId();
+  }
+
+  private Factory factory;
+
+  public void testIdentity() {
+    ItemProxy item = items("a").get(0);
+    ItemAliasProxy alias = aliases("a").get(0);
+    ItemLocator.FIND_ALL_CALLS.clear();
+
+    final boolean[] same = new boolean[1];
+    factory.context().same(item, alias).fire(new Receiver<Boolean>() {
+      @Override
+      public void onSuccess(Boolean response) {
+        same[0] = response;
+      }
+    });
+    assertTrue(same[0]);
+    assertEquals(Arrays.asList(Arrays.asList("a")), ItemLocator.FIND_ALL_CALLS);
+  }
+
+  public void testLoadsInOneCall() {
+    List<ItemProxy> items = items("a", "b", "c");
+    ItemLocator.FIND_ALL_CALLS.clear();
+
+    // Duplicates are loaded once
+    items.add(items.get(0));
+    final int[] count = new int[1];
+    factory.context().count(items).fire(new Receiver<Integer>() {
+      @Override
+      public void onSuccess(Integer response) {
+        count[0] = response;
+      }
+    });
+    assertEquals(4, count[0]);
+    assertEquals(Arrays.asList(Arrays.asList("a", "b", "c")), ItemLocator.FIND_ALL_CALLS);
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    factory = RequestFactoryJreTest.createInProcess(Factory.class,
+        RequestFactoryJreTest.createProcessor());
+    ItemLocator.FIND_ALL_CALLS.clear();
+  }
+
+  private List<ItemAliasProxy> aliases(String... ids) {
+    final List<ItemAliasProxy> toReturn = new ArrayList<ItemAliasProxy>();
+    factory.context().aliases(Arrays.asList(ids)).fire(new Receiver<List<ItemAliasProxy>>() {
+      @Override
+      public void onSuccess(List<ItemAliasProxy> response) {
+        toReturn.addAll(response);
+      }
+    });
+    return toReturn;
+  }
+
+  private List<ItemProxy> items(String... ids) {
+    final List<ItemProxy> toReturn = new ArrayList<ItemProxy>();
+    factory.context().items(Arrays.asList(ids)).fire(new Receiver<List<ItemProxy>>() {
+      @Override
+      public void onSuccess(List<ItemProxy> response) {
+        toReturn.addAll(response);
+      }
+    });
+    return toReturn;
+  }
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.web.bindery.requestfactory.server;
+
+import com.google.web.bindery.requestfactory.server.testing.InProcessRequestTransport;
+import com.google.web.bindery.requestfactory.shared.EntityProxy;
+import com.google.web.bindery.requestfactory.shared.Locator;
+import com.google.web.bindery.requestfactory.shared.ProxyFor;
+import com.google.web.bindery.requestfactory.shared.Receiver;
+import com.google.web.bindery.requestfactory.shared.Request;
+import com.google.web.bindery.requestfactory.shared.RequestContext;
+import com.google.web.bindery.requestfactory.shared.RequestFactory;
+import com.google.web.bindery.requestfactory.shared.RequestTransport;
+import com.google.web.bindery.requestfactory.shared.ServerFailure;
+import com.google.web.bindery.requestfactory.shared.Service;
+import com.google.web.bindery.requestfactory.shared.impl.EntitySnapshot;
+import com.google.web.bindery.requestfactory.vm.RequestFactorySource;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests that the server omits the properties of entities whose snapshot the
+ * client already holds.
+ */
+public class EntitySnapshotJreTest extends TestCase {
+
+  /**
+   * The factory being tested.
+   */
+  protected interface Factory extends RequestFactory {
+    Context context();
+  }
+
+  @Service(ContextImpl.class)
+  interface Context extends RequestContext {
+    Request<ItemProxy> item(String id);
+  }
+
+  static class ContextImpl {
+    public static Item item(String id) {
+      return ItemLocator.ITEMS.get(id);
+    }
+  }
+
+  static class Item {
+    private final String id;
+    private String name;
+    private int version;
+
+    public Item(String id, String name) {
+      this.id = id;
+      this.name = name;
+    }
+
+    public String getId() {
+      return id;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public void setName(String name) {
+      this.name = name;
+      version++;
+    }
+  }
+
+  static class ItemLocator extends Locator<Item, String> {
+    static final Map<String, Item> ITEMS = new HashMap<String, Item>();
+
+    @Override
+    public Item create(Class<? extends Item> clazz) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Item find(Class<? extends Item> clazz, String id) {
+      return ITEMS.get(id);
+    }
+
+    @Override
+    public Class<Item> getDomainType() {
+      return Item.class;
+    }
+
+    @Override
+    public String getId(Item domainObject) {
+      return domainObject.getId();
+    }
+
+    @Override
+    public Class<String> getIdType() {
+      return String.class;
+    }
+
+    @Override
+    public Object getVersion(Item domainObject) {
+      return domainObject.version;
+    }
+  }
+
+  @ProxyFor(value = Item.class, locator = ItemLocator.class)
+  interface ItemProxy extends EntityProxy {
+    String getId();
+
+    String getName();
+  }
+
+  /**
+   * Records the payloads of the responses.
+   */
+  private static class RecordingTransport implements RequestTransport {
+    private final RequestTransport delegate;
+    private final List<String> responses = new ArrayList<String>();
+
+    RecordingTransport(RequestTransport delegate) {
+      this.delegate = delegate;
+    }
+
+    public void send(String payload, final TransportReceiver receiver) {
+      delegate.send(payload, new TransportReceiver() {
+        public void onTransportFailure(ServerFailure failure) {
+          receiver.onTransportFailure(failure);
+        }
+
+        public void onTransportSuccess(String payload) {
+          responses.add(payload);
+          receiver.onTransportSuccess(payload);
+        }
+      });
+    }
+
+    String lastResponse() {
+      return responses.get(responses.size() - 1);
+    }
+  }
+
+  private Factory factory;
+  private RecordingTransport transport;
+
+  public void testChangedEntityIsSent() {
+    RequestFactorySource.setEntitySnapshotLimit(factory, 10);
+    item("a");
+    ItemLocator.ITEMS.get("a").setName("changed");
+    assertEquals("changed", item("a").getName());
+    assertTrue(transport.lastResponse().contains("changed"));
+  }
+
+  public void testDisabledByDefault() {
+    item("a");
+    assertEquals("first", item("a").getName());
+    assertTrue(transport.lastResponse().contains("first"));
+  }
+
+  public void testEvictedSnapshotIsNotAnnounced() {
+    RequestFactorySource.setEntitySnapshotLimit(factory, 1);
+    item("a");
+    item("b");
+    assertEquals("first", item("a").getName());
+    assertTrue(transport.lastResponse().contains("first"));
+  }
+
+  public void testNegativeLimit() {
+    try {
+      RequestFactorySource.setEntitySnapshotLimit(factory, -1);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  public void testStampComparesPropertyNames() {
+    // "Aa" and "BB" have the same hash code
+    assertFalse(EntitySnapshot.stamp("1", Arrays.asList("Aa")).equals(
+        EntitySnapshot.stamp("1", Arrays.asList("BB"))));
+    assertEquals(EntitySnapshot.stamp("1", Arrays.asList("id", "name")), EntitySnapshot.stamp(
+        "1", Arrays.asList("name", "id")));
+  }
+
+  public void testUnchangedEntityIsNotSent() {
+    RequestFactorySource.setEntitySnapshotLimit(factory, 10);
+    ItemProxy first = item("a");
+    ItemProxy second = item("a");
+    assertFalse(transport.lastResponse().contains("first"));
+    assertEquals("first", second.getName());
+    assertEquals("a", second.getId());
+    assertEquals(first.stableId(), second.stableId());
+
+    // Reusing a snapshot refreshes it
+    assertEquals("first", item("a").getName());
+    assertFalse(transport.lastResponse().contains("first"));
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    ItemLocator.ITEMS.clear();
+    ItemLocator.ITEMS.put("a", new Item("a", "first"));
+    ItemLocator.ITEMS.put("b", new Item("b", "second"));
+    transport =
+        new RecordingTransport(new InProcessRequestTransport(RequestFactoryJreTest
+            .createProcessor()));
+    factory = RequestFactoryJreTest.create(Factory.class, transport);
+  }
+
+  private ItemProxy item(String id) {
+    final List<ItemProxy> toReturn = new ArrayList<ItemProxy>();
+    factory.context().item(id).fire(new Receiver<ItemProxy>() {
+      @Override
+      public void onSuccess(ItemProxy response) {
+        toReturn.add(response);
+      }
+    });
+    assertEquals(1, toReturn.size());
+    return toReturn.get(0);
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.web.bindery.requestfactory.server;
+
+import junit.framework.TestCase;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Tests that {@link PropertyAccessors} behave as the reflective calls they
+ * replace.
+ */
+public class PropertyAccessorsTest extends TestCase {
+
+  /**
+   * A domain type with assorted accessors.
+   */
+  public static class Domain {
+    private long count;
+    private String name;
+
+    public String getBroken() {
+      throw new IllegalStateException("broken");
+    }
+
+    public long getCount() {
+      return count;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public void setCount(long count) {
+      this.count = count;
+    }
+
+    public Domain setName(String name) {
+      this.name = name;
+      return this;
+    }
+  }
+
+  private PropertyAccessors accessors;
+
+  public void testBuilderSetter() throws Exception {
+    Domain domain = new Domain();
+    setter("name", String.class).set(domain, "hello");
+    assertEquals("hello", getter("name").get(domain));
+  }
+
+  public void testInterned() throws Exception {
+    PropertyAccessors.Accessor getter = getter("name");
+    assertSame(getter, accessors.getGetter(Domain.class, "name"));
+    assertSame(getter, accessors.putGetter(Domain.class, "name", Domain.class
+        .getMethod("getName")));
+    assertNull(accessors.getGetter(Domain.class, "count"));
+    assertNull(accessors.getSetter(Domain.class, "name"));
+  }
+
+  public void testPrimitives() throws Exception {
+    Domain domain = new Domain();
+    PropertyAccessors.Accessor setter = setter("count", long.class);
+    setter.set(domain, 42L);
+    assertEquals(Long.valueOf(42), getter("count").get(domain));
+
+    // Widened as by Method.invoke()
+    setter.set(domain, 7);
+    assertEquals(7, domain.getCount());
+
+    try {
+      setter.set(domain, null);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+    try {
+      setter.set(domain, "7");
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  public void testUserException() throws Exception {
+    try {
+      getter("broken").get(new Domain());
+      fail();
+    } catch (InvocationTargetException expected) {
+      assertTrue(expected.getCause() instanceof IllegalStateException);
+    }
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    accessors = new PropertyAccessors();
+  }
+
+  private PropertyAccessors.Accessor getter(String property) throws Exception {
+    Method method =
+        Domain.class.getMethod("get" + Character.toUpperCase(property.charAt(0))
+            + property.substring(1));
+    return accessors.putGetter(Domain.class, property, method);
+  }
+
+  private PropertyAccessors.Accessor setter(String property, Class<?> type) throws Exception {
+    Method method =
+        Domain.class.getMethod("set" + Character.toUpperCase(property.charAt(0))
+            + property.substring(1), type);
+    return accessors.putSetter(Domain.class, property, method);
+  }
+}
@@ -20,6 +20,7 @@ import com.google.web.bindery.event.shared.SimpleEventBus;
 import com.google.web.bindery.requestfactory.gwt.client.RequestFactoryTest;
 import com.google.web.bindery.requestfactory.server.testing.InProcessRequestTransport;
 import com.google.web.bindery.requestfactory.shared.RequestFactory;
+import com.google.web.bindery.requestfactory.shared.RequestTransport;
 import com.google.web.bindery.requestfactory.shared.SimpleRequestFactory;
 import com.google.web.bindery.requestfactory.vm.RequestFactorySource;
 import com.google.web.bindery.requestfactory.vm.testing.UrlRequestTransport;
@@ -33,22 +34,44 @@ import java.net.URL;
 public class RequestFactoryJreTest extends RequestFactoryTest {
   private static final String TEST_SERVER_ADDRESS = System.getProperty("RequestFactory.testUrl");
 
-  public static <T extends RequestFactory> T createInProcess(Class<T> clazz) {
+  /**
+   * Creates a factory that sends its requests through the given transport.
+   */
+  public static <T extends RequestFactory> T create(Class<T> clazz, RequestTransport transport) {
     EventBus eventBus = new SimpleEventBus();
     T req = RequestFactorySource.create(clazz);
+    req.initialize(eventBus, transport);
+    return req;
+  }
+
+  public static <T extends RequestFactory> T createInProcess(Class<T> clazz) {
     if (TEST_SERVER_ADDRESS != null) {
       try {
-        UrlRequestTransport transport = new UrlRequestTransport(new URL(TEST_SERVER_ADDRESS));
-        req.initialize(eventBus, transport);
+        return create(clazz, new UrlRequestTransport(new URL(TEST_SERVER_ADDRESS)));
       } catch (MalformedURLException e) {
         throw new RuntimeException(e);
       }
-    } else {
-      ServiceLayer serviceLayer = ServiceLayer.create(new MethodProvidedByServiceLayerJreTest.Decorator());
-      SimpleRequestProcessor processor = new SimpleRequestProcessor(serviceLayer);
-      req.initialize(eventBus, new InProcessRequestTransport(processor));
     }
-    return req;
+    return createInProcess(clazz, createProcessor());
+  }
+
+  /**
+   * Creates a factory whose requests are processed in-process by the given
+   * processor, even if {@code RequestFactory.testUrl} is set. For tests that
+   * configure the processor or observe the server side.
+   */
+  public static <T extends RequestFactory> T createInProcess(Class<T> clazz,
+      SimpleRequestProcessor processor) {
+    return create(clazz, new InProcessRequestTransport(processor));
+  }
+
+  /**
+   * Creates a processor with the service layer the in-process tests use.
+   */
+  public static SimpleRequestProcessor createProcessor() {
+    ServiceLayer serviceLayer =
+        ServiceLayer.create(new MethodProvidedByServiceLayerJreTest.Decorator());
+    return new SimpleRequestProcessor(serviceLayer);
   }
 
   @Override
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.web.bindery.requestfactory.server;
+
+import com.google.web.bindery.requestfactory.shared.BaseProxy;
+import com.google.web.bindery.requestfactory.shared.EntityProxy;
+import com.google.web.bindery.requestfactory.shared.SimpleFooProxy;
+
+import junit.framework.TestCase;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Tests the bounds and statistics of {@link ServiceLayerCache}.
+ */
+public class ServiceLayerCacheTest extends TestCase {
+
+  /**
+   * Counts the lookups that reach it.
+   */
+  static class CountingLayer extends ServiceLayerDecorator {
+    final Map<String, Integer> calls = new HashMap<String, Integer>();
+
+    @Override
+    public Class<? extends BaseProxy> resolveClass(String typeToken) {
+      Integer count = calls.get(typeToken);
+      calls.put(typeToken, count == null ? 1 : count + 1);
+      return EntityProxy.class;
+    }
+
+    @Override
+    public String resolveTypeToken(Class<? extends BaseProxy> proxyType) {
+      return null;
+    }
+  }
+
+  private CountingLayer counting;
+
+  public void testBounded() {
+    ServiceLayerCache cache = createCache(10);
+    cache.resolveClass("hot");
+    for (int i = 0; i < 100; i++) {
+      cache.resolveClass("cold" + i);
+      cache.resolveClass("hot");
+    }
+
+    assertTrue(cache.getSize() <= 10);
+    assertEquals(101 - cache.getSize(), cache.getEvictionCount());
+    // The entry in use was never evicted
+    assertEquals(Integer.valueOf(1), counting.calls.get("hot"));
+    assertEquals(101, cache.getMissCount());
+    assertEquals(100, cache.getHitCount());
+  }
+
+  public void testCachesNull() {
+    ServiceLayerCache cache = createCache(10);
+    assertNull(cache.resolveTypeToken(EntityProxy.class));
+    assertNull(cache.resolveTypeToken(EntityProxy.class));
+    assertEquals(1, cache.getMissCount());
+    assertEquals(1, cache.getHitCount());
+  }
+
+  public void testClear() {
+    ServiceLayerCache cache = createCache(10);
+    cache.resolveClass("a");
+    cache.clear();
+    assertEquals(0, cache.getSize());
+    cache.resolveClass("a");
+    assertEquals(Integer.valueOf(2), counting.calls.get("a"));
+  }
+
+  public void testMXBean() throws Exception {
+    ServiceLayerCache cache = createCache(10);
+    cache.resolveClass("a");
+    cache.resolveClass("a");
+
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = new ObjectName(ServiceLayerCacheMXBean.OBJECT_NAME_PREFIX + "test");
+    server.registerMBean(cache, name);
+    try {
+      assertEquals(1L, server.getAttribute(name, "HitCount"));
+      assertEquals(1L, server.getAttribute(name, "MissCount"));
+      assertEquals(1, server.getAttribute(name, "Size"));
+      assertEquals(10, server.getAttribute(name, "MaximumSize"));
+    } finally {
+      server.unregisterMBean(name);
+    }
+  }
+
+  public void testPerServiceLayer() {
+    ServiceLayerCache a = (ServiceLayerCache) ServiceLayer.create();
+    ServiceLayerCache b = (ServiceLayerCache) ServiceLayer.create();
+    a.resolveDomainClass(SimpleFooProxy.class);
+    assertTrue(a.getSize() > 0);
+    assertEquals(0, b.getSize());
+  }
+
+  private ServiceLayerCache createCache(int maximumSize) {
+    ServiceLayerCache cache = new ServiceLayerCache(maximumSize);
+    counting = new CountingLayer();
+    cache.next = counting;
+    return cache;
+  }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.web.bindery.requestfactory.server;
+
+import com.google.web.bindery.autobean.shared.AutoBean;
+import com.google.web.bindery.autobean.shared.AutoBeanCodex;
+import com.google.web.bindery.requestfactory.shared.Receiver;
+import com.google.web.bindery.requestfactory.shared.Request;
+import com.google.web.bindery.requestfactory.shared.RequestContext;
+import com.google.web.bindery.requestfactory.shared.RequestFactory;
+import com.google.web.bindery.requestfactory.shared.RequestTransport;
+import com.google.web.bindery.requestfactory.shared.ServerFailure;
+import com.google.web.bindery.requestfactory.shared.Service;
+import com.google.web.bindery.requestfactory.shared.SideEffectFree;
+import com.google.web.bindery.requestfactory.shared.impl.MessageFactoryHolder;
+import com.google.web.bindery.requestfactory.shared.messages.RequestMessage;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests the parallel invocation of {@link SideEffectFree} methods.
+ */
+public class SideEffectFreeJreTest extends TestCase {
+
+  /**
+   * The factory being tested.
+   */
+  protected interface Factory extends RequestFactory {
+    Context context();
+  }
+
+  @Service(ContextImpl.class)
+  interface Context extends RequestContext {
+    @SideEffectFree
+    Request<String> echo(String value);
+
+    @SideEffectFree
+    Request<String> fail(String message);
+
+    Request<String> record(String value);
+
+    @SideEffectFree
+    Request<Boolean> rendezvous();
+  }
+
+  static class ContextImpl {
+    static CountDownLatch latch;
+    static final List<String> RECORDED = new ArrayList<String>();
+
+    public static String echo(String value) {
+      return value + RECORDED.size();
+    }
+
+    public static String fail(String message) {
+      throw new IllegalArgumentException(message);
+    }
+
+    public static String record(String value) {
+      RECORDED.add(value);
+      return value;
+    }
+
+    public static Boolean rendezvous() throws InterruptedException {
+      latch.countDown();
+      return latch.await(10, TimeUnit.SECONDS);
+    }
+  }
+
+  /**
+   * Adds responses and failure messages to a list.
+   */
+  private static class Recorder<T> extends Receiver<T> {
+    private final List<Object> results;
+
+    Recorder(List<Object> results) {
+      this.results = results;
+    }
+
+    @Override
+    public void onFailure(ServerFailure error) {
+      results.add(error.getMessage());
+    }
+
+    @Override
+    public void onSuccess(T response) {
+      results.add(response);
+    }
+  }
+
+  private ExecutorService executor;
+  private Factory factory;
+  private SimpleRequestProcessor processor;
+
+  public void testFailureIsIsolated() {
+    processor.setInvocationExecutor(executor);
+    List<Object> results = new ArrayList<Object>();
+    Context context = factory.context();
+    context.echo("a").to(new Recorder<String>(results));
+    context.fail("boom").to(new Recorder<String>(results));
+    context.echo("b").to(new Recorder<String>(results));
+    context.fire();
+    assertEquals(Arrays.<Object> asList("a0", "Server Error: boom", "b0"), results);
+  }
+
+  public void testOrder() {
+    processor.setInvocationExecutor(executor);
+    List<Object> results = new ArrayList<Object>();
+    Context context = factory.context();
+    context.echo("a").to(new Recorder<String>(results));
+    context.echo("b").to(new Recorder<String>(results));
+    context.record("c").to(new Recorder<String>(results));
+    context.echo("d").to(new Recorder<String>(results));
+    context.fire();
+    // Invocations without the annotation are invoked in order
+    assertEquals(Arrays.<Object> asList("a0", "b0", "c", "d1"), results);
+  }
+
+  public void testParallel() {
+    processor.setInvocationExecutor(executor);
+    ContextImpl.latch = new CountDownLatch(2);
+    List<Object> results = new ArrayList<Object>();
+    Context context = factory.context();
+    context.rendezvous().to(new Recorder<Boolean>(results));
+    context.rendezvous().to(new Recorder<Boolean>(results));
+    context.fire();
+    assertEquals(Arrays.<Object> asList(true, true), results);
+  }
+
+  public void testSequentialByDefault() {
+    ContextImpl.latch = new CountDownLatch(1);
+    List<Object> results = new ArrayList<Object>();
+    Context context = factory.context();
+    context.rendezvous().to(new Recorder<Boolean>(results));
+    context.echo("a").to(new Recorder<String>(results));
+    context.fire();
+    assertEquals(Arrays.<Object> asList(true, "a0"), results);
+  }
+
+  /**
+   * An operation that can't be resolved fails the request, but only once the
+   * invocations before it have been made, as they were before side-effect-free
+   * invocations were grouped.
+   */
+  public void testUnresolvedOperation() {
+    processor.setInvocationExecutor(executor);
+    final List<String> payloads = new ArrayList<String>();
+    Factory unsent = RequestFactoryJreTest.create(Factory.class, new RequestTransport() {
+      @Override
+      public void send(String payload, TransportReceiver receiver) {
+        payloads.add(payload);
+      }
+    });
+    Context context = unsent.context();
+    context.record("a");
+    context.echo("b");
+    context.echo("c");
+    context.fire();
+    assertEquals(1, payloads.size());
+
+    AutoBean<RequestMessage> bean =
+        AutoBeanCodex.decode(MessageFactoryHolder.FACTORY, RequestMessage.class, payloads.get(0));
+    bean.as().getInvocations().get(2).setOperation("unknown");
+    try {
+      processor.process(AutoBeanCodex.encode(bean).getPayload());
+      fail("Should have thrown UnexpectedException");
+    } catch (UnexpectedException expected) {
+    }
+    assertEquals(Arrays.asList("a"), ContextImpl.RECORDED);
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    ContextImpl.RECORDED.clear();
+    executor = Executors.newFixedThreadPool(2);
+    processor = RequestFactoryJreTest.createProcessor();
+    factory = RequestFactoryJreTest.createInProcess(Factory.class, processor);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    executor.shutdownNow();
+    super.tearDown();
+  }
+}
@@ -15,14 +15,17 @@
  */
 package com.google.web.bindery.requestfactory.vm;
 
+import com.google.web.bindery.requestfactory.server.BatchLocatorJreTest;
 import com.google.web.bindery.requestfactory.server.BoxesAndPrimitivesJreTest;
 import com.google.web.bindery.requestfactory.server.ComplexKeysJreTest;
+import com.google.web.bindery.requestfactory.server.EntitySnapshotJreTest;
 import com.google.web.bindery.requestfactory.server.FanoutReceiverJreTest;
 import com.google.web.bindery.requestfactory.server.FindServiceJreTest;
 import com.google.web.bindery.requestfactory.server.JsonRpcRequestFactoryJreTest;
 import com.google.web.bindery.requestfactory.server.LocatorJreTest;
 import com.google.web.bindery.requestfactory.server.MethodProvidedByServiceLayerJreTest;
 import com.google.web.bindery.requestfactory.server.MultipleFactoriesJreTest;
+import com.google.web.bindery.requestfactory.server.PropertyAccessorsTest;
 import com.google.web.bindery.requestfactory.server.ProxyForInterfacesJreTest;
 import com.google.web.bindery.requestfactory.server.RequestFactoryChainedContextJreTest;
 import com.google.web.bindery.requestfactory.server.RequestFactoryExceptionPropagationJreTest;
@@ -32,7 +35,9 @@ import com.google.web.bindery.requestfactory.server.RequestFactoryPolymorphicJre
 import com.google.web.bindery.requestfactory.server.RequestFactoryUnicodeEscapingJreTest;
 import com.google.web.bindery.requestfactory.server.RequestPayloadJreTest;
 import com.google.web.bindery.requestfactory.server.ServiceInheritanceJreTest;
+import com.google.web.bindery.requestfactory.server.ServiceLayerCacheTest;
 import com.google.web.bindery.requestfactory.server.ServiceLocatorTest;
+import com.google.web.bindery.requestfactory.server.SideEffectFreeJreTest;
 import com.google.web.bindery.requestfactory.shared.impl.SimpleEntityProxyIdTest;
 
 import junit.framework.Test;
@@ -47,14 +52,17 @@ import junit.framework.TestSuite;
 public class RequestFactoryJreSuite {
   public static Test suite() {
     TestSuite suite = new TestSuite("requestfactory package tests that require the JRE");
+    suite.addTestSuite(BatchLocatorJreTest.class);
     suite.addTestSuite(BoxesAndPrimitivesJreTest.class);
     suite.addTestSuite(ComplexKeysJreTest.class);
+    suite.addTestSuite(EntitySnapshotJreTest.class);
     suite.addTestSuite(FanoutReceiverJreTest.class);
     suite.addTestSuite(FindServiceJreTest.class);
     suite.addTestSuite(JsonRpcRequestFactoryJreTest.class);
     suite.addTestSuite(LocatorJreTest.class);
     suite.addTestSuite(MethodProvidedByServiceLayerJreTest.class);
     suite.addTestSuite(MultipleFactoriesJreTest.class);
+    suite.addTestSuite(PropertyAccessorsTest.class);
     suite.addTestSuite(ProxyForInterfacesJreTest.class);
     suite.addTestSuite(RequestFactoryChainedContextJreTest.class);
     suite.addTestSuite(RequestFactoryExceptionPropagationJreTest.class);
@@ -64,7 +72,9 @@ public class RequestFactoryJreSuite {
     suite.addTestSuite(RequestFactoryUnicodeEscapingJreTest.class);
     suite.addTestSuite(RequestPayloadJreTest.class);
     suite.addTestSuite(ServiceInheritanceJreTest.class);
+    suite.addTestSuite(ServiceLayerCacheTest.class);
     suite.addTestSuite(ServiceLocatorTest.class);
+    suite.addTestSuite(SideEffectFreeJreTest.class);
     suite.addTestSuite(SimpleEntityProxyIdTest.class);
 
     return suite;